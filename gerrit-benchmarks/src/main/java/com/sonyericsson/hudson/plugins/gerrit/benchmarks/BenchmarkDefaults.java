@@ -0,0 +1,49 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.benchmarks;
+
+/**
+ * The iteration settings shared by all the benchmarks.
+ * Override them on the command line with -wi and -i for quicker or more exact runs.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public final class BenchmarkDefaults {
+
+    /**
+     * The number of warmup iterations.
+     */
+    public static final int WARMUP_ITERATIONS = 5;
+
+    /**
+     * The number of measured iterations.
+     */
+    public static final int MEASUREMENT_ITERATIONS = 10;
+
+    /**
+     * Private Constructor for Utility Class.
+     */
+    private BenchmarkDefaults() {
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.benchmarks;
+
+import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.CommandTemplate;
+import hudson.Util;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of expanding the default "Build Successful" command through a {@link CommandTemplate},
+ * compared to the env var expansion followed by one String.replace per parameter that was used before.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = BenchmarkDefaults.WARMUP_ITERATIONS, time = 1)
+@Measurement(iterations = BenchmarkDefaults.MEASUREMENT_ITERATIONS, time = 1)
+@Fork(1)
+public class CommandTemplateBenchmark {
+
+    /**
+     * The default command for successful builds, with an env var added to the message.
+     */
+    public static final String COMMAND = "gerrit review <CHANGE>,<PATCHSET> --message 'Build Successful on $NODE_NAME "
+            + "<BUILDS_STATS>' --verified <VERIFIED> --code-review <CODE_REVIEW>";
+
+    private Map<String, String> env;
+    private Map<String, String> parameters;
+
+    /**
+     * Creates the environment and the parameters of a typical build.
+     */
+    @Setup
+    public void setUp() {
+        env = new HashMap<String, String>();
+        env.put("NODE_NAME", "build-slave-17");
+        env.put("BUILD_NUMBER", "4711");
+        env.put("JOB_NAME", "platform-frameworks-base-verify");
+        env.put("GERRIT_PROJECT", "platform/frameworks/base");
+        parameters = new HashMap<String, String>();
+        parameters.put("GERRIT_NAME", "platform/frameworks/base");
+        parameters.put("CHANGE_ID", "I8294c26c3ac291e1832e7792955c857191f9bc3c");
+        parameters.put("BRANCH", "platform/frameworks/base");
+        parameters.put("CHANGE", "40002");
+        parameters.put("PATCHSET", "3");
+        parameters.put("PATCHSET_REVISION", "78a3fe16ff1af383092b9f97f5ff15c815b4b761");
+        parameters.put("REFSPEC", "refs/changes/02/40002/3");
+        parameters.put("BUILDURL", "http://ci.example.com/job/platform-frameworks-base-verify/4711/");
+        parameters.put("VERIFIED", "1");
+        parameters.put("CODE_REVIEW", "0");
+        parameters.put("BUILDS_STATS", "\n\nhttp://ci.example.com/job/platform-frameworks-base-verify/4711/ : SUCCESS"
+                + "\nhttp://ci.example.com/job/platform-frameworks-base-sanity/815/ : SUCCESS");
+    }
+
+    /**
+     * Expands the command through the compiled template.
+     *
+     * @return the command.
+     */
+    @Benchmark
+    public String compiled() {
+        return CommandTemplate.compile(COMMAND).expand(env, parameters);
+    }
+
+    /**
+     * Expands the command the way ParameterExpander did before the templates.
+     *
+     * @return the command.
+     */
+    @Benchmark
+    public String replace() {
+        String command = Util.replaceMacro(COMMAND, env);
+        for (Map.Entry<String, String> param : parameters.entrySet()) {
+            command = command.replace("<" + param.getKey() + ">", param.getValue());
+        }
+        return command;
+    }
+}
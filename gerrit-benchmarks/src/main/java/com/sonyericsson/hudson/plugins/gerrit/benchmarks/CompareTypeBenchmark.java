@@ -0,0 +1,94 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.benchmarks;
+
+import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.data.CompareType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of {@link CompareType#matches(String, String)} against the project names of the {@link StreamEventsCorpus}.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = BenchmarkDefaults.WARMUP_ITERATIONS, time = 1)
+@Measurement(iterations = BenchmarkDefaults.MEASUREMENT_ITERATIONS, time = 1)
+@Fork(1)
+public class CompareTypeBenchmark {
+
+    /**
+     * The compare type.
+     */
+    @Param({"PLAIN", "ANT", "REG_EXP" })
+    private CompareType compareType;
+
+    private String pattern;
+    private List<String> projects;
+    private int nextProject;
+
+    /**
+     * Loads the project names and picks a typical pattern for the compare type.
+     */
+    @Setup
+    public void setUp() {
+        projects = StreamEventsCorpus.getProjects();
+        switch (compareType) {
+            case ANT:
+                pattern = "platform/**/apps/*";
+                break;
+            case REG_EXP:
+                pattern = "platform/(frameworks|packages)/.*";
+                break;
+            default:
+                pattern = "platform/frameworks/base";
+        }
+    }
+
+    /**
+     * Matches the pattern against the next project name.
+     *
+     * @return true if it matched.
+     */
+    @Benchmark
+    public boolean matches() {
+        String project = projects.get(nextProject);
+        nextProject = (nextProject + 1) % projects.size();
+        return compareType.matches(pattern, project);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.benchmarks;
+
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritJsonEventFactory;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.GerritJsonEvent;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.attr.Change;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.attr.PatchSet;
+import net.sf.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of turning the lines of the stream-events stream into events,
+ * one step at a time as {@link com.sonyericsson.hudson.plugins.gerrit.gerritevents.workers.StreamEventsStringWork}
+ * does it. Each invocation handles the next line or object of the {@link StreamEventsCorpus}.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = BenchmarkDefaults.WARMUP_ITERATIONS, time = 1)
+@Measurement(iterations = BenchmarkDefaults.MEASUREMENT_ITERATIONS, time = 1)
+@Fork(1)
+public class EventFactoryBenchmark {
+
+    private List<String> lines;
+    private List<JSONObject> objects;
+    private List<JSONObject> changeObjects;
+    private int nextLine;
+    private int nextObject;
+    private int nextChangeObject;
+
+    /**
+     * Loads the corpus.
+     */
+    @Setup
+    public void setUp() {
+        lines = StreamEventsCorpus.getLines();
+        objects = StreamEventsCorpus.getJsonObjects();
+        changeObjects = StreamEventsCorpus.getChangeJsonObjects();
+    }
+
+    /**
+     * Parses and filters the next raw line of the stream,
+     * lines of uninteresting event types included.
+     *
+     * @return the object or null if it was filtered out.
+     */
+    @Benchmark
+    public JSONObject filterLine() {
+        String line = lines.get(nextLine);
+        nextLine = (nextLine + 1) % lines.size();
+        return GerritJsonEventFactory.getJsonObjectIfInterestingAndUsable(line);
+    }
+
+    /**
+     * Creates the event DTO of the next interesting JSON object.
+     *
+     * @return the event.
+     */
+    @Benchmark
+    public GerritJsonEvent getEvent() {
+        JSONObject obj = objects.get(nextObject);
+        nextObject = (nextObject + 1) % objects.size();
+        return GerritJsonEventFactory.getEvent(obj);
+    }
+
+    /**
+     * Creates the {@link Change} DTO of the next JSON object with a change.
+     *
+     * @return the change.
+     */
+    @Benchmark
+    public Change changeFromJson() {
+        JSONObject obj = changeObjects.get(nextChangeObject);
+        nextChangeObject = (nextChangeObject + 1) % changeObjects.size();
+        return new Change(obj.getJSONObject("change"));
+    }
+
+    /**
+     * Creates the {@link PatchSet} DTO of the next JSON object with a change.
+     *
+     * @return the patch set.
+     */
+    @Benchmark
+    public PatchSet patchSetFromJson() {
+        JSONObject obj = changeObjects.get(nextChangeObject);
+        nextChangeObject = (nextChangeObject + 1) % changeObjects.size();
+        return new PatchSet(obj.getJSONObject("patchSet"));
+    }
+}
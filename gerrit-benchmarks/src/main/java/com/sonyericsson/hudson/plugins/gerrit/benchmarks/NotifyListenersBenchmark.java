@@ -0,0 +1,134 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.benchmarks;
+
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritHandler;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.GerritEvent;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.data.Branch;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.data.CompareType;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.data.FilePath;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.data.GerritProject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of {@link GerritHandler#notifyListeners(GerritEvent)} with a large number of trigger like listeners.
+ * Every tenth listener is configured for one of the projects in the {@link StreamEventsCorpus},
+ * one in five uses an ANT pattern or a regular expression that matches some of them
+ * and the rest are configured for projects that are not in the corpus, which is the common case.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = BenchmarkDefaults.WARMUP_ITERATIONS, time = 1)
+@Measurement(iterations = BenchmarkDefaults.MEASUREMENT_ITERATIONS, time = 1)
+@Fork(1)
+public class NotifyListenersBenchmark {
+
+    private static final int EXACT_MATCH = 0;
+    private static final int ANT_MATCH = 1;
+    private static final int REG_EXP_MATCH = 2;
+    private static final int SPREAD = 10;
+
+    /**
+     * The number of listeners.
+     */
+    @Param({"1000", "10000" })
+    private int listeners;
+
+    private GerritHandler handler;
+    private List<GerritEvent> events;
+    private int nextEvent;
+
+    /**
+     * Creates the handler and the listeners.
+     */
+    @Setup
+    public void setUp() {
+        events = StreamEventsCorpus.getEvents();
+        List<String> projects = StreamEventsCorpus.getProjects();
+        handler = new GerritHandler();
+        for (int i = 0; i < listeners; i++) {
+            GerritProject project;
+            switch (i % SPREAD) {
+                case EXACT_MATCH:
+                    project = createProject(CompareType.PLAIN, projects.get(i % projects.size()),
+                            CompareType.PLAIN, "master");
+                    break;
+                case ANT_MATCH:
+                    project = createProject(CompareType.ANT, "platform/**/apps/*", CompareType.ANT, "**");
+                    break;
+                case REG_EXP_MATCH:
+                    project = createProject(CompareType.REG_EXP, "device/example/(lotus|fuji)",
+                            CompareType.REG_EXP, "jb-.*");
+                    break;
+                default:
+                    project = createProject(CompareType.PLAIN, "team" + i + "/project",
+                            CompareType.PLAIN, "master");
+            }
+            handler.addListener(new TriggerListener(Collections.singletonList(project)));
+        }
+    }
+
+    /**
+     * Notifies all the listeners of the next event of the corpus.
+     */
+    @Benchmark
+    public void notifyListeners() {
+        GerritEvent event = events.get(nextEvent);
+        nextEvent = (nextEvent + 1) % events.size();
+        handler.notifyListeners(event);
+    }
+
+    /**
+     * Creates a project with one branch and no file paths.
+     *
+     * @param projectType   the compare type of the project pattern.
+     * @param pattern       the project pattern.
+     * @param branchType    the compare type of the branch pattern.
+     * @param branchPattern the branch pattern.
+     * @return the project.
+     */
+    private static GerritProject createProject(CompareType projectType, String pattern,
+                                               CompareType branchType, String branchPattern) {
+        return new GerritProject(projectType, pattern,
+                Collections.singletonList(new Branch(branchType, branchPattern)),
+                Collections.<FilePath>emptyList());
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.benchmarks;
+
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritJsonEventFactory;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.GerritEvent;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.ChangeBasedEvent;
+import net.sf.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A generated stream of events in the format of the stream-events output of a busy Gerrit server,
+ * used as the input of the benchmarks. It is checked in as stream-events.txt next to this class,
+ * one event per line, with the event types that the plugin isn't interested in mixed in.
+ * The projects, changes and accounts in it are made up.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public final class StreamEventsCorpus {
+
+    /**
+     * The name of the resource with the generated stream.
+     */
+    public static final String RESOURCE = "stream-events.txt";
+
+    private static List<String> lines;
+
+    /**
+     * Private Constructor for Utility Class.
+     */
+    private StreamEventsCorpus() {
+    }
+
+    /**
+     * The raw lines of the stream.
+     *
+     * @return the lines.
+     */
+    public static synchronized List<String> getLines() {
+        if (lines == null) {
+            try {
+                lines = Collections.unmodifiableList(read());
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read " + RESOURCE, e);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * The lines of the stream that are interesting and usable, parsed into JSON.
+     *
+     * @return the JSON objects.
+     * @see GerritJsonEventFactory#getJsonObjectIfInterestingAndUsable(String)
+     */
+    public static List<JSONObject> getJsonObjects() {
+        List<JSONObject> objects = new ArrayList<JSONObject>();
+        for (String line : getLines()) {
+            JSONObject obj = GerritJsonEventFactory.getJsonObjectIfInterestingAndUsable(line);
+            if (obj != null) {
+                objects.add(obj);
+            }
+        }
+        return objects;
+    }
+
+    /**
+     * The JSON objects of the stream that have a change, i.e. everything except ref-updated.
+     *
+     * @return the JSON objects.
+     */
+    public static List<JSONObject> getChangeJsonObjects() {
+        List<JSONObject> objects = new ArrayList<JSONObject>();
+        for (JSONObject obj : getJsonObjects()) {
+            if (obj.has("change")) {
+                objects.add(obj);
+            }
+        }
+        return objects;
+    }
+
+    /**
+     * The events of the stream.
+     *
+     * @return the events.
+     */
+    public static List<GerritEvent> getEvents() {
+        List<GerritEvent> events = new ArrayList<GerritEvent>();
+        for (JSONObject obj : getJsonObjects()) {
+            events.add(GerritJsonEventFactory.getEvent(obj));
+        }
+        return events;
+    }
+
+    /**
+     * The names of all Gerrit projects that the changes in the stream belong to.
+     *
+     * @return the project names, in the order they first appear.
+     */
+    public static List<String> getProjects() {
+        Set<String> projects = new LinkedHashSet<String>();
+        for (GerritEvent event : getEvents()) {
+            if (event instanceof ChangeBasedEvent) {
+                projects.add(((ChangeBasedEvent)event).getChange().getProject());
+            }
+        }
+        return new ArrayList<String>(projects);
+    }
+
+    /**
+     * Reads the resource.
+     *
+     * @return the non empty lines.
+     * @throws IOException if so.
+     */
+    private static List<String> read() throws IOException {
+        InputStream in = StreamEventsCorpus.class.getResourceAsStream(RESOURCE);
+        if (in == null) {
+            throw new IOException("Missing resource " + RESOURCE);
+        }
+        List<String> list = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            String line = reader.readLine();
+            while (line != null) {
+                if (line.length() > 0) {
+                    list.add(line);
+                }
+                line = reader.readLine();
+            }
+        } finally {
+            reader.close();
+        }
+        return list;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.benchmarks;
+
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritEventListener;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ListenerProfile;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.GerritEvent;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.ChangeAbandoned;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.ChangeBasedEvent;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.ChangeMerged;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.CommentAdded;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.DraftPublished;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.PatchsetCreated;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.RefUpdated;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.data.GerritProject;
+
+import java.util.List;
+
+/**
+ * A listener that matches the events against a list of {@link GerritProject}s
+ * the same way a {@link com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.GerritTrigger} does,
+ * but only counts the matches instead of scheduling builds.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class TriggerListener implements GerritEventListener {
+
+    private final List<GerritProject> projects;
+    private int matches;
+
+    /**
+     * Standard Constructor.
+     *
+     * @param projects the projects to match the events against.
+     */
+    public TriggerListener(List<GerritProject> projects) {
+        this.projects = projects;
+    }
+
+    /**
+     * The number of events that matched so far.
+     *
+     * @return the number of events.
+     */
+    public int getMatches() {
+        return matches;
+    }
+
+    @Override
+    public void gerritEvent(GerritEvent event) {
+        //Not interesting.
+    }
+
+    @Override
+    public void gerritEvent(PatchsetCreated event) {
+        match(event);
+    }
+
+    @Override
+    public void gerritEvent(DraftPublished event) {
+        match(event);
+    }
+
+    @Override
+    public void gerritEvent(ChangeAbandoned event) {
+        //Not interesting.
+    }
+
+    @Override
+    public void gerritEvent(ChangeMerged event) {
+        match(event);
+    }
+
+    @Override
+    public void gerritEvent(CommentAdded event) {
+        match(event);
+    }
+
+    @Override
+    public void gerritEvent(RefUpdated event) {
+        if (isInteresting(event.getRefUpdate().getProject(), event.getRefUpdate().getRefName())) {
+            matched();
+        }
+    }
+
+    /**
+     * Counts the event if it matches any of the projects.
+     *
+     * @param event the event.
+     */
+    private void match(ChangeBasedEvent event) {
+        if (isInteresting(event.getChange().getProject(), event.getChange().getBranch())) {
+            matched();
+        }
+    }
+
+    /**
+     * If any of the projects is interesting.
+     *
+     * @param project the Gerrit project.
+     * @param branch  the branch.
+     * @return true if so.
+     */
+    private boolean isInteresting(String project, String branch) {
+        for (GerritProject p : projects) {
+            if (p.isInteresting(project, branch)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Counts a match.
+     */
+    private void matched() {
+        matches++;
+        ListenerProfile.markMatched();
+    }
+}
@@ -57,6 +57,14 @@ public interface GerritConnectionConfig {
      */
     int getGerritSshPort();
 
+    /**
+     * Other ssh endpoints of the same Gerrit server, that are connected to in order when the primary is down.
+     * Written as "host[:port]" separated by spaces or commas.
+     * @return the fail over endpoints, or null if there are none.
+     * @see com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh.SshEndpoints
+     */
+    String getGerritFailoverHosts();
+
     /**
      * The username to authenticate to gerrit with.
      * @return the username.
@@ -0,0 +1,307 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.gerritevents;
+
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.GerritEvent;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.attr.Account;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.attr.Change;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.attr.PatchSet;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.ChangeBasedEvent;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.PatchsetCreated;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.workers.GerritEventWork;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.workers.Work;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+
+import static com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.GerritEventKeys.NUMBER;
+import static com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.GerritEventKeys.UPLOADER;
+
+/**
+ * Finds the patch sets that were created while the stream-events connection was down.
+ *
+ * Remembers the most recently handled or queued patch sets, and after a reconnect runs a query for the open changes
+ * that have been updated since the last event was received on the old connection, page by page with --start so that
+ * the query's row limit doesn't cut the result short. A {@link PatchsetCreated} event
+ * is created for every patch set in the result that was created in that time and that hasn't been handled,
+ * and the events are put on the work queue at a limited pace so that they don't flood the build queue.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class GerritEventCatchUp {
+
+    /**
+     * The number of handled patch sets to remember.
+     */
+    public static final int MAX_REMEMBERED_PATCH_SETS = 10000;
+    /**
+     * How many seconds before the last received event to look for missed patch sets,
+     * in case the clocks of Hudson and Gerrit differ a bit.
+     */
+    public static final int MARGIN_SECONDS = 60;
+    /**
+     * The default number of missed events per second to put on the work queue.
+     */
+    public static final int DEFAULT_EVENTS_PER_SECOND = 10;
+
+    private static final String CREATED_ON = "createdOn";
+    private static final String PATCH_SETS = "patchSets";
+    private static final String IS_DRAFT = "isDraft";
+    private static final long MILLIS_PER_SECOND = 1000;
+    private static final Logger logger = LoggerFactory.getLogger(GerritEventCatchUp.class);
+
+    private final Map<String, Boolean> handled = new LinkedHashMap<String, Boolean>(
+            MAX_REMEMBERED_PATCH_SETS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_REMEMBERED_PATCH_SETS;
+        }
+    };
+    private int eventsPerSecond = DEFAULT_EVENTS_PER_SECOND;
+
+    /**
+     * The number of missed events per second to put on the work queue.
+     *
+     * @return the rate.
+     */
+    public int getEventsPerSecond() {
+        return eventsPerSecond;
+    }
+
+    /**
+     * The number of missed events per second to put on the work queue.
+     *
+     * @param eventsPerSecond the rate.
+     */
+    public void setEventsPerSecond(int eventsPerSecond) {
+        this.eventsPerSecond = eventsPerSecond;
+    }
+
+    /**
+     * Remembers the patch set of the event as handled.
+     *
+     * @param event the event.
+     */
+    public void handled(GerritEvent event) {
+        if (event instanceof ChangeBasedEvent) {
+            ChangeBasedEvent changeEvent = (ChangeBasedEvent)event;
+            if (changeEvent.getChange() != null && changeEvent.getPatchSet() != null) {
+                remember(changeEvent.getChange().getNumber(), changeEvent.getPatchSet().getNumber());
+            }
+        }
+    }
+
+    /**
+     * Remembers the patch set of a line from the stream-events command as handled, when it is queued.
+     * Events that are still waiting on the work queue when the catch up query is run have not been handled yet,
+     * but they mustn't be found as missed either.
+     *
+     * @param line the line.
+     */
+    public void queued(String line) {
+        String change = GerritJsonEventFactory.findChangeNumber(line);
+        String patchSet = GerritJsonEventFactory.findPatchSetNumber(line);
+        if (change != null && patchSet != null) {
+            remember(change, patchSet);
+        }
+    }
+
+    /**
+     * If an event for the patch set has been handled.
+     *
+     * @param change   the change number.
+     * @param patchSet the patch set number.
+     * @return true if so.
+     */
+    public synchronized boolean isHandled(String change, String patchSet) {
+        return handled.containsKey(key(change, patchSet));
+    }
+
+    /**
+     * Queries Gerrit for missed patch sets and puts an event for each of them on the queue.
+     *
+     * @param queryHandler the query handler to use.
+     * @param since        when the last event was received, in milliseconds.
+     * @param queue        the work queue.
+     * @return the number of missed events.
+     * @throws InterruptedException if interrupted while waiting to put the next event on the queue.
+     */
+    public int catchUp(GerritQueryHandler queryHandler, long since, BlockingQueue<Work> queue)
+            throws InterruptedException {
+        long age = (System.currentTimeMillis() - since) / MILLIS_PER_SECOND + MARGIN_SECONDS;
+        String query = "status:open -age:" + age + "s";
+        long pause = 0;
+        if (eventsPerSecond > 0) {
+            pause = MILLIS_PER_SECOND / eventsPerSecond;
+        }
+        Set<String> seenChanges = new HashSet<String>();
+        int start = 0;
+        int count = 0;
+        while (true) {
+            PageVisitor page = new PageVisitor(seenChanges);
+            try {
+                queryHandler.queryJava(query, start, true, false, false, page);
+            } catch (Exception e) {
+                logger.error("Could not query Gerrit for the events missed while the connection was down.", e);
+                break;
+            }
+            //A page without any new change is the end, also if the server doesn't support --start.
+            if (page.getNewChanges().isEmpty()) {
+                break;
+            }
+            start += page.getRows();
+            List<PatchsetCreated> missed = findMissed(page.getNewChanges(), since);
+            for (PatchsetCreated event : missed) {
+                queue.put(new GerritEventWork(event));
+                if (pause > 0) {
+                    Thread.sleep(pause);
+                }
+            }
+            count += missed.size();
+        }
+        if (count > 0) {
+            logger.info("Found {} patch sets created while the connection to Gerrit was down.", count);
+        }
+        return count;
+    }
+
+    /**
+     * Finds the patch sets in a query result that were created after the given time and that haven't been handled.
+     * The found patch sets are remembered as handled.
+     *
+     * @param result the query result, with all patch sets of the changes.
+     * @param since  the time in milliseconds.
+     * @return an event for every missed patch set.
+     */
+    List<PatchsetCreated> findMissed(List<JSONObject> result, long since) {
+        long sinceSeconds = since / MILLIS_PER_SECOND - MARGIN_SECONDS;
+        List<PatchsetCreated> missed = new ArrayList<PatchsetCreated>();
+        for (JSONObject json : result) {
+            if (!json.has(PATCH_SETS) || !json.has(NUMBER)) {
+                continue;
+            }
+            JSONArray patchSets = json.getJSONArray(PATCH_SETS);
+            for (int i = 0; i < patchSets.size(); i++) {
+                JSONObject patchSet = patchSets.getJSONObject(i);
+                boolean recent;
+                if (patchSet.has(CREATED_ON)) {
+                    recent = patchSet.getLong(CREATED_ON) >= sinceSeconds;
+                } else {
+                    //Without a time only the latest patch set of an updated change can be new.
+                    recent = i == patchSets.size() - 1;
+                }
+                if (!recent || patchSet.optBoolean(IS_DRAFT, false)
+                        || !remember(json.getString(NUMBER), patchSet.getString(NUMBER))) {
+                    continue;
+                }
+                PatchsetCreated event = new PatchsetCreated();
+                event.setChange(new Change(json));
+                event.setPatchset(new PatchSet(patchSet));
+                if (patchSet.has(UPLOADER)) {
+                    event.setAccount(new Account(patchSet.getJSONObject(UPLOADER)));
+                }
+                missed.add(event);
+            }
+        }
+        return missed;
+    }
+
+    /**
+     * Remembers the patch set as handled.
+     *
+     * @param change   the change number.
+     * @param patchSet the patch set number.
+     * @return true if it wasn't already.
+     */
+    private synchronized boolean remember(String change, String patchSet) {
+        return handled.put(key(change, patchSet), Boolean.TRUE) == null;
+    }
+
+    /**
+     * Collects the changes of one page of the catch up query that weren't on an earlier page.
+     */
+    private static class PageVisitor implements GerritQueryVisitor {
+        private final Set<String> seenChanges;
+        private final List<JSONObject> newChanges = new ArrayList<JSONObject>();
+        private int rows = 0;
+
+        /**
+         * Standard Constructor.
+         *
+         * @param seenChanges the numbers of the changes on the earlier pages, the new ones are added to it.
+         */
+        PageVisitor(Set<String> seenChanges) {
+            this.seenChanges = seenChanges;
+        }
+
+        @Override
+        public boolean visit(JSONObject json) {
+            if (json.has(NUMBER)) {
+                rows++;
+                if (seenChanges.add(json.getString(NUMBER))) {
+                    newChanges.add(json);
+                }
+            }
+            return true;
+        }
+
+        /**
+         * The changes that weren't on an earlier page.
+         *
+         * @return the changes.
+         */
+        List<JSONObject> getNewChanges() {
+            return newChanges;
+        }
+
+        /**
+         * The number of changes on the page, to skip for the next page.
+         *
+         * @return the number of rows.
+         */
+        int getRows() {
+            return rows;
+        }
+    }
+
+    /**
+     * The key of a patch set.
+     *
+     * @param change   the change number.
+     * @param patchSet the patch set number.
+     * @return the key.
+     */
+    private static String key(String change, String patchSet) {
+        return change + "," + patchSet;
+    }
+}
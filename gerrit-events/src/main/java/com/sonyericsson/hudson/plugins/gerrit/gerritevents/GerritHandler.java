@@ -25,17 +25,23 @@
 package com.sonyericsson.hudson.plugins.gerrit.gerritevents;
 
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.GerritEvent;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.attr.Change;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.ChangeAbandoned;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.ChangeBasedEvent;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.ChangeMerged;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.DraftPublished;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.PatchsetCreated;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.CommentAdded;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.RefUpdated;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.journal.EventJournal;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.journal.JournaledWork;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.latency.EventLatency;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh.Authentication;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh.SshAuthenticationException;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh.SshCircuitBreaker;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh.SshConnectException;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh.SshConnection;
-import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh.SshConnectionFactory;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh.SshEndpoints;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.workers.Coordinator;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.workers.EventThread;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.workers.GerritEventWork;
@@ -49,13 +55,21 @@ import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 //CS IGNORE LineLength FOR NEXT 7 LINES. REASON: static import.
 import static com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritDefaultValues.DEFAULT_GERRIT_AUTH_KEY_FILE;
@@ -74,7 +88,9 @@ public class GerritHandler extends Thread implements Coordinator {
 
     /**
      * Time to wait between connection attempts.
+     * @deprecated the time is decided by the {@link SshCircuitBreaker} of the server.
      */
+    @Deprecated
     public static final int CONNECT_SLEEP = 2000;
     private static final String CMD_STREAM_EVENTS = "gerrit stream-events";
     private static final String GERRIT_VERSION_PREFIX = "gerrit version ";
@@ -91,21 +107,60 @@ public class GerritHandler extends Thread implements Coordinator {
      * @see #PAUSE_SECOND
      */
     protected static final int BRUTE_FORCE_TRIES = 10;
+    /**
+     * The number of recently received events that are remembered to find duplicates after a fail over.
+     */
+    public static final int MAX_RECENT_EVENTS = 1000;
+    /**
+     * For how long after a fail over, in milliseconds, events are checked for duplicates.
+     */
+    public static final long DUPLICATE_CHECK_PERIOD = 60000;
+    /**
+     * The max number of lines that are written to the journal and put on the work queue together.
+     */
+    public static final int MAX_BATCH_SIZE = 100;
+    /**
+     * The max number of milliseconds that the first line of a batch waits for the batch to be put on the work queue.
+     */
+    public static final long MAX_BATCH_MILLIS = 10;
+    /**
+     * For how many seconds the idle catch up thread is kept.
+     */
+    private static final long CATCH_UP_KEEP_ALIVE_SECONDS = 60;
     private static final Logger logger = LoggerFactory.getLogger(GerritHandler.class);
     private BlockingQueue<Work> workQueue;
     private String gerritHostName;
     private int gerritSshPort;
+    private String gerritFailoverHosts;
     private Authentication authentication;
     private int numberOfWorkerThreads;
     private final Set<GerritEventListener> gerritEventListeners = new CopyOnWriteArraySet<GerritEventListener>();
     private final Set<ConnectionListener> connectionListeners = new CopyOnWriteArraySet<ConnectionListener>();
     private final List<EventThread> workers;
-    private SshConnection sshConnection;
+    private volatile SshConnection sshConnection;
     private boolean shutdownInProgress = false;
     private final Object shutdownInProgressSync = new Object();
     private boolean connecting = false;
-    private boolean connected = false;
+    private volatile boolean connected = false;
     private String gerritVersion = null;
+    private EventJournal eventJournal = null;
+    private final GerritEventCatchUp catchUp = new GerritEventCatchUp();
+    private final ThreadPoolExecutor catchUpExecutor = createCatchUpExecutor();
+    private final StreamWatchdog watchdog = new StreamWatchdog(this);
+    private final ConcurrentMap<GerritEventListener, ListenerProfile> listenerProfiles =
+            new ConcurrentHashMap<GerritEventListener, ListenerProfile>();
+    private final WatchedProjects watchedProjects = new WatchedProjects(gerritEventListeners);
+    private final GerritQueryCache queryCache = new GerritQueryCache();
+    private volatile long listenerTimeBudget = 0;
+    private volatile long lastActivity = 0;
+    private volatile SshEndpoints.Endpoint connectedEndpoint = null;
+    private long duplicateCheckUntil = 0;
+    private final Map<String, Boolean> recentEvents = new LinkedHashMap<String, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_RECENT_EVENTS;
+        }
+    };
 
     /**
      * Creates a GerritHandler with all the default values set.
@@ -152,6 +207,7 @@ public class GerritHandler extends Thread implements Coordinator {
                 config.getGerritSshPort(),
                 config.getGerritAuthentication(),
                 config.getNumberOfReceivingWorkerThreads());
+        this.gerritFailoverHosts = config.getGerritFailoverHosts();
     }
 
     /**
@@ -179,6 +235,14 @@ public class GerritHandler extends Thread implements Coordinator {
         }
     }
 
+    /**
+     * If the stream of events is connected.
+     * @return true if so.
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
     /**
      * The gerrit version we are connected to.
      * @return the gerrit version.
@@ -187,6 +251,198 @@ public class GerritHandler extends Thread implements Coordinator {
         return gerritVersion;
     }
 
+    /**
+     * The journal that the events are written to before they are handled, or null if they are not journaled.
+     *
+     * @return the journal.
+     */
+    public synchronized EventJournal getEventJournal() {
+        return eventJournal;
+    }
+
+    /**
+     * The journal that the events are written to before they are handled.
+     * Should be set before the handler is started.
+     *
+     * @param eventJournal the journal, or null to not journal the events.
+     */
+    public synchronized void setEventJournal(EventJournal eventJournal) {
+        this.eventJournal = eventJournal;
+    }
+
+    /**
+     * Finds the events that were missed while the connection was down.
+     *
+     * @return the catch up.
+     */
+    public GerritEventCatchUp getCatchUp() {
+        return catchUp;
+    }
+
+    /**
+     * Watches the stream of events and reconnects it when it seems stale.
+     *
+     * @return the watchdog.
+     */
+    public StreamWatchdog getWatchdog() {
+        return watchdog;
+    }
+
+    /**
+     * The time that each event listener may take per event before it is skipped, see {@link ListenerProfile}.
+     *
+     * @return the budget in milliseconds, 0 if there is none.
+     */
+    public long getListenerTimeBudget() {
+        return listenerTimeBudget;
+    }
+
+    /**
+     * The time that each event listener may take per event before it is skipped, see {@link ListenerProfile}.
+     *
+     * @param listenerTimeBudget the budget in milliseconds, 0 for none.
+     */
+    public void setListenerTimeBudget(long listenerTimeBudget) {
+        this.listenerTimeBudget = listenerTimeBudget;
+    }
+
+    /**
+     * The results of recent queries to the server, invalidated by the events of the changes in them.
+     *
+     * @return the cache.
+     * @see GerritQueryHandler#setCache(GerritQueryCache)
+     */
+    public GerritQueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * The Gerrit projects that the listeners are watching, and the number of events dropped for the others.
+     *
+     * @return the watched projects.
+     */
+    public WatchedProjects getWatchedProjects() {
+        return watchedProjects;
+    }
+
+    /**
+     * How much time is spent in each event listener, the listener with the most total time first.
+     *
+     * @return the profiles.
+     */
+    public List<ListenerProfile> getListenerProfiles() {
+        List<ListenerProfile> profiles = new ArrayList<ListenerProfile>(listenerProfiles.values());
+        Collections.sort(profiles, new Comparator<ListenerProfile>() {
+            @Override
+            public int compare(ListenerProfile o1, ListenerProfile o2) {
+                long t1 = o1.getTotalTime();
+                long t2 = o2.getTotalTime();
+                if (t1 > t2) {
+                    return -1;
+                } else if (t1 < t2) {
+                    return 1;
+                }
+                return 0;
+            }
+        });
+        return profiles;
+    }
+
+    /**
+     * The profile of the listener, created if it doesn't exist.
+     *
+     * @param listener the listener.
+     * @return the profile.
+     */
+    private ListenerProfile getListenerProfile(GerritEventListener listener) {
+        ListenerProfile profile = listenerProfiles.get(listener);
+        if (profile == null) {
+            profile = new ListenerProfile(listener);
+            ListenerProfile existing = listenerProfiles.putIfAbsent(listener, profile);
+            if (existing != null) {
+                profile = existing;
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * The number of milliseconds since the last line was received on the stream of events,
+     * or since the stream was connected if nothing has been received on the current connection.
+     *
+     * @return the age, or -1 if the stream has never been connected.
+     */
+    public long getLastEventAge() {
+        return getLastEventAge(System.currentTimeMillis());
+    }
+
+    /**
+     * The number of milliseconds since the last line was received on the stream of events.
+     *
+     * @param now the current time.
+     * @return the age, or -1 if the stream has never been connected.
+     * @see #getLastEventAge()
+     */
+    long getLastEventAge(long now) {
+        long last = lastActivity;
+        if (last <= 0) {
+            return -1;
+        }
+        return Math.max(0, now - last);
+    }
+
+    /**
+     * The connection that the stream of events is read from.
+     *
+     * @return the connection, or null if not connected.
+     */
+    SshConnection getStreamConnection() {
+        return sshConnection;
+    }
+
+    /**
+     * Disconnects the stream of events so that it is connected again,
+     * for example because it is stale. Does nothing if the stream isn't connected.
+     *
+     * @param reason why, for the log.
+     */
+    public void reconnect(String reason) {
+        SshConnection connection = sshConnection;
+        if (connection != null && !isShutdownInProgress()) {
+            logger.warn("Reconnecting to {}: {}", connectedEndpoint, reason);
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Puts the events that were received but not handled before the last restart on the work queue.
+     * Should be called when all listeners that are interested in them have been added.
+     *
+     * @return the number of replayed events.
+     */
+    public int replayEventJournal() {
+        EventJournal journal = getEventJournal();
+        if (journal == null) {
+            return 0;
+        }
+        try {
+            List<EventJournal.Entry> entries = journal.replay();
+            for (EventJournal.Entry entry : entries) {
+                workQueue.put(new JournaledWork(new StreamEventsStringWork(entry.getLine(), getEventLatency()),
+                        journal, entry.getOffset()));
+            }
+            if (!entries.isEmpty()) {
+                logger.info("Replayed {} events from the event journal.", entries.size());
+            }
+            return entries.size();
+        } catch (IOException e) {
+            logger.error("Could not replay the event journal.", e);
+        } catch (InterruptedException e) {
+            logger.warn("Interrupted while replaying the event journal.", e);
+        }
+        return 0;
+    }
+
     /**
      * Main loop for connecting and reading Gerrit JSON Events and dispatching them to Workers.
      */
@@ -198,6 +454,7 @@ public class GerritHandler extends Thread implements Coordinator {
             //TODO what if nr of workers are increased/decreased in runtime.
             worker.start();
         }
+        watchdog.start();
         do {
             sshConnection = connect();
             if (sshConnection == null) {
@@ -205,10 +462,13 @@ public class GerritHandler extends Thread implements Coordinator {
                 for (EventThread worker : workers) {
                     worker.shutdown();
                 }
+                watchdog.shutdown();
                 return;
             }
 
             BufferedReader br = null;
+            List<Work> batch = new ArrayList<Work>();
+            long batchStartedOn = 0;
             try {
                 logger.trace("Executing stream-events command.");
                 Reader reader = sshConnection.executeCommandReader(CMD_STREAM_EVENTS);
@@ -216,25 +476,43 @@ public class GerritHandler extends Thread implements Coordinator {
                 String line = "";
                 logger.info("Ready to receive data from Gerrit");
                 notifyConnectionEstablished();
+                startCatchUp(lastActivity);
+                lastActivity = System.currentTimeMillis();
                 do {
                     logger.debug("Data-line from Gerrit: {}", line);
                     if (line != null && line.length() > 0) {
-                        try {
-                            StreamEventsStringWork work = new StreamEventsStringWork(line);
-                            logger.trace("putting work on queue: {}", work);
-                            workQueue.put(work);
-                        } catch (InterruptedException ex) {
-                            logger.warn("Interrupted while putting work on queue!", ex);
-                            //TODO check if shutdown
-                            //TODO try again since it is important
+                        long readOn = System.currentTimeMillis();
+                        lastActivity = readOn;
+                        //Also for the events that are dropped below, the change is in other queries too.
+                        String changeNumber = GerritJsonEventFactory.findChangeNumber(line);
+                        if (changeNumber != null) {
+                            queryCache.changed(changeNumber);
+                        }
+                        if (isDuplicate(line)) {
+                            logger.debug("Skipping an event already received before the fail over: {}", line);
+                        } else if (!watchedProjects.accept(line)) {
+                            logger.trace("Dropping an event of a project that no one is watching: {}", line);
+                        } else {
+                            catchUp.queued(line);
+                            if (batch.isEmpty()) {
+                                batchStartedOn = readOn;
+                            }
+                            batch.add(createWork(line, readOn));
                         }
                     }
+                    //Everything that has arrived together is written to the journal together,
+                    //but a steady stream mustn't keep the events from the workers.
+                    if (!br.ready() || batch.size() >= MAX_BATCH_SIZE
+                            || (!batch.isEmpty() && System.currentTimeMillis() - batchStartedOn >= MAX_BATCH_MILLIS)) {
+                        queueWork(batch);
+                    }
                     logger.trace("Reading next line.");
                     line = br.readLine();
                 } while (line != null);
             } catch (IOException ex) {
                 logger.error("Stream events command error. ", ex);
             } finally {
+                queueWork(batch);
                 logger.trace("Connection closed, ended read loop.");
                 try {
                     sshConnection.disconnect();
@@ -256,79 +534,276 @@ public class GerritHandler extends Thread implements Coordinator {
         for (EventThread worker : workers) {
             worker.shutdown();
         }
+        watchdog.shutdown();
+        catchUpExecutor.shutdownNow();
         logger.debug("End of GerritHandler Thread.");
     }
 
+    /**
+     * Looks for the events that were missed since the last connection received anything, in the background.
+     * At most one catch up runs at a time, the catch up after a later reconnect waits for the previous one
+     * so that the patch sets found by both are only put on the queue once.
+     *
+     * @param since when the last connection received anything, 0 if this is the first connection.
+     */
+    private void startCatchUp(final long since) {
+        if (since <= 0) {
+            return;
+        }
+        final GerritQueryHandler queryHandler = new GerritQueryHandler(getEndpoints(), authentication);
+        catchUpExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    catchUp.catchUp(queryHandler, since, workQueue);
+                } catch (InterruptedException e) {
+                    logger.warn("Interrupted while catching up on missed events.", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Creates the executor of the catch ups, with a single thread that is only kept while it is needed.
+     *
+     * @return the executor.
+     */
+    private static ThreadPoolExecutor createCatchUpExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1,
+                CATCH_UP_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "Gerrit Missed Events Catch Up");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Remembers the line and checks if it is a duplicate of a recently received one.
+     * Only lines received shortly after a fail over to another endpoint are reported as duplicates,
+     * since the new endpoint might send some of the events that the old one already did.
+     *
+     * @param line the line.
+     * @return true if the line should be skipped.
+     */
+    private boolean isDuplicate(String line) {
+        boolean seen = recentEvents.put(line, Boolean.TRUE) != null;
+        return seen && lastActivity < duplicateCheckUntil;
+    }
+
+    /**
+     * The endpoints to connect to, the primary host and port first and then the fail over hosts.
+     *
+     * @return the endpoints.
+     */
+    public SshEndpoints getEndpoints() {
+        return new SshEndpoints(gerritHostName, gerritSshPort, gerritFailoverHosts);
+    }
+
+    /**
+     * The endpoint that the stream is currently read from, or was last read from.
+     *
+     * @return the endpoint, or null if never connected.
+     */
+    public SshEndpoints.Endpoint getConnectedEndpoint() {
+        return connectedEndpoint;
+    }
+
+    /**
+     * The latency histograms of the server.
+     *
+     * @return the latency.
+     */
+    public EventLatency getEventLatency() {
+        return EventLatency.getInstance(gerritHostName, gerritSshPort);
+    }
+
+    /**
+     * Creates the work for a line from the stream-events command, and adds the line to the journal if there is one.
+     *
+     * @param line   the line.
+     * @param readOn when the line was read from the stream, in milliseconds.
+     * @return the work.
+     */
+    private Work createWork(String line, long readOn) {
+        StreamEventsStringWork work = new StreamEventsStringWork(line, readOn, getEventLatency());
+        EventJournal journal = getEventJournal();
+        if (journal != null) {
+            try {
+                return new JournaledWork(work, journal, journal.append(line));
+            } catch (IOException e) {
+                logger.error("Could not add the event to the event journal.", e);
+            }
+        }
+        return work;
+    }
+
+    /**
+     * Commits the journal and puts the work on the queue.
+     *
+     * @param batch the work, which is emptied.
+     */
+    private void queueWork(List<Work> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        EventJournal journal = getEventJournal();
+        if (journal != null) {
+            try {
+                journal.commit();
+            } catch (IOException e) {
+                logger.error("Could not write the events to the event journal.", e);
+            }
+        }
+        boolean interrupted = false;
+        for (Work work : batch) {
+            logger.trace("putting work on queue: {}", work);
+            //The work must not be lost, it would keep its line in the journal in flight forever.
+            while (true) {
+                try {
+                    workQueue.put(work);
+                    break;
+                } catch (InterruptedException ex) {
+                    logger.warn("Interrupted while putting work on queue, trying again.", ex);
+                    interrupted = true;
+                }
+            }
+        }
+        batch.clear();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * Connects to the Gerrit server and authenticates as the specified user.
+     * The endpoints are tried in order, skipping those whose {@link SshCircuitBreaker} is open,
+     * so a fail over to the next endpoint happens right away. When all of them have failed
+     * the next attempt is made when the first breaker allows it.
      *
      * @return not null if everything is well, null if connect and reconnect failed.
      */
     private SshConnection connect() {
         connecting = true;
+        SshEndpoints endpoints = getEndpoints();
+        //The first attempt is made right away, it is a restart or the stream just went down.
+        boolean force = true;
         while (true) { //TODO do not go on forever.
+            for (SshEndpoints.Endpoint endpoint : endpoints.getEndpoints()) {
+                if (isShutdownInProgress()) {
+                    connecting = false;
+                    return null;
+                }
+                if (!force && endpoint.getBreaker().getState() == SshCircuitBreaker.State.OPEN) {
+                    continue;
+                }
+                SshConnection ssh = connect(endpoint, force);
+                force = false;
+                if (ssh != null) {
+                    return ssh;
+                }
+            }
+
             if (isShutdownInProgress()) {
                 connecting = false;
                 return null;
             }
-            SshConnection ssh = null;
+
+            //If we end up here, sleep for a while and then go back up in the loop.
+            long delay = endpoints.getDelay();
+            logger.trace("Sleeping for {} ms.", delay);
             try {
-                logger.debug("Connecting...");
-                ssh = SshConnectionFactory.getConnection(gerritHostName, gerritSshPort, authentication);
-                notifyConnectionEstablished();
-                connecting = false;
-                gerritVersion  = formatVersion(ssh.executeCommand("gerrit version"));
-                logger.debug("connection seems ok, returning it.");
-                return ssh;
-            } catch (SshConnectException sshConEx) {
-                logger.error("Could not connect to Gerrit server! "
-                        + "Host: {} Port: {}", gerritHostName, gerritSshPort);
-                logger.error(" User: {} KeyFile: {}", authentication.getUsername(), authentication.getPrivateKeyFile());
-                logger.error("ConnectionException: ", sshConEx);
-                notifyConnectionDown();
-            } catch (SshAuthenticationException sshAuthEx) {
+                Thread.sleep(delay);
+            } catch (InterruptedException ex) {
+                logger.debug("Got interrupted while sleeping.", ex);
+            }
+        }
+    }
+
+    /**
+     * Makes one attempt to connect to an endpoint.
+     * Only the first failure in a row of the endpoint is logged in full.
+     *
+     * @param endpoint the endpoint.
+     * @param force    true to connect even if the breaker of the endpoint is open.
+     * @return the connection, or null if it failed.
+     */
+    private SshConnection connect(SshEndpoints.Endpoint endpoint, boolean force) {
+        SshCircuitBreaker breaker = endpoint.getBreaker();
+        SshConnection ssh = null;
+        try {
+            logger.debug("Connecting to {}...", endpoint);
+            ssh = endpoint.getConnection(authentication, force);
+            notifyConnectionEstablished();
+            connecting = false;
+            gerritVersion  = formatVersion(ssh.executeCommand("gerrit version"));
+            SshEndpoints.Endpoint previous = connectedEndpoint;
+            if (previous != null && !previous.equals(endpoint)) {
+                logger.info("Failed over from {} to {}", previous, endpoint);
+                duplicateCheckUntil = System.currentTimeMillis() + DUPLICATE_CHECK_PERIOD;
+            }
+            connectedEndpoint = endpoint;
+            logger.debug("connection seems ok, returning it.");
+            return ssh;
+        } catch (SshConnectException sshConEx) {
+            logConnectFailure(endpoint, "ConnectionException: ", sshConEx);
+            notifyConnectionDown();
+        } catch (SshAuthenticationException sshAuthEx) {
+            if (breaker.getFailures() <= 1) {
                 logger.error("Could not authenticate to Gerrit server!"
                         + "\n\tUsername: {}\n\tKeyFile: {}\n\tPassword: {}",
                         new Object[]{authentication.getUsername(),
                                 authentication.getPrivateKeyFile(),
                                 authentication.getPrivateKeyFilePassword(), });
-                logger.error("AuthenticationException: ", sshAuthEx);
-                notifyConnectionDown();
-            } catch (IOException ex) {
-                logger.error("Could not connect to Gerrit server! "
-                        + "Host: {} Port: {}", gerritHostName, gerritSshPort);
-                logger.error(" User: {} KeyFile: {}", authentication.getUsername(), authentication.getPrivateKeyFile());
-                logger.error("IOException: ", ex);
-                notifyConnectionDown();
-            }
-
-            if (ssh != null) {
-                logger.trace("Disconnecting bad connection.");
-                try {
-                    //The ssh lib used is starting at least one thread for each connection.
-                    //The thread isn't shutdown properly when the connection goes down,
-                    //so we need to close it "manually"
-                    ssh.disconnect();
-                } catch (Exception ex) {
-                    logger.warn("Error when disconnecting bad connection.", ex);
-                } finally {
-                    ssh = null;
-                }
-            }
-
-            if (isShutdownInProgress()) {
-                connecting = false;
-                return null;
             }
+            logConnectFailure(endpoint, "AuthenticationException: ", sshAuthEx);
+            notifyConnectionDown();
+        } catch (IOException ex) {
+            logConnectFailure(endpoint, "IOException: ", ex);
+            notifyConnectionDown();
+        }
 
-            //If we end up here, sleep for a while and then go back up in the loop.
-            logger.trace("Sleeping for a bit.");
+        if (ssh != null) {
+            //The connection worked but not the version command, the factory doesn't know about that.
+            breaker.failure();
+            logger.trace("Disconnecting bad connection.");
             try {
-                Thread.sleep(CONNECT_SLEEP);
-            } catch (InterruptedException ex) {
-                logger.warn("Got interrupted while sleeping.", ex);
+                //The ssh lib used is starting at least one thread for each connection.
+                //The thread isn't shutdown properly when the connection goes down,
+                //so we need to close it "manually"
+                ssh.disconnect();
+            } catch (Exception ex) {
+                logger.warn("Error when disconnecting bad connection.", ex);
             }
         }
+        return null;
+    }
+
+    /**
+     * Logs a failed connection attempt. The first failure in a row is logged as an error with all details,
+     * the following ones with a single line.
+     *
+     * @param endpoint the endpoint that couldn't be connected to.
+     * @param what     what went wrong.
+     * @param ex       the exception.
+     */
+    private void logConnectFailure(SshEndpoints.Endpoint endpoint, String what, IOException ex) {
+        SshCircuitBreaker breaker = endpoint.getBreaker();
+        if (breaker.getFailures() <= 1) {
+            logger.error("Could not connect to Gerrit server! "
+                    + "Host: {} Port: {}", endpoint.getHost(), endpoint.getPort());
+            logger.error(" User: {} KeyFile: {}", authentication.getUsername(), authentication.getPrivateKeyFile());
+            logger.error(what, ex);
+        } else {
+            logger.warn("Still could not connect to Gerrit server {} after {} attempts, trying again in {} ms: "
+                    + ex.getMessage(), new Object[]{endpoint, breaker.getFailures(), breaker.getDelay(), });
+        }
     }
 
     /**
@@ -358,6 +833,7 @@ public class GerritHandler extends Thread implements Coordinator {
                 logger.warn("The listener was doubly-added: {}", listener);
             }
         }
+        watchedProjects.invalidate();
     }
 
     /**
@@ -379,6 +855,7 @@ public class GerritHandler extends Thread implements Coordinator {
         synchronized (this) {
             gerritEventListeners.addAll(listeners);
         }
+        watchedProjects.invalidate();
     }
 
     /**
@@ -390,6 +867,8 @@ public class GerritHandler extends Thread implements Coordinator {
         synchronized (this) {
             gerritEventListeners.remove(listener);
         }
+        watchedProjects.invalidate();
+        listenerProfiles.remove(listener);
     }
 
     /**
@@ -401,6 +880,7 @@ public class GerritHandler extends Thread implements Coordinator {
         synchronized (this) {
             HashSet<GerritEventListener> listeners = new HashSet<GerritEventListener>(gerritEventListeners);
             gerritEventListeners.clear();
+            watchedProjects.invalidate();
             return listeners;
         }
     }
@@ -526,6 +1006,26 @@ public class GerritHandler extends Thread implements Coordinator {
         this.gerritSshPort = gerritSshPort;
     }
 
+    /**
+     * Gets the fail over endpoints for gerrit ssh commands.
+     *
+     * @return the endpoints as "host[:port]" separated by spaces or commas, or null if there are none.
+     * @see SshEndpoints
+     */
+    public String getGerritFailoverHosts() {
+        return gerritFailoverHosts;
+    }
+
+    /**
+     * Sets the fail over endpoints for gerrit ssh commands.
+     *
+     * @param gerritFailoverHosts the endpoints as "host[:port]" separated by spaces or commas.
+     * @see SshEndpoints
+     */
+    public void setGerritFailoverHosts(String gerritFailoverHosts) {
+        this.gerritFailoverHosts = gerritFailoverHosts;
+    }
+
     /**
      * Gets the number of event worker threads.
      *
@@ -559,6 +1059,14 @@ public class GerritHandler extends Thread implements Coordinator {
      */
     @Override
     public void notifyListeners(GerritEvent event) {
+        catchUp.handled(event);
+        //Before any listener queries Gerrit about the change, replayed and caught up events don't pass the reader.
+        if (event instanceof ChangeBasedEvent) {
+            Change change = ((ChangeBasedEvent)event).getChange();
+            if (change != null && change.getNumber() != null) {
+                queryCache.changed(change.getNumber());
+            }
+        }
         //Notify lifecycle listeners.
         if (event instanceof PatchsetCreated) {
             try {
@@ -569,14 +1077,26 @@ public class GerritHandler extends Thread implements Coordinator {
         }
 
         //The real deed.
+        long dispatchStart = System.currentTimeMillis();
         for (GerritEventListener listener : gerritEventListeners) {
+            ListenerProfile profile = getListenerProfile(listener);
+            if (profile.skip(System.currentTimeMillis())) {
+                logger.debug("Skipping listener {} since it exceeds its time budget.", listener);
+                continue;
+            }
+            long start = System.nanoTime();
+            profile.begin();
             try {
                 notifyListener(listener, event);
             } catch (Exception ex) {
                 logger.error("When notifying listener: {} about event: {}", listener, event);
                 logger.error("Notify-error: ", ex);
+            } finally {
+                profile.end(System.nanoTime() - start, listenerTimeBudget, System.currentTimeMillis());
             }
         }
+        getEventLatency().record(EventLatency.Stage.DISPATCH, event,
+                System.currentTimeMillis() - dispatchStart);
 
         ////Notify lifecycle listeners.
         if (event instanceof PatchsetCreated) {
@@ -693,6 +1213,8 @@ public class GerritHandler extends Thread implements Coordinator {
             }
         } else if (connecting) {
             setShutdownInProgress(true);
+            //Wake up from the delay between connection attempts.
+            this.interrupt();
             if (join) {
                 try {
                     this.join();
@@ -710,6 +1232,8 @@ public class GerritHandler extends Thread implements Coordinator {
      */
     protected void notifyConnectionDown() {
         connected = false;
+        //Changes aren't seen while disconnected, so no cached result can be trusted any more.
+        queryCache.clear();
         for (ConnectionListener listener : connectionListeners) {
             try {
                 listener.connectionDown();
@@ -38,6 +38,10 @@ import org.slf4j.LoggerFactory;
 public final class GerritJsonEventFactory {
 
     private static final Logger logger = LoggerFactory.getLogger(GerritJsonEventFactory.class);
+    private static final String PROJECT_PREFIX = "\"project\":\"";
+    private static final String CHANGE_PREFIX = "\"change\":{";
+    private static final String PATCH_SET_PREFIX = "\"patchSet\":{";
+    private static final String NUMBER_PREFIX = "\"number\":";
 
     /**
      * Empty private Constructor to hinder instantiation.
@@ -156,6 +160,88 @@ public final class GerritJsonEventFactory {
         return null;
     }
 
+    /**
+     * Finds the name of the Gerrit project in a line from the stream-events command without parsing it,
+     * by looking for the first "project" property. A quote inside a JSON string is always escaped,
+     * so the property name can't be mistaken for a part of e.g. a commit message.
+     * It is a cheap pre-filter that can be used before the line is parsed, when in doubt null is returned.
+     *
+     * @param jsonString the JSON formatted string.
+     * @return the name of the project, or null if it couldn't be found or contains escaped characters.
+     */
+    public static String findProject(String jsonString) {
+        if (jsonString == null) {
+            return null;
+        }
+        int start = jsonString.indexOf(PROJECT_PREFIX);
+        if (start < 0) {
+            return null;
+        }
+        start += PROJECT_PREFIX.length();
+        int end = jsonString.indexOf('"', start);
+        if (end <= start || jsonString.lastIndexOf('\\', end) >= start) {
+            return null;
+        }
+        return jsonString.substring(start, end);
+    }
+
+    /**
+     * Finds the number of the change in a line from the stream-events command without parsing it,
+     * by looking for the first "number" property after the start of the "change" object.
+     * Like {@link #findProject(String)} it is a cheap lookup that can be done before the line is parsed,
+     * when in doubt null is returned.
+     *
+     * @param jsonString the JSON formatted string.
+     * @return the number of the change, or null if it couldn't be found.
+     */
+    public static String findChangeNumber(String jsonString) {
+        return findNumber(jsonString, CHANGE_PREFIX);
+    }
+
+    /**
+     * Finds the number of the patch set in a line from the stream-events command without parsing it,
+     * in the same way as {@link #findChangeNumber(String)} but in the "patchSet" object.
+     *
+     * @param jsonString the JSON formatted string.
+     * @return the number of the patch set, or null if it couldn't be found.
+     */
+    public static String findPatchSetNumber(String jsonString) {
+        return findNumber(jsonString, PATCH_SET_PREFIX);
+    }
+
+    /**
+     * Finds the first "number" property after the start of an object.
+     *
+     * @param jsonString   the JSON formatted string.
+     * @param objectPrefix the name and opening brace of the object.
+     * @return the number, or null if it couldn't be found.
+     */
+    private static String findNumber(String jsonString, String objectPrefix) {
+        if (jsonString == null) {
+            return null;
+        }
+        int object = jsonString.indexOf(objectPrefix);
+        if (object < 0) {
+            return null;
+        }
+        int start = jsonString.indexOf(NUMBER_PREFIX, object + objectPrefix.length());
+        if (start < 0) {
+            return null;
+        }
+        start += NUMBER_PREFIX.length();
+        if (start < jsonString.length() && jsonString.charAt(start) == '"') {
+            start++;
+        }
+        int end = start;
+        while (end < jsonString.length() && Character.isDigit(jsonString.charAt(end))) {
+            end++;
+        }
+        if (end == start) {
+            return null;
+        }
+        return jsonString.substring(start, end);
+    }
+
     /**
      * Returns the value of a JSON property as a String if it exists otherwise returns the defaultValue.
      * @param json the JSONObject to check.
@@ -0,0 +1,326 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.gerritevents;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the results of recent Gerrit queries, so that a repeated query doesn't need an SSH round trip.
+ *
+ * A result is kept until one of the changes in it is changed, i.e. until {@link #changed(String)} is called
+ * with its number for an event from the stream, but at most {@link #MAX_AGE} milliseconds since a query
+ * can start to match new changes. The least recently used results are evicted when there are more than
+ * {@link #MAX_ENTRIES}, and results with more than {@link #MAX_ROWS} rows are not kept at all.
+ * A change can also change while a query is running, so every invalidation increases a generation counter
+ * that is taken before the query is sent, see {@link #getGeneration()}. A result that contains a change that has
+ * been invalidated since then is not kept, since it might already be outdated.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class GerritQueryCache {
+
+    /**
+     * The maximum number of query results kept in the cache.
+     */
+    public static final int MAX_ENTRIES = 256;
+    /**
+     * The maximum number of rows in a result that is kept.
+     */
+    public static final int MAX_ROWS = 500;
+    /**
+     * For how many milliseconds a result is kept at most.
+     */
+    public static final long MAX_AGE = 5 * 60 * 1000;
+    /**
+     * For how many of the most recently changed changes the generation of the change is remembered.
+     */
+    public static final int MAX_CHANGED = 1024;
+    /**
+     * Every number property in a row, the change number is one of them.
+     */
+    private static final Pattern NUMBER = Pattern.compile("\"number\":\"?(\\d+)");
+
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(MAX_ENTRIES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (size() > MAX_ENTRIES) {
+                unindex(eldest.getKey(), eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    };
+    private final Map<String, Set<String>> keysByChange = new HashMap<String, Set<String>>();
+    private final Map<String, Long> changedIn = new LinkedHashMap<String, Long>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            if (size() > MAX_CHANGED) {
+                forgottenGeneration = eldest.getValue();
+                return true;
+            }
+            return false;
+        }
+    };
+    private long generation = 0;
+    private long forgottenGeneration = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long invalidations = 0;
+
+    /**
+     * Gets the result of the query from the cache.
+     *
+     * @param key the key of the query, see {@link #key(String, String)}.
+     * @return the lines of the result, or null if there are none in the cache.
+     */
+    public synchronized List<String> get(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && System.currentTimeMillis() - entry.created > MAX_AGE) {
+            remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.lines;
+    }
+
+    /**
+     * The current generation of the cache, to take before a query is sent to Gerrit and give to
+     * {@link #put(String, List, long)} with its result.
+     *
+     * @return the generation.
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Puts the result of a query into the cache, unless it is too big.
+     *
+     * @param key   the key of the query, see {@link #key(String, String)}.
+     * @param lines the lines of the result.
+     */
+    public synchronized void put(String key, List<String> lines) {
+        put(key, lines, generation);
+    }
+
+    /**
+     * Puts the result of a query into the cache, unless it is too big or any of its changes has been changed
+     * since the query was sent. If that can't be told any more the result isn't kept either.
+     *
+     * @param key        the key of the query, see {@link #key(String, String)}.
+     * @param lines      the lines of the result.
+     * @param sentIn     the generation of the cache when the query was sent, see {@link #getGeneration()}.
+     */
+    public synchronized void put(String key, List<String> lines, long sentIn) {
+        if (lines.size() > MAX_ROWS || sentIn < forgottenGeneration) {
+            return;
+        }
+        Set<String> changes = new HashSet<String>();
+        for (String line : lines) {
+            Matcher matcher = NUMBER.matcher(line);
+            while (matcher.find()) {
+                String change = matcher.group(1);
+                Long changed = changedIn.get(change);
+                if (changed != null && changed > sentIn) {
+                    return;
+                }
+                changes.add(change);
+            }
+        }
+        remove(key);
+        Entry entry = new Entry(Collections.unmodifiableList(lines), changes);
+        entries.put(key, entry);
+        for (String change : changes) {
+            Set<String> keys = keysByChange.get(change);
+            if (keys == null) {
+                keys = new HashSet<String>();
+                keysByChange.put(change, keys);
+            }
+            keys.add(key);
+        }
+    }
+
+    /**
+     * Evicts the results of all queries that contained the change.
+     *
+     * @param changeNumber the number of the change that has changed.
+     */
+    public synchronized void changed(String changeNumber) {
+        generation++;
+        changedIn.remove(changeNumber);
+        changedIn.put(changeNumber, generation);
+        Set<String> keys = keysByChange.remove(changeNumber);
+        if (keys != null) {
+            for (String key : keys) {
+                if (remove(key)) {
+                    invalidations++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets all results, and doesn't keep the results of queries that are running.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        keysByChange.clear();
+        changedIn.clear();
+        generation++;
+        forgottenGeneration = generation;
+    }
+
+    /**
+     * The number of queries that were answered from the cache.
+     *
+     * @return the number of hits.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * The number of queries that had to be sent to Gerrit.
+     *
+     * @return the number of misses.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * The number of results that have been evicted because one of their changes changed.
+     *
+     * @return the number of invalidations.
+     */
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    /**
+     * The number of results in the cache.
+     *
+     * @return the size.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * The cache key of a query. The same query with only differences in white space outside of quotes
+     * gets the same key.
+     *
+     * @param options     the options of the query command, e.g. --current-patch-set.
+     * @param queryString the query.
+     * @return the key.
+     */
+    public static String key(String options, String queryString) {
+        StringBuilder key = new StringBuilder(options).append(' ');
+        int prefix = key.length();
+        boolean quoted = false;
+        boolean space = false;
+        for (int i = 0; i < queryString.length(); i++) {
+            char c = queryString.charAt(i);
+            if (!quoted && Character.isWhitespace(c)) {
+                space = true;
+                continue;
+            }
+            if (space && key.length() > prefix) {
+                key.append(' ');
+            }
+            space = false;
+            if (c == '"' && (i == 0 || queryString.charAt(i - 1) != '\\')) {
+                quoted = !quoted;
+            }
+            key.append(c);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Removes the result of a query.
+     *
+     * @param key the key of the query.
+     * @return true if there was a result to remove.
+     */
+    private boolean remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            unindex(key, entry);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes the key from the index of the changes in the result.
+     *
+     * @param key   the key of the query.
+     * @param entry the result.
+     */
+    private void unindex(String key, Entry entry) {
+        for (String change : entry.changes) {
+            Set<String> keys = keysByChange.get(change);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    keysByChange.remove(change);
+                }
+            }
+        }
+    }
+
+    /**
+     * The result of a query.
+     */
+    private static class Entry {
+        private final List<String> lines;
+        private final Set<String> changes;
+        private final long created;
+
+        /**
+         * Standard Constructor.
+         *
+         * @param lines   the lines of the result.
+         * @param changes the numbers of the changes in the result.
+         */
+        Entry(List<String> lines, Set<String> changes) {
+            this.lines = lines;
+            this.changes = changes;
+            this.created = System.currentTimeMillis();
+        }
+    }
+}
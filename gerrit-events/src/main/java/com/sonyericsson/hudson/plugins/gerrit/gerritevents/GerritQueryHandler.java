@@ -25,10 +25,11 @@ package com.sonyericsson.hudson.plugins.gerrit.gerritevents;
 
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh.Authentication;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh.SshConnection;
-import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh.SshConnectionFactory;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh.SshEndpoints;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh.SshException;
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import net.sf.json.JSONObject;
@@ -47,9 +48,9 @@ public class GerritQueryHandler {
      * The base of the query ssh command to send to Gerrit.
      */
     public static final String QUERY_COMMAND = "gerrit query";
-    private final String gerritHostName;
-    private final int gerritSshPort;
+    private final SshEndpoints endpoints;
     private final Authentication authentication;
+    private GerritQueryCache cache = null;
 
     /**
      * Creates a GerritQueryHandler with the specified values.
@@ -60,10 +61,18 @@ public class GerritQueryHandler {
     public GerritQueryHandler(String gerritHostName,
                               int gerritSshPort,
                               Authentication authentication) {
-        this.gerritHostName = gerritHostName;
-        this.gerritSshPort = gerritSshPort;
-        this.authentication = authentication;
+        this(new SshEndpoints(gerritHostName, gerritSshPort, null), authentication);
+    }
 
+    /**
+     * Creates a GerritQueryHandler that queries the first healthy of the endpoints.
+     * @param endpoints the endpoints of the gerrit server.
+     * @param authentication the authentication credentials.
+     */
+    public GerritQueryHandler(SshEndpoints endpoints,
+                              Authentication authentication) {
+        this.endpoints = endpoints;
+        this.authentication = authentication;
     }
 
     /**
@@ -71,11 +80,28 @@ public class GerritQueryHandler {
      * @param config the config.
      */
     public GerritQueryHandler(GerritConnectionConfig config) {
-        this(config.getGerritHostName(),
+        this(new SshEndpoints(config.getGerritHostName(),
                 config.getGerritSshPort(),
+                config.getGerritFailoverHosts()),
                 config.getGerritAuthentication());
     }
 
+    /**
+     * Makes the queries answered from the cache when possible, and puts their results into it.
+     * @param cache the cache, or null to always ask Gerrit.
+     */
+    public void setCache(GerritQueryCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * The cache that queries are answered from.
+     * @return the cache, or null if queries aren't cached.
+     */
+    public GerritQueryCache getCache() {
+        return cache;
+    }
+
     //CS IGNORE RedundantThrows FOR NEXT 18 LINES. REASON: Informative.
     //CS IGNORE JavadocMethod FOR NEXT 17 LINES. REASON: It is there.
 
@@ -112,18 +138,52 @@ public class GerritQueryHandler {
 
         final List<JSONObject> list = new LinkedList<JSONObject>();
 
-        runQuery(queryString, getPatchSets, getCurrentPatchSet, getFiles, new LineVisitor() {
+        queryJava(queryString, 0, getPatchSets, getCurrentPatchSet, getFiles, new GerritQueryVisitor() {
+
+            @Override
+            public boolean visit(JSONObject json) {
+                list.add(json);
+                return true;
+            }
+        });
+        return list;
+    }
+
+    //CS IGNORE RedundantThrows FOR NEXT 23 LINES. REASON: Informative.
+    //CS IGNORE JavadocMethod FOR NEXT 22 LINES. REASON: It is there.
+
+    /**
+     * Runs the query and lets the visitor handle each row of the result as a Java JSONObject,
+     * as soon as it has been read from the server.
+     * @param queryString the query.
+     * @param start the number of changes to skip, meaning that --start should be appended to the command call
+     *              if it is more than 0. Requires Gerrit 2.9 or later.
+     * @param getPatchSets getPatchSets if all patch-sets of the projects found should be included in the result.
+     *                      Meaning if --patch-sets should be appended to the command call.
+     * @param getCurrentPatchSet if the current patch-set for the projects found should be included in the result.
+     *                          Meaning if --current-patch-set should be appended to the command call.
+     * @param getFiles if the files of the patch sets should be included in the result.
+     *                          Meaning if --files should be appended to the command call.
+     * @param visitor the visitor to handle each row of the result.
+     * @throws GerritQueryException if Gerrit reports an error with the query, or the visitor throws it.
+     * @throws SshException if there is an error in the SSH Connection.
+     * @throws IOException for some other IO problem.
+     */
+    public void queryJava(String queryString, int start, boolean getPatchSets, boolean getCurrentPatchSet,
+                          boolean getFiles, final GerritQueryVisitor visitor)
+            throws SshException, IOException, GerritQueryException {
+
+        runQuery(queryString, start, getPatchSets, getCurrentPatchSet, getFiles, new LineVisitor() {
 
             @Override
-            public void visit(String line) throws GerritQueryException {
+            public boolean visit(String line) throws GerritQueryException {
                 JSONObject json = (JSONObject)JSONSerializer.toJSON(line.trim());
                 if (json.has("type") && "error".equalsIgnoreCase(json.getString("type"))) {
                     throw new GerritQueryException(json.getString("message"));
                 }
-                list.add(json);
+                return visitor.visit(json);
             }
         });
-        return list;
     }
 
 
@@ -178,11 +238,12 @@ public class GerritQueryHandler {
             throws SshException, IOException {
         final List<String> list = new LinkedList<String>();
         try {
-            runQuery(queryString, getPatchSets, getCurrentPatchSet, getFiles, new LineVisitor() {
+            queryJson(queryString, 0, getPatchSets, getCurrentPatchSet, getFiles, new LineVisitor() {
 
                 @Override
-                public void visit(String line) {
-                    list.add(line.trim());
+                public boolean visit(String line) {
+                    list.add(line);
+                    return true;
                 }
             });
         } catch (GerritQueryException gqe) {
@@ -191,23 +252,62 @@ public class GerritQueryHandler {
         return list;
     }
 
-    //CS IGNORE RedundantThrows FOR NEXT 18 LINES. REASON: Informative.
-    //CS IGNORE JavadocMethod FOR NEXT 17 LINES. REASON: It is there.
+    //CS IGNORE RedundantThrows FOR NEXT 25 LINES. REASON: Informative.
+    //CS IGNORE JavadocMethod FOR NEXT 24 LINES. REASON: It is there.
+
+    /**
+     * Runs the query and lets the visitor handle each row of the result as a JSON formatted string,
+     * as soon as it has been read and decoded from the server. Nothing is parsed or collected on the way,
+     * so this is the cheapest way to go through a big result, e.g. with --files,
+     * or to stop reading as soon as the interesting row has been found.
+     * @param queryString the query.
+     * @param start the number of changes to skip, meaning that --start should be appended to the command call
+     *              if it is more than 0. Requires Gerrit 2.9 or later.
+     * @param getPatchSets if all patch-sets of the projects found should be included in the result.
+     *                      Meaning if --patch-sets should be appended to the command call.
+     * @param getCurrentPatchSet if the current patch-set for the projects found should be included in the result.
+     *                          Meaning if --current-patch-set should be appended to the command call.
+     * @param getFiles if the files of the patch sets should be included in the result.
+     *                          Meaning if --files should be appended to the command call.
+     * @param visitor the visitor to handle each row of the result, trimmed from white space.
+     * @throws GerritQueryException if the visitor throws it.
+     * @throws SshException if there is an error in the SSH Connection.
+     * @throws IOException for some other IO problem.
+     */
+    public void queryJson(String queryString, int start, boolean getPatchSets, boolean getCurrentPatchSet,
+                          boolean getFiles, final LineVisitor visitor)
+            throws SshException, IOException, GerritQueryException {
+        runQuery(queryString, start, getPatchSets, getCurrentPatchSet, getFiles, new LineVisitor() {
+
+            @Override
+            public boolean visit(String line) throws GerritQueryException {
+                return visitor.visit(line.trim());
+            }
+        });
+    }
+
+    //CS IGNORE RedundantThrows FOR NEXT 23 LINES. REASON: Informative.
+    //CS IGNORE JavadocMethod FOR NEXT 22 LINES. REASON: It is there.
 
     /**
      * Runs the query on the Gerrit server and lets the provided visitor handle each line in the result.
      * @param queryString the query.
+     * @param start the number of changes to skip, meaning that --start should be appended to the command call
+     *              if it is more than 0.
      * @param getPatchSets if all patch-sets of the projects found should be included in the result.
      *                      Meaning if --patch-sets should be appended to the command call.
      * @param getCurrentPatchSet if the current patch-set for the projects found should be included in the result.
      *                          Meaning if --current-patch-set should be appended to the command call.
+     * @param getFiles if the files of the patch sets should be included in the result.
+     *                          Meaning if --files should be appended to the command call.
      * @param visitor the visitor to handle each line in the result.
      * @throws GerritQueryException if a visitor finds that Gerrit reported an error with the query.
      * @throws SshException if there is an error in the SSH Connection.
      * @throws IOException for some other IO problem.
      */
-    private void runQuery(String queryString, boolean getPatchSets, boolean getCurrentPatchSet, boolean getFiles,
-                          LineVisitor visitor) throws GerritQueryException, SshException, IOException {
+    private void runQuery(String queryString, int start, boolean getPatchSets, boolean getCurrentPatchSet,
+                          boolean getFiles, LineVisitor visitor)
+            throws GerritQueryException, SshException, IOException {
         StringBuilder str = new StringBuilder(QUERY_COMMAND);
         str.append(" --format=JSON");
         if (getPatchSets) {
@@ -219,19 +319,60 @@ public class GerritQueryHandler {
         if (getFiles) {
             str.append(" --files");
         }
+        if (start > 0) {
+            str.append(" --start ").append(start);
+        }
+        String key = null;
+        List<String> lines = null;
+        long generation = 0;
+        if (cache != null) {
+            //Taken before the query is sent, any change that changes meanwhile keeps the result out of the cache.
+            generation = cache.getGeneration();
+            key = GerritQueryCache.key(str.toString(), queryString);
+            List<String> cached = cache.get(key);
+            if (cached != null) {
+                logger.debug("Answering the query from the cache: {}", key);
+                for (String line : cached) {
+                    if (!visitor.visit(line)) {
+                        break;
+                    }
+                }
+                return;
+            }
+            lines = new ArrayList<String>();
+        }
         str.append(" \"").append(queryString.replace((CharSequence)"\"", (CharSequence)"\\\"")).append("\"");
 
         SshConnection ssh = null;
         try {
-            ssh = SshConnectionFactory.getConnection(gerritHostName, gerritSshPort, authentication);
+            ssh = endpoints.getConnection(authentication);
             BufferedReader reader = new BufferedReader(ssh.executeCommandReader(str.toString()));
             String incomingLine = null;
+            boolean visiting = true;
             while ((incomingLine = reader.readLine()) != null) {
                 logger.trace("Incoming line: {}", incomingLine);
-                visitor.visit(incomingLine);
+                if (lines != null) {
+                    //Results that are too big or contain errors are not cached.
+                    if (lines.size() >= GerritQueryCache.MAX_ROWS || incomingLine.contains("\"type\":\"error\"")) {
+                        lines = null;
+                    } else {
+                        lines.add(incomingLine);
+                    }
+                }
+                if (visiting && !visitor.visit(incomingLine)) {
+                    logger.trace("The visitor has seen enough.");
+                    visiting = false;
+                }
+                //The rest of the result is only read to be able to cache it.
+                if (!visiting && lines == null) {
+                    break;
+                }
             }
             logger.trace("Closing reader.");
             reader.close();
+            if (lines != null) {
+                cache.put(key, lines, generation);
+            }
         } finally {
             if (ssh != null) {
                 ssh.disconnect();
@@ -240,15 +381,16 @@ public class GerritQueryHandler {
     }
 
     /**
-     * Internal visitor for handling a line of text.
-     * Used by {@link #runQuery(java.lang.String, boolean, boolean, boolean, LineVisitor)}.
+     * Visitor for handling a line of query result as it is read from the server.
+     * @see #queryJson(String, int, boolean, boolean, boolean, LineVisitor)
      */
-    interface LineVisitor {
+    public interface LineVisitor {
         /**
          * Visits a line of query result.
          * @param line the line.
+         * @return true to continue with the next line, false to stop reading.
          * @throws GerritQueryException if you want to.
          */
-        void visit(String line) throws GerritQueryException;
+        boolean visit(String line) throws GerritQueryException;
     }
 }
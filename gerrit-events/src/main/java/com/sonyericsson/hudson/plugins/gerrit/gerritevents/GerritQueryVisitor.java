@@ -0,0 +1,46 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.gerritevents;
+
+import net.sf.json.JSONObject;
+
+/**
+ * Handles the result of a Gerrit query one row at a time, as it is read from the server,
+ * so that the whole result doesn't have to be kept in memory.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ * @see GerritQueryHandler#queryJava(String, int, boolean, boolean, boolean, GerritQueryVisitor)
+ */
+public interface GerritQueryVisitor {
+
+    /**
+     * Visits a row of the query result. The last row is usually the statistics of the query,
+     * with a "type" property of "stats".
+     *
+     * @param json the row.
+     * @return true to continue with the next row, false to stop reading the result.
+     * @throws GerritQueryException if the visitor wants to abort the query.
+     */
+    boolean visit(JSONObject json) throws GerritQueryException;
+}
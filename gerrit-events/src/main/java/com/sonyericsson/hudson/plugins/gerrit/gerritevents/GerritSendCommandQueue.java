@@ -24,10 +24,15 @@
 
 package com.sonyericsson.hudson.plugins.gerrit.gerritevents;
 
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.latency.EventLatency;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.workers.cmd.AbstractSendCommandJob;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -35,13 +40,16 @@ import java.util.concurrent.TimeUnit;
 
 /**
  * A thread-pool and queue implementation for queueing commands to the Gerrit server.
+ * There is one queue per Gerrit server, identified by the host name and ssh port of the config,
+ * so that a slow server doesn't hold up the commands to the other ones.
  *
  * @author Robert Sandell &lt;robert.sandell@sonyericsson.com&gt;
  */
 public final class GerritSendCommandQueue {
 
     private static final Logger logger = LoggerFactory.getLogger(GerritSendCommandQueue.class);
-    private static GerritSendCommandQueue instance;
+    private static final Map<String, GerritSendCommandQueue> INSTANCES =
+            new LinkedHashMap<String, GerritSendCommandQueue>();
     private ThreadPoolExecutor executor = null;
     private static final int THREAD_KEEP_ALIVE_TIME = 20;
     /**
@@ -58,25 +66,37 @@ public final class GerritSendCommandQueue {
     }
 
     /**
-     * Returns the singleton instance of the command-queue.
+     * Returns the instance of the command-queue for the server of the config.
      * Updating it with the latest connection configuration.
+     * There can be more than one server, so a null config is an error and not the "default" queue.
      *
      * @param config the config.
      * @return the instance.
      */
     public static synchronized GerritSendCommandQueue getInstance(GerritConnectionConfig config) {
+        if (config == null) {
+            throw new NullPointerException("A config is needed to know which server to send to.");
+        }
+        String key = getKey(config);
+        GerritSendCommandQueue instance = INSTANCES.get(key);
         if (instance == null) {
-            if (config == null) {
-                throw new NullPointerException("A config instance is needed for the first init.");
-            }
             instance = new GerritSendCommandQueue();
+            INSTANCES.put(key, instance);
         }
-        if (config != null) {
-            instance.startQueue(config);
-        }
+        instance.startQueue(config);
         return instance;
     }
 
+    /**
+     * The key of the server of the config.
+     *
+     * @param config the config.
+     * @return the key.
+     */
+    private static String getKey(GerritConnectionConfig config) {
+        return config.getGerritHostName() + ":" + config.getGerritSshPort();
+    }
+
     /**
      * Adds a command-job to the singleton instance's queue.
      *
@@ -87,14 +107,43 @@ public final class GerritSendCommandQueue {
     }
 
     /**
-     * Returns the current queue size.
+     * Returns the current queue size, of all servers.
      *
      * @return the queue size,
      * @see java.util.concurrent.ThreadPoolExecutor#getQueue()
      */
-    public static int getQueueSize() {
-        if (instance != null && instance.executor != null) {
-            return instance.executor.getQueue().size();
+    public static synchronized int getQueueSize() {
+        int size = 0;
+        for (GerritSendCommandQueue instance : INSTANCES.values()) {
+            size += instance.getSize();
+        }
+        return size;
+    }
+
+    /**
+     * Returns the current queue size of the server of the config.
+     *
+     * @param config the config.
+     * @return the queue size, 0 if no command has been sent to the server.
+     */
+    public static synchronized int getQueueSize(GerritConnectionConfig config) {
+        GerritSendCommandQueue instance = INSTANCES.get(getKey(config));
+        if (instance != null) {
+            return instance.getSize();
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the current size of this queue.
+     *
+     * @return the queue size,
+     * @see java.util.concurrent.ThreadPoolExecutor#getQueue()
+     */
+    public int getSize() {
+        ThreadPoolExecutor pool = executor;
+        if (pool != null) {
+            return pool.getQueue().size();
         } else {
             return 0;
         }
@@ -110,12 +159,12 @@ public final class GerritSendCommandQueue {
     public void queueJob(AbstractSendCommandJob job) {
         try {
             logger.debug("Queueing job {}", job);
-            executor.submit(job);
+            executor.submit(new TimedJob(job));
         } catch (RejectedExecutionException e) {
             logger.error("Unable to queue a send-command-job! ", e);
         }
 
-        int queueSize = getQueueSize();
+        int queueSize = getSize();
         if (queueSize >= SEND_QUEUE_SIZE_WARNING_THRESHOLD) {
             logger.warn("The Gerrit-trigger send commands queue contains {} items!"
                     + " Something might be stuck, or your system can't process the commands fast enough."
@@ -154,20 +203,50 @@ public final class GerritSendCommandQueue {
                 executor.setMaximumPoolSize(config.getNumberOfSendingWorkerThreads());
             }
             logger.debug("SendQueue running. Current pool size: {}. Current Queue size: {}",
-                    executor.getPoolSize(), getQueueSize());
+                    executor.getPoolSize(), getSize());
             logger.debug("Nr of active pool-threads: {}", executor.getActiveCount());
         }
     }
 
     /**
-     * Shuts down the executor(s).
+     * Shuts down the executor(s) of all servers.
      * Gracefully waits for {@link #WAIT_FOR_JOBS_SHUTDOWN_TIMEOUT} seconds for all jobs to finish
      * before forcefully shutting them down.
      */
     public static void shutdown() {
-        if (instance != null && instance.executor != null) {
-            ThreadPoolExecutor pool = instance.executor;
-            instance.executor = null;
+        List<GerritSendCommandQueue> instances;
+        synchronized (GerritSendCommandQueue.class) {
+            instances = new ArrayList<GerritSendCommandQueue>(INSTANCES.values());
+            INSTANCES.clear();
+        }
+        for (GerritSendCommandQueue instance : instances) {
+            instance.shutdownQueue();
+        }
+    }
+
+    /**
+     * Shuts down the executor of the server of the config.
+     *
+     * @param config the config.
+     * @see #shutdown()
+     */
+    public static void shutdown(GerritConnectionConfig config) {
+        GerritSendCommandQueue instance;
+        synchronized (GerritSendCommandQueue.class) {
+            instance = INSTANCES.remove(getKey(config));
+        }
+        if (instance != null) {
+            instance.shutdownQueue();
+        }
+    }
+
+    /**
+     * Shuts down the executor of this queue.
+     */
+    private void shutdownQueue() {
+        if (executor != null) {
+            ThreadPoolExecutor pool = executor;
+            executor = null;
             pool.shutdown(); // Disable new tasks from being submitted
             try {
                 // Wait a while for existing tasks to terminate
@@ -186,4 +265,38 @@ public final class GerritSendCommandQueue {
             }
         }
     }
+
+    /**
+     * Runs a job and records how long it waited in the queue,
+     * and the end to end latency of the event when it is done.
+     */
+    private static class TimedJob implements Runnable {
+        private final AbstractSendCommandJob job;
+        private final long queuedOn;
+
+        /**
+         * Standard Constructor.
+         *
+         * @param job the job.
+         */
+        TimedJob(AbstractSendCommandJob job) {
+            this.job = job;
+            this.queuedOn = System.currentTimeMillis();
+        }
+
+        @Override
+        public void run() {
+            EventLatency latency = EventLatency.getInstance(job.getConfig());
+            latency.record(EventLatency.Stage.SEND_QUEUED, job.getEvent(), System.currentTimeMillis() - queuedOn);
+            job.run();
+            if (job.getCompletedStage() != null) {
+                latency.recordSinceReceived(job.getCompletedStage(), job.getEvent());
+            }
+        }
+
+        @Override
+        public String toString() {
+            return job.toString();
+        }
+    }
 }
@@ -0,0 +1,233 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.gerritevents;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * How much time the {@link GerritHandler} spends in one {@link GerritEventListener}.
+ *
+ * Keeps the number of invocations, how many of them the listener reported as a match with {@link #markMatched()},
+ * and the cumulative and max time spent in the listener.
+ * When a time budget is given, a listener that exceeds it {@link #MAX_OVER_BUDGET} times in a row is
+ * skipped for {@link #SKIP_PERIOD} milliseconds, so that it can't take all the worker time from the others.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class ListenerProfile {
+
+    /**
+     * How many invocations in a row that must exceed the time budget before the listener is skipped.
+     */
+    public static final int MAX_OVER_BUDGET = 10;
+    /**
+     * For how many milliseconds a listener that exceeds its time budget is skipped.
+     */
+    public static final long SKIP_PERIOD = 10 * 60 * 1000;
+    private static final long NANOS_PER_MILLI = 1000000;
+    private static final long MILLIS_PER_MINUTE = 60 * 1000;
+    private static final Logger logger = LoggerFactory.getLogger(ListenerProfile.class);
+    private static final ThreadLocal<ListenerProfile> CURRENT = new ThreadLocal<ListenerProfile>();
+
+    private final GerritEventListener listener;
+    private final AtomicLong invocations = new AtomicLong();
+    private final AtomicLong matches = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private int overBudget = 0;
+    private long skipUntil = 0;
+
+    /**
+     * Standard Constructor.
+     *
+     * @param listener the listener.
+     */
+    public ListenerProfile(GerritEventListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Tells the profile of the listener that is currently being notified on this thread that the event matched,
+     * e.g. that a build was scheduled for it. Does nothing if no listener is being notified.
+     */
+    public static void markMatched() {
+        ListenerProfile current = CURRENT.get();
+        if (current != null) {
+            current.matches.incrementAndGet();
+        }
+    }
+
+    /**
+     * If the listener should be skipped because it has exceeded its time budget.
+     * Counts the skip if so.
+     *
+     * @param now the current time in milliseconds.
+     * @return true if it should be skipped.
+     */
+    public synchronized boolean skip(long now) {
+        if (now < skipUntil) {
+            skipped.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Called right before the listener is notified, on the thread that notifies it.
+     */
+    public void begin() {
+        CURRENT.set(this);
+    }
+
+    /**
+     * Called after the listener has been notified, on the thread that notified it.
+     *
+     * @param nanos        the time it took.
+     * @param budgetMillis the time budget in milliseconds, 0 if there is none.
+     * @param now          the current time in milliseconds.
+     */
+    public void end(long nanos, long budgetMillis, long now) {
+        CURRENT.remove();
+        invocations.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long current = maxNanos.get();
+        while (nanos > current && !maxNanos.compareAndSet(current, nanos)) {
+            current = maxNanos.get();
+        }
+        if (budgetMillis > 0) {
+            checkBudget(nanos, budgetMillis, now);
+        }
+    }
+
+    /**
+     * Starts skipping the listener if it has exceeded the budget too many times in a row.
+     *
+     * @param nanos        the time it took this time.
+     * @param budgetMillis the time budget in milliseconds.
+     * @param now          the current time in milliseconds.
+     */
+    private synchronized void checkBudget(long nanos, long budgetMillis, long now) {
+        if (nanos <= budgetMillis * NANOS_PER_MILLI) {
+            overBudget = 0;
+            return;
+        }
+        overBudget++;
+        if (overBudget >= MAX_OVER_BUDGET) {
+            overBudget = 0;
+            skipUntil = now + SKIP_PERIOD;
+            logger.warn("{} took more than {} ms for the last {} events, it will not be notified of any events "
+                    + "for the next {} minutes.", new Object[]{listener, budgetMillis, MAX_OVER_BUDGET,
+                    SKIP_PERIOD / MILLIS_PER_MINUTE, });
+        }
+    }
+
+    /**
+     * The listener.
+     *
+     * @return the listener.
+     */
+    public GerritEventListener getListener() {
+        return listener;
+    }
+
+    /**
+     * The name of the listener.
+     *
+     * @return the name.
+     */
+    public String getName() {
+        return String.valueOf(listener);
+    }
+
+    /**
+     * The number of times the listener has been notified.
+     *
+     * @return the count.
+     */
+    public long getInvocations() {
+        return invocations.get();
+    }
+
+    /**
+     * The number of events that the listener reported as matches.
+     *
+     * @return the count.
+     */
+    public long getMatches() {
+        return matches.get();
+    }
+
+    /**
+     * The number of events that the listener wasn't notified of because it exceeded its time budget.
+     *
+     * @return the count.
+     */
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    /**
+     * If the listener is being skipped right now.
+     *
+     * @return true if so.
+     */
+    public synchronized boolean isSkipping() {
+        return System.currentTimeMillis() < skipUntil;
+    }
+
+    /**
+     * The total time spent in the listener.
+     *
+     * @return the time in milliseconds.
+     */
+    public long getTotalTime() {
+        return totalNanos.get() / NANOS_PER_MILLI;
+    }
+
+    /**
+     * The longest time spent in the listener for one event.
+     *
+     * @return the time in milliseconds.
+     */
+    public long getMaxTime() {
+        return maxNanos.get() / NANOS_PER_MILLI;
+    }
+
+    /**
+     * The average time spent in the listener per event.
+     *
+     * @return the time in milliseconds, with fractions.
+     */
+    public double getMeanTime() {
+        long count = getInvocations();
+        if (count <= 0) {
+            return 0;
+        }
+        return (double)totalNanos.get() / count / NANOS_PER_MILLI;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.gerritevents;
+
+/**
+ * A {@link GerritEventListener} that can tell which Gerrit projects it wants events for.
+ *
+ * When all listeners of a {@link GerritHandler} are project aware, the events of the projects that none of them
+ * are watching are dropped as soon as they are read from the stream, before they are queued and parsed.
+ * A listener that changes the projects it is watching needs to call {@link WatchedProjects#invalidate()}.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public interface ProjectAwareListener extends GerritEventListener {
+
+    /**
+     * If events of the Gerrit project could be of interest to this listener.
+     * Called from the thread that reads the stream, so it needs to be quick; the result is cached.
+     *
+     * @param project the name of the Gerrit project.
+     * @return true if the events of the project should be sent to the listener.
+     */
+    boolean isWatching(String project);
+}
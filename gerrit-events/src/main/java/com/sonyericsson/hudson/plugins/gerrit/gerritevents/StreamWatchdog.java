@@ -0,0 +1,253 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.gerritevents;
+
+import com.jcraft.jsch.ChannelExec;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh.SshConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * Detects a stream-events connection that looks connected while no events come through it,
+ * for example a half open TCP connection or a stream that Gerrit has stopped writing to.
+ *
+ * When nothing has been received for the probe interval, a <code>gerrit version</code> command is run
+ * on a separate channel of the same session. If it doesn't complete within the probe timeout the stream is
+ * considered stale and the handler is told to reconnect. Optionally the handler is also told to reconnect
+ * when nothing at all has been received for the stale timeout, even if the probes succeed.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class StreamWatchdog extends Thread {
+
+    /**
+     * The default number of milliseconds without events before the connection is probed.
+     */
+    public static final long DEFAULT_PROBE_INTERVAL = 60000;
+    /**
+     * The default number of milliseconds that a probe may take.
+     */
+    public static final long DEFAULT_PROBE_TIMEOUT = 30000;
+    /**
+     * The number of milliseconds between the checks of the last event time.
+     */
+    public static final long CHECK_INTERVAL = 5000;
+    /**
+     * How often to look if the probe command has completed, in milliseconds.
+     */
+    private static final long PROBE_POLL_INTERVAL = 100;
+    private static final String CMD_PROBE = "gerrit version";
+    private static final Logger logger = LoggerFactory.getLogger(StreamWatchdog.class);
+
+    private final GerritHandler handler;
+    private volatile long probeInterval = DEFAULT_PROBE_INTERVAL;
+    private volatile long probeTimeout = DEFAULT_PROBE_TIMEOUT;
+    private volatile long staleTimeout = 0;
+    private volatile boolean shutdown = false;
+    private long lastProbe = 0;
+    private volatile int reconnects = 0;
+
+    /**
+     * Standard Constructor.
+     *
+     * @param handler the handler of the stream to watch.
+     */
+    public StreamWatchdog(GerritHandler handler) {
+        super("Gerrit Stream Watchdog");
+        this.handler = handler;
+        setDaemon(true);
+    }
+
+    /**
+     * The number of milliseconds without events before the connection is probed.
+     *
+     * @return the interval, 0 if the connection is never probed.
+     */
+    public long getProbeInterval() {
+        return probeInterval;
+    }
+
+    /**
+     * The number of milliseconds without events before the connection is probed.
+     *
+     * @param probeInterval the interval, 0 to never probe the connection.
+     */
+    public void setProbeInterval(long probeInterval) {
+        this.probeInterval = probeInterval;
+    }
+
+    /**
+     * The number of milliseconds that a probe may take before the stream is considered stale.
+     *
+     * @return the timeout.
+     */
+    public long getProbeTimeout() {
+        return probeTimeout;
+    }
+
+    /**
+     * The number of milliseconds that a probe may take before the stream is considered stale.
+     *
+     * @param probeTimeout the timeout.
+     */
+    public void setProbeTimeout(long probeTimeout) {
+        this.probeTimeout = probeTimeout;
+    }
+
+    /**
+     * The number of milliseconds without any events after which the stream is reconnected,
+     * even if the connection answers the probes.
+     *
+     * @return the timeout, 0 if disabled.
+     */
+    public long getStaleTimeout() {
+        return staleTimeout;
+    }
+
+    /**
+     * The number of milliseconds without any events after which the stream is reconnected,
+     * even if the connection answers the probes.
+     *
+     * @param staleTimeout the timeout, 0 to disable.
+     */
+    public void setStaleTimeout(long staleTimeout) {
+        this.staleTimeout = staleTimeout;
+    }
+
+    /**
+     * The number of times that the stream has been reconnected because it was stale.
+     *
+     * @return the number of reconnects.
+     */
+    public int getReconnects() {
+        return reconnects;
+    }
+
+    /**
+     * Stops watching.
+     */
+    public void shutdown() {
+        shutdown = true;
+        interrupt();
+    }
+
+    @Override
+    public void run() {
+        while (!shutdown) {
+            try {
+                Thread.sleep(CHECK_INTERVAL);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            try {
+                check(System.currentTimeMillis());
+            } catch (Exception e) {
+                logger.error("Unexpected error when watching the stream of events.", e);
+            }
+        }
+        logger.debug("End of the stream watchdog.");
+    }
+
+    /**
+     * Checks how long ago the last event was received, and probes or reconnects the stream if needed.
+     *
+     * @param now the current time.
+     * @return true if the stream was told to reconnect.
+     */
+    boolean check(long now) {
+        if (!handler.isConnected()) {
+            return false;
+        }
+        long age = handler.getLastEventAge(now);
+        if (age < 0) {
+            return false;
+        }
+        if (staleTimeout > 0 && age >= staleTimeout) {
+            return reconnect("nothing has been received for " + age / GerritHandler.PAUSE_SECOND + " seconds");
+        }
+        if (probeInterval > 0 && age >= probeInterval && now - lastProbe >= probeInterval) {
+            lastProbe = now;
+            String failure = probe(handler.getStreamConnection());
+            if (failure != null) {
+                return reconnect(failure);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs the probe command on a separate channel of the connection and waits for it to complete.
+     * The command isn't run with {@link SshConnection#executeCommand(String)} since that would hold the lock of
+     * the connection while it waits, and then the connection couldn't be disconnected if the probe hangs.
+     *
+     * @param connection the connection of the stream.
+     * @return why the probe failed, or null if it succeeded.
+     */
+    String probe(SshConnection connection) {
+        if (connection == null) {
+            return null;
+        }
+        long start = System.currentTimeMillis();
+        ChannelExec channel = null;
+        try {
+            channel = connection.executeCommandChannel(CMD_PROBE);
+            while (!channel.isClosed()) {
+                if (System.currentTimeMillis() - start >= probeTimeout) {
+                    return "the probe got no answer in " + probeTimeout / GerritHandler.PAUSE_SECOND + " seconds";
+                }
+                Thread.sleep(PROBE_POLL_INTERVAL);
+            }
+            logger.debug("The stream was probed in {} ms.", System.currentTimeMillis() - start);
+            return null;
+        } catch (IOException e) {
+            return "the probe failed: " + e.getMessage();
+        } catch (IllegalStateException e) {
+            return "the probe failed: " + e.getMessage();
+        } catch (InterruptedException e) {
+            logger.debug("Interrupted while probing the stream.");
+            return null;
+        } finally {
+            if (channel != null) {
+                channel.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Tells the handler to reconnect the stream, unless the watchdog is shutting down.
+     *
+     * @param reason why.
+     * @return true if the handler was told to reconnect.
+     */
+    private boolean reconnect(String reason) {
+        if (shutdown) {
+            return false;
+        }
+        reconnects++;
+        handler.reconnect("The stream of events seems stale, " + reason);
+        return true;
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.gerritevents;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The Gerrit projects that the listeners of a {@link GerritHandler} are watching.
+ *
+ * Events of a project are only dropped when there are listeners, every listener is a {@link ProjectAwareListener}
+ * and none of them is watching it. The answer for each project is cached until the listeners change or
+ * {@link #invalidate()} is called, so that the patterns of the listeners aren't matched for every event.
+ * The number of dropped events is counted per project.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class WatchedProjects {
+
+    /**
+     * The maximum number of projects that are cached, the cache is cleared when it gets bigger.
+     */
+    public static final int MAX_CACHED_PROJECTS = 10000;
+    /**
+     * The maximum number of projects that dropped events are counted for,
+     * the events of other projects are counted as {@link #OTHER_PROJECTS}.
+     */
+    public static final int MAX_COUNTED_PROJECTS = 1000;
+    /**
+     * The name that dropped events are counted as when {@link #MAX_COUNTED_PROJECTS} has been reached.
+     */
+    public static final String OTHER_PROJECTS = "(other)";
+
+    private final Collection<GerritEventListener> listeners;
+    private volatile ConcurrentMap<String, Boolean> watched = new ConcurrentHashMap<String, Boolean>();
+    private final ConcurrentMap<String, AtomicLong> dropped = new ConcurrentHashMap<String, AtomicLong>();
+
+    /**
+     * Standard Constructor.
+     *
+     * @param listeners the live collection of listeners.
+     */
+    public WatchedProjects(Collection<GerritEventListener> listeners) {
+        this.listeners = listeners;
+    }
+
+    /**
+     * If the line from the stream-events command should be handled.
+     * The project is found with {@link GerritJsonEventFactory#findProject(String)}, lines that it can't be found
+     * for are always accepted. A line that isn't accepted is counted as dropped.
+     *
+     * @param line the line.
+     * @return true if the line should be handled, false if it can be dropped.
+     */
+    public boolean accept(String line) {
+        String project = GerritJsonEventFactory.findProject(line);
+        if (project == null || isWatched(project)) {
+            return true;
+        }
+        countDropped(project);
+        return false;
+    }
+
+    /**
+     * If any of the listeners is watching the project.
+     *
+     * @param project the name of the project.
+     * @return true if so, if any of the listeners isn't a {@link ProjectAwareListener} or if there are no listeners.
+     */
+    public boolean isWatched(String project) {
+        ConcurrentMap<String, Boolean> cache = watched;
+        Boolean isWatched = cache.get(project);
+        if (isWatched == null) {
+            isWatched = calculate(project);
+            if (cache.size() >= MAX_CACHED_PROJECTS) {
+                cache.clear();
+            }
+            //If invalidated meanwhile it is put in the old cache, which isn't used any more.
+            cache.put(project, isWatched);
+        }
+        return isWatched;
+    }
+
+    /**
+     * Forgets the cached projects, needs to be called when the listeners or the projects they are watching change.
+     */
+    public void invalidate() {
+        watched = new ConcurrentHashMap<String, Boolean>();
+    }
+
+    /**
+     * The number of dropped events per project, the project with the most dropped events first.
+     *
+     * @return the dropped events.
+     */
+    public Map<String, Long> getDroppedEvents() {
+        List<Map.Entry<String, AtomicLong>> entries = new ArrayList<Map.Entry<String, AtomicLong>>(dropped.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, AtomicLong>>() {
+            @Override
+            public int compare(Map.Entry<String, AtomicLong> o1, Map.Entry<String, AtomicLong> o2) {
+                long c1 = o1.getValue().get();
+                long c2 = o2.getValue().get();
+                if (c1 > c2) {
+                    return -1;
+                } else if (c1 < c2) {
+                    return 1;
+                } else {
+                    return o1.getKey().compareTo(o2.getKey());
+                }
+            }
+        });
+        Map<String, Long> result = new LinkedHashMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : entries) {
+            result.put(entry.getKey(), entry.getValue().get());
+        }
+        return result;
+    }
+
+    /**
+     * The total number of dropped events.
+     *
+     * @return the number of events.
+     */
+    public long getDroppedTotal() {
+        long total = 0;
+        for (AtomicLong count : dropped.values()) {
+            total += count.get();
+        }
+        return total;
+    }
+
+    /**
+     * Asks the listeners if any of them is watching the project.
+     *
+     * @param project the name of the project.
+     * @return true if so.
+     */
+    private boolean calculate(String project) {
+        if (listeners.isEmpty()) {
+            return true;
+        }
+        for (GerritEventListener listener : listeners) {
+            if (!(listener instanceof ProjectAwareListener)) {
+                return true;
+            }
+            if (((ProjectAwareListener)listener).isWatching(project)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Counts a dropped event of the project.
+     *
+     * @param project the name of the project.
+     */
+    private void countDropped(String project) {
+        AtomicLong count = dropped.get(project);
+        if (count == null) {
+            String name = project;
+            if (dropped.size() >= MAX_COUNTED_PROJECTS) {
+                name = OTHER_PROJECTS;
+            }
+            count = new AtomicLong();
+            AtomicLong existing = dropped.putIfAbsent(name, count);
+            if (existing != null) {
+                count = existing;
+            }
+        }
+        count.incrementAndGet();
+    }
+}
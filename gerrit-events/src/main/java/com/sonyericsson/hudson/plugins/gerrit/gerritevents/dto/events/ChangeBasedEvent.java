@@ -25,6 +25,7 @@ package com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events;
 
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritQueryException;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritQueryHandler;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritQueryVisitor;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.attr.Change;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.attr.PatchSet;
 import net.sf.json.JSONArray;
@@ -92,22 +93,28 @@ public abstract class ChangeBasedEvent extends GerritTriggeredEvent {
         if (files == null) {
             files = new LinkedList<String>();
             try {
-                List<JSONObject> jsonList = gerritQueryHandler.queryFiles("change:" + getChange().getId());
-                for (JSONObject json : jsonList) {
-                    if (json.has("type") && "stats".equalsIgnoreCase(json.getString("type"))) {
-                        continue;
-                    }
-                    if (json.has("currentPatchSet")) {
-                        JSONObject currentPatchSet = json.getJSONObject("currentPatchSet");
-                        if (currentPatchSet.has("files")) {
-                            JSONArray changedFiles = currentPatchSet.optJSONArray("files");
-                            for (int i = 0; i < changedFiles.size(); i++) {
-                                JSONObject file = changedFiles.getJSONObject(i);
-                                files.add(file.getString("file"));
+                //The files are picked out of the first change as it is read, and the rest is never parsed.
+                gerritQueryHandler.queryJava("change:" + getChange().getId(), 0, false, true, true,
+                        new GerritQueryVisitor() {
+
+                    @Override
+                    public boolean visit(JSONObject json) {
+                        if (json.has("type") && "stats".equalsIgnoreCase(json.getString("type"))) {
+                            return true;
+                        }
+                        if (json.has("currentPatchSet")) {
+                            JSONObject currentPatchSet = json.getJSONObject("currentPatchSet");
+                            if (currentPatchSet.has("files")) {
+                                JSONArray changedFiles = currentPatchSet.optJSONArray("files");
+                                for (int i = 0; i < changedFiles.size(); i++) {
+                                    JSONObject file = changedFiles.getJSONObject(i);
+                                    files.add(file.getString("file"));
+                                }
                             }
                         }
+                        return false;
                     }
-                }
+                });
             } catch (IOException e) {
                 logger.error("IOException occured. ", e);
             } catch (GerritQueryException e) {
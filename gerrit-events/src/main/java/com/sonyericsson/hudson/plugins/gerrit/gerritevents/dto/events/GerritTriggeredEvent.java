@@ -43,6 +43,10 @@ public abstract class GerritTriggeredEvent extends GerritEventLifecycle implemen
      */
     protected Account account;
 
+    /**
+     * When the event was read from the stream of events, not persisted.
+     */
+    private transient long receivedOn;
 
     /**
      * The account that triggered the event.
@@ -62,4 +66,23 @@ public abstract class GerritTriggeredEvent extends GerritEventLifecycle implemen
         this.account = account;
     }
 
+    /**
+     * When the event was read from the stream of events.
+     * Used to measure the latency of handling it.
+     *
+     * @return the time in milliseconds, or 0 if the event didn't come from the stream or was loaded from disk.
+     */
+    public long getReceivedOn() {
+        return receivedOn;
+    }
+
+    /**
+     * When the event was read from the stream of events.
+     *
+     * @param receivedOn the time in milliseconds.
+     */
+    public void setReceivedOn(long receivedOn) {
+        this.receivedOn = receivedOn;
+    }
+
 }
@@ -0,0 +1,465 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.gerritevents.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * An append only journal of the raw lines from the stream-events command,
+ * so that events that were received but not handled when Hudson went down can be replayed after a restart.
+ *
+ * The lines are appended by the reader thread and written to disk together with {@link #commit()},
+ * which is done once for every burst of lines read from the stream, before they are handed to the workers.
+ * Each line is identified by its offset in the journal, and the workers report back with {@link #processed(long)}
+ * when they are done with it. The offset before which everything has been processed is kept in a checkpoint file,
+ * and {@link #replay()} returns all lines after it.
+ *
+ * The journal is split into segment files named after the offset of their first line.
+ * A new segment is started when the current one gets bigger than the segment size,
+ * and old segments are removed when they are fully processed and older than the retention time.
+ * The checkpoint doesn't move until {@link #replay()} has been called, so nothing from before a restart is lost
+ * by events that are processed while waiting for the replay.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class EventJournal {
+
+    /**
+     * The default max size of a segment file in bytes.
+     */
+    public static final long DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+    /**
+     * The file ending of the segment files.
+     */
+    public static final String SEGMENT_SUFFIX = ".journal";
+    /**
+     * The name of the checkpoint file.
+     */
+    public static final String CHECKPOINT_FILE = "checkpoint";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte NEWLINE = '\n';
+    private static final int LONG_BYTES = 8;
+    private static final int SCAN_BUFFER_SIZE = 4096;
+    private static final Logger logger = LoggerFactory.getLogger(EventJournal.class);
+
+    private final File directory;
+    private final long segmentSize;
+    private long retention;
+    private final List<Long> segments = new ArrayList<Long>();
+    private final List<ByteBuffer> pending = new ArrayList<ByteBuffer>();
+    private final TreeSet<Long> inFlight = new TreeSet<Long>();
+    private RandomAccessFile segmentFile;
+    private FileChannel segment;
+    private long segmentStart;
+    private long end;
+    private final long replayEnd;
+    private final RandomAccessFile checkpointFile;
+    private long checkpoint;
+    private boolean replayed = false;
+
+    /**
+     * Opens the journal with the default segment size, creating the directory if needed.
+     *
+     * @param directory the directory to keep the journal in.
+     * @param retention how many milliseconds processed segments are kept.
+     * @throws IOException if the journal can't be opened.
+     */
+    public EventJournal(File directory, long retention) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, retention);
+    }
+
+    /**
+     * Opens the journal, creating the directory if needed.
+     *
+     * @param directory   the directory to keep the journal in.
+     * @param segmentSize the max size of a segment file in bytes.
+     * @param retention   how many milliseconds processed segments are kept.
+     * @throws IOException if the journal can't be opened.
+     */
+    public EventJournal(File directory, long segmentSize, long retention) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.retention = retention;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create the event journal directory " + directory);
+        }
+        File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                try {
+                    segments.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    logger.warn("Ignoring unknown file {} in the event journal.", file);
+                }
+            }
+        }
+        Collections.sort(segments);
+        if (segments.isEmpty()) {
+            segments.add(0L);
+        }
+        openSegment(segments.get(segments.size() - 1));
+        truncateIncompleteLine();
+        end = segmentStart + segment.size();
+        replayEnd = end;
+
+        checkpointFile = new RandomAccessFile(new File(directory, CHECKPOINT_FILE), "rw");
+        if (checkpointFile.length() >= LONG_BYTES) {
+            checkpoint = checkpointFile.readLong();
+        }
+        if (checkpoint < segments.get(0) || checkpoint > end) {
+            logger.warn("The event journal checkpoint {} is outside of the journal, starting from the oldest event.",
+                    checkpoint);
+            checkpoint = segments.get(0);
+        }
+    }
+
+    /**
+     * How many milliseconds processed segments are kept.
+     *
+     * @return the retention time.
+     */
+    public synchronized long getRetention() {
+        return retention;
+    }
+
+    /**
+     * How many milliseconds processed segments are kept.
+     *
+     * @param retention the retention time.
+     */
+    public synchronized void setRetention(long retention) {
+        this.retention = retention;
+    }
+
+    /**
+     * The offset before which all lines have been processed.
+     *
+     * @return the offset.
+     */
+    public synchronized long getCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * The number of segment files.
+     *
+     * @return the number of segments.
+     */
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Adds a line to the journal. It is written to disk on the next {@link #commit()}.
+     *
+     * @param line the line, without line break.
+     * @return the offset of the line.
+     * @throws IOException if a new segment couldn't be started.
+     */
+    public synchronized long append(String line) throws IOException {
+        byte[] bytes = (line + "\n").getBytes(UTF_8.name());
+        if (end > segmentStart && end + bytes.length - segmentStart > segmentSize) {
+            roll();
+        }
+        long offset = end;
+        pending.add(ByteBuffer.wrap(bytes));
+        end += bytes.length;
+        inFlight.add(offset);
+        return offset;
+    }
+
+    /**
+     * Writes all appended lines to disk, with one write and one sync.
+     *
+     * @throws IOException if so.
+     */
+    public synchronized void commit() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        ByteBuffer[] buffers = pending.toArray(new ByteBuffer[pending.size()]);
+        pending.clear();
+        long remaining = 0;
+        for (ByteBuffer buffer : buffers) {
+            remaining += buffer.remaining();
+        }
+        while (remaining > 0) {
+            remaining -= segment.write(buffers);
+        }
+        segment.force(false);
+        saveCheckpoint();
+    }
+
+    /**
+     * Marks the line as processed.
+     *
+     * @param offset the offset of the line.
+     */
+    public synchronized void processed(long offset) {
+        inFlight.remove(offset);
+        try {
+            saveCheckpoint();
+        } catch (IOException e) {
+            logger.warn("Could not save the event journal checkpoint.", e);
+        }
+    }
+
+    /**
+     * The lines that were in the journal when it was opened but had not been processed.
+     * They are considered in flight until {@link #processed(long)} is called for them.
+     * Only returns anything the first time it is called.
+     *
+     * @return the lines.
+     * @throws IOException if the journal can't be read.
+     */
+    public synchronized List<Entry> replay() throws IOException {
+        List<Entry> entries = new ArrayList<Entry>();
+        if (replayed) {
+            return entries;
+        }
+        replayed = true;
+        for (int i = 0; i < segments.size(); i++) {
+            long start = segments.get(i);
+            long segmentEnd = replayEnd;
+            if (i + 1 < segments.size()) {
+                segmentEnd = Math.min(segments.get(i + 1), replayEnd);
+            }
+            if (segmentEnd <= checkpoint || start >= replayEnd) {
+                continue;
+            }
+            long from = Math.max(start, checkpoint);
+            readLines(start, from, segmentEnd, entries);
+        }
+        for (Entry entry : entries) {
+            inFlight.add(entry.getOffset());
+        }
+        saveCheckpoint();
+        return entries;
+    }
+
+    /**
+     * Writes pending lines and closes the files.
+     *
+     * @throws IOException if so.
+     */
+    public synchronized void close() throws IOException {
+        try {
+            commit();
+            saveCheckpoint();
+        } finally {
+            segmentFile.close();
+            checkpointFile.close();
+        }
+    }
+
+    /**
+     * Writes the current checkpoint to the checkpoint file, without syncing it.
+     *
+     * @throws IOException if so.
+     */
+    private void saveCheckpoint() throws IOException {
+        long current;
+        if (!replayed) {
+            //The lines before the restart are not in flight yet, so nothing more is processed than before.
+            current = checkpoint;
+        } else if (inFlight.isEmpty()) {
+            current = end;
+        } else {
+            current = inFlight.first();
+        }
+        if (current != checkpoint || checkpointFile.length() < LONG_BYTES) {
+            checkpoint = current;
+            checkpointFile.seek(0);
+            checkpointFile.writeLong(checkpoint);
+        }
+    }
+
+    /**
+     * Reads the lines of a segment.
+     *
+     * @param start   the offset of the segment.
+     * @param from    the offset to start reading at.
+     * @param to      the offset to stop reading at.
+     * @param entries where to put the lines.
+     * @throws IOException if so.
+     */
+    private void readLines(long start, long from, long to, List<Entry> entries) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(getSegmentFile(start), "r");
+        try {
+            byte[] bytes = new byte[(int)(to - from)];
+            file.seek(from - start);
+            file.readFully(bytes);
+            int lineStart = 0;
+            for (int i = 0; i < bytes.length; i++) {
+                if (bytes[i] == NEWLINE) {
+                    if (i > lineStart) {
+                        entries.add(new Entry(from + lineStart, new String(bytes, lineStart, i - lineStart,
+                                UTF_8.name())));
+                    }
+                    lineStart = i + 1;
+                }
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Starts a new segment and removes the old ones that are no longer needed.
+     *
+     * @throws IOException if so.
+     */
+    private void roll() throws IOException {
+        commit();
+        segmentFile.close();
+        segments.add(end);
+        openSegment(end);
+        long expired = System.currentTimeMillis() - retention;
+        while (segments.size() > 1 && segments.get(1) <= checkpoint) {
+            File file = getSegmentFile(segments.get(0));
+            if (file.lastModified() > expired) {
+                break;
+            }
+            if (!file.delete()) {
+                logger.warn("Could not remove the old event journal segment {}", file);
+                break;
+            }
+            segments.remove(0);
+        }
+    }
+
+    /**
+     * Opens a segment for appending.
+     *
+     * @param start the offset of the segment.
+     * @throws IOException if so.
+     */
+    private void openSegment(long start) throws IOException {
+        segmentStart = start;
+        segmentFile = new RandomAccessFile(getSegmentFile(start), "rw");
+        segment = segmentFile.getChannel();
+        segment.position(segment.size());
+    }
+
+    /**
+     * Removes the end of the current segment after the last line break,
+     * which is what is left of a line that was being written when the process died.
+     *
+     * @throws IOException if so.
+     */
+    private void truncateIncompleteLine() throws IOException {
+        long size = segment.size();
+        long position = size;
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        while (position > 0) {
+            long from = Math.max(0, position - SCAN_BUFFER_SIZE);
+            buffer.clear();
+            buffer.limit((int)(position - from));
+            segment.read(buffer, from);
+            for (int i = buffer.position() - 1; i >= 0; i--) {
+                if (buffer.get(i) == NEWLINE) {
+                    position = from + i + 1;
+                    if (position < size) {
+                        logger.warn("Removing an incomplete line at the end of the event journal.");
+                        segment.truncate(position);
+                    }
+                    segment.position(position);
+                    return;
+                }
+            }
+            position = from;
+        }
+        if (size > 0) {
+            segment.truncate(0);
+        }
+        segment.position(0);
+    }
+
+    /**
+     * The file of a segment.
+     *
+     * @param start the offset of the segment.
+     * @return the file.
+     */
+    private File getSegmentFile(long start) {
+        return new File(directory, String.format("%019d", start) + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * A line in the journal.
+     */
+    public static final class Entry {
+        private final long offset;
+        private final String line;
+
+        /**
+         * Standard Constructor.
+         *
+         * @param offset the offset of the line.
+         * @param line   the line.
+         */
+        public Entry(long offset, String line) {
+            this.offset = offset;
+            this.line = line;
+        }
+
+        /**
+         * The offset of the line.
+         *
+         * @return the offset.
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * The line.
+         *
+         * @return the line.
+         */
+        public String getLine() {
+            return line;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.gerritevents.journal;
+
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.workers.Coordinator;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.workers.Work;
+
+/**
+ * Work for a line in the {@link EventJournal}, that marks the line as processed when the work is done.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class JournaledWork implements Work {
+
+    private final Work work;
+    private final EventJournal journal;
+    private final long offset;
+
+    /**
+     * Standard Constructor.
+     *
+     * @param work    the work to do.
+     * @param journal the journal.
+     * @param offset  the offset of the line in the journal.
+     */
+    public JournaledWork(Work work, EventJournal journal, long offset) {
+        this.work = work;
+        this.journal = journal;
+        this.offset = offset;
+    }
+
+    @Override
+    public void perform(Coordinator coordinator) {
+        try {
+            work.perform(coordinator);
+        } finally {
+            journal.processed(offset);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "[" + getClass().getSimpleName() + ": " + offset + " " + work + "]";
+    }
+}
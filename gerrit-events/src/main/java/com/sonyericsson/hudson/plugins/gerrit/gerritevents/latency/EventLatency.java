@@ -0,0 +1,474 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.gerritevents.latency;
+
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritConnectionConfig;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.GerritEvent;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.ChangeBasedEvent;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.GerritTriggeredEvent;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.RefUpdated;
+import net.sf.json.JSONObject;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps latency histograms for the stages that an event goes through, from the upload to Gerrit until the
+ * vote is posted back, per Gerrit server, stage, event type and Gerrit project.
+ *
+ * The events that come from the stream remember when their line was read, see
+ * {@link GerritTriggeredEvent#getReceivedOn()}, so that the end to end stages can be measured from there.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public final class EventLatency {
+
+    /**
+     * The maximum number of histograms. When there are more, new projects are counted as {@link #OTHER_PROJECTS}.
+     */
+    public static final int MAX_HISTOGRAMS = 5000;
+    /**
+     * The project name used for events without a project, and for new projects when there are too many histograms.
+     */
+    public static final String OTHER_PROJECTS = "(other)";
+    private static final String UNKNOWN_TYPE = "(unknown)";
+    private static final long MILLIS_PER_SECOND = 1000;
+    private static final double SECONDS = 1000.0;
+    private static final String METRIC_NAME = "gerrit_trigger_event_latency_seconds";
+    private static final ConcurrentMap<String, EventLatency> INSTANCES = new ConcurrentHashMap<String, EventLatency>();
+
+    /**
+     * The stages of handling an event that are measured.
+     */
+    public static enum Stage {
+        /**
+         * From the creation of the event in Gerrit until its line was read from the stream.
+         * Depends on the clocks of Gerrit and Hudson being in sync.
+         */
+        GERRIT("gerrit", "Gerrit to stream"),
+        /**
+         * From the line being read until a worker took it from the event queue.
+         */
+        QUEUED("queued", "Event queue"),
+        /**
+         * Parsing the line into an event.
+         */
+        DECODE("decode", "Decode"),
+        /**
+         * Notifying all listeners of the event.
+         */
+        DISPATCH("dispatch", "Dispatch"),
+        /**
+         * From the line being read until a build was scheduled for it.
+         */
+        SCHEDULED("scheduled", "Received to build scheduled"),
+        /**
+         * From a command being put on the send queue until it was taken from it.
+         */
+        SEND_QUEUED("send_queued", "Send queue"),
+        /**
+         * Sending a command to Gerrit.
+         */
+        SEND("send", "Send command"),
+        /**
+         * From the line being read until the build started message was sent.
+         */
+        STARTED_REPORTED("started_reported", "Received to build started sent"),
+        /**
+         * From the line being read until the vote for the completed builds was sent.
+         */
+        VOTE_POSTED("vote_posted", "Received to vote posted");
+
+        private final String id;
+        private final String displayName;
+
+        /**
+         * Constructor.
+         *
+         * @param id          the id used in the metrics.
+         * @param displayName the name shown to users.
+         */
+        private Stage(String id, String displayName) {
+            this.id = id;
+            this.displayName = displayName;
+        }
+
+        /**
+         * The id used in the metrics.
+         *
+         * @return the id.
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * The name shown to users.
+         *
+         * @return the name.
+         */
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    private final String server;
+    private final ConcurrentMap<String, Entry> histograms = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * Private Constructor, there is one instance per server.
+     *
+     * @param server the host and port of the server.
+     */
+    private EventLatency(String server) {
+        this.server = server;
+    }
+
+    /**
+     * The instance of the server, created the first time it is needed.
+     *
+     * @param gerritHostName the host name of the server.
+     * @param gerritSshPort  the SSH port of the server.
+     * @return the instance.
+     */
+    public static EventLatency getInstance(String gerritHostName, int gerritSshPort) {
+        String key = gerritHostName + ":" + gerritSshPort;
+        EventLatency instance = INSTANCES.get(key);
+        if (instance == null) {
+            instance = new EventLatency(key);
+            EventLatency existing = INSTANCES.putIfAbsent(key, instance);
+            if (existing != null) {
+                instance = existing;
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * The instance of the server of the config, created the first time it is needed.
+     *
+     * @param config the config.
+     * @return the instance.
+     */
+    public static EventLatency getInstance(GerritConnectionConfig config) {
+        return getInstance(config.getGerritHostName(), config.getGerritSshPort());
+    }
+
+    /**
+     * The instances of all servers that anything has been recorded for, sorted by server.
+     *
+     * @return the instances.
+     */
+    public static List<EventLatency> getInstances() {
+        List<EventLatency> instances = new ArrayList<EventLatency>(INSTANCES.values());
+        Collections.sort(instances, new Comparator<EventLatency>() {
+            @Override
+            public int compare(EventLatency o1, EventLatency o2) {
+                return o1.getServer().compareTo(o2.getServer());
+            }
+        });
+        return instances;
+    }
+
+    /**
+     * The server that the histograms are for.
+     *
+     * @return the host and port of the server.
+     */
+    public String getServer() {
+        return server;
+    }
+
+    /**
+     * Records the duration of a stage for the event.
+     *
+     * @param stage  the stage.
+     * @param event  the event, or null if not known.
+     * @param millis the duration in milliseconds.
+     */
+    public void record(Stage stage, GerritEvent event, long millis) {
+        if (millis < 0) {
+            return;
+        }
+        getHistogram(stage, getType(event), getProject(event)).record(millis);
+    }
+
+    /**
+     * Records the time from when the event was read from the stream until now.
+     * Nothing is recorded for events that didn't come from the stream, like manually triggered ones.
+     *
+     * @param stage the stage.
+     * @param event the event.
+     */
+    public void recordSinceReceived(Stage stage, GerritEvent event) {
+        if (event instanceof GerritTriggeredEvent) {
+            long receivedOn = ((GerritTriggeredEvent)event).getReceivedOn();
+            if (receivedOn > 0) {
+                record(stage, event, System.currentTimeMillis() - receivedOn);
+            }
+        }
+    }
+
+    /**
+     * Records the time between the creation of the event in Gerrit and when its line was read from the stream.
+     * Uses <code>eventCreatedOn</code> of the event if Gerrit sends it,
+     * otherwise the creation time of the patch set of patchset-created events.
+     *
+     * @param event      the event.
+     * @param json       the event as JSON.
+     * @param receivedOn when the line was read.
+     */
+    public void recordGerritDelay(GerritEvent event, JSONObject json, long receivedOn) {
+        long createdOn = json.optLong("eventCreatedOn", 0);
+        if (createdOn <= 0 && "patchset-created".equals(json.optString("type"))) {
+            JSONObject patchSet = json.optJSONObject("patchSet");
+            if (patchSet != null) {
+                createdOn = patchSet.optLong("createdOn", 0);
+            }
+        }
+        if (createdOn > 0) {
+            record(Stage.GERRIT, event, receivedOn - createdOn * MILLIS_PER_SECOND);
+        }
+    }
+
+    /**
+     * All histograms, sorted by stage, event type and project.
+     *
+     * @return the histograms.
+     */
+    public List<Entry> getEntries() {
+        List<Entry> entries = new ArrayList<Entry>(histograms.values());
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry o1, Entry o2) {
+                int c = o1.getStage().compareTo(o2.getStage());
+                if (c == 0) {
+                    c = o1.getType().compareTo(o2.getType());
+                }
+                if (c == 0) {
+                    c = o1.getProject().compareTo(o2.getProject());
+                }
+                return c;
+            }
+        });
+        return entries;
+    }
+
+    /**
+     * The histograms of all projects merged, per stage and event type.
+     *
+     * @return the merged histograms, with a null project.
+     */
+    public List<Entry> getSummary() {
+        Map<String, Entry> summary = new LinkedHashMap<String, Entry>();
+        for (Entry entry : getEntries()) {
+            String key = entry.getStage().getId() + "|" + entry.getType();
+            Entry merged = summary.get(key);
+            if (merged == null) {
+                merged = new Entry(entry.getStage(), entry.getType(), null);
+                summary.put(key, merged);
+            }
+            merged.getHistogram().add(entry.getHistogram());
+        }
+        return new ArrayList<Entry>(summary.values());
+    }
+
+    /**
+     * Writes the histograms of all servers in the Prometheus text format, with the durations in seconds.
+     *
+     * @param out where to write.
+     */
+    public static void writeMetrics(PrintWriter out) {
+        out.println("# HELP " + METRIC_NAME + " Time spent in each stage of handling Gerrit events.");
+        out.println("# TYPE " + METRIC_NAME + " histogram");
+        for (EventLatency instance : getInstances()) {
+            instance.writeSamples(out);
+        }
+    }
+
+    /**
+     * Writes the samples of the histograms of this server in the Prometheus text format.
+     *
+     * @param out where to write.
+     */
+    private void writeSamples(PrintWriter out) {
+        String name = METRIC_NAME;
+        long[] bounds = LatencyHistogram.getBounds();
+        for (Entry entry : getEntries()) {
+            String labels = "server=\"" + escape(server) + "\",stage=\"" + entry.getStage().getId()
+                    + "\",type=\"" + escape(entry.getType())
+                    + "\",project=\"" + escape(entry.getProject()) + "\"";
+            LatencyHistogram histogram = entry.getHistogram();
+            long[] counts = histogram.getBucketCounts();
+            long cumulative = 0;
+            for (int i = 0; i < bounds.length; i++) {
+                cumulative += counts[i];
+                out.println(name + "_bucket{" + labels + ",le=\"" + bounds[i] / SECONDS + "\"} " + cumulative);
+            }
+            cumulative += counts[bounds.length];
+            out.println(name + "_bucket{" + labels + ",le=\"+Inf\"} " + cumulative);
+            out.println(name + "_sum{" + labels + "} " + histogram.getSum() / SECONDS);
+            out.println(name + "_count{" + labels + "} " + cumulative);
+        }
+    }
+
+    /**
+     * Forgets all histograms of this server.
+     */
+    public void clear() {
+        histograms.clear();
+    }
+
+    /**
+     * Gets or creates the histogram for the stage, type and project.
+     *
+     * @param stage   the stage.
+     * @param type    the event type.
+     * @param project the project.
+     * @return the histogram.
+     */
+    private LatencyHistogram getHistogram(Stage stage, String type, String project) {
+        String key = stage.getId() + "|" + type + "|" + project;
+        Entry entry = histograms.get(key);
+        if (entry == null) {
+            if (histograms.size() >= MAX_HISTOGRAMS && !OTHER_PROJECTS.equals(project)) {
+                return getHistogram(stage, type, OTHER_PROJECTS);
+            }
+            entry = new Entry(stage, type, project);
+            Entry existing = histograms.putIfAbsent(key, entry);
+            if (existing != null) {
+                entry = existing;
+            }
+        }
+        return entry.getHistogram();
+    }
+
+    /**
+     * The type of the event.
+     *
+     * @param event the event.
+     * @return the type value.
+     */
+    private static String getType(GerritEvent event) {
+        if (event == null || event.getEventType() == null) {
+            return UNKNOWN_TYPE;
+        }
+        return event.getEventType().getTypeValue();
+    }
+
+    /**
+     * The Gerrit project of the event.
+     *
+     * @param event the event.
+     * @return the project name.
+     */
+    private static String getProject(GerritEvent event) {
+        String project = null;
+        if (event instanceof ChangeBasedEvent && ((ChangeBasedEvent)event).getChange() != null) {
+            project = ((ChangeBasedEvent)event).getChange().getProject();
+        } else if (event instanceof RefUpdated && ((RefUpdated)event).getRefUpdate() != null) {
+            project = ((RefUpdated)event).getRefUpdate().getProject();
+        }
+        if (project == null) {
+            return OTHER_PROJECTS;
+        }
+        return project;
+    }
+
+    /**
+     * Escapes a label value for the Prometheus text format.
+     *
+     * @param value the value.
+     * @return the escaped value.
+     */
+    public static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * The histogram of a stage, event type and project.
+     */
+    public static final class Entry {
+        private final Stage stage;
+        private final String type;
+        private final String project;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        /**
+         * Standard Constructor.
+         *
+         * @param stage   the stage.
+         * @param type    the event type.
+         * @param project the project, or null if it is the sum of all projects.
+         */
+        Entry(Stage stage, String type, String project) {
+            this.stage = stage;
+            this.type = type;
+            this.project = project;
+        }
+
+        /**
+         * The stage.
+         *
+         * @return the stage.
+         */
+        public Stage getStage() {
+            return stage;
+        }
+
+        /**
+         * The event type.
+         *
+         * @return the type.
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * The Gerrit project.
+         *
+         * @return the project, or null if it is the sum of all projects.
+         */
+        public String getProject() {
+            return project;
+        }
+
+        /**
+         * The histogram.
+         *
+         * @return the histogram.
+         */
+        public LatencyHistogram getHistogram() {
+            return histogram;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.gerritevents.latency;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in milliseconds with fixed, roughly logarithmic, buckets.
+ * Recording a value is a few atomic increments without any locking or allocation,
+ * so it is cheap enough to do for every event.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class LatencyHistogram {
+
+    /**
+     * The upper bounds of the buckets, in milliseconds.
+     * Values above the last bound are counted in an extra, unbounded, bucket.
+     */
+    private static final long[] BOUNDS = {
+        1, 2, 5, 10, 20, 50, 100, 200, 500,
+        1000, 2000, 5000, 10000, 30000, 60000, 120000, 300000, 600000, 1800000, 3600000,
+    };
+    private static final double PERCENT = 100.0;
+    private static final double MEDIAN = 50;
+    private static final double P95 = 95;
+    private static final double P99 = 99;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * The upper bounds of the buckets, in milliseconds, without the last unbounded bucket.
+     *
+     * @return a copy of the bounds.
+     */
+    public static long[] getBounds() {
+        return BOUNDS.clone();
+    }
+
+    /**
+     * Records a duration. Negative durations, for example because of clocks that differ, are ignored.
+     *
+     * @param millis the duration in milliseconds.
+     */
+    public void record(long millis) {
+        if (millis < 0) {
+            return;
+        }
+        buckets.incrementAndGet(indexOf(millis));
+        count.incrementAndGet();
+        sum.addAndGet(millis);
+        long current = max.get();
+        while (millis > current && !max.compareAndSet(current, millis)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Adds the values of another histogram to this one.
+     *
+     * @param other the other histogram.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.addAndGet(i, other.buckets.get(i));
+        }
+        count.addAndGet(other.getCount());
+        sum.addAndGet(other.getSum());
+        long otherMax = other.getMax();
+        long current = max.get();
+        while (otherMax > current && !max.compareAndSet(current, otherMax)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * The number of recorded durations.
+     *
+     * @return the count.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * The sum of all recorded durations.
+     *
+     * @return the sum in milliseconds.
+     */
+    public long getSum() {
+        return sum.get();
+    }
+
+    /**
+     * The longest recorded duration.
+     *
+     * @return the max in milliseconds.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * The average of the recorded durations.
+     *
+     * @return the mean in milliseconds, 0 if nothing has been recorded.
+     */
+    public long getMean() {
+        long c = getCount();
+        if (c <= 0) {
+            return 0;
+        }
+        return getSum() / c;
+    }
+
+    /**
+     * The number of durations in each bucket, the last one being the unbounded bucket.
+     *
+     * @return the counts.
+     * @see #getBounds()
+     */
+    public long[] getBucketCounts() {
+        long[] counts = new long[buckets.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return counts;
+    }
+
+    /**
+     * An estimate of the given percentile: the upper bound of the bucket that the percentile falls in,
+     * but never more than the longest recorded duration.
+     *
+     * @param percentile the percentile, between 0 and 100.
+     * @return the estimate in milliseconds, 0 if nothing has been recorded.
+     */
+    public long getPercentile(double percentile) {
+        long[] counts = getBucketCounts();
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+        if (total <= 0) {
+            return 0;
+        }
+        long rank = (long)Math.ceil(total * percentile / PERCENT);
+        long seen = 0;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(BOUNDS[i], getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * The median.
+     *
+     * @return the estimate in milliseconds.
+     * @see #getPercentile(double)
+     */
+    public long getP50() {
+        return getPercentile(MEDIAN);
+    }
+
+    /**
+     * The 95th percentile.
+     *
+     * @return the estimate in milliseconds.
+     * @see #getPercentile(double)
+     */
+    public long getP95() {
+        return getPercentile(P95);
+    }
+
+    /**
+     * The 99th percentile.
+     *
+     * @return the estimate in milliseconds.
+     * @see #getPercentile(double)
+     */
+    public long getP99() {
+        return getPercentile(P99);
+    }
+
+    /**
+     * The index of the bucket for the duration.
+     *
+     * @param millis the duration.
+     * @return the index.
+     */
+    private static int indexOf(long millis) {
+        for (int i = 0; i < BOUNDS.length; i++) {
+            if (millis <= BOUNDS[i]) {
+                return i;
+            }
+        }
+        return BOUNDS.length;
+    }
+}
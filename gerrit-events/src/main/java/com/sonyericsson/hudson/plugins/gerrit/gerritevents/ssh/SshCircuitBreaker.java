@@ -0,0 +1,197 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Keeps track of whether a Gerrit server can be connected to, so that connections aren't attempted
+ * over and over while it is down.
+ *
+ * The breaker is {@link State#CLOSED} while connecting works. When a connection fails it is {@link State#OPEN}
+ * and {@link SshConnectionFactory} fails fast instead of connecting, until a delay has passed.
+ * The delay starts at {@link #BASE_DELAY}, doubles with every failure in a row up to {@link #MAX_DELAY},
+ * and is randomized a bit so that many clients don't retry at the same time.
+ * After the delay the breaker is {@link State#HALF_OPEN} and the next connection is attempted;
+ * if it works the breaker is closed again, otherwise it opens with a longer delay.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class SshCircuitBreaker {
+
+    /**
+     * The states of the breaker.
+     */
+    public static enum State {
+        /**
+         * Connections work.
+         */
+        CLOSED,
+        /**
+         * The last connection failed, new connections fail fast until the delay has passed.
+         */
+        OPEN,
+        /**
+         * The delay has passed and a new connection can be tried.
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * The delay in milliseconds after the first failure.
+     */
+    public static final long BASE_DELAY = 2000;
+    /**
+     * The max delay in milliseconds between two attempts.
+     */
+    public static final long MAX_DELAY = 5 * 60 * 1000;
+    private static final int MAX_SHIFT = 20;
+    private static final Map<String, SshCircuitBreaker> BREAKERS = new HashMap<String, SshCircuitBreaker>();
+
+    private final String server;
+    private final Random random = new Random();
+    private State state = State.CLOSED;
+    private int failures = 0;
+    private long nextAttempt = 0;
+
+    /**
+     * Standard Constructor.
+     *
+     * @param server a name of the server, for the messages.
+     */
+    SshCircuitBreaker(String server) {
+        this.server = server;
+    }
+
+    /**
+     * The breaker of a server, created the first time it is asked for.
+     *
+     * @param host the host name.
+     * @param port the port.
+     * @return the breaker.
+     */
+    public static SshCircuitBreaker getInstance(String host, int port) {
+        String server = host + ":" + port;
+        synchronized (BREAKERS) {
+            SshCircuitBreaker breaker = BREAKERS.get(server);
+            if (breaker == null) {
+                breaker = new SshCircuitBreaker(server);
+                BREAKERS.put(server, breaker);
+            }
+            return breaker;
+        }
+    }
+
+    /**
+     * The current state, {@link State#OPEN} becomes {@link State#HALF_OPEN} when the delay has passed.
+     *
+     * @return the state.
+     */
+    public synchronized State getState() {
+        return getState(System.currentTimeMillis());
+    }
+
+    /**
+     * The current state at the given time.
+     *
+     * @param now the time.
+     * @return the state.
+     */
+    synchronized State getState(long now) {
+        if (state == State.OPEN && now >= nextAttempt) {
+            state = State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    /**
+     * The number of failed connections in a row.
+     *
+     * @return the number of failures.
+     */
+    public synchronized int getFailures() {
+        return failures;
+    }
+
+    /**
+     * How long until the next connection attempt is allowed.
+     *
+     * @return the delay in milliseconds, 0 if it is allowed now.
+     */
+    public synchronized long getDelay() {
+        if (getState() == State.OPEN) {
+            return Math.max(0, nextAttempt - System.currentTimeMillis());
+        }
+        return 0;
+    }
+
+    /**
+     * Throws an exception if the breaker is open.
+     *
+     * @throws SshConnectException if it is.
+     */
+    public synchronized void check() throws SshConnectException {
+        if (getState() == State.OPEN) {
+            throw new SshConnectException("Not connecting to " + server + " since the last " + failures
+                    + " attempts failed, next attempt in " + getDelay() + " ms.");
+        }
+    }
+
+    /**
+     * Records a successful connection, closing the breaker.
+     */
+    public synchronized void success() {
+        state = State.CLOSED;
+        failures = 0;
+        nextAttempt = 0;
+    }
+
+    /**
+     * Records a failed connection, opening the breaker.
+     *
+     * @return the delay in milliseconds until the next attempt.
+     */
+    public synchronized long failure() {
+        return failure(System.currentTimeMillis());
+    }
+
+    /**
+     * Records a failed connection at the given time, opening the breaker.
+     *
+     * @param now the time.
+     * @return the delay in milliseconds until the next attempt.
+     */
+    synchronized long failure(long now) {
+        failures++;
+        long delay = Math.min(BASE_DELAY << Math.min(failures - 1, MAX_SHIFT), MAX_DELAY);
+        //Half of the delay is fixed and half is random.
+        long half = delay / 2;
+        delay = half + (long)(random.nextDouble() * half);
+        state = State.OPEN;
+        nextAttempt = now + delay;
+        return delay;
+    }
+}
@@ -71,6 +71,7 @@ public interface SshConnection {
     /**
      * Execute an ssh command on the server, without closing the session
      * so that a Reader can be returned with streaming data from the server.
+     * The data is decoded as UTF-8 while it is read, which is what Gerrit writes regardless of platform.
      *
      * @param command the command to execute.
      * @return a Reader with streaming data from the server.
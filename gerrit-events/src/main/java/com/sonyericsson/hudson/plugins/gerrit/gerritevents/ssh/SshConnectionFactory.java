@@ -41,6 +41,8 @@ public abstract class SshConnectionFactory {
 
     /**
      * Creates a {@link SshConnection}.
+     * Fails fast without connecting if the {@link SshCircuitBreaker} of the server is open,
+     * and records the outcome in it otherwise.
      *
      * @param host           the host name
      * @param port           the port
@@ -52,6 +54,34 @@ public abstract class SshConnectionFactory {
      * @see SshConnectionImpl
      */
     public static SshConnection getConnection(String host, int port, Authentication authentication) throws IOException {
-        return new SshConnectionImpl(host, port, authentication);
+        return getConnection(host, port, authentication, false);
+    }
+
+    /**
+     * Creates a {@link SshConnection}, optionally even if the {@link SshCircuitBreaker} of the server is open.
+     * For when a user explicitly asks for a connection.
+     *
+     * @param host           the host name
+     * @param port           the port
+     * @param authentication the credentials
+     * @param force          true to connect even if the breaker is open.
+     * @return a new connection.
+     *
+     * @throws IOException if so.
+     */
+    public static SshConnection getConnection(String host, int port, Authentication authentication, boolean force)
+            throws IOException {
+        SshCircuitBreaker breaker = SshCircuitBreaker.getInstance(host, port);
+        if (!force) {
+            breaker.check();
+        }
+        try {
+            SshConnection connection = new SshConnectionImpl(host, port, authentication);
+            breaker.success();
+            return connection;
+        } catch (IOException e) {
+            breaker.failure();
+            throw e;
+        }
     }
 }
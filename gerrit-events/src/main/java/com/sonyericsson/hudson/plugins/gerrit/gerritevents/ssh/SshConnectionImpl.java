@@ -39,6 +39,7 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.charset.Charset;
 
 /**
  * A simple ssh client connection with private key.
@@ -56,6 +57,10 @@ public class SshConnectionImpl implements SshConnection {
      * SSH Command to open an "exec channel".
      */
     protected static final String CMD_EXEC = "exec";
+    /**
+     * The encoding of everything that Gerrit writes on a channel, regardless of the platform default.
+     */
+    public static final Charset UTF_8 = Charset.forName("UTF-8");
     private final JSch client;
     private Session connectSession;
     private Channel currentSession;
@@ -136,7 +141,7 @@ public class SshConnectionImpl implements SshConnection {
             Channel channel = connectSession.openChannel(CMD_EXEC);
             ((ChannelExec)channel).setCommand(command);
 
-            BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(channel.getInputStream()));
+            BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(channel.getInputStream(), UTF_8));
             logger.debug("connecting channel.");
             channel.connect();
 
@@ -182,7 +187,7 @@ public class SshConnectionImpl implements SshConnection {
         try {
             Channel channel = connectSession.openChannel("exec");
             ((ChannelExec)channel).setCommand(command);
-            InputStreamReader reader = new InputStreamReader(channel.getInputStream());
+            InputStreamReader reader = new InputStreamReader(channel.getInputStream(), UTF_8);
             channel.connect();
             return reader;
         } catch (JSchException ex) {
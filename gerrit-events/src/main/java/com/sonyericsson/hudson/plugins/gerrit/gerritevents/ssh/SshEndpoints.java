@@ -0,0 +1,253 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An ordered list of ssh endpoints of the same Gerrit server, the primary first and then the fail over ones.
+ * A connection is made to the first endpoint that is healthy, i.e. whose {@link SshCircuitBreaker} isn't open.
+ * Since the breakers are shared by everything that connects through {@link SshConnectionFactory},
+ * a failure seen by the stream reader, a query or a review command moves all of them to the next endpoint.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class SshEndpoints {
+
+    private static final Logger logger = LoggerFactory.getLogger(SshEndpoints.class);
+
+    private final List<Endpoint> endpoints;
+
+    /**
+     * Standard Constructor.
+     *
+     * @param host          the host name of the primary endpoint.
+     * @param port          the port of the primary endpoint.
+     * @param failoverHosts the fail over endpoints as "host[:port]" separated by spaces or commas,
+     *                      the port of the primary is used when none is given. Null if there are none.
+     */
+    public SshEndpoints(String host, int port, String failoverHosts) {
+        List<Endpoint> list = new ArrayList<Endpoint>();
+        list.add(new Endpoint(host, port));
+        if (failoverHosts != null) {
+            for (String str : failoverHosts.trim().split("[\\s,]+")) {
+                Endpoint endpoint = parse(str, port);
+                if (endpoint != null && !list.contains(endpoint)) {
+                    list.add(endpoint);
+                }
+            }
+        }
+        this.endpoints = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Parses a "host[:port]" string.
+     *
+     * @param str         the string.
+     * @param defaultPort the port to use if there is none in the string.
+     * @return the endpoint, or null if the string isn't valid.
+     */
+    static Endpoint parse(String str, int defaultPort) {
+        if (str.length() <= 0) {
+            return null;
+        }
+        int colon = str.lastIndexOf(':');
+        if (colon < 0) {
+            return new Endpoint(str, defaultPort);
+        }
+        try {
+            int port = Integer.parseInt(str.substring(colon + 1));
+            if (colon > 0 && port > 0) {
+                return new Endpoint(str.substring(0, colon), port);
+            }
+        } catch (NumberFormatException e) {
+            logger.trace("Not a port number.", e);
+        }
+        logger.warn("Ignoring the invalid fail over endpoint {}", str);
+        return null;
+    }
+
+    /**
+     * All endpoints, the primary first.
+     *
+     * @return the endpoints.
+     */
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * The primary endpoint.
+     *
+     * @return the endpoint.
+     */
+    public Endpoint getPrimary() {
+        return endpoints.get(0);
+    }
+
+    /**
+     * The first endpoint whose breaker isn't open.
+     * If all of them are open it is the one that will be allowed to be tried first.
+     *
+     * @return the endpoint.
+     */
+    public Endpoint getHealthy() {
+        Endpoint soonest = null;
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.getBreaker().getState() != SshCircuitBreaker.State.OPEN) {
+                return endpoint;
+            }
+            if (soonest == null || endpoint.getBreaker().getDelay() < soonest.getBreaker().getDelay()) {
+                soonest = endpoint;
+            }
+        }
+        return soonest;
+    }
+
+    /**
+     * How long until any endpoint can be tried.
+     *
+     * @return the delay in milliseconds, 0 if one can be tried now.
+     */
+    public long getDelay() {
+        return getHealthy().getBreaker().getDelay();
+    }
+
+    /**
+     * Connects to the first healthy endpoint, trying the next healthy one if that fails.
+     *
+     * @param authentication the credentials.
+     * @return the connection.
+     *
+     * @throws IOException from the last attempted endpoint if none of them could be connected to.
+     */
+    public SshConnection getConnection(Authentication authentication) throws IOException {
+        IOException last = null;
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.getBreaker().getState() == SshCircuitBreaker.State.OPEN) {
+                continue;
+            }
+            try {
+                return endpoint.getConnection(authentication, false);
+            } catch (IOException e) {
+                logger.debug("Could not connect to " + endpoint, e);
+                last = e;
+            }
+        }
+        if (last != null) {
+            throw last;
+        }
+        //All breakers are open, let the one to be tried next fail fast.
+        return getHealthy().getConnection(authentication, false);
+    }
+
+    @Override
+    public String toString() {
+        return endpoints.toString();
+    }
+
+    /**
+     * A host and port to connect to.
+     */
+    public static final class Endpoint {
+        private final String host;
+        private final int port;
+
+        /**
+         * Standard Constructor.
+         *
+         * @param host the host name.
+         * @param port the port.
+         */
+        public Endpoint(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        /**
+         * The host name.
+         *
+         * @return the host name.
+         */
+        public String getHost() {
+            return host;
+        }
+
+        /**
+         * The port.
+         *
+         * @return the port.
+         */
+        public int getPort() {
+            return port;
+        }
+
+        /**
+         * The circuit breaker of the endpoint.
+         *
+         * @return the breaker.
+         */
+        public SshCircuitBreaker getBreaker() {
+            return SshCircuitBreaker.getInstance(host, port);
+        }
+
+        /**
+         * Connects to the endpoint.
+         *
+         * @param authentication the credentials.
+         * @param force          true to connect even if the breaker is open.
+         * @return the connection.
+         *
+         * @throws IOException if so.
+         */
+        public SshConnection getConnection(Authentication authentication, boolean force) throws IOException {
+            return SshConnectionFactory.getConnection(host, port, authentication, force);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Endpoint)) {
+                return false;
+            }
+            Endpoint other = (Endpoint)obj;
+            return port == other.port && host.equals(other.host);
+        }
+
+        @Override
+        public int hashCode() {
+            return toString().hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return host + ":" + port;
+        }
+    }
+}
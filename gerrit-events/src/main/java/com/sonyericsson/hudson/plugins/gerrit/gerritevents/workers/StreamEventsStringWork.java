@@ -25,7 +25,12 @@
 package com.sonyericsson.hudson.plugins.gerrit.gerritevents.workers;
 
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritJsonEventFactory;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.GerritEvent;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.GerritTriggeredEvent;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.latency.EventLatency;
 import net.sf.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Top of the hierarchies of work, converts the string to JSON if it is interesting and usable.
@@ -34,22 +39,70 @@ import net.sf.json.JSONObject;
  */
 public class StreamEventsStringWork extends AbstractJsonObjectWork {
 
+    private static final Logger logger = LoggerFactory.getLogger(StreamEventsStringWork.class);
+
     private String line;
+    private long receivedOn;
+    private EventLatency latency;
 
     /**
      * Default constructor.
+     * The line is considered received when the work is created, no latency is recorded.
      * @param line a line of text from the stream-events stream of events.
      */
     public StreamEventsStringWork(String line) {
+        this(line, null);
+    }
+
+    /**
+     * Standard constructor.
+     * The line is considered received when the work is created.
+     * @param line a line of text from the stream-events stream of events.
+     * @param latency where to record the latency, the one of the server that sent the line, or null.
+     */
+    public StreamEventsStringWork(String line, EventLatency latency) {
+        this(line, System.currentTimeMillis(), latency);
+    }
+
+    /**
+     * Constructor for a line that was read from the stream before the work was created.
+     * @param line a line of text from the stream-events stream of events.
+     * @param receivedOn when the line was read from the stream, in milliseconds.
+     * @param latency where to record the latency, the one of the server that sent the line, or null.
+     */
+    public StreamEventsStringWork(String line, long receivedOn, EventLatency latency) {
         this.line = line;
+        this.latency = latency;
+        this.receivedOn = receivedOn;
     }
 
+    /**
+     * Converts the line to an event and notifies the listeners of it,
+     * recording how long the line waited in the queue and how long it took to decode.
+     * @param coordinator the coordinator.
+     */
     @Override
     public void perform(Coordinator coordinator) {
+        long dequeuedOn = System.currentTimeMillis();
         JSONObject obj = GerritJsonEventFactory.getJsonObjectIfInterestingAndUsable(line);
-        if (obj != null) {
-            perform(obj, coordinator);
+        if (obj == null) {
+            return;
+        }
+        GerritEvent event = GerritJsonEventFactory.getEvent(obj);
+        if (event == null) {
+            logger.debug("No event extracted!");
+            return;
+        }
+        if (latency != null) {
+            latency.record(EventLatency.Stage.QUEUED, event, dequeuedOn - receivedOn);
+            latency.record(EventLatency.Stage.DECODE, event, System.currentTimeMillis() - dequeuedOn);
+            latency.recordGerritDelay(event, obj, receivedOn);
+        }
+        if (event instanceof GerritTriggeredEvent) {
+            ((GerritTriggeredEvent)event).setReceivedOn(receivedOn);
         }
+        logger.debug("Event is: {}", event);
+        perform(event, coordinator);
     }
 
     @Override
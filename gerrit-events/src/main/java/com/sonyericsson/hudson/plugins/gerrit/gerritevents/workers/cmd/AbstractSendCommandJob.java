@@ -26,8 +26,11 @@ package com.sonyericsson.hudson.plugins.gerrit.gerritevents.workers.cmd;
 
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritCmdRunner;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritConnectionConfig;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.GerritEvent;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.latency.EventLatency;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh.SshConnectException;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh.SshConnection;
-import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh.SshConnectionFactory;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh.SshEndpoints;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -62,6 +65,34 @@ public abstract class AbstractSendCommandJob implements Runnable, GerritCmdRunne
         return config;
     }
 
+    /**
+     * The event that the command is sent for, used to measure the latency of the command per event type
+     * and project.
+     * @return the event, or null if the command isn't for an event.
+     */
+    public GerritEvent getEvent() {
+        return null;
+    }
+
+    /**
+     * The end to end stage that is completed when the job has run,
+     * measured from when the event was read from the stream.
+     * @return the stage, or null if the job doesn't complete any.
+     * @see EventLatency#recordSinceReceived(EventLatency.Stage, GerritEvent)
+     */
+    public EventLatency.Stage getCompletedStage() {
+        return null;
+    }
+
+    /**
+     * The endpoints of the Gerrit server in the config, the command is sent to the first healthy one.
+     * @return the endpoints.
+     */
+    protected SshEndpoints getEndpoints() {
+        return new SshEndpoints(config.getGerritHostName(), config.getGerritSshPort(),
+                config.getGerritFailoverHosts());
+    }
+
     /**
      * Sends a command to the Gerrit server.
      * @param command the command.
@@ -69,12 +100,17 @@ public abstract class AbstractSendCommandJob implements Runnable, GerritCmdRunne
      */
     @Override
     public boolean sendCommand(String command) {
+        long start = System.currentTimeMillis();
         try {
-            SshConnection ssh = SshConnectionFactory.getConnection(config.getGerritHostName(),
-                    config.getGerritSshPort(), config.getGerritAuthentication());
+            SshConnection ssh = getEndpoints().getConnection(config.getGerritAuthentication());
             ssh.executeCommand(command);
             ssh.disconnect();
+            EventLatency.getInstance(config).record(EventLatency.Stage.SEND, getEvent(),
+                    System.currentTimeMillis() - start);
             return true;
+        } catch (SshConnectException ex) {
+            logger.warn("Could not run command " + command + ": " + ex.getMessage());
+            return false;
         } catch (Exception ex) {
             logger.error("Could not run command " + command, ex);
             return false;
@@ -89,11 +125,13 @@ public abstract class AbstractSendCommandJob implements Runnable, GerritCmdRunne
     @Override
     public String sendCommandStr(String command) {
         try {
-            SshConnection ssh = SshConnectionFactory.getConnection(config.getGerritHostName(),
-                    config.getGerritSshPort(), config.getGerritAuthentication());
+            SshConnection ssh = getEndpoints().getConnection(config.getGerritAuthentication());
             String str = ssh.executeCommand(command);
             ssh.disconnect();
             return str;
+        } catch (SshConnectException ex) {
+            logger.warn("Could not run command " + command + ": " + ex.getMessage());
+            return null;
         } catch (Exception ex) {
             logger.error("Could not run command " + command, ex);
             return null;
@@ -0,0 +1,247 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.gerritevents;
+
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.attr.Change;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.attr.PatchSet;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.PatchsetCreated;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.workers.Work;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for {@link GerritEventCatchUp}.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class GerritEventCatchUpTest {
+
+    private static final long NOW_SECONDS = System.currentTimeMillis() / 1000;
+
+    /**
+     * Tests that only the patch sets created since the given time are found.
+     */
+    @Test
+    public void testFindMissedSince() {
+        GerritEventCatchUp catchUp = new GerritEventCatchUp();
+        List<JSONObject> result = new LinkedList<JSONObject>();
+        result.add(createChange("100", NOW_SECONDS - 3600, NOW_SECONDS - 10));
+        result.add(createStats());
+
+        List<PatchsetCreated> missed = catchUp.findMissed(result, (NOW_SECONDS - 600) * 1000);
+        assertEquals(1, missed.size());
+        assertEquals("100", missed.get(0).getChange().getNumber());
+        assertEquals("2", missed.get(0).getPatchSet().getNumber());
+        assertEquals("uploader", missed.get(0).getAccount().getName());
+        assertTrue(catchUp.isHandled("100", "2"));
+        assertFalse(catchUp.isHandled("100", "1"));
+    }
+
+    /**
+     * Tests that patch sets that have been handled are not found again.
+     */
+    @Test
+    public void testFindMissedSkipsHandled() {
+        GerritEventCatchUp catchUp = new GerritEventCatchUp();
+        PatchsetCreated handled = new PatchsetCreated();
+        Change change = new Change();
+        change.setNumber("100");
+        handled.setChange(change);
+        PatchSet patchSet = new PatchSet();
+        patchSet.setNumber("2");
+        handled.setPatchset(patchSet);
+        catchUp.handled(handled);
+
+        List<JSONObject> result = new LinkedList<JSONObject>();
+        result.add(createChange("100", NOW_SECONDS - 20, NOW_SECONDS - 10));
+        List<PatchsetCreated> missed = catchUp.findMissed(result, (NOW_SECONDS - 600) * 1000);
+        assertEquals(1, missed.size());
+        assertEquals("1", missed.get(0).getPatchSet().getNumber());
+        assertTrue(catchUp.findMissed(result, (NOW_SECONDS - 600) * 1000).isEmpty());
+    }
+
+    /**
+     * Tests that a patch set of a line that is still on the work queue is not found as missed.
+     */
+    @Test
+    public void testQueuedIsNotMissed() {
+        GerritEventCatchUp catchUp = new GerritEventCatchUp();
+        catchUp.queued("{\"type\":\"patchset-created\",\"change\":{\"project\":\"project\",\"number\":\"100\"},"
+                + "\"patchSet\":{\"number\":\"2\",\"revision\":\"abc\"}}");
+        catchUp.queued("{\"type\":\"ref-updated\",\"refUpdate\":{\"project\":\"project\"}}");
+        assertTrue(catchUp.isHandled("100", "2"));
+
+        List<JSONObject> result = new LinkedList<JSONObject>();
+        result.add(createChange("100", NOW_SECONDS - 20, NOW_SECONDS - 10));
+        List<PatchsetCreated> missed = catchUp.findMissed(result, (NOW_SECONDS - 600) * 1000);
+        assertEquals(1, missed.size());
+        assertEquals("1", missed.get(0).getPatchSet().getNumber());
+    }
+
+    /**
+     * Tests that the missed events of every page of the query result are put on the queue.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testCatchUp() throws Exception {
+        List<JSONObject> result = new LinkedList<JSONObject>();
+        result.add(createChange("100", NOW_SECONDS - 20, NOW_SECONDS - 10));
+        result.add(createChange("101", NOW_SECONDS - 5000, NOW_SECONDS - 4000));
+        result.add(createChange("102", NOW_SECONDS - 30, NOW_SECONDS - 5000));
+        GerritQueryHandler queryHandler = mockQueryHandler(result, 2, true);
+        GerritEventCatchUp catchUp = new GerritEventCatchUp();
+        catchUp.setEventsPerSecond(0);
+        LinkedBlockingQueue<Work> queue = new LinkedBlockingQueue<Work>();
+
+        assertEquals(3, catchUp.catchUp(queryHandler, (NOW_SECONDS - 60) * 1000, queue));
+        assertEquals(3, queue.size());
+        verify(queryHandler).queryJava(startsWith("status:open -age:"), eq(2), eq(true), anyBoolean(), anyBoolean(),
+                any(GerritQueryVisitor.class));
+    }
+
+    /**
+     * Tests that the catch up ends if the server ignores --start and returns the first page again.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testCatchUpWithoutStartSupport() throws Exception {
+        List<JSONObject> result = new LinkedList<JSONObject>();
+        result.add(createChange("100", NOW_SECONDS - 20, NOW_SECONDS - 10));
+        result.add(createChange("101", NOW_SECONDS - 5000, NOW_SECONDS - 4000));
+        GerritQueryHandler queryHandler = mockQueryHandler(result, 2, false);
+        GerritEventCatchUp catchUp = new GerritEventCatchUp();
+        catchUp.setEventsPerSecond(0);
+        LinkedBlockingQueue<Work> queue = new LinkedBlockingQueue<Work>();
+
+        assertEquals(2, catchUp.catchUp(queryHandler, (NOW_SECONDS - 60) * 1000, queue));
+        assertEquals(2, queue.size());
+    }
+
+    /**
+     * Mocks a query handler that returns the result of a query a page at a time, followed by the stats.
+     *
+     * @param result        the whole result.
+     * @param pageSize      the max number of changes on a page.
+     * @param supportsStart if --start is supported, or if the first page is always returned.
+     * @return the query handler.
+     * @throws Exception if so.
+     */
+    private GerritQueryHandler mockQueryHandler(final List<JSONObject> result, final int pageSize,
+                                                final boolean supportsStart) throws Exception {
+        GerritQueryHandler queryHandler = mock(GerritQueryHandler.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                int start = 0;
+                if (supportsStart) {
+                    start = (Integer)invocation.getArguments()[1];
+                }
+                GerritQueryVisitor visitor = (GerritQueryVisitor)invocation.getArguments()[5];
+                for (int i = start; i < result.size() && i < start + pageSize; i++) {
+                    visitor.visit(result.get(i));
+                }
+                visitor.visit(createStats());
+                return null;
+            }
+        }).when(queryHandler).queryJava(startsWith("status:open -age:"), anyInt(), eq(true), anyBoolean(),
+                anyBoolean(), any(GerritQueryVisitor.class));
+        return queryHandler;
+    }
+
+    /**
+     * Creates a change as returned by a query with two patch sets.
+     *
+     * @param number        the change number.
+     * @param firstCreated  when the first patch set was created.
+     * @param secondCreated when the second patch set was created.
+     * @return the change.
+     */
+    private JSONObject createChange(String number, long firstCreated, long secondCreated) {
+        JSONObject change = new JSONObject();
+        change.put("project", "project");
+        change.put("branch", "master");
+        change.put("id", "I" + number);
+        change.put("number", number);
+        change.put("subject", "subject");
+        change.put("url", "http://gerrit/" + number);
+        JSONArray patchSets = new JSONArray();
+        patchSets.add(createPatchSet("1", firstCreated));
+        patchSets.add(createPatchSet("2", secondCreated));
+        change.put("patchSets", patchSets);
+        return change;
+    }
+
+    /**
+     * Creates a patch set as returned by a query.
+     *
+     * @param number  the patch set number.
+     * @param created when it was created.
+     * @return the patch set.
+     */
+    private JSONObject createPatchSet(String number, long created) {
+        JSONObject patchSet = new JSONObject();
+        patchSet.put("number", number);
+        patchSet.put("revision", "rev" + number);
+        patchSet.put("ref", "refs/changes/00/100/" + number);
+        patchSet.put("createdOn", created);
+        JSONObject uploader = new JSONObject();
+        uploader.put("name", "uploader");
+        uploader.put("email", "uploader@example.com");
+        patchSet.put("uploader", uploader);
+        return patchSet;
+    }
+
+    /**
+     * Creates the stats line of a query result.
+     *
+     * @return the stats.
+     */
+    private JSONObject createStats() {
+        JSONObject stats = new JSONObject();
+        stats.put("type", "stats");
+        stats.put("rowCount", 1);
+        return stats;
+    }
+}
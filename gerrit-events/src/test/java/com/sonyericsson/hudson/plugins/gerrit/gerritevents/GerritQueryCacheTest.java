@@ -0,0 +1,169 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.gerritevents;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for {@link GerritQueryCache}.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class GerritQueryCacheTest {
+
+    private static final String STATS = "{\"type\":\"stats\",\"rowCount\":1}";
+
+    /**
+     * Tests that a result is evicted when one of its changes changes, but not when another change does.
+     */
+    @Test
+    public void testChanged() {
+        GerritQueryCache cache = new GerritQueryCache();
+        cache.put("a", Arrays.asList(row(100, 2), STATS));
+        cache.put("b", Arrays.asList(row(200, 1), STATS));
+        cache.put("c", Arrays.asList(row(100, 1), row(201, 1), STATS));
+
+        cache.changed("300");
+        assertEquals(3, cache.size());
+
+        cache.changed("100");
+        assertNull(cache.get("a"));
+        assertNotNull(cache.get("b"));
+        assertNull(cache.get("c"));
+        assertEquals(2, cache.getInvalidations());
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    /**
+     * Tests that the result of a query isn't kept if one of its changes changed while the query was running,
+     * or if the cache was cleared meanwhile.
+     */
+    @Test
+    public void testChangedWhileQueryRuns() {
+        GerritQueryCache cache = new GerritQueryCache();
+        long generation = cache.getGeneration();
+        cache.changed("100");
+        cache.put("a", Arrays.asList(row(100, 2), STATS), generation);
+        cache.put("b", Arrays.asList(row(200, 1), STATS), generation);
+        assertNull(cache.get("a"));
+        assertNotNull(cache.get("b"));
+
+        generation = cache.getGeneration();
+        cache.put("c", Arrays.asList(row(100, 3), STATS), generation);
+        assertNotNull(cache.get("c"));
+
+        generation = cache.getGeneration();
+        cache.clear();
+        cache.put("d", Arrays.asList(row(300, 1), STATS), generation);
+        assertNull(cache.get("d"));
+    }
+
+    /**
+     * Tests that a result isn't kept if the changes that changed while its query was running have been forgotten.
+     */
+    @Test
+    public void testForgottenChangesWhileQueryRuns() {
+        GerritQueryCache cache = new GerritQueryCache();
+        long generation = cache.getGeneration();
+        for (int i = 0; i <= GerritQueryCache.MAX_CHANGED; i++) {
+            cache.changed(String.valueOf(i));
+        }
+        cache.put("a", Arrays.asList(row(5000, 1), STATS), generation);
+        assertNull(cache.get("a"));
+        cache.put("a", Arrays.asList(row(5000, 1), STATS), cache.getGeneration());
+        assertNotNull(cache.get("a"));
+    }
+
+    /**
+     * Tests that the change number is found in the lines of the stream-events command,
+     * also when the subject looks like a number property.
+     */
+    @Test
+    public void testFindChangeNumber() {
+        assertEquals("1000", GerritJsonEventFactory.findChangeNumber("{\"type\":\"comment-added\","
+                + "\"change\":{\"project\":\"x\",\"subject\":\"Fix \\\"number\\\":\\\"1\\\"\","
+                + "\"number\":\"1000\"},\"patchSet\":{\"number\":\"2\"}}"));
+        assertEquals("12", GerritJsonEventFactory.findChangeNumber(
+                "{\"type\":\"change-merged\",\"change\":{\"number\":12}}"));
+        assertNull(GerritJsonEventFactory.findChangeNumber(
+                "{\"type\":\"ref-updated\",\"refUpdate\":{\"refName\":\"master\",\"project\":\"x\"}}"));
+        assertNull(GerritJsonEventFactory.findChangeNumber("{\"type\":\"x\",\"change\":{\"number\":\"\"}}"));
+        assertNull(GerritJsonEventFactory.findChangeNumber(null));
+    }
+
+    /**
+     * Tests that the least recently used result is evicted, and that too big results aren't kept.
+     */
+    @Test
+    public void testBounds() {
+        GerritQueryCache cache = new GerritQueryCache();
+        for (int i = 0; i < GerritQueryCache.MAX_ENTRIES; i++) {
+            cache.put("q" + i, Arrays.asList(row(i, 1)));
+        }
+        assertNotNull(cache.get("q0"));
+        cache.put("new", Arrays.asList(row(1000, 1)));
+        assertEquals(GerritQueryCache.MAX_ENTRIES, cache.size());
+        assertNotNull(cache.get("q0"));
+        assertNull(cache.get("q1"));
+
+        List<String> big = new ArrayList<String>();
+        for (int i = 0; i <= GerritQueryCache.MAX_ROWS; i++) {
+            big.add(row(i, 1));
+        }
+        cache.put("big", big);
+        assertNull(cache.get("big"));
+    }
+
+    /**
+     * Tests that white space is normalised in the key, except within quotes.
+     */
+    @Test
+    public void testKey() {
+        assertEquals("gerrit query --format=JSON status:open project:x",
+                GerritQueryCache.key("gerrit query --format=JSON", "  status:open \t project:x "));
+        assertEquals("gerrit query --format=JSON message:\"a  b\" is:open",
+                GerritQueryCache.key("gerrit query --format=JSON", "message:\"a  b\"   is:open"));
+    }
+
+    /**
+     * Creates a row of a query result.
+     *
+     * @param change   the change number.
+     * @param patchSet the number of the current patch set.
+     * @return the row.
+     */
+    private static String row(int change, int patchSet) {
+        return "{\"project\":\"x\",\"id\":\"I" + change + "\",\"number\":\"" + change
+                + "\",\"currentPatchSet\":{\"number\":\"" + patchSet + "\"}}";
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.gerritevents;
+
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh.Authentication;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh.SshConnection;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh.SshEndpoints;
+import net.sf.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link GerritQueryHandler}.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class GerritQueryHandlerTest {
+
+    private static final String CHANGE1 = "{\"project\":\"a\",\"number\":\"1\"}";
+    private static final String CHANGE2 = "{\"project\":\"b\",\"number\":\"2\"}";
+    private static final String STATS = "{\"type\":\"stats\",\"rowCount\":2}";
+
+    private SshConnection ssh;
+    private GerritQueryHandler handler;
+
+    /**
+     * Creates a handler that gets its result from a mocked connection.
+     *
+     * @throws Exception if so.
+     */
+    @Before
+    public void setUp() throws Exception {
+        Authentication authentication = new Authentication(new File("key"), "user");
+        SshEndpoints endpoints = mock(SshEndpoints.class);
+        ssh = mock(SshConnection.class);
+        when(endpoints.getConnection(same(authentication))).thenReturn(ssh);
+        when(ssh.executeCommandReader(anyString())).thenReturn(
+                new StringReader(" " + CHANGE1 + "\n" + CHANGE2 + " \n" + STATS + "\n"));
+        handler = new GerritQueryHandler(endpoints, authentication);
+    }
+
+    /**
+     * Tests that the visitor gets each line of the result, trimmed and unparsed.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testQueryJsonVisitor() throws Exception {
+        final List<String> lines = new ArrayList<String>();
+        handler.queryJson("status:open", 0, false, false, true, new GerritQueryHandler.LineVisitor() {
+            @Override
+            public boolean visit(String line) {
+                lines.add(line);
+                return true;
+            }
+        });
+        assertEquals(3, lines.size());
+        assertEquals(CHANGE1, lines.get(0));
+        assertEquals(CHANGE2, lines.get(1));
+        assertEquals(STATS, lines.get(2));
+        verify(ssh).executeCommandReader("gerrit query --format=JSON --files \"status:open\"");
+        verify(ssh).disconnect();
+    }
+
+    /**
+     * Tests that the reading stops when the visitor has seen enough.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testQueryJavaVisitorStops() throws Exception {
+        final List<JSONObject> rows = new ArrayList<JSONObject>();
+        handler.queryJava("status:open", 0, false, true, false, new GerritQueryVisitor() {
+            @Override
+            public boolean visit(JSONObject json) {
+                rows.add(json);
+                return false;
+            }
+        });
+        assertEquals(1, rows.size());
+        assertEquals("1", rows.get(0).getString("number"));
+        verify(ssh).disconnect();
+    }
+
+    /**
+     * Tests that the list based query still gets the whole result.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testQueryJsonList() throws Exception {
+        List<String> lines = handler.queryJson("status:open");
+        assertEquals(3, lines.size());
+        assertTrue(lines.contains(CHANGE2));
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.gerritevents;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests for {@link ListenerProfile}.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class ListenerProfileTest {
+
+    private static final long NOW = 1000000;
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    /**
+     * Tests the counts and times.
+     */
+    @Test
+    public void testStatistics() {
+        ListenerProfile profile = new ListenerProfile(mock(GerritEventListener.class));
+        profile.begin();
+        ListenerProfile.markMatched();
+        profile.end(10 * NANOS_PER_MILLI, 0, NOW);
+        profile.begin();
+        profile.end(30 * NANOS_PER_MILLI, 0, NOW);
+        ListenerProfile.markMatched();
+
+        assertEquals(2, profile.getInvocations());
+        assertEquals(1, profile.getMatches());
+        assertEquals(40, profile.getTotalTime());
+        assertEquals(30, profile.getMaxTime());
+        assertEquals(20.0, profile.getMeanTime(), 0.001);
+    }
+
+    /**
+     * Tests that a listener is skipped after exceeding its budget too many times in a row,
+     * and that it is notified again when the skip period is over.
+     */
+    @Test
+    public void testBudget() {
+        ListenerProfile profile = new ListenerProfile(mock(GerritEventListener.class));
+        for (int i = 0; i < ListenerProfile.MAX_OVER_BUDGET - 1; i++) {
+            profile.end(200 * NANOS_PER_MILLI, 100, NOW);
+        }
+        assertFalse(profile.skip(NOW));
+        profile.end(200 * NANOS_PER_MILLI, 100, NOW);
+
+        assertTrue(profile.skip(NOW + 1));
+        assertTrue(profile.skip(NOW + ListenerProfile.SKIP_PERIOD - 1));
+        assertEquals(2, profile.getSkipped());
+        assertFalse(profile.skip(NOW + ListenerProfile.SKIP_PERIOD));
+    }
+
+    /**
+     * Tests that one invocation within the budget resets the count.
+     */
+    @Test
+    public void testBudgetNotInARow() {
+        ListenerProfile profile = new ListenerProfile(mock(GerritEventListener.class));
+        for (int i = 0; i < ListenerProfile.MAX_OVER_BUDGET * 2; i++) {
+            profile.end(200 * NANOS_PER_MILLI, 100, NOW);
+            if (i % 2 == 0) {
+                profile.end(50 * NANOS_PER_MILLI, 100, NOW);
+            }
+        }
+        assertFalse(profile.skip(NOW));
+    }
+}
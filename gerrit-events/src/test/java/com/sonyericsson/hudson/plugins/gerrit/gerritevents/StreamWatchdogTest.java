@@ -0,0 +1,166 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.gerritevents;
+
+import com.jcraft.jsch.ChannelExec;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh.SshConnection;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh.SshException;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link StreamWatchdog}.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class StreamWatchdogTest {
+
+    private static final long NOW = 1000000;
+
+    private GerritHandler handler;
+    private SshConnection connection;
+    private StreamWatchdog watchdog;
+
+    /**
+     * Creates a watchdog for a connected handler.
+     */
+    @Before
+    public void setUp() {
+        handler = mock(GerritHandler.class);
+        connection = mock(SshConnection.class);
+        when(handler.isConnected()).thenReturn(true);
+        when(handler.getStreamConnection()).thenReturn(connection);
+        watchdog = new StreamWatchdog(handler);
+        watchdog.setProbeTimeout(200);
+    }
+
+    /**
+     * Tests that nothing is done while events are coming in.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testRecentEvents() throws Exception {
+        when(handler.getLastEventAge(anyLong())).thenReturn(1000L);
+        assertFalse(watchdog.check(NOW));
+        verify(connection, never()).executeCommandChannel(anyString());
+        verify(handler, never()).reconnect(anyString());
+    }
+
+    /**
+     * Tests that a quiet stream with a connection that answers the probe is left alone,
+     * and that it isn't probed again until the probe interval has passed.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testQuietButAlive() throws Exception {
+        when(handler.getLastEventAge(anyLong())).thenReturn(StreamWatchdog.DEFAULT_PROBE_INTERVAL);
+        ChannelExec channel = mock(ChannelExec.class);
+        when(channel.isClosed()).thenReturn(true);
+        when(connection.executeCommandChannel("gerrit version")).thenReturn(channel);
+
+        assertFalse(watchdog.check(NOW));
+        assertFalse(watchdog.check(NOW + StreamWatchdog.CHECK_INTERVAL));
+
+        verify(connection).executeCommandChannel("gerrit version");
+        verify(channel).disconnect();
+        verify(handler, never()).reconnect(anyString());
+        assertEquals(0, watchdog.getReconnects());
+    }
+
+    /**
+     * Tests that the stream is reconnected when the probe doesn't answer in time.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testProbeTimesOut() throws Exception {
+        when(handler.getLastEventAge(anyLong())).thenReturn(StreamWatchdog.DEFAULT_PROBE_INTERVAL);
+        ChannelExec channel = mock(ChannelExec.class);
+        when(channel.isClosed()).thenReturn(false);
+        when(connection.executeCommandChannel("gerrit version")).thenReturn(channel);
+
+        assertTrue(watchdog.check(NOW));
+
+        verify(handler).reconnect(startsWith("The stream of events seems stale"));
+        verify(channel).disconnect();
+        assertEquals(1, watchdog.getReconnects());
+    }
+
+    /**
+     * Tests that the stream is reconnected when the probe fails.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testProbeFails() throws Exception {
+        when(handler.getLastEventAge(anyLong())).thenReturn(StreamWatchdog.DEFAULT_PROBE_INTERVAL);
+        when(connection.executeCommandChannel("gerrit version")).thenThrow(new SshException("channel is not opened."));
+
+        assertTrue(watchdog.check(NOW));
+        verify(handler).reconnect(startsWith("The stream of events seems stale"));
+    }
+
+    /**
+     * Tests that the stream is reconnected after the stale timeout even if the probes succeed.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testStaleTimeout() throws Exception {
+        watchdog.setStaleTimeout(StreamWatchdog.DEFAULT_PROBE_INTERVAL * 2);
+        when(handler.getLastEventAge(anyLong())).thenReturn(StreamWatchdog.DEFAULT_PROBE_INTERVAL * 2);
+
+        assertTrue(watchdog.check(NOW));
+        verify(connection, never()).executeCommandChannel(anyString());
+        verify(handler).reconnect(startsWith("The stream of events seems stale"));
+    }
+
+    /**
+     * Tests that nothing is done while the stream isn't connected.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testNotConnected() throws Exception {
+        when(handler.isConnected()).thenReturn(false);
+        when(handler.getLastEventAge(anyLong())).thenReturn(StreamWatchdog.DEFAULT_PROBE_INTERVAL * 2);
+        watchdog.setStaleTimeout(StreamWatchdog.DEFAULT_PROBE_INTERVAL);
+
+        assertFalse(watchdog.check(NOW));
+        verify(handler, never()).reconnect(anyString());
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.gerritevents;
+
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link WatchedProjects}.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class WatchedProjectsTest {
+
+    private static final String LINE = "{\"type\":\"patchset-created\",\"change\":{\"project\":\"%s\","
+            + "\"branch\":\"master\",\"subject\":\"Fix \\\"project\\\":\\\"other\\\"\"}}";
+
+    /**
+     * Tests that the project is found in the lines of the stream-events command.
+     */
+    @Test
+    public void testFindProject() {
+        assertEquals("platform/docs", GerritJsonEventFactory.findProject(String.format(LINE, "platform/docs")));
+        assertEquals("x", GerritJsonEventFactory.findProject(
+                "{\"type\":\"ref-updated\",\"refUpdate\":{\"refName\":\"master\",\"project\":\"x\"}}"));
+        assertNull(GerritJsonEventFactory.findProject(String.format(LINE, "a\\\\b")));
+        assertNull(GerritJsonEventFactory.findProject(String.format(LINE, "")));
+        assertNull(GerritJsonEventFactory.findProject("{\"type\":\"ref-updated\"}"));
+        assertNull(GerritJsonEventFactory.findProject(null));
+    }
+
+    /**
+     * Tests that the events of unwatched projects are dropped and counted, and that the answer is cached.
+     */
+    @Test
+    public void testAccept() {
+        ProjectAwareListener listener = mock(ProjectAwareListener.class);
+        when(listener.isWatching("watched")).thenReturn(true);
+        Collection<GerritEventListener> listeners = new CopyOnWriteArraySet<GerritEventListener>();
+        listeners.add(listener);
+        WatchedProjects projects = new WatchedProjects(listeners);
+
+        assertTrue(projects.accept(String.format(LINE, "watched")));
+        assertFalse(projects.accept(String.format(LINE, "docs")));
+        assertFalse(projects.accept(String.format(LINE, "docs")));
+        assertFalse(projects.accept(String.format(LINE, "mirror")));
+        assertTrue(projects.accept("{\"type\":\"ref-updated\"}"));
+        verify(listener, times(1)).isWatching("docs");
+
+        Map<String, Long> dropped = projects.getDroppedEvents();
+        assertEquals(2, dropped.size());
+        assertEquals("docs", dropped.keySet().iterator().next());
+        assertEquals(Long.valueOf(2), dropped.get("docs"));
+        assertEquals(3, projects.getDroppedTotal());
+    }
+
+    /**
+     * Tests that all projects are watched when one of the listeners isn't project aware,
+     * and that the cache is invalidated.
+     */
+    @Test
+    public void testInvalidate() {
+        Collection<GerritEventListener> listeners = new CopyOnWriteArraySet<GerritEventListener>();
+        WatchedProjects projects = new WatchedProjects(listeners);
+        assertTrue(projects.isWatched("docs"));
+
+        listeners.add(mock(ProjectAwareListener.class));
+        projects.invalidate();
+        assertFalse(projects.isWatched("docs"));
+
+        listeners.add(mock(GerritEventListener.class));
+        assertFalse(projects.isWatched("docs"));
+        projects.invalidate();
+        assertTrue(projects.isWatched("docs"));
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.gerritevents.journal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link EventJournal}.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class EventJournalTest {
+
+    private File directory;
+
+    /**
+     * Creates a directory for the journal.
+     *
+     * @throws Exception if so.
+     */
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("event-journal", "");
+        directory.delete();
+    }
+
+    /**
+     * Removes the journal.
+     */
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    /**
+     * Tests that only the lines that weren't processed are replayed after the journal is reopened.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testReplayUnprocessed() throws Exception {
+        EventJournal journal = new EventJournal(directory, 0);
+        assertTrue(journal.replay().isEmpty());
+        long first = journal.append("{\"type\":\"first\"}");
+        long second = journal.append("{\"type\":\"second\"}");
+        long third = journal.append("{\"type\":\"third\"}");
+        journal.commit();
+        journal.processed(first);
+        journal.processed(third);
+        assertEquals(second, journal.getCheckpoint());
+        journal.close();
+
+        journal = new EventJournal(directory, 0);
+        List<EventJournal.Entry> entries = journal.replay();
+        assertEquals(2, entries.size());
+        assertEquals(second, entries.get(0).getOffset());
+        assertEquals("{\"type\":\"second\"}", entries.get(0).getLine());
+        assertEquals(third, entries.get(1).getOffset());
+        assertTrue(journal.replay().isEmpty());
+
+        journal.processed(second);
+        journal.processed(third);
+        journal.close();
+        journal = new EventJournal(directory, 0);
+        assertTrue(journal.replay().isEmpty());
+        journal.close();
+    }
+
+    /**
+     * Tests that the checkpoint doesn't move past old lines before they have been replayed.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testCheckpointWaitsForReplay() throws Exception {
+        EventJournal journal = new EventJournal(directory, 0);
+        journal.replay();
+        journal.append("old");
+        journal.commit();
+        journal.close();
+
+        journal = new EventJournal(directory, 0);
+        long offset = journal.append("new");
+        journal.commit();
+        journal.processed(offset);
+        assertEquals(0, journal.getCheckpoint());
+        assertEquals(1, journal.replay().size());
+        journal.close();
+    }
+
+    /**
+     * Tests that an incomplete last line is removed when the journal is opened.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testIncompleteLineIsRemoved() throws Exception {
+        EventJournal journal = new EventJournal(directory, 0);
+        journal.replay();
+        journal.append("complete");
+        journal.commit();
+        journal.close();
+        RandomAccessFile file = new RandomAccessFile(new File(directory, String.format("%019d", 0)
+                + EventJournal.SEGMENT_SUFFIX), "rw");
+        try {
+            file.seek(file.length());
+            file.write("{\"incompl".getBytes("UTF-8"));
+        } finally {
+            file.close();
+        }
+
+        journal = new EventJournal(directory, 0);
+        List<EventJournal.Entry> entries = journal.replay();
+        assertEquals(1, entries.size());
+        assertEquals("complete", entries.get(0).getLine());
+        long offset = journal.append("next");
+        assertEquals("complete\n".length(), offset);
+        journal.close();
+    }
+
+    /**
+     * Tests that new segments are started and that processed segments are removed.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testSegmentsAreRolledAndRemoved() throws Exception {
+        EventJournal journal = new EventJournal(directory, 20, 0);
+        journal.replay();
+        for (int i = 0; i < 5; i++) {
+            long offset = journal.append("line number " + i);
+            journal.commit();
+            journal.processed(offset);
+        }
+        assertTrue(journal.getSegmentCount() <= 2);
+        journal.close();
+
+        journal = new EventJournal(directory, 20, 0);
+        assertTrue(journal.replay().isEmpty());
+        journal.close();
+    }
+
+    /**
+     * Tests that segments are kept for the retention time even when they are processed.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testSegmentsAreKeptForRetention() throws Exception {
+        EventJournal journal = new EventJournal(directory, 20, 60 * 60 * 1000);
+        journal.replay();
+        for (int i = 0; i < 5; i++) {
+            long offset = journal.append("line number " + i);
+            journal.commit();
+            journal.processed(offset);
+        }
+        assertEquals(5, journal.getSegmentCount());
+        journal.close();
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.gerritevents.latency;
+
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.attr.Change;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.PatchsetCreated;
+import net.sf.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link EventLatency}.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class EventLatencyTest {
+
+    private static final String HOST = "gerrit.example.com";
+    private static final int PORT = 29418;
+
+    /**
+     * Forgets the histograms of the test.
+     */
+    @After
+    public void tearDown() {
+        EventLatency.getInstance(HOST, PORT).clear();
+        EventLatency.getInstance("other.example.com", PORT).clear();
+    }
+
+    /**
+     * Tests that the durations are recorded per stage, event type and project.
+     */
+    @Test
+    public void testRecordPerProject() {
+        EventLatency latency = EventLatency.getInstance(HOST, PORT);
+        latency.record(EventLatency.Stage.QUEUED, event("one"), 10);
+        latency.record(EventLatency.Stage.QUEUED, event("one"), 20);
+        latency.record(EventLatency.Stage.QUEUED, event("two"), 30);
+        latency.record(EventLatency.Stage.DECODE, event("two"), 1);
+
+        List<EventLatency.Entry> entries = latency.getEntries();
+        assertEquals(3, entries.size());
+        assertEquals(EventLatency.Stage.QUEUED, entries.get(0).getStage());
+        assertEquals("patchset-created", entries.get(0).getType());
+        assertEquals("one", entries.get(0).getProject());
+        assertEquals(2, entries.get(0).getHistogram().getCount());
+        assertEquals(EventLatency.Stage.DECODE, entries.get(2).getStage());
+
+        List<EventLatency.Entry> summary = latency.getSummary();
+        assertEquals(2, summary.size());
+        assertNull(summary.get(0).getProject());
+        assertEquals(3, summary.get(0).getHistogram().getCount());
+        assertEquals(30, summary.get(0).getHistogram().getMax());
+    }
+
+    /**
+     * Tests that only events that came from the stream get the end to end stages recorded.
+     */
+    @Test
+    public void testRecordSinceReceived() {
+        EventLatency latency = EventLatency.getInstance(HOST, PORT);
+        PatchsetCreated manual = event("one");
+        latency.recordSinceReceived(EventLatency.Stage.SCHEDULED, manual);
+        assertTrue(latency.getEntries().isEmpty());
+
+        PatchsetCreated streamed = event("one");
+        streamed.setReceivedOn(System.currentTimeMillis() - 1000);
+        latency.recordSinceReceived(EventLatency.Stage.SCHEDULED, streamed);
+        assertEquals(1, latency.getEntries().size());
+        assertTrue(latency.getEntries().get(0).getHistogram().getMax() >= 1000);
+    }
+
+    /**
+     * Tests the delay in Gerrit from the creation time of the patch set.
+     */
+    @Test
+    public void testRecordGerritDelay() {
+        JSONObject patchSet = new JSONObject();
+        patchSet.put("createdOn", 1000);
+        JSONObject json = new JSONObject();
+        json.put("type", "patchset-created");
+        json.put("patchSet", patchSet);
+
+        EventLatency.getInstance(HOST, PORT).recordGerritDelay(event("one"), json, 1002500);
+
+        List<EventLatency.Entry> entries = EventLatency.getInstance(HOST, PORT).getEntries();
+        assertEquals(EventLatency.Stage.GERRIT, entries.get(0).getStage());
+        assertEquals(2500, entries.get(0).getHistogram().getMax());
+    }
+
+    /**
+     * Tests the Prometheus text format.
+     */
+    @Test
+    public void testWriteMetrics() {
+        EventLatency.getInstance(HOST, PORT).record(EventLatency.Stage.SEND, event("a\"b"), 1500);
+        StringWriter str = new StringWriter();
+        EventLatency.writeMetrics(new PrintWriter(str));
+        String metrics = str.toString();
+
+        String labels = "server=\"gerrit.example.com:29418\",stage=\"send\",type=\"patchset-created\",project=\"a\\\"b\"";
+        assertTrue(metrics, metrics.contains("# TYPE gerrit_trigger_event_latency_seconds histogram"));
+        assertTrue(metrics, metrics.contains("gerrit_trigger_event_latency_seconds_bucket{" + labels
+                + ",le=\"1.0\"} 0\n"));
+        assertTrue(metrics, metrics.contains("gerrit_trigger_event_latency_seconds_bucket{" + labels
+                + ",le=\"2.0\"} 1\n"));
+        assertTrue(metrics, metrics.contains("gerrit_trigger_event_latency_seconds_bucket{" + labels
+                + ",le=\"+Inf\"} 1\n"));
+        assertTrue(metrics, metrics.contains("gerrit_trigger_event_latency_seconds_sum{" + labels + "} 1.5\n"));
+        assertTrue(metrics, metrics.contains("gerrit_trigger_event_latency_seconds_count{" + labels + "} 1\n"));
+    }
+
+    /**
+     * Tests that the histograms of different servers are kept apart.
+     */
+    @Test
+    public void testPerServer() {
+        EventLatency.getInstance(HOST, PORT).record(EventLatency.Stage.QUEUED, event("one"), 10);
+        EventLatency other = EventLatency.getInstance("other.example.com", PORT);
+        other.record(EventLatency.Stage.QUEUED, event("one"), 20);
+
+        assertSame(other, EventLatency.getInstance("other.example.com", PORT));
+        assertEquals("other.example.com:29418", other.getServer());
+        assertEquals(1, other.getEntries().size());
+        assertEquals(20, other.getEntries().get(0).getHistogram().getMax());
+        assertEquals(10, EventLatency.getInstance(HOST, PORT).getEntries().get(0).getHistogram().getMax());
+    }
+
+    /**
+     * Creates a patchset-created event for the project.
+     *
+     * @param project the project.
+     * @return the event.
+     */
+    private static PatchsetCreated event(String project) {
+        Change change = new Change();
+        change.setProject(project);
+        PatchsetCreated event = new PatchsetCreated();
+        event.setChange(change);
+        return event;
+    }
+}
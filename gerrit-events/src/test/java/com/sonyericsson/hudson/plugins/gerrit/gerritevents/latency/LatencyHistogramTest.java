@@ -0,0 +1,107 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.gerritevents.latency;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link LatencyHistogram}.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class LatencyHistogramTest {
+
+    /**
+     * Tests the count, sum, mean and max.
+     */
+    @Test
+    public void testRecord() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10);
+        histogram.record(30);
+        histogram.record(-5);
+
+        assertEquals(2, histogram.getCount());
+        assertEquals(40, histogram.getSum());
+        assertEquals(20, histogram.getMean());
+        assertEquals(30, histogram.getMax());
+    }
+
+    /**
+     * Tests that the percentiles are estimated from the bucket bounds and capped by the max.
+     */
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.record(3);
+        }
+        for (int i = 0; i < 9; i++) {
+            histogram.record(150);
+        }
+        histogram.record(7000);
+
+        assertEquals(5, histogram.getP50());
+        assertEquals(200, histogram.getP95());
+        assertEquals(200, histogram.getP99());
+        assertEquals(7000, histogram.getPercentile(100));
+        assertEquals(0, new LatencyHistogram().getP99());
+    }
+
+    /**
+     * Tests that durations longer than the last bound end up in the unbounded bucket.
+     */
+    @Test
+    public void testUnbounded() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] bounds = LatencyHistogram.getBounds();
+        histogram.record(bounds[bounds.length - 1] + 1);
+
+        long[] counts = histogram.getBucketCounts();
+        assertEquals(bounds.length + 1, counts.length);
+        assertEquals(1, counts[bounds.length]);
+        assertEquals(bounds[bounds.length - 1] + 1, histogram.getP99());
+    }
+
+    /**
+     * Tests merging two histograms.
+     */
+    @Test
+    public void testAdd() {
+        LatencyHistogram one = new LatencyHistogram();
+        one.record(1);
+        LatencyHistogram two = new LatencyHistogram();
+        two.record(100);
+        two.record(50);
+
+        one.add(two);
+
+        assertEquals(3, one.getCount());
+        assertEquals(151, one.getSum());
+        assertEquals(100, one.getMax());
+        assertEquals(1, one.getBucketCounts()[0]);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link SshCircuitBreaker}.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class SshCircuitBreakerTest {
+
+    /**
+     * Tests that a failure opens the breaker until the delay has passed, and that a success closes it.
+     */
+    @Test
+    public void testOpenAndClose() {
+        SshCircuitBreaker breaker = new SshCircuitBreaker("test:29418");
+        long now = System.currentTimeMillis();
+        assertEquals(SshCircuitBreaker.State.CLOSED, breaker.getState(now));
+
+        long delay = breaker.failure(now);
+        assertTrue(delay >= SshCircuitBreaker.BASE_DELAY / 2);
+        assertTrue(delay <= SshCircuitBreaker.BASE_DELAY);
+        assertEquals(1, breaker.getFailures());
+        assertEquals(SshCircuitBreaker.State.OPEN, breaker.getState(now));
+        assertEquals(SshCircuitBreaker.State.HALF_OPEN, breaker.getState(now + delay));
+
+        breaker.success();
+        assertEquals(SshCircuitBreaker.State.CLOSED, breaker.getState(now));
+        assertEquals(0, breaker.getFailures());
+    }
+
+    /**
+     * Tests that the delay grows with every failure in a row up to {@link SshCircuitBreaker#MAX_DELAY}.
+     */
+    @Test
+    public void testDelayGrows() {
+        SshCircuitBreaker breaker = new SshCircuitBreaker("test:29418");
+        long now = System.currentTimeMillis();
+        long max = SshCircuitBreaker.BASE_DELAY;
+        for (int i = 0; i < 30; i++) {
+            long delay = breaker.failure(now);
+            assertTrue(delay >= max / 2);
+            assertTrue(delay <= max);
+            max = Math.min(max * 2, SshCircuitBreaker.MAX_DELAY);
+        }
+        assertEquals(30, breaker.getFailures());
+    }
+
+    /**
+     * Tests that {@link SshCircuitBreaker#check()} fails fast while the breaker is open.
+     */
+    @Test
+    public void testCheck() throws Exception {
+        SshCircuitBreaker breaker = new SshCircuitBreaker("test:29418");
+        breaker.check();
+        breaker.failure();
+        try {
+            breaker.check();
+            fail("Should fail fast.");
+        } catch (SshConnectException e) {
+            assertTrue(e.getMessage().contains("test:29418"));
+        }
+        assertTrue(breaker.getDelay() > 0);
+        breaker.success();
+        breaker.check();
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests {@link SshEndpoints}.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class SshEndpointsTest {
+
+    /**
+     * Tests that the fail over hosts are parsed in order after the primary, with the primary's port as default.
+     */
+    @Test
+    public void testParse() {
+        SshEndpoints endpoints = new SshEndpoints("primary", 29418,
+                " replica1:2222,replica2  primary:29418 replica3:x :1 replica2");
+        List<SshEndpoints.Endpoint> list = endpoints.getEndpoints();
+        assertEquals(3, list.size());
+        assertEquals(new SshEndpoints.Endpoint("primary", 29418), list.get(0));
+        assertEquals(new SshEndpoints.Endpoint("replica1", 2222), list.get(1));
+        assertEquals(new SshEndpoints.Endpoint("replica2", 29418), list.get(2));
+        assertNull(SshEndpoints.parse("", 1));
+
+        assertEquals(1, new SshEndpoints("primary", 29418, null).getEndpoints().size());
+        assertEquals(1, new SshEndpoints("primary", 29418, "  ").getEndpoints().size());
+    }
+
+    /**
+     * Tests that the first endpoint whose breaker isn't open is the healthy one.
+     */
+    @Test
+    public void testGetHealthy() {
+        SshEndpoints endpoints = new SshEndpoints("healthy-primary", 29418, "healthy-replica1 healthy-replica2");
+        List<SshEndpoints.Endpoint> list = endpoints.getEndpoints();
+        assertSame(list.get(0), endpoints.getHealthy());
+        assertEquals(0, endpoints.getDelay());
+
+        list.get(0).getBreaker().failure();
+        assertSame(list.get(1), endpoints.getHealthy());
+        list.get(1).getBreaker().failure();
+        assertSame(list.get(2), endpoints.getHealthy());
+
+        list.get(0).getBreaker().success();
+        assertSame(list.get(0), endpoints.getHealthy());
+        list.get(1).getBreaker().success();
+    }
+}
@@ -26,6 +26,7 @@ package com.sonyericsson.hudson.plugins.gerrit.gerritevents.workers;
 
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.GerritEvent;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.GerritEventType;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.GerritTriggeredEvent;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.PatchsetCreated;
 import net.sf.json.JSONObject;
 import org.junit.Test;
@@ -105,4 +106,34 @@ public class StreamEventsStringWorkTest {
         assertEquals("100", event.getChange().getNumber());
         assertEquals("2", event.getPatchSet().getNumber());
     }
+
+    /**
+     * Tests that the event is considered received when its line was read, not when the work was created.
+     */
+    @Test
+    public void testReceivedOn() {
+        JSONObject change = new JSONObject();
+        change.put(PROJECT, "project");
+        change.put(NUMBER, "100");
+        JSONObject jsonEvent = new JSONObject();
+        jsonEvent.put("type", GerritEventType.CHANGE_MERGED.getTypeValue());
+        jsonEvent.put(CHANGE, change);
+        jsonEvent.put(PATCH_SET, new JSONObject());
+
+        StreamEventsStringWork work = new StreamEventsStringWork(jsonEvent.toString(), 1234L, null);
+        final GerritTriggeredEvent[] notifiedEvent = {null};
+        work.perform(new Coordinator() {
+            @Override
+            public BlockingQueue<Work> getWorkQueue() {
+                return mock(BlockingQueue.class);
+            }
+            @Override
+            public void notifyListeners(GerritEvent event) {
+                notifiedEvent[0] = (GerritTriggeredEvent)event;
+            }
+        });
+
+        assertNotNull(notifiedEvent[0]);
+        assertEquals(1234L, notifiedEvent[0].getReceivedOn());
+    }
 }
@@ -0,0 +1,202 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.loadtest;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates patchset-created events for new changes, and remembers when each of them was published
+ * so that the time until the event reaches a listener can be measured.
+ * The most recent changes are also kept to answer the queries that the catch up after a reconnect does.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class EventGenerator {
+
+    /**
+     * The number of the first generated change.
+     */
+    public static final int FIRST_CHANGE = 100000;
+
+    /**
+     * The number of recent changes kept for queries.
+     */
+    public static final int MAX_RECENT_CHANGES = 10000;
+
+    private static final long MILLIS_PER_SECOND = 1000;
+    private static final int REF_SHARD = 100;
+
+    private final List<String> projects;
+    private final AtomicInteger sequence = new AtomicInteger(FIRST_CHANGE);
+    private final ConcurrentMap<String, Long> publishedOn = new ConcurrentHashMap<String, Long>();
+    private final LinkedList<JSONObject> recent = new LinkedList<JSONObject>();
+    private final AtomicInteger duplicates = new AtomicInteger();
+
+    /**
+     * Standard Constructor.
+     *
+     * @param projects the Gerrit projects that the changes are spread over.
+     */
+    public EventGenerator(List<String> projects) {
+        this.projects = projects;
+    }
+
+    /**
+     * Creates a patchset-created event line for a new change and marks it as published now.
+     *
+     * @return the line, as stream-events would print it.
+     */
+    public String nextPatchsetCreated() {
+        int number = sequence.getAndIncrement();
+        long now = System.currentTimeMillis();
+        JSONObject change = createChange(number, now);
+        JSONObject patchSet = change.getJSONArray("patchSets").getJSONObject(0);
+        JSONObject event = new JSONObject();
+        event.put("type", "patchset-created");
+        event.put("change", change.discard("patchSets"));
+        event.put("patchSet", patchSet);
+        event.put("uploader", patchSet.getJSONObject("uploader"));
+        event.put("eventCreatedOn", now / MILLIS_PER_SECOND);
+        synchronized (recent) {
+            JSONObject queryRow = JSONObject.fromObject(change);
+            queryRow.put("patchSets", JSONArray.fromObject(new Object[]{patchSet}));
+            recent.addFirst(queryRow);
+            if (recent.size() > MAX_RECENT_CHANGES) {
+                recent.removeLast();
+            }
+        }
+        publishedOn.put(String.valueOf(number), now);
+        return event.toString();
+    }
+
+    /**
+     * Marks the change as received by a listener.
+     *
+     * @param changeNumber the number of the change.
+     * @return the number of ms since it was published,
+     *         or -1 if it wasn't published by this generator or has been received before.
+     */
+    public long received(String changeNumber) {
+        Long published = publishedOn.remove(changeNumber);
+        if (published == null) {
+            duplicates.incrementAndGet();
+            return -1;
+        }
+        return System.currentTimeMillis() - published;
+    }
+
+    /**
+     * The number of events published so far.
+     *
+     * @return the number of events.
+     */
+    public int getPublished() {
+        return sequence.get() - FIRST_CHANGE;
+    }
+
+    /**
+     * The number of published events that haven't been received yet.
+     *
+     * @return the number of events.
+     */
+    public int getPending() {
+        return publishedOn.size();
+    }
+
+    /**
+     * The number of events that were received more than once, or that weren't published by this generator.
+     *
+     * @return the number of events.
+     */
+    public int getDuplicates() {
+        return duplicates.get();
+    }
+
+    /**
+     * The recent changes created less than the given number of seconds ago,
+     * as rows of a query result with all patch sets.
+     *
+     * @param ageSeconds the max age in seconds, or a negative value for all of them.
+     * @param limit      the max number of rows.
+     * @return the rows, the newest first.
+     */
+    public List<JSONObject> getRecentChanges(long ageSeconds, int limit) {
+        long since = System.currentTimeMillis() / MILLIS_PER_SECOND - ageSeconds;
+        List<JSONObject> rows = new ArrayList<JSONObject>();
+        synchronized (recent) {
+            for (JSONObject row : recent) {
+                if (rows.size() >= limit) {
+                    break;
+                }
+                long createdOn = row.getJSONArray("patchSets").getJSONObject(0).getLong("createdOn");
+                if (ageSeconds >= 0 && createdOn < since) {
+                    break;
+                }
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Creates the JSON of a change with one patch set, as a row of a query result.
+     *
+     * @param number the change number.
+     * @param now    the current time in ms.
+     * @return the change.
+     */
+    private JSONObject createChange(int number, long now) {
+        JSONObject owner = new JSONObject();
+        owner.put("name", "Load Test");
+        owner.put("email", "loadtest@example.com");
+        owner.put("username", "loadtest");
+
+        JSONObject change = new JSONObject();
+        change.put("project", projects.get(number % projects.size()));
+        change.put("branch", "master");
+        change.put("id", String.format("I%040x", number));
+        change.put("number", String.valueOf(number));
+        change.put("subject", "Load test change " + number);
+        change.put("owner", owner);
+        change.put("url", "http://gerrit.example.com/" + number);
+        change.put("status", "NEW");
+
+        JSONObject patchSet = new JSONObject();
+        patchSet.put("number", "1");
+        patchSet.put("revision", String.format("%040x", number));
+        patchSet.put("ref", String.format("refs/changes/%02d/%d/1", number % REF_SHARD, number));
+        patchSet.put("uploader", owner);
+        patchSet.put("createdOn", now / MILLIS_PER_SECOND);
+        change.put("patchSets", JSONArray.fromObject(new Object[]{patchSet}));
+        return change;
+    }
+}
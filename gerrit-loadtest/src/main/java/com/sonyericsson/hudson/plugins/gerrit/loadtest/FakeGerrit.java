@@ -0,0 +1,528 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.loadtest;
+
+import net.sf.json.JSONObject;
+import org.apache.sshd.SshServer;
+import org.apache.sshd.server.Command;
+import org.apache.sshd.server.CommandFactory;
+import org.apache.sshd.server.Environment;
+import org.apache.sshd.server.ExitCallback;
+import org.apache.sshd.server.PublickeyAuthenticator;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.server.session.ServerSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A Gerrit server faked by an embedded ssh server, that knows the commands that the plugin uses;
+ * stream-events, query, review, version and ls-projects.
+ * Each command can be delayed by a fixed latency and a share of them can be made to fail,
+ * and all the streams of events can be dropped at once to cause a reconnect storm.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class FakeGerrit implements CommandFactory {
+
+    /**
+     * The version that gerrit version answers with.
+     */
+    public static final String GERRIT_VERSION = "2.4.2";
+    /**
+     * The max number of rows a query answers with.
+     */
+    public static final int QUERY_LIMIT = 500;
+    /**
+     * The exit code of the commands that fail.
+     */
+    public static final int FAILURE_EXIT_CODE = 1;
+
+    private static final Logger logger = LoggerFactory.getLogger(FakeGerrit.class);
+    private static final String STREAM_EVENTS = "gerrit stream-events";
+    private static final String VERSION = "gerrit version";
+    private static final String LS_PROJECTS = "gerrit ls-projects";
+    private static final String QUERY = "gerrit query";
+    private static final String REVIEW = "gerrit review";
+    private static final Pattern AGE = Pattern.compile("-age:(\\d+)s");
+    private static final long POLL_INTERVAL = 100;
+
+    private final int port;
+    private final EventGenerator generator;
+    private final List<String> projects;
+    private final List<StreamEventsCommand> streams = new CopyOnWriteArrayList<StreamEventsCommand>();
+    private final Random random = new Random();
+    private final AtomicInteger commands = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicInteger streamsStarted = new AtomicInteger();
+    private final AtomicInteger queries = new AtomicInteger();
+    private final AtomicInteger reviews = new AtomicInteger();
+    private volatile long latency;
+    private volatile double failureRate;
+    private SshServer sshd;
+    private File hostKey;
+
+    /**
+     * Standard Constructor.
+     *
+     * @param port      the port to listen to.
+     * @param generator the generator of the events, also used to answer queries.
+     * @param projects  the projects that ls-projects lists.
+     */
+    public FakeGerrit(int port, EventGenerator generator, List<String> projects) {
+        this.port = port;
+        this.generator = generator;
+        this.projects = projects;
+    }
+
+    /**
+     * Starts the ssh server. Any public key is accepted.
+     *
+     * @throws IOException if so.
+     */
+    public synchronized void start() throws IOException {
+        hostKey = File.createTempFile("fake-gerrit", ".ser");
+        if (!hostKey.delete()) {
+            throw new IOException("Could not delete " + hostKey);
+        }
+        sshd = SshServer.setUpDefaultServer();
+        sshd.setPort(port);
+        sshd.setKeyPairProvider(new SimpleGeneratorHostKeyProvider(hostKey.getAbsolutePath()));
+        sshd.setPublickeyAuthenticator(new PublickeyAuthenticator() {
+            @Override
+            public boolean authenticate(String username, PublicKey publicKey, ServerSession serverSession) {
+                return true;
+            }
+        });
+        sshd.setCommandFactory(this);
+        sshd.start();
+        logger.info("Fake Gerrit listening on port {}", port);
+    }
+
+    /**
+     * Stops the ssh server.
+     *
+     * @throws InterruptedException if interrupted while waiting for it to stop.
+     */
+    public synchronized void stop() throws InterruptedException {
+        if (sshd != null) {
+            sshd.stop(true);
+            sshd = null;
+        }
+        if (hostKey != null && hostKey.exists() && !hostKey.delete()) {
+            hostKey.deleteOnExit();
+        }
+    }
+
+    /**
+     * The port that the server listens to.
+     *
+     * @return the port.
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * The delay before every command answers.
+     *
+     * @param latency the delay in ms.
+     */
+    public void setLatency(long latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * The share of the commands that fail right away with {@link #FAILURE_EXIT_CODE}.
+     *
+     * @param failureRate the share, between 0 and 1.
+     */
+    public void setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    @Override
+    public Command createCommand(String command) {
+        commands.incrementAndGet();
+        if (failureRate > 0 && random.nextDouble() < failureRate) {
+            failures.incrementAndGet();
+            return new FailingCommand(command, "fatal: injected failure");
+        }
+        if (command.startsWith(STREAM_EVENTS)) {
+            streamsStarted.incrementAndGet();
+            return new StreamEventsCommand(command);
+        } else if (command.startsWith(VERSION)) {
+            return new OutputCommand(command, Collections.singletonList("gerrit version " + GERRIT_VERSION));
+        } else if (command.startsWith(LS_PROJECTS)) {
+            return new OutputCommand(command, projects);
+        } else if (command.startsWith(QUERY)) {
+            queries.incrementAndGet();
+            return new OutputCommand(command, query(command));
+        } else if (command.startsWith(REVIEW)) {
+            reviews.incrementAndGet();
+            return new OutputCommand(command, Collections.<String>emptyList());
+        } else {
+            return new FailingCommand(command, "fatal: " + command + ": not found");
+        }
+    }
+
+    /**
+     * Sends the line to every connected stream-events command.
+     *
+     * @param line the line.
+     */
+    public void publish(String line) {
+        for (StreamEventsCommand stream : streams) {
+            stream.send(line);
+        }
+    }
+
+    /**
+     * Closes all connected stream-events commands, as if Gerrit was restarted.
+     *
+     * @return the number of closed streams.
+     */
+    public int dropStreams() {
+        int dropped = 0;
+        for (StreamEventsCommand stream : streams) {
+            stream.drop();
+            dropped++;
+        }
+        return dropped;
+    }
+
+    /**
+     * The number of stream-events commands currently connected.
+     *
+     * @return the number of streams.
+     */
+    public int getStreamCount() {
+        return streams.size();
+    }
+
+    /**
+     * The number of stream-events commands started so far.
+     *
+     * @return the number of commands.
+     */
+    public int getStreamsStarted() {
+        return streamsStarted.get();
+    }
+
+    /**
+     * The number of commands received so far.
+     *
+     * @return the number of commands.
+     */
+    public int getCommands() {
+        return commands.get();
+    }
+
+    /**
+     * The number of commands that were made to fail.
+     *
+     * @return the number of commands.
+     */
+    public int getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * The number of successful query commands.
+     *
+     * @return the number of commands.
+     */
+    public int getQueries() {
+        return queries.get();
+    }
+
+    /**
+     * The number of successful review commands.
+     *
+     * @return the number of commands.
+     */
+    public int getReviews() {
+        return reviews.get();
+    }
+
+    /**
+     * Answers a query with the recent changes of the generator.
+     * Only the "-age:Ns" operator is understood, everything else in the query matches every change.
+     *
+     * @param command the query command.
+     * @return the lines of the answer, the changes followed by the stats.
+     */
+    private List<String> query(String command) {
+        long age = -1;
+        Matcher matcher = AGE.matcher(command);
+        if (matcher.find()) {
+            age = Long.parseLong(matcher.group(1));
+        }
+        List<String> lines = new ArrayList<String>();
+        for (JSONObject row : generator.getRecentChanges(age, QUERY_LIMIT)) {
+            lines.add(row.toString());
+        }
+        JSONObject stats = new JSONObject();
+        stats.put("type", "stats");
+        stats.put("rowCount", lines.size());
+        stats.put("runTimeMilliseconds", latency);
+        lines.add(stats.toString());
+        return lines;
+    }
+
+    /**
+     * A command that runs in its own thread after the configured latency, and then exits.
+     */
+    private abstract class FakeCommand implements Command, Runnable {
+        private final String command;
+        private OutputStream outputStream;
+        private OutputStream errorStream;
+        private ExitCallback exitCallback;
+        private Thread thread;
+
+        /**
+         * Standard Constructor.
+         *
+         * @param command the command line.
+         */
+        protected FakeCommand(String command) {
+            this.command = command;
+        }
+
+        @Override
+        public void setInputStream(InputStream inputStream) {
+            //Nothing is read from the client.
+        }
+
+        @Override
+        public void setOutputStream(OutputStream outputStream) {
+            this.outputStream = outputStream;
+        }
+
+        @Override
+        public void setErrorStream(OutputStream errorStream) {
+            this.errorStream = errorStream;
+        }
+
+        @Override
+        public void setExitCallback(ExitCallback exitCallback) {
+            this.exitCallback = exitCallback;
+        }
+
+        @Override
+        public void start(Environment environment) throws IOException {
+            thread = new Thread(this, "Fake Gerrit: " + command);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            int exitCode = FAILURE_EXIT_CODE;
+            try {
+                if (latency > 0) {
+                    Thread.sleep(latency);
+                }
+                exitCode = execute();
+            } catch (InterruptedException e) {
+                logger.debug("Interrupted: {}", command);
+            } catch (IOException e) {
+                logger.debug("Client went away: {}", command);
+            } finally {
+                exitCallback.onExit(exitCode);
+            }
+        }
+
+        @Override
+        public void destroy() {
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+
+        /**
+         * Does the work of the command.
+         *
+         * @return the exit code.
+         * @throws IOException          if the output can't be written.
+         * @throws InterruptedException if the command is destroyed while waiting.
+         */
+        protected abstract int execute() throws IOException, InterruptedException;
+
+        /**
+         * Writes the lines to the stream.
+         *
+         * @param lines  the lines.
+         * @param stream the output or error stream.
+         * @throws IOException if so.
+         */
+        protected void write(List<String> lines, OutputStream stream) throws IOException {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(stream, "UTF-8"));
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+            writer.flush();
+        }
+
+        /**
+         * The output stream to the client.
+         *
+         * @return the stream.
+         */
+        protected OutputStream getOutputStream() {
+            return outputStream;
+        }
+
+        /**
+         * The error stream to the client.
+         *
+         * @return the stream.
+         */
+        protected OutputStream getErrorStream() {
+            return errorStream;
+        }
+    }
+
+    /**
+     * A command that prints a fixed answer.
+     */
+    private class OutputCommand extends FakeCommand {
+        private final List<String> lines;
+
+        /**
+         * Standard Constructor.
+         *
+         * @param command the command line.
+         * @param lines   the answer.
+         */
+        OutputCommand(String command, List<String> lines) {
+            super(command);
+            this.lines = lines;
+        }
+
+        @Override
+        protected int execute() throws IOException {
+            write(lines, getOutputStream());
+            return 0;
+        }
+    }
+
+    /**
+     * A command that prints an error and fails.
+     */
+    private class FailingCommand extends FakeCommand {
+        private final String message;
+
+        /**
+         * Standard Constructor.
+         *
+         * @param command the command line.
+         * @param message the error message.
+         */
+        FailingCommand(String command, String message) {
+            super(command);
+            this.message = message;
+        }
+
+        @Override
+        protected int execute() throws IOException {
+            write(Collections.singletonList(message), getErrorStream());
+            return FAILURE_EXIT_CODE;
+        }
+    }
+
+    /**
+     * The stream-events command, prints the published lines until it is dropped or the client disconnects.
+     */
+    private class StreamEventsCommand extends FakeCommand {
+        private final BlockingQueue<String> queue = new LinkedBlockingQueue<String>();
+        private volatile boolean dropped = false;
+
+        /**
+         * Standard Constructor.
+         *
+         * @param command the command line.
+         */
+        StreamEventsCommand(String command) {
+            super(command);
+        }
+
+        /**
+         * Queues a line to be printed.
+         *
+         * @param line the line.
+         */
+        void send(String line) {
+            queue.offer(line);
+        }
+
+        /**
+         * Makes the command exit.
+         */
+        void drop() {
+            dropped = true;
+        }
+
+        @Override
+        protected int execute() throws IOException, InterruptedException {
+            streams.add(this);
+            try {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(getOutputStream(), "UTF-8"));
+                while (!dropped) {
+                    String line = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                    if (line != null) {
+                        writer.write(line);
+                        writer.write('\n');
+                    }
+                    if (queue.isEmpty()) {
+                        writer.flush();
+                    }
+                }
+                return 0;
+            } finally {
+                streams.remove(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.loadtest;
+
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.latency.LatencyHistogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The outcome of one load test scenario; how many operations completed or failed in how long time,
+ * and the latency percentiles of the completed ones.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class LoadReport {
+
+    private static final double MILLIS_PER_SECOND = 1000.0;
+    private static final long MILLIS_PER_MINUTE = 60000;
+
+    private final String name;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final Map<String, Object> details = new LinkedHashMap<String, Object>();
+    private final long startedOn = System.currentTimeMillis();
+    private int expected;
+    private long duration;
+
+    /**
+     * Standard Constructor, the scenario is considered started when the report is created.
+     *
+     * @param name the name of the scenario.
+     */
+    public LoadReport(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records a completed operation.
+     *
+     * @param millis how long it took.
+     */
+    public void completed(long millis) {
+        latency.record(millis);
+    }
+
+    /**
+     * Records a failed operation.
+     */
+    public void failed() {
+        failed.incrementAndGet();
+    }
+
+    /**
+     * Marks the scenario as finished.
+     *
+     * @param expectedOperations the number of operations that should have completed.
+     */
+    public synchronized void finished(int expectedOperations) {
+        this.expected = expectedOperations;
+        this.duration = System.currentTimeMillis() - startedOn;
+    }
+
+    /**
+     * Adds a scenario specific number to the report.
+     *
+     * @param key   the name of the number.
+     * @param value the value.
+     */
+    public synchronized void detail(String key, Object value) {
+        details.put(key, value);
+    }
+
+    /**
+     * The name of the scenario.
+     *
+     * @return the name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The number of completed operations.
+     *
+     * @return the number.
+     */
+    public long getCompleted() {
+        return latency.getCount();
+    }
+
+    /**
+     * The number of failed operations.
+     *
+     * @return the number.
+     */
+    public int getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * The number of operations that should have completed.
+     *
+     * @return the number.
+     */
+    public synchronized int getExpected() {
+        return expected;
+    }
+
+    /**
+     * The time it took from start to finish.
+     *
+     * @return the time in ms.
+     */
+    public synchronized long getDuration() {
+        return duration;
+    }
+
+    /**
+     * The completed operations per minute.
+     *
+     * @return the throughput.
+     */
+    public synchronized long getThroughputPerMinute() {
+        if (duration <= 0) {
+            return 0;
+        }
+        return getCompleted() * MILLIS_PER_MINUTE / duration;
+    }
+
+    /**
+     * The latency of the completed operations.
+     *
+     * @return the histogram.
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * The scenario specific numbers.
+     *
+     * @return the numbers by name.
+     */
+    public synchronized Map<String, Object> getDetails() {
+        return new LinkedHashMap<String, Object>(details);
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder str = new StringBuilder(name);
+        str.append(": ").append(getCompleted()).append(" of ").append(expected);
+        str.append(" in ").append(duration / MILLIS_PER_SECOND).append(" s, ");
+        str.append(getThroughputPerMinute()).append("/min, ");
+        str.append(failed.get()).append(" failed, latency ms");
+        str.append(" p50=").append(latency.getP50());
+        str.append(" p95=").append(latency.getP95());
+        str.append(" p99=").append(latency.getP99());
+        str.append(" max=").append(latency.getMax());
+        for (Map.Entry<String, Object> entry : details.entrySet()) {
+            str.append(", ").append(entry.getKey()).append("=").append(entry.getValue());
+        }
+        return str.toString();
+    }
+}
@@ -0,0 +1,560 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.loadtest;
+
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.KeyPair;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritEventListener;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritHandler;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritQueryHandler;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritSendCommandQueue;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.GerritEvent;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.ChangeAbandoned;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.ChangeMerged;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.CommentAdded;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.DraftPublished;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.PatchsetCreated;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.RefUpdated;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.workers.cmd.AbstractSendCommandJob;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Drives {@link GerritHandler}, {@link GerritSendCommandQueue} and {@link GerritQueryHandler}
+ * against a {@link FakeGerrit} on localhost and reports the throughput and latency of each scenario.
+ * Run {@link #main(String[])} for a full run, the scenarios can be tuned with the system properties
+ * of the "loadtest." prefix, see {@link #main(String[])}.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class LoadTest {
+
+    /**
+     * The default number of published events per minute.
+     */
+    public static final int DEFAULT_EVENTS_PER_MINUTE = 30000;
+    /**
+     * The default time to publish events for, in seconds.
+     */
+    public static final int DEFAULT_DURATION = 60;
+    /**
+     * The default number of seconds between dropping all streams in the reconnect storm.
+     */
+    public static final int DEFAULT_DROP_INTERVAL = 5;
+    /**
+     * The default number of review commands to queue at once.
+     */
+    public static final int DEFAULT_REVIEWS = 2000;
+    /**
+     * The default number of queries.
+     */
+    public static final int DEFAULT_QUERIES = 1000;
+    /**
+     * The default number of threads that run the queries.
+     */
+    public static final int DEFAULT_QUERY_THREADS = 8;
+    /**
+     * The default number of receiving and sending worker threads.
+     */
+    public static final int DEFAULT_WORKER_THREADS = 3;
+    /**
+     * The max time to wait for a scenario to finish after everything has been started, in ms.
+     */
+    public static final long DRAIN_TIMEOUT = 120000;
+
+    private static final long MILLIS_PER_SECOND = 1000;
+    private static final long MILLIS_PER_MINUTE = 60000;
+    private static final long TICK = 10;
+    private static final long CONNECT_TIMEOUT = 30000;
+    private static final long QUIET_PERIOD = 5000;
+    private static final String[] PROJECTS = {
+        "platform/build", "platform/frameworks/base", "platform/packages/apps/Camera", "platform/system/core",
+        "kernel/msm", "tools/repo", "device/semc/fuji", "infra/ci-scripts", };
+
+    private final EventGenerator generator;
+    private final FakeGerrit gerrit;
+    private final LoadTestConfig config;
+    private final File keyFile;
+
+    /**
+     * Creates the fake Gerrit on a free port and a key pair to connect with.
+     *
+     * @param workerThreads the number of receiving and sending worker threads.
+     * @throws IOException if so.
+     */
+    public LoadTest(int workerThreads) throws IOException {
+        List<String> projects = new ArrayList<String>();
+        for (String project : PROJECTS) {
+            projects.add(project);
+        }
+        generator = new EventGenerator(projects);
+        gerrit = new FakeGerrit(findFreePort(), generator, projects);
+        keyFile = createKeyFile();
+        config = new LoadTestConfig(gerrit.getPort(), keyFile, workerThreads, workerThreads);
+    }
+
+    /**
+     * The fake Gerrit, to configure latency and failures on.
+     *
+     * @return the fake.
+     */
+    public FakeGerrit getGerrit() {
+        return gerrit;
+    }
+
+    /**
+     * Starts the fake Gerrit.
+     *
+     * @throws IOException if so.
+     */
+    public void start() throws IOException {
+        gerrit.start();
+    }
+
+    /**
+     * Stops the fake Gerrit and removes the key pair.
+     *
+     * @throws InterruptedException if interrupted while waiting for the server to stop.
+     */
+    public void stop() throws InterruptedException {
+        GerritSendCommandQueue.shutdown(config);
+        gerrit.stop();
+        if (!keyFile.delete()) {
+            keyFile.deleteOnExit();
+        }
+    }
+
+    //CS IGNORE RedundantThrows FOR NEXT 12 LINES. REASON: Informative.
+
+    /**
+     * Publishes events at the given rate and measures the time until each of them reaches a listener.
+     * If a drop interval is given all streams are dropped regularly, so the handler has to reconnect
+     * and the events published while it is disconnected can only be found by the catch up.
+     *
+     * @param eventsPerMinute the rate.
+     * @param duration        how long to publish events, in ms.
+     * @param dropInterval    the time between dropping all streams in ms, or 0 to never drop them.
+     * @return the report.
+     * @throws InterruptedException if interrupted.
+     * @throws TimeoutException     if the handler doesn't connect.
+     */
+    public LoadReport streamEvents(int eventsPerMinute, long duration, long dropInterval)
+            throws InterruptedException, TimeoutException {
+        String name = "stream-events";
+        if (dropInterval > 0) {
+            name = "reconnect-storm";
+        }
+        final LoadReport report = new LoadReport(name);
+        GerritHandler handler = startHandler(report);
+        int publishedBefore = generator.getPublished();
+        int streamsBefore = gerrit.getStreamsStarted();
+        int pendingBefore = generator.getPending();
+        int drops = publish(eventsPerMinute, duration, dropInterval);
+        drain(pendingBefore);
+        int published = generator.getPublished() - publishedBefore;
+        report.finished(published);
+        report.detail("lost", generator.getPending() - pendingBefore);
+        report.detail("duplicates", generator.getDuplicates());
+        report.detail("drops", drops);
+        report.detail("reconnects", gerrit.getStreamsStarted() - streamsBefore - 1);
+        handler.shutdown(true);
+        return report;
+    }
+
+    //CS IGNORE RedundantThrows FOR NEXT 10 LINES. REASON: Informative.
+
+    /**
+     * Queues review commands in the send command queue all at once,
+     * and measures the time from being queued until each of them has been sent.
+     *
+     * @param count the number of commands.
+     * @return the report.
+     * @throws InterruptedException if interrupted.
+     * @throws TimeoutException     if the commands aren't sent in time.
+     */
+    public LoadReport sendCommands(final int count) throws InterruptedException, TimeoutException {
+        final LoadReport report = new LoadReport("send-queue");
+        int reviewsBefore = gerrit.getReviews();
+        GerritSendCommandQueue queue = GerritSendCommandQueue.getInstance(config);
+        for (int i = 0; i < count; i++) {
+            queue.queueJob(new ReviewJob(config, report, EventGenerator.FIRST_CHANGE + i));
+        }
+        report.detail("backlog", queue.getSize());
+        waitFor(new Condition() {
+            @Override
+            public boolean isMet() {
+                return report.getCompleted() + report.getFailed() >= count;
+            }
+        });
+        report.finished(count);
+        report.detail("reviews", gerrit.getReviews() - reviewsBefore);
+        report.detail("injected-failures", gerrit.getFailures());
+        return report;
+    }
+
+    //CS IGNORE RedundantThrows FOR NEXT 10 LINES. REASON: Informative.
+
+    /**
+     * Runs queries from several threads at once and measures the time each of them takes.
+     *
+     * @param count   the number of queries.
+     * @param threads the number of threads.
+     * @return the report.
+     * @throws InterruptedException if interrupted.
+     * @throws TimeoutException     if the queries don't finish in time.
+     */
+    public LoadReport queries(int count, int threads) throws InterruptedException, TimeoutException {
+        final LoadReport report = new LoadReport("query");
+        final GerritQueryHandler queryHandler = new GerritQueryHandler(config);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < count; i++) {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    long start = System.currentTimeMillis();
+                    try {
+                        queryHandler.queryJava("status:open -age:60s", true, false, false);
+                        report.completed(System.currentTimeMillis() - start);
+                    } catch (Exception e) {
+                        report.failed();
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        if (!executor.awaitTermination(DRAIN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+            executor.shutdownNow();
+            throw new TimeoutException("The queries didn't finish in time.");
+        }
+        report.finished(count);
+        return report;
+    }
+
+    //CS IGNORE RedundantThrows FOR NEXT 11 LINES. REASON: Informative.
+
+    /**
+     * Shuts down the handler and the send command queue while events are streaming and commands are queued,
+     * and measures how long the shutdown takes.
+     *
+     * @param eventsPerMinute the rate of the events.
+     * @param commands        the number of queued commands.
+     * @return the report, with one operation; the shutdown.
+     * @throws InterruptedException if interrupted.
+     * @throws TimeoutException     if the handler doesn't connect.
+     */
+    public LoadReport shutdown(int eventsPerMinute, int commands) throws InterruptedException, TimeoutException {
+        LoadReport report = new LoadReport("shutdown");
+        GerritHandler handler = startHandler(new LoadReport("shutdown-events"));
+        GerritSendCommandQueue queue = GerritSendCommandQueue.getInstance(config);
+        for (int i = 0; i < commands; i++) {
+            queue.queueJob(new ReviewJob(config, new LoadReport("shutdown-reviews"), EventGenerator.FIRST_CHANGE + i));
+        }
+        publish(eventsPerMinute, MILLIS_PER_SECOND, 0);
+        long shutdownStart = System.currentTimeMillis();
+        handler.shutdown(true);
+        GerritSendCommandQueue.shutdown(config);
+        report.completed(System.currentTimeMillis() - shutdownStart);
+        report.finished(1);
+        report.detail("handler-alive", handler.isAlive());
+        return report;
+    }
+
+    /**
+     * Publishes events at the given rate, dropping all streams at the given interval.
+     *
+     * @param eventsPerMinute the rate.
+     * @param duration        how long to publish events, in ms.
+     * @param dropInterval    the time between dropping all streams in ms, or 0 to never drop them.
+     * @return the number of times the streams were dropped.
+     * @throws InterruptedException if interrupted.
+     */
+    private int publish(int eventsPerMinute, long duration, long dropInterval) throws InterruptedException {
+        int published = 0;
+        int drops = 0;
+        long start = System.currentTimeMillis();
+        long nextDrop = start + dropInterval;
+        long now = start;
+        while (now - start < duration) {
+            long due = (now - start) * eventsPerMinute / MILLIS_PER_MINUTE;
+            while (published < due) {
+                gerrit.publish(generator.nextPatchsetCreated());
+                published++;
+            }
+            if (dropInterval > 0 && now >= nextDrop) {
+                gerrit.dropStreams();
+                drops++;
+                nextDrop += dropInterval;
+            }
+            Thread.sleep(TICK);
+            now = System.currentTimeMillis();
+        }
+        return drops;
+    }
+
+    //CS IGNORE RedundantThrows FOR NEXT 10 LINES. REASON: Informative.
+
+    /**
+     * Starts a handler with a listener that records the latency of the events in the report,
+     * and waits for it to connect.
+     *
+     * @param report the report.
+     * @return the handler.
+     * @throws InterruptedException if interrupted.
+     * @throws TimeoutException     if the handler doesn't connect.
+     */
+    private GerritHandler startHandler(LoadReport report) throws InterruptedException, TimeoutException {
+        final GerritHandler handler = new GerritHandler(config);
+        handler.addListener(new LatencyListener(generator, report));
+        handler.start();
+        long start = System.currentTimeMillis();
+        while (!handler.isConnected() || gerrit.getStreamCount() == 0) {
+            if (System.currentTimeMillis() - start > CONNECT_TIMEOUT) {
+                handler.shutdown(false);
+                throw new TimeoutException("The handler didn't connect to the fake Gerrit.");
+            }
+            Thread.sleep(TICK);
+        }
+        return handler;
+    }
+
+    /**
+     * Waits until all published events have been received, or until no more events have been received
+     * for the {@link #QUIET_PERIOD} since the rest are lost, or until the {@link #DRAIN_TIMEOUT} has passed.
+     *
+     * @param pendingBefore the number of events that were lost before the scenario started.
+     * @throws InterruptedException if interrupted.
+     */
+    private void drain(int pendingBefore) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        long lastProgress = start;
+        int pending = generator.getPending();
+        while (pending > pendingBefore) {
+            long now = System.currentTimeMillis();
+            if (now - lastProgress > QUIET_PERIOD || now - start > DRAIN_TIMEOUT) {
+                return;
+            }
+            Thread.sleep(TICK);
+            int stillPending = generator.getPending();
+            if (stillPending < pending) {
+                lastProgress = System.currentTimeMillis();
+            }
+            pending = stillPending;
+        }
+    }
+
+    //CS IGNORE RedundantThrows FOR NEXT 7 LINES. REASON: Informative.
+
+    /**
+     * Waits until the condition is met or the {@link #DRAIN_TIMEOUT} has passed.
+     *
+     * @param condition the condition.
+     * @throws InterruptedException if interrupted.
+     */
+    private static void waitFor(Condition condition) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        while (!condition.isMet() && System.currentTimeMillis() - start < DRAIN_TIMEOUT) {
+            Thread.sleep(TICK);
+        }
+    }
+
+    /**
+     * Finds a port that nothing listens to.
+     *
+     * @return the port.
+     * @throws IOException if so.
+     */
+    private static int findFreePort() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Creates a private key without a password in a temporary file.
+     *
+     * @return the file.
+     * @throws IOException if so.
+     */
+    private static File createKeyFile() throws IOException {
+        File file = File.createTempFile("loadtest", ".key");
+        try {
+            KeyPair keyPair = KeyPair.genKeyPair(new JSch(), KeyPair.RSA);
+            keyPair.writePrivateKey(file.getAbsolutePath());
+            keyPair.dispose();
+        } catch (JSchException e) {
+            throw new IOException("Could not generate a key pair: " + e.getMessage());
+        }
+        return file;
+    }
+
+    /**
+     * Runs all scenarios and prints the reports.
+     * The scenarios are tuned with the system properties
+     * loadtest.eventsPerMinute, loadtest.duration (s), loadtest.dropInterval (s), loadtest.reviews, loadtest.queries,
+     * loadtest.queryThreads, loadtest.workerThreads, loadtest.latency (ms) and loadtest.failureRate (0-1).
+     *
+     * @param args not used.
+     * @throws Exception if a scenario fails.
+     */
+    public static void main(String[] args) throws Exception {
+        int eventsPerMinute = Integer.getInteger("loadtest.eventsPerMinute", DEFAULT_EVENTS_PER_MINUTE);
+        long duration = Integer.getInteger("loadtest.duration", DEFAULT_DURATION) * MILLIS_PER_SECOND;
+        long dropInterval = Integer.getInteger("loadtest.dropInterval", DEFAULT_DROP_INTERVAL) * MILLIS_PER_SECOND;
+        int reviews = Integer.getInteger("loadtest.reviews", DEFAULT_REVIEWS);
+        int queries = Integer.getInteger("loadtest.queries", DEFAULT_QUERIES);
+        int queryThreads = Integer.getInteger("loadtest.queryThreads", DEFAULT_QUERY_THREADS);
+        int workerThreads = Integer.getInteger("loadtest.workerThreads", DEFAULT_WORKER_THREADS);
+
+        LoadTest test = new LoadTest(workerThreads);
+        test.getGerrit().setLatency(Long.getLong("loadtest.latency", 0));
+        test.getGerrit().setFailureRate(Double.parseDouble(System.getProperty("loadtest.failureRate", "0")));
+        test.start();
+        try {
+            List<LoadReport> reports = new ArrayList<LoadReport>();
+            reports.add(test.streamEvents(eventsPerMinute, duration, 0));
+            reports.add(test.streamEvents(eventsPerMinute, duration, dropInterval));
+            reports.add(test.sendCommands(reviews));
+            reports.add(test.queries(queries, queryThreads));
+            reports.add(test.shutdown(eventsPerMinute, reviews));
+            for (LoadReport report : reports) {
+                System.out.println(report);
+            }
+        } finally {
+            test.stop();
+        }
+    }
+
+    /**
+     * Something to wait for.
+     */
+    private interface Condition {
+        /**
+         * If it has happened.
+         *
+         * @return true if so.
+         */
+        boolean isMet();
+    }
+
+    /**
+     * Records the time from when the generator published an event until it reached the listener.
+     */
+    private static class LatencyListener implements GerritEventListener {
+        private final EventGenerator generator;
+        private final LoadReport report;
+
+        /**
+         * Standard Constructor.
+         *
+         * @param generator the generator of the events.
+         * @param report    the report to record in.
+         */
+        LatencyListener(EventGenerator generator, LoadReport report) {
+            this.generator = generator;
+            this.report = report;
+        }
+
+        @Override
+        public void gerritEvent(GerritEvent event) {
+            //Not generated.
+        }
+
+        @Override
+        public void gerritEvent(PatchsetCreated event) {
+            long latency = generator.received(event.getChange().getNumber());
+            if (latency >= 0) {
+                report.completed(latency);
+            }
+        }
+
+        @Override
+        public void gerritEvent(DraftPublished event) {
+            //Not generated.
+        }
+
+        @Override
+        public void gerritEvent(ChangeAbandoned event) {
+            //Not generated.
+        }
+
+        @Override
+        public void gerritEvent(ChangeMerged event) {
+            //Not generated.
+        }
+
+        @Override
+        public void gerritEvent(CommentAdded event) {
+            //Not generated.
+        }
+
+        @Override
+        public void gerritEvent(RefUpdated event) {
+            //Not generated.
+        }
+    }
+
+    /**
+     * Sends a review command for a change and records the time since it was queued.
+     */
+    private static class ReviewJob extends AbstractSendCommandJob {
+        private final LoadReport report;
+        private final int change;
+        private final long queuedOn;
+
+        /**
+         * Standard Constructor, the job is considered queued when it is created.
+         *
+         * @param config the connection config.
+         * @param report the report to record in.
+         * @param change the change number to review.
+         */
+        ReviewJob(LoadTestConfig config, LoadReport report, int change) {
+            super(config);
+            this.report = report;
+            this.change = change;
+            this.queuedOn = System.currentTimeMillis();
+        }
+
+        @Override
+        public void run() {
+            if (sendCommand("gerrit review " + change + ",1 --message 'Load test' --verified 1")) {
+                report.completed(System.currentTimeMillis() - queuedOn);
+            } else {
+                report.failed();
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.loadtest;
+
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritConnectionConfig;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh.Authentication;
+
+import java.io.File;
+
+/**
+ * The connection to the {@link FakeGerrit} on localhost.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class LoadTestConfig implements GerritConnectionConfig {
+
+    /**
+     * The user name that the load test connects as.
+     */
+    public static final String USER_NAME = "loadtest";
+
+    private final int port;
+    private final File keyFile;
+    private final int receivingThreads;
+    private final int sendingThreads;
+
+    /**
+     * Standard Constructor.
+     *
+     * @param port             the port of the fake Gerrit.
+     * @param keyFile          the private key.
+     * @param receivingThreads the number of threads that handle incoming events.
+     * @param sendingThreads   the number of threads that send commands.
+     */
+    public LoadTestConfig(int port, File keyFile, int receivingThreads, int sendingThreads) {
+        this.port = port;
+        this.keyFile = keyFile;
+        this.receivingThreads = receivingThreads;
+        this.sendingThreads = sendingThreads;
+    }
+
+    @Override
+    public File getGerritAuthKeyFile() {
+        return keyFile;
+    }
+
+    @Override
+    public String getGerritAuthKeyFilePassword() {
+        return null;
+    }
+
+    @Override
+    public String getGerritHostName() {
+        return "localhost";
+    }
+
+    @Override
+    public int getGerritSshPort() {
+        return port;
+    }
+
+    @Override
+    public String getGerritFailoverHosts() {
+        return null;
+    }
+
+    @Override
+    public String getGerritUserName() {
+        return USER_NAME;
+    }
+
+    @Override
+    public int getNumberOfReceivingWorkerThreads() {
+        return receivingThreads;
+    }
+
+    @Override
+    public int getNumberOfSendingWorkerThreads() {
+        return sendingThreads;
+    }
+
+    @Override
+    public Authentication getGerritAuthentication() {
+        return new Authentication(keyFile, USER_NAME);
+    }
+}
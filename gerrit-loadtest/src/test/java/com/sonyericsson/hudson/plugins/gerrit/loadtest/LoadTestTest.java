@@ -0,0 +1,139 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.loadtest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Short runs of the {@link LoadTest} scenarios.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class LoadTestTest {
+
+    private static final int EVENTS_PER_MINUTE = 6000;
+    private static final long DURATION = 3000;
+    private static final long DROP_INTERVAL = 1000;
+    private static final int COMMANDS = 200;
+    private static final int QUERIES = 100;
+    private static final int THREADS = 4;
+    private static final double FAILURE_RATE = 0.2;
+
+    private LoadTest loadTest;
+
+    /**
+     * Starts the fake Gerrit.
+     *
+     * @throws Exception if so.
+     */
+    @Before
+    public void setUp() throws Exception {
+        loadTest = new LoadTest(THREADS);
+        loadTest.start();
+    }
+
+    /**
+     * Stops the fake Gerrit.
+     *
+     * @throws Exception if so.
+     */
+    @After
+    public void tearDown() throws Exception {
+        loadTest.stop();
+    }
+
+    /**
+     * Tests that every streamed event reaches the listener.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testStreamEvents() throws Exception {
+        LoadReport report = loadTest.streamEvents(EVENTS_PER_MINUTE, DURATION, 0);
+        System.out.println(report);
+        assertTrue(report.getExpected() > 0);
+        assertEquals(report.getExpected(), report.getCompleted());
+        assertEquals(0, report.getDetails().get("lost"));
+    }
+
+    /**
+     * Tests that the handler reconnects every time the streams are dropped.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testReconnectStorm() throws Exception {
+        LoadReport report = loadTest.streamEvents(EVENTS_PER_MINUTE, DURATION, DROP_INTERVAL);
+        System.out.println(report);
+        assertTrue((Integer)report.getDetails().get("reconnects") >= 1);
+        assertEquals(report.getExpected(),
+                report.getCompleted() + (Integer)report.getDetails().get("lost"));
+    }
+
+    /**
+     * Tests that a backlog of review commands is sent.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testSendCommands() throws Exception {
+        LoadReport report = loadTest.sendCommands(COMMANDS);
+        System.out.println(report);
+        assertEquals(COMMANDS, report.getCompleted());
+        assertEquals(COMMANDS, report.getDetails().get("reviews"));
+    }
+
+    /**
+     * Tests that every query finishes even when some of them fail.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testQueriesWithFailures() throws Exception {
+        loadTest.getGerrit().setFailureRate(FAILURE_RATE);
+        LoadReport report = loadTest.queries(QUERIES, THREADS);
+        System.out.println(report);
+        assertEquals(QUERIES, report.getCompleted() + report.getFailed());
+        assertTrue(loadTest.getGerrit().getFailures() > 0);
+    }
+
+    /**
+     * Tests that the handler stops while events are streaming and commands are queued.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testShutdown() throws Exception {
+        LoadReport report = loadTest.shutdown(EVENTS_PER_MINUTE, COMMANDS);
+        System.out.println(report);
+        assertEquals(1, report.getCompleted());
+        assertFalse((Boolean)report.getDetails().get("handler-alive"));
+    }
+}
@@ -25,7 +25,10 @@
 package com.sonyericsson.hudson.plugins.gerrit.trigger;
 
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritDefaultValues;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ListenerProfile;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.latency.EventLatency;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh.SshConnectionFactory;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.config.Config;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.config.IGerritHudsonTriggerConfig;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh.Authentication;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh.SshAuthenticationException;
@@ -33,6 +36,8 @@ import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh.SshConnectExcepti
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh.SshConnection;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh.SshUtil;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.GerritAdministrativeMonitor;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.GerritDynamicUrlRegistry;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.RunningJobs;
 import hudson.Extension;
 import hudson.model.AdministrativeMonitor;
 import hudson.model.Describable;
@@ -43,9 +48,20 @@ import hudson.model.Saveable;
 import hudson.util.FormValidation;
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import javax.servlet.ServletException;
+import net.sf.json.JSONArray;
 import net.sf.json.JSONObject;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerProxy;
@@ -63,7 +79,17 @@ import static com.sonyericsson.hudson.plugins.gerrit.trigger.utils.StringUtil.PL
 @Extension
 public class GerritManagement extends ManagementLink implements StaplerProxy, Describable<GerritManagement>, Saveable {
 
+    /**
+     * The maximum number of triggers in the slowest triggers table.
+     */
+    public static final int MAX_SLOWEST_TRIGGERS = 20;
+    /**
+     * The maximum number of projects in the unwatched projects table.
+     */
+    public static final int MAX_UNWATCHED_PROJECTS = 20;
     private static final Logger logger = LoggerFactory.getLogger(GerritManagement.class);
+    private static final String LAST_EVENT_AGE_METRIC = "gerrit_trigger_last_event_age_seconds";
+    private static final String STALE_RECONNECTS_METRIC = "gerrit_trigger_stale_reconnects_total";
 
     @Override
     public String getIconFileName() {
@@ -192,7 +218,8 @@ public class GerritManagement extends ManagementLink implements StaplerProxy, De
                         SshConnection sshConnection = SshConnectionFactory.getConnection(
                                 gerritHostName,
                                 gerritSshPort,
-                                new Authentication(file, gerritUserName, password));
+                                new Authentication(file, gerritUserName, password),
+                                true);
                         sshConnection.disconnect();
                         return FormValidation.ok(Messages.Success());
 
@@ -231,6 +258,8 @@ public class GerritManagement extends ManagementLink implements StaplerProxy, De
 
         try {
             getConfig().setValues(form);
+            PluginImpl.getInstance().getServer(null).setConfig(getConfig());
+            PluginImpl.getInstance().setAdditionalServers(createAdditionalServers(form));
             PluginImpl.getInstance().save();
         } catch (Exception ex) {
             throw new ServletException(ex);
@@ -238,6 +267,99 @@ public class GerritManagement extends ManagementLink implements StaplerProxy, De
         rsp.sendRedirect(".");
     }
 
+    /**
+     * Creates the additional Gerrit servers from the submitted form.
+     * Each server gets the settings of the main configuration with its own connection settings on top.
+     * Servers without a name or with the same name as a previous one are ignored.
+     *
+     * @param form the submitted form.
+     * @return the servers.
+     */
+    static List<GerritServer> createAdditionalServers(JSONObject form) {
+        List<GerritServer> servers = new ArrayList<GerritServer>();
+        Object submitted = form.opt("additionalServers");
+        JSONArray array;
+        if (submitted instanceof JSONArray) {
+            array = (JSONArray)submitted;
+        } else if (submitted instanceof JSONObject) {
+            array = new JSONArray();
+            array.add(submitted);
+        } else {
+            return servers;
+        }
+        Set<String> names = new HashSet<String>();
+        for (Object obj : array) {
+            JSONObject serverForm = (JSONObject)obj;
+            String name = serverForm.optString("name", "").trim();
+            if (name.length() <= 0 || !names.add(name)) {
+                logger.warn("Ignoring additional Gerrit server with a missing or duplicate name: \"{}\"", name);
+                continue;
+            }
+            JSONObject values = JSONObject.fromObject(form);
+            values.remove("additionalServers");
+            for (Object key : serverForm.keySet()) {
+                if (!"name".equals(key)) {
+                    values.put(key, serverForm.get(key));
+                }
+            }
+            servers.add(new GerritServer(name, new Config(values)));
+        }
+        return servers;
+    }
+
+    /**
+     * Writes the event latency histograms and the state of the stream of events of every server
+     * in the Prometheus text format, for monitoring systems to scrape.
+     *
+     * @param req the request.
+     * @param rsp the response.
+     * @throws IOException if the response could not be written.
+     * @see EventLatency#writeMetrics(PrintWriter)
+     */
+    public void doMetrics(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        rsp.setContentType("text/plain; version=0.0.4; charset=UTF-8");
+        PrintWriter writer = rsp.getWriter();
+        EventLatency.writeMetrics(writer);
+        writeStreamMetrics(writer, PluginImpl.getInstance().getServers());
+        writer.flush();
+    }
+
+    /**
+     * Writes the age of the last event and the number of stale stream reconnects of every server
+     * in the Prometheus text format. The servers are labeled the same way as in the event latency histograms.
+     * A server whose stream has never been connected has no age.
+     *
+     * @param out     where to write.
+     * @param servers the servers.
+     */
+    static void writeStreamMetrics(PrintWriter out, List<GerritServer> servers) {
+        out.println("# HELP " + LAST_EVENT_AGE_METRIC
+                + " Seconds since anything was received on the stream of events.");
+        out.println("# TYPE " + LAST_EVENT_AGE_METRIC + " gauge");
+        for (GerritServer server : servers) {
+            long age = server.getLastEventAge();
+            if (age >= 0) {
+                out.println(LAST_EVENT_AGE_METRIC + "{" + serverLabel(server) + "} " + age);
+            }
+        }
+        out.println("# HELP " + STALE_RECONNECTS_METRIC
+                + " Times the stream of events has been reconnected because it was stale.");
+        out.println("# TYPE " + STALE_RECONNECTS_METRIC + " counter");
+        for (GerritServer server : servers) {
+            out.println(STALE_RECONNECTS_METRIC + "{" + serverLabel(server) + "} " + server.getStaleReconnects());
+        }
+    }
+
+    /**
+     * The server label of a metric.
+     *
+     * @param server the server.
+     * @return the label.
+     */
+    private static String serverLabel(GerritServer server) {
+        return "server=\"" + EventLatency.escape(server.getEventLatency().getServer()) + "\"";
+    }
+
     /**
      * Checks that the provided parameter is an integer and not negative.
      * @param value the value.
@@ -250,6 +372,18 @@ public class GerritManagement extends ManagementLink implements StaplerProxy, De
         return FormValidation.validatePositiveInteger(value);
     }
 
+    /**
+     * Checks that the provided parameter is an integer and not negative, zero is allowed.
+     * @param value the value.
+     * @return {@link FormValidation#validateNonNegativeInteger(String)}
+     */
+    public FormValidation doNonNegativeIntegerCheck(
+            @QueryParameter("value")
+            final String value) {
+
+        return FormValidation.validateNonNegativeInteger(value);
+    }
+
     /**
      * Checks that the provided parameter is an integer, not negative, that is larger
      * than the minimum value.
@@ -389,6 +523,146 @@ public class GerritManagement extends ManagementLink implements StaplerProxy, De
         return null;
     }
 
+    /**
+     * The builds for the current patch sets, for the statistics of "Build Current Patches Only".
+     * convenience method for the jelly page.
+     *
+     * @return the running jobs.
+     */
+    public RunningJobs getRunningJobs() {
+        return RunningJobs.getInstance();
+    }
+
+    /**
+     * The additional Gerrit servers.
+     * convenience method for the jelly page.
+     *
+     * @return the servers.
+     */
+    @SuppressWarnings("unused") //Called from Jelly
+    public List<GerritServer> getAdditionalServers() {
+        return PluginImpl.getInstance().getAdditionalServers();
+    }
+
+    /**
+     * All Gerrit servers, the default one first.
+     * convenience method for the jelly page.
+     *
+     * @return the servers.
+     */
+    @SuppressWarnings("unused") //Called from Jelly
+    public List<GerritServer> getServers() {
+        return PluginImpl.getInstance().getServers();
+    }
+
+    /**
+     * The event latency histograms of all Gerrit projects merged, per stage and event type, of each server.
+     * convenience method for the jelly page.
+     *
+     * @return the histograms per server name, the default server first.
+     */
+    @SuppressWarnings("unused") //Called from Jelly
+    public Map<String, List<EventLatency.Entry>> getEventLatencies() {
+        Map<String, List<EventLatency.Entry>> latencies = new LinkedHashMap<String, List<EventLatency.Entry>>();
+        for (GerritServer server : PluginImpl.getInstance().getServers()) {
+            List<EventLatency.Entry> summary = server.getEventLatency().getSummary();
+            if (!summary.isEmpty()) {
+                String name = server.getName();
+                if (server.isDefault()) {
+                    name = Messages.DefaultGerritServer();
+                }
+                latencies.put(name, summary);
+            }
+        }
+        return latencies;
+    }
+
+    /**
+     * The triggers that the most time is spent in, of all Gerrit servers.
+     * convenience method for the jelly page.
+     *
+     * @return the profiles of at most {@link #MAX_SLOWEST_TRIGGERS} triggers.
+     */
+    @SuppressWarnings("unused") //Called from Jelly
+    public List<ListenerProfile> getSlowestTriggers() {
+        List<ListenerProfile> profiles = new ArrayList<ListenerProfile>();
+        for (GerritServer server : PluginImpl.getInstance().getServers()) {
+            profiles.addAll(server.getListenerProfiles());
+        }
+        Collections.sort(profiles, new Comparator<ListenerProfile>() {
+            @Override
+            public int compare(ListenerProfile o1, ListenerProfile o2) {
+                return Long.valueOf(o2.getTotalTime()).compareTo(o1.getTotalTime());
+            }
+        });
+        if (profiles.size() > MAX_SLOWEST_TRIGGERS) {
+            return profiles.subList(0, MAX_SLOWEST_TRIGGERS);
+        }
+        return profiles;
+    }
+
+    /**
+     * How long each phase of the plugin startup took.
+     * convenience method for the jelly page.
+     *
+     * @return the phases, or an empty list if the plugin hasn't started.
+     */
+    @SuppressWarnings("unused") //Called from Jelly
+    public List<StartupTimer.Phase> getStartupPhases() {
+        StartupTimer timer = PluginImpl.getInstance().getStartupTimer();
+        if (timer == null) {
+            return Collections.emptyList();
+        }
+        return timer.getPhases();
+    }
+
+    /**
+     * The Gerrit projects that the most events have been dropped for because no trigger is watching them,
+     * of all Gerrit servers.
+     * convenience method for the jelly page.
+     *
+     * @return the number of dropped events of at most {@link #MAX_UNWATCHED_PROJECTS} projects.
+     */
+    @SuppressWarnings("unused") //Called from Jelly
+    public Map<String, Long> getUnwatchedProjects() {
+        Map<String, Long> dropped = new HashMap<String, Long>();
+        for (GerritServer server : PluginImpl.getInstance().getServers()) {
+            for (Map.Entry<String, Long> entry : server.getDroppedEvents().entrySet()) {
+                Long count = dropped.get(entry.getKey());
+                if (count == null) {
+                    count = 0L;
+                }
+                dropped.put(entry.getKey(), count + entry.getValue());
+            }
+        }
+        List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>(dropped.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> o1, Map.Entry<String, Long> o2) {
+                return o2.getValue().compareTo(o1.getValue());
+            }
+        });
+        Map<String, Long> result = new LinkedHashMap<String, Long>();
+        for (Map.Entry<String, Long> entry : entries) {
+            if (result.size() >= MAX_UNWATCHED_PROJECTS) {
+                break;
+            }
+            result.put(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * The fetch statistics of every dynamic trigger configuration URL.
+     * convenience method for the jelly page.
+     *
+     * @return the statistics.
+     */
+    @SuppressWarnings("unused") //Called from Jelly
+    public List<GerritDynamicUrlRegistry.UrlStatus> getDynamicUrlStatuses() {
+        return GerritDynamicUrlRegistry.getInstance().getStatuses();
+    }
+
     /**
      * The AdministrativeMonitor related to Gerrit.
      * convenience method for the jelly page.
@@ -0,0 +1,127 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * The names of the projects on a Gerrit server, kept sorted so that the ones starting with a prefix can be found
+ * without going through all of them.
+ * It is updated one project at a time as they are seen in events, and reconciled with the full list from
+ * gerrit ls-projects now and then. Readers never block the updates.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class GerritProjectIndex {
+
+    private final NavigableSet<String> projects = new ConcurrentSkipListSet<String>();
+
+    /**
+     * Adds a project.
+     *
+     * @param project the name of the project.
+     * @return true if the project wasn't known before.
+     */
+    public boolean add(String project) {
+        if (project == null || project.length() <= 0) {
+            return false;
+        }
+        return projects.add(project);
+    }
+
+    /**
+     * If the project is known.
+     *
+     * @param project the name of the project.
+     * @return true if so.
+     */
+    public boolean contains(String project) {
+        return project != null && projects.contains(project);
+    }
+
+    /**
+     * Makes the index contain exactly the provided projects.
+     * Only the differences are applied, so the index is usable while it is done.
+     *
+     * @param current all the projects on the server.
+     * @return true if any project was added or removed.
+     */
+    public boolean reconcile(Collection<String> current) {
+        boolean changed = false;
+        for (String project : current) {
+            if (add(project)) {
+                changed = true;
+            }
+        }
+        if (projects.retainAll(new HashSet<String>(current))) {
+            changed = true;
+        }
+        return changed;
+    }
+
+    /**
+     * The projects whose names start with the prefix, in alphabetical order.
+     *
+     * @param prefix the start of the names, null or empty for any project.
+     * @param max the maximum number of projects to return.
+     * @return the projects.
+     */
+    public List<String> suggest(String prefix, int max) {
+        List<String> result = new ArrayList<String>();
+        Collection<String> candidates = projects;
+        if (prefix != null && prefix.length() > 0) {
+            candidates = projects.tailSet(prefix, true);
+        }
+        for (String project : candidates) {
+            if (result.size() >= max || (prefix != null && !project.startsWith(prefix))) {
+                break;
+            }
+            result.add(project);
+        }
+        return result;
+    }
+
+    /**
+     * All the projects, in alphabetical order.
+     *
+     * @return a copy of the projects.
+     */
+    public List<String> getProjects() {
+        return new ArrayList<String>(projects);
+    }
+
+    /**
+     * The number of projects.
+     *
+     * @return the number of projects.
+     */
+    public int size() {
+        return projects.size();
+    }
+}
@@ -24,8 +24,18 @@
 package com.sonyericsson.hudson.plugins.gerrit.trigger;
 
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ConnectionListener;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritEventListener;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ProjectAwareListener;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.GerritEvent;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.ChangeAbandoned;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.ChangeBasedEvent;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.ChangeMerged;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.CommentAdded;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.DraftPublished;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.PatchsetCreated;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.RefUpdated;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh.SshConnection;
-import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh.SshConnectionFactory;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh.SshEndpoints;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ssh.SshException;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.config.IGerritHudsonTriggerConfig;
 import java.io.BufferedReader;
@@ -40,32 +50,40 @@ import org.slf4j.LoggerFactory;
  * Class responsible for providing the Config object with a list of all
  * available Gerrit projects. Executed periodically on a timely basis
  * and every time the connection to the Gerrit server has been restored.
+ * In between, new projects are added to the list as soon as an event from them is seen.
+ * Since it is only interested in events from projects that it doesn't know about yet,
+ * it doesn't stop the events of other unwatched projects from being dropped early.
  *
  * @author Gustaf Lundh &lt;Gustaf.Lundh@sonyericsson.com&gt;
  */
-public class GerritProjectListUpdater extends Thread implements ConnectionListener {
+public class GerritProjectListUpdater extends Thread implements ConnectionListener, ProjectAwareListener {
     /**
      * The command for fetching projects.
      */
     public static final String GERRIT_LS_PROJECTS = "gerrit ls-projects";
 
     /**
-     * Time to wait between refresh attempts
+     * Time to wait between reconciliations with the full list.
      */
     private static final int UPDATE_DELAY = 3600 * 1000;
     private boolean connected = false;
     private boolean shutdown = false;
     private static final Logger logger = LoggerFactory.getLogger(GerritProjectListUpdater.class);
-    private List<String> gerritProjects;
+    private final GerritProjectIndex index = new GerritProjectIndex();
+    private final GerritServer server;
 
     /**
      * Standard constructor.
+     *
+     * @param server the server to list the projects of.
      */
-    public GerritProjectListUpdater() {
+    public GerritProjectListUpdater(GerritServer server) {
+        this.server = server;
         this.setName(this.getClass().getName() + " Thread");
         this.setDaemon(true);
 
-        connected = PluginImpl.getInstance().addListener(this);
+        connected = server.addListener((ConnectionListener)this);
+        server.addListener((GerritEventListener)this);
     }
 
     @Override
@@ -91,14 +109,15 @@ public class GerritProjectListUpdater extends Thread implements ConnectionListen
     public void run() {
         while (!shutdown) {
             try {
-                if (PluginImpl.getInstance() != null && PluginImpl.getInstance().getConfig() != null && isConnected()) {
-                    IGerritHudsonTriggerConfig activeConfig = PluginImpl.getInstance().getConfig();
-                    SshConnection sshConnection = SshConnectionFactory.getConnection(
+                IGerritHudsonTriggerConfig activeConfig = server.getConfig();
+                if (activeConfig != null && isConnected()) {
+                    SshConnection sshConnection = new SshEndpoints(
                             activeConfig.getGerritHostName(),
                             activeConfig.getGerritSshPort(),
-                            activeConfig.getGerritAuthentication()
-                    );
+                            activeConfig.getGerritFailoverHosts()
+                    ).getConnection(activeConfig.getGerritAuthentication());
                     setGerritProjects(readProjects(sshConnection.executeCommandReader(GERRIT_LS_PROJECTS)));
+                    logger.debug("Reconciled the list of {} Gerrit projects.", index.size());
                     sshConnection.disconnect();
                 }
             } catch (SshException ex) {
@@ -116,7 +135,85 @@ public class GerritProjectListUpdater extends Thread implements ConnectionListen
                 break;
             }
         }
-        PluginImpl.getInstance().removeListener(this);
+        server.removeListener((ConnectionListener)this);
+        server.removeListener((GerritEventListener)this);
+    }
+
+    /**
+     * Interested in the events of the projects that aren't known yet.
+     *
+     * @param project the name of the Gerrit project.
+     * @return true if the project isn't in the list.
+     */
+    @Override
+    public boolean isWatching(String project) {
+        return !index.contains(project);
+    }
+
+    /**
+     * Adds the project of the event to the list, if it isn't there already.
+     *
+     * @param project the name of the project.
+     */
+    private void learn(String project) {
+        if (index.add(project)) {
+            logger.debug("Added the new Gerrit project {} to the list.", project);
+            server.watchedProjectsChanged();
+        }
+    }
+
+    /**
+     * Adds the project of a change to the list.
+     *
+     * @param event the event.
+     */
+    private void learn(ChangeBasedEvent event) {
+        if (event.getChange() != null) {
+            learn(event.getChange().getProject());
+        }
+    }
+
+    @Override
+    public void gerritEvent(GerritEvent event) {
+        //Not from a known project.
+    }
+
+    @Override
+    public void gerritEvent(PatchsetCreated event) {
+        learn(event);
+    }
+
+    @Override
+    public void gerritEvent(DraftPublished event) {
+        learn(event);
+    }
+
+    @Override
+    public void gerritEvent(ChangeAbandoned event) {
+        learn(event);
+    }
+
+    @Override
+    public void gerritEvent(ChangeMerged event) {
+        learn(event);
+    }
+
+    @Override
+    public void gerritEvent(CommentAdded event) {
+        learn(event);
+    }
+
+    /**
+     * Adds the project of the ref to the list.
+     * A new project always starts with one, at the very least for its refs/meta/config.
+     *
+     * @param event the event.
+     */
+    @Override
+    public void gerritEvent(RefUpdated event) {
+        if (event.getRefUpdate() != null) {
+            learn(event.getRefUpdate().getProject());
+        }
     }
 
     /**
@@ -152,22 +249,29 @@ public class GerritProjectListUpdater extends Thread implements ConnectionListen
     }
 
     /**
-     * Sets the internal Gerrit project list.
+     * Reconciles the internal Gerrit project list with the full list from the server.
      * @param projects The list of projects
      */
-    public synchronized void setGerritProjects(List<String> projects) {
-        gerritProjects = projects;
+    public void setGerritProjects(List<String> projects) {
+        if (index.reconcile(projects)) {
+            server.watchedProjectsChanged();
+        }
     }
 
     /**
-     * Returns a string list of Gerrit projects.
+     * Returns a string list of Gerrit projects, in alphabetical order.
      * @return list of gerrit projects
      */
-    public synchronized List<String> getGerritProjects() {
-        if (gerritProjects == null) {
-            gerritProjects = new ArrayList<String>();
-        }
-        return gerritProjects;
+    public List<String> getGerritProjects() {
+        return index.getProjects();
+    }
+
+    /**
+     * The index of the Gerrit projects, for looking them up by prefix.
+     * @return the index.
+     */
+    public GerritProjectIndex getIndex() {
+        return index;
     }
 }
 
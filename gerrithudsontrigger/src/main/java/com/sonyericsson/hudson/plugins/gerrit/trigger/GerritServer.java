@@ -0,0 +1,619 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger;
+
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ConnectionListener;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritEventListener;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritHandler;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritQueryCache;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritQueryHandler;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritSendCommandQueue;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ListenerProfile;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.GerritEvent;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.journal.EventJournal;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.latency.EventLatency;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.config.IGerritHudsonTriggerConfig;
+import hudson.init.InitMilestone;
+import hudson.model.Hudson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One Gerrit server that the plugin is connected to.
+ * Each server has its own connection to the stream of events with its own event queue and workers,
+ * its own pool of threads that send the review commands, its own list of projects and its own event journal,
+ * so that a busy server can't starve the others.
+ *
+ * The default server is the one configured on the main configuration page, it has no name.
+ * The other ones are picked by name in each trigger.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class GerritServer {
+
+    private static final long MILLIS_PER_HOUR = 60 * 60 * 1000;
+    private static final long MILLIS_PER_MINUTE = 60 * 1000;
+    private static final long MILLIS_PER_SECOND = 1000;
+    private static final Logger logger = LoggerFactory.getLogger(GerritServer.class);
+
+    private String name;
+    private IGerritHudsonTriggerConfig config;
+    private transient GerritHandler gerritEventManager;
+    private transient GerritProjectListUpdater projectListUpdater;
+    private transient Collection<GerritEventListener> savedEventListeners;
+    private transient Collection<ConnectionListener> savedConnectionListeners;
+    private transient EventJournal eventJournal;
+    private transient boolean itemsLoaded = false;
+
+    /**
+     * Standard Constructor.
+     *
+     * @param name   the name of the server, null for the default server.
+     * @param config the configuration of the server.
+     */
+    public GerritServer(String name, IGerritHudsonTriggerConfig config) {
+        this.name = name;
+        this.config = config;
+    }
+
+    /**
+     * The name of the server.
+     *
+     * @return the name, null for the default server.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * If this is the default server, the one configured on the main configuration page.
+     *
+     * @return true if so.
+     */
+    public boolean isDefault() {
+        return name == null;
+    }
+
+    /**
+     * The configuration of the server.
+     *
+     * @return the config.
+     */
+    public IGerritHudsonTriggerConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * The configuration of the server.
+     * The connection has to be restarted for changes of the connection values to be used.
+     *
+     * @param config the config.
+     */
+    public void setConfig(IGerritHudsonTriggerConfig config) {
+        this.config = config;
+        GerritHandler handler = gerritEventManager;
+        if (handler != null) {
+            configureHandler(handler);
+        }
+    }
+
+    /**
+     * Gives the handler the settings of the config that can be changed while it is running.
+     *
+     * @param handler the handler.
+     */
+    private void configureHandler(GerritHandler handler) {
+        handler.getWatchdog().setStaleTimeout(config.getStreamStaleTimeout() * MILLIS_PER_MINUTE);
+        handler.setListenerTimeBudget(config.getTriggerTimeBudget());
+    }
+
+    /**
+     * Starts the project list updater and the send command queue,
+     * and connects to the stream of events if the server has been configured.
+     * During the startup of Hudson the connection waits until all items have been loaded,
+     * see {@link #replayEventJournal()}.
+     */
+    public void start() {
+        logger.info("Starting {}", this);
+        projectListUpdater = new GerritProjectListUpdater(this);
+        projectListUpdater.start();
+        //Starts the send-command-queue
+        GerritSendCommandQueue.getInstance(config);
+        //do not try to connect to gerrit unless there is a URL or a hostname in the text fields
+        if (!config.hasDefaultValues()) {
+            startManager();
+        }
+    }
+
+    /**
+     * Disconnects from the server and stops the project list updater and the send command queue.
+     *
+     * @throws InterruptedException if interrupted while waiting for the project list updater to end.
+     * @throws IOException if the event journal could not be closed.
+     */
+    public void stop() throws InterruptedException, IOException {
+        logger.info("Shutting down {}", this);
+        if (projectListUpdater != null) {
+            projectListUpdater.shutdown();
+            projectListUpdater.join();
+            projectListUpdater = null;
+        }
+        if (gerritEventManager != null) {
+            gerritEventManager.shutdown(false);
+            //TODO save to register listeners?
+            gerritEventManager = null;
+        }
+        GerritSendCommandQueue.shutdown(config);
+        synchronized (this) {
+            if (eventJournal != null) {
+                eventJournal.close();
+                eventJournal = null;
+            }
+        }
+    }
+
+    /**
+     * Starts the GerritEventManager
+     */
+    private synchronized void startManager() {
+        logger.debug("starting Gerrit manager for {}", this);
+        createManager();
+        startIfItemsLoaded();
+    }
+
+    /**
+     * Creates the GerritEventManager
+     */
+    private void createManager() {
+        gerritEventManager = new GerritHandler(config);
+        gerritEventManager.setEventJournal(getEventJournal());
+        configureHandler(gerritEventManager);
+        //Add any connectionlisteners that were created while the connection was down.
+        //The event listeners are added when the connection is started.
+        if (savedConnectionListeners != null) {
+            gerritEventManager.addConnectionListeners(savedConnectionListeners);
+            savedConnectionListeners = null;
+        }
+    }
+
+    /**
+     * The name of the directory in the Hudson root where the event journal of this server is kept.
+     *
+     * @return the directory name.
+     */
+    public String getEventJournalDirectoryName() {
+        if (isDefault()) {
+            return PluginImpl.EVENT_JOURNAL_DIRECTORY;
+        }
+        return PluginImpl.EVENT_JOURNAL_DIRECTORY + "-" + name;
+    }
+
+    /**
+     * The journal of the events from Gerrit, opened the first time it is needed.
+     *
+     * @return the journal, or null if there is no Hudson to keep it in or it can't be opened.
+     */
+    private synchronized EventJournal getEventJournal() {
+        long retention = config.getEventJournalRetention() * MILLIS_PER_HOUR;
+        if (eventJournal == null && Hudson.getInstance() != null) {
+            File directory = new File(Hudson.getInstance().getRootDir(), getEventJournalDirectoryName());
+            try {
+                eventJournal = new EventJournal(directory, retention);
+            } catch (IOException e) {
+                logger.error("Could not open the event journal in " + directory
+                        + ", events received while Hudson is down will be lost.", e);
+            }
+        } else if (eventJournal != null) {
+            eventJournal.setRetention(retention);
+        }
+        return eventJournal;
+    }
+
+    /**
+     * Registers the triggers, connects, and hands the events that were received but not handled before the last
+     * restart to the triggers.
+     * Called when all items have been loaded, so that the triggers are listening.
+     */
+    public synchronized void replayEventJournal() {
+        itemsLoaded = true;
+        startIfItemsLoaded();
+    }
+
+    /**
+     * If all items have been loaded, either because we have been told so or because Hudson is up and running.
+     * Until then the triggers are not registered one by one, and no events are received.
+     *
+     * @return true if so.
+     */
+    private synchronized boolean isItemsLoaded() {
+        if (!itemsLoaded) {
+            Hudson hudson = Hudson.getInstance();
+            itemsLoaded = hudson == null
+                    || (hudson.getInitLevel() != null && hudson.getInitLevel().compareTo(InitMilestone.COMPLETED) >= 0);
+        }
+        return itemsLoaded;
+    }
+
+    /**
+     * Adds the waiting event listeners to the event manager all at once, starts it and replays the event journal,
+     * if the event manager has been created and all items have been loaded.
+     */
+    private synchronized void startIfItemsLoaded() {
+        if (gerritEventManager == null || !isItemsLoaded()) {
+            return;
+        }
+        if (savedEventListeners != null) {
+            logger.debug("Adding {} waiting listeners to {}", savedEventListeners.size(), this);
+            gerritEventManager.addEventListeners(savedEventListeners);
+            savedEventListeners = null;
+        }
+        if (gerritEventManager.getState() == Thread.State.NEW) {
+            gerritEventManager.start();
+        }
+        gerritEventManager.replayEventJournal();
+    }
+
+    /**
+     * Adds a listener to the EventManager.  The listener will receive all events from the server.
+     *
+     * @param listener the listener.
+     * @see GerritHandler#addListener(com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritEventListener)
+     */
+    public synchronized void addListener(GerritEventListener listener) {
+        if (gerritEventManager != null && isItemsLoaded()) {
+            gerritEventManager.addListener(listener);
+        } else {
+            //If the eventmanager isn't started yet, save the eventlistener so it can be added
+            //together with all the others once the eventmanager is started.
+            if (savedEventListeners == null) {
+                savedEventListeners = Collections.synchronizedSet(new HashSet<GerritEventListener>());
+            }
+            savedEventListeners.add(listener);
+        }
+    }
+
+    /**
+     * Removes a listener from the manager.
+     *
+     * @param listener the listener to remove.
+     * @see GerritHandler#removeListener(com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritEventListener)
+     */
+    public synchronized void removeListener(GerritEventListener listener) {
+        if (gerritEventManager != null) {
+            gerritEventManager.removeListener(listener);
+        }
+        if (savedEventListeners != null) {
+            savedEventListeners.remove(listener);
+        }
+    }
+
+    /**
+     * Removes a connection listener from the manager.
+     *
+     * @param listener the listener to remove.
+     */
+    public void removeListener(ConnectionListener listener) {
+        if (gerritEventManager != null) {
+            gerritEventManager.removeListener(listener);
+        } else {
+            if (savedConnectionListeners != null) {
+                savedConnectionListeners.remove(listener);
+            }
+        }
+    }
+
+    /**
+     * Adds a Connection Listener to the manager.
+     * Return the current connection status so that listeners that
+     * are added later than a connectionestablished/ connectiondown
+     * will get the current connection status.
+     *
+     * @param listener the listener.
+     * @return the connection status.
+     */
+    public boolean addListener(ConnectionListener listener) {
+        boolean connected = false;
+        if (gerritEventManager != null) {
+            connected = gerritEventManager.addListener(listener);
+        } else {
+            //If the eventmanager isn't created yet, save the connectionlistener so it can be added once
+            //the eventmanager is created.
+            if (savedConnectionListeners == null) {
+                savedConnectionListeners = Collections.synchronizedSet(new HashSet<ConnectionListener>());
+            }
+            savedConnectionListeners.add(listener);
+        }
+        return connected;
+    }
+
+    /**
+     * Starts the connection to Gerrit stream of events.
+     *
+     * @throws Exception if it is so unfortunate.
+     */
+    public synchronized void startConnection() throws Exception {
+        if (gerritEventManager == null) {
+            createManager();
+            startIfItemsLoaded();
+        } else {
+            logger.warn("Already started!");
+        }
+    }
+
+    /**
+     * Stops the connection to Gerrit stream of events.
+     *
+     * @throws Exception if it is so unfortunate.
+     */
+    public synchronized void stopConnection() throws Exception {
+        if (gerritEventManager != null) {
+            Collection<GerritEventListener> waiting = savedEventListeners;
+            savedEventListeners = null;
+            savedConnectionListeners = null;
+            gerritEventManager.shutdown(true);
+
+            savedEventListeners = gerritEventManager.removeAllEventListeners();
+            if (waiting != null) {
+                savedEventListeners.addAll(waiting);
+            }
+            savedConnectionListeners = gerritEventManager.removeAllConnectionListeners();
+            gerritEventManager = null;
+        } else {
+            logger.warn("Was told to shutdown again!?");
+        }
+    }
+
+    /**
+     * Restarts the connection to Gerrit stream of events.
+     *
+     * @throws Exception if it is so unfortunate.
+     */
+    public void restartConnection() throws Exception {
+        stopConnection();
+        startConnection();
+    }
+
+    /**
+     * If the stream of events is connected.
+     *
+     * @return true if so.
+     */
+    public boolean isConnected() {
+        GerritHandler handler = gerritEventManager;
+        return handler != null && handler.isConnected();
+    }
+
+    /**
+     * The number of events waiting to be handled.
+     *
+     * @return the number of events.
+     */
+    public int getEventQueueSize() {
+        GerritHandler handler = gerritEventManager;
+        if (handler != null) {
+            return handler.getWorkQueue().size();
+        }
+        return 0;
+    }
+
+    /**
+     * The number of seconds since anything was received on the stream of events.
+     *
+     * @return the number of seconds, or -1 if the stream has never been connected.
+     */
+    public long getLastEventAge() {
+        GerritHandler handler = gerritEventManager;
+        if (handler != null) {
+            long age = handler.getLastEventAge();
+            if (age >= 0) {
+                return age / MILLIS_PER_SECOND;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The number of times that the stream of events has been reconnected because it was stale.
+     *
+     * @return the number of reconnects.
+     */
+    public int getStaleReconnects() {
+        GerritHandler handler = gerritEventManager;
+        if (handler != null) {
+            return handler.getWatchdog().getReconnects();
+        }
+        return 0;
+    }
+
+    /**
+     * How much time is spent in each trigger, the trigger with the most total time first.
+     *
+     * @return the profiles.
+     */
+    public List<ListenerProfile> getListenerProfiles() {
+        GerritHandler handler = gerritEventManager;
+        if (handler != null) {
+            return handler.getListenerProfiles();
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Creates a query handler for the server that answers repeated queries from the cache of the connection,
+     * as long as none of the changes in the result have changed.
+     *
+     * @return the query handler.
+     */
+    public GerritQueryHandler getQueryHandler() {
+        GerritQueryHandler handler = new GerritQueryHandler(config);
+        GerritHandler eventManager = gerritEventManager;
+        if (eventManager != null) {
+            handler.setCache(eventManager.getQueryCache());
+        }
+        return handler;
+    }
+
+    /**
+     * The cache of recent query results.
+     *
+     * @return the cache, or null if the connection isn't started.
+     */
+    public GerritQueryCache getQueryCache() {
+        GerritHandler handler = gerritEventManager;
+        if (handler != null) {
+            return handler.getQueryCache();
+        }
+        return null;
+    }
+
+    /**
+     * The event latency histograms of the server.
+     *
+     * @return the histograms.
+     */
+    public EventLatency getEventLatency() {
+        return EventLatency.getInstance(config);
+    }
+
+    /**
+     * The number of events dropped per Gerrit project because no trigger is watching the project,
+     * the project with the most dropped events first.
+     *
+     * @return the dropped events.
+     */
+    public Map<String, Long> getDroppedEvents() {
+        GerritHandler handler = gerritEventManager;
+        if (handler != null) {
+            return handler.getWatchedProjects().getDroppedEvents();
+        }
+        return Collections.emptyMap();
+    }
+
+    /**
+     * The total number of events dropped because no trigger is watching the project.
+     *
+     * @return the number of events.
+     */
+    public long getDroppedEventsTotal() {
+        GerritHandler handler = gerritEventManager;
+        if (handler != null) {
+            return handler.getWatchedProjects().getDroppedTotal();
+        }
+        return 0;
+    }
+
+    /**
+     * Tells the connection that the Gerrit projects that a trigger is watching have changed,
+     * e.g. when its dynamic trigger configuration has been fetched.
+     */
+    public void watchedProjectsChanged() {
+        GerritHandler handler = gerritEventManager;
+        if (handler != null) {
+            handler.getWatchedProjects().invalidate();
+        }
+    }
+
+    /**
+     * The number of commands waiting to be sent to the server.
+     *
+     * @return the number of commands.
+     */
+    public int getSendQueueSize() {
+        return GerritSendCommandQueue.getQueueSize(config);
+    }
+
+    /**
+     * Returns a list of the projects on the server.
+     *
+     * @return list of gerrit projects
+     */
+    public List<String> getGerritProjects() {
+        if (projectListUpdater != null) {
+            return projectListUpdater.getGerritProjects();
+        } else {
+            return new ArrayList<String>();
+        }
+    }
+
+    /**
+     * Returns the projects on the server whose names start with the prefix, in alphabetical order.
+     *
+     * @param prefix the start of the names, null or empty for any project.
+     * @param max the maximum number of projects to return.
+     * @return list of gerrit projects
+     */
+    public List<String> getGerritProjects(String prefix, int max) {
+        if (projectListUpdater != null) {
+            return projectListUpdater.getIndex().suggest(prefix, max);
+        } else {
+            return new ArrayList<String>();
+        }
+    }
+
+    /**
+     * Adds the given event to the stream of events.
+     * It gets added to the same event queue as any event coming from the stream-events command in Gerrit.
+     *
+     * @param event the event.
+     * @see GerritHandler#triggerEvent(com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.GerritEvent)
+     */
+    public void triggerEvent(GerritEvent event) {
+        if (gerritEventManager != null) {
+            gerritEventManager.triggerEvent(event);
+        } else {
+            throw new IllegalStateException("Manager not started!");
+        }
+    }
+
+    /**
+     * Returns the current Gerrit version.
+     * If we are connected to Gerrit, otherwise null is returned.
+     *
+     * @return the current gerrit version as a String.
+     */
+    public String getGerritVersion() {
+        if (gerritEventManager != null) {
+            return gerritEventManager.getGerritVersion();
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (isDefault()) {
+            return "the default Gerrit server";
+        }
+        return "Gerrit server " + name;
+    }
+}
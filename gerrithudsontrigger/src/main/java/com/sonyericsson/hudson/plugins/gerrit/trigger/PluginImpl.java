@@ -26,7 +26,6 @@ package com.sonyericsson.hudson.plugins.gerrit.trigger;
 
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ConnectionListener;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritEventListener;
-import com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritHandler;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritSendCommandQueue;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.GerritEvent;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.config.Config;
@@ -42,9 +41,11 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -74,12 +75,18 @@ public class PluginImpl extends Plugin {
             Messages._ManualTriggerPermissionDescription(),
             Hudson.ADMINISTER);
 
+    /**
+     * The name of the directory in the Hudson root where the event journal is kept.
+     */
+    public static final String EVENT_JOURNAL_DIRECTORY = "gerrit-trigger-journal";
+
     private static final Logger logger = LoggerFactory.getLogger(PluginImpl.class);
-    private transient GerritHandler gerritEventManager;
-    private transient GerritProjectListUpdater projectListUpdater;
     private IGerritHudsonTriggerConfig config;
-    private transient Collection<GerritEventListener> savedEventListeners;
-    private transient Collection<ConnectionListener> savedConnectionListeners;
+    private List<GerritServer> additionalServers;
+    private transient GerritServer defaultServer;
+    private transient Map<String, Collection<GerritEventListener>> pendingListeners;
+    private transient StartupTimer startupTimer;
+    private transient Thread startupThread;
 
     /**
      * Constructor.
@@ -96,6 +103,21 @@ public class PluginImpl extends Plugin {
         return config;
     }
 
+    /**
+     * Gets the config of a server.
+     *
+     * @param serverName the name of the server, null or empty for the default server.
+     * @return the config of the server, or the global config if there is no server with the name.
+     * @see #getServer(String)
+     */
+    public IGerritHudsonTriggerConfig getConfig(String serverName) {
+        GerritServer server = getServer(serverName);
+        if (server != null) {
+            return server.getConfig();
+        }
+        return getConfig();
+    }
+
     /**
      * Returns this singleton instance.
      *
@@ -124,12 +146,10 @@ public class PluginImpl extends Plugin {
     public void start() throws Exception {
     	super.start();
         logger.info("Starting");
+        startupTimer = new StartupTimer();
+        startupTimer.begin(StartupTimer.CONFIGURATION);
         doXStreamRegistrations();
         loadConfig();
-        projectListUpdater = new GerritProjectListUpdater();
-        projectListUpdater.start();
-        //Starts the send-command-queue
-        GerritSendCommandQueue.getInstance(config);
         //do not try to connect to gerrit unless there is a URL or a hostname in the text fields
         List<VerdictCategory> categories = config.getCategories();
         if (categories == null) {
@@ -140,12 +160,159 @@ public class PluginImpl extends Plugin {
             categories.add(new VerdictCategory("CRVW", "Code Review"));
             categories.add(new VerdictCategory("VRIF", "Verified"));
         }
+        getDefaultServer().setConfig(config);
+        startupTimer.end(StartupTimer.CONFIGURATION);
+        startupTimer.begin(StartupTimer.JOBS);
+        //The servers are started while Hudson loads the jobs, they only connect when all jobs are loaded.
+        startupThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                startServers();
+            }
+        }, "Gerrit Trigger startup");
+        startupThread.setDaemon(true);
+        startupThread.start();
+    }
+
+    /**
+     * Starts all servers, called in the background during the startup.
+     */
+    private void startServers() {
+        startupTimer.begin(StartupTimer.SERVERS);
+        for (GerritServer server : getServers()) {
+            try {
+                server.start();
+            } catch (Exception e) {
+                logger.error("Could not start " + server, e);
+            }
+        }
+        startupTimer.end(StartupTimer.SERVERS);
         if (!config.hasDefaultValues()) {
-            startManager();
             logger.info("Started");
         }
     }
 
+    /**
+     * How long each phase of the startup took.
+     *
+     * @return the timer.
+     */
+    public StartupTimer getStartupTimer() {
+        return startupTimer;
+    }
+
+    /**
+     * The server configured on the main configuration page.
+     *
+     * @return the default server.
+     */
+    private synchronized GerritServer getDefaultServer() {
+        if (defaultServer == null) {
+            defaultServer = new GerritServer(null, config);
+        }
+        return defaultServer;
+    }
+
+    /**
+     * Gets a server by name.
+     *
+     * @param serverName the name of the server, null or empty for the default server.
+     * @return the server, or null if there is no server with the name.
+     */
+    public synchronized GerritServer getServer(String serverName) {
+        if (serverName == null || serverName.length() <= 0) {
+            return getDefaultServer();
+        }
+        for (GerritServer server : getAdditionalServers()) {
+            if (serverName.equals(server.getName())) {
+                return server;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * All servers, the default server first.
+     *
+     * @return the servers.
+     */
+    public synchronized List<GerritServer> getServers() {
+        List<GerritServer> list = new ArrayList<GerritServer>();
+        list.add(getDefaultServer());
+        list.addAll(getAdditionalServers());
+        return list;
+    }
+
+    /**
+     * The servers that are used by the triggers that have selected them by name.
+     *
+     * @return the servers.
+     */
+    public synchronized List<GerritServer> getAdditionalServers() {
+        if (additionalServers == null) {
+            additionalServers = new ArrayList<GerritServer>();
+        }
+        return Collections.unmodifiableList(new ArrayList<GerritServer>(additionalServers));
+    }
+
+    /**
+     * Replaces the additional servers.
+     * Servers that are kept get the new config, and their connection is restarted if any connection value changed.
+     * New servers are started and servers that are not in the list anymore are stopped.
+     *
+     * @param servers the new servers.
+     * @throws Exception if a server could not be started or stopped.
+     */
+    public synchronized void setAdditionalServers(List<GerritServer> servers) throws Exception {
+        List<GerritServer> old = new ArrayList<GerritServer>(getAdditionalServers());
+        List<GerritServer> list = new ArrayList<GerritServer>();
+        for (GerritServer server : servers) {
+            GerritServer existing = null;
+            for (GerritServer o : old) {
+                if (o.getName().equals(server.getName())) {
+                    existing = o;
+                }
+            }
+            if (existing == null) {
+                list.add(server);
+                server.start();
+                addPendingListeners(server);
+            } else {
+                old.remove(existing);
+                boolean changed = !isSameConnection(existing.getConfig(), server.getConfig());
+                if (changed) {
+                    GerritSendCommandQueue.shutdown(existing.getConfig());
+                }
+                existing.setConfig(server.getConfig());
+                if (changed) {
+                    existing.restartConnection();
+                }
+                list.add(existing);
+            }
+        }
+        for (GerritServer removed : old) {
+            removed.stop();
+        }
+        additionalServers = list;
+    }
+
+    /**
+     * If two configs connect to the same server in the same way.
+     *
+     * @param a a config.
+     * @param b the other config.
+     * @return true if so.
+     */
+    private static boolean isSameConnection(IGerritHudsonTriggerConfig a, IGerritHudsonTriggerConfig b) {
+        return String.valueOf(a.getGerritHostName()).equals(String.valueOf(b.getGerritHostName()))
+                && a.getGerritSshPort() == b.getGerritSshPort()
+                && String.valueOf(a.getGerritFailoverHosts()).equals(String.valueOf(b.getGerritFailoverHosts()))
+                && String.valueOf(a.getGerritUserName()).equals(String.valueOf(b.getGerritUserName()))
+                && String.valueOf(a.getGerritAuthKeyFile()).equals(String.valueOf(b.getGerritAuthKeyFile()))
+                && String.valueOf(a.getGerritAuthKeyFilePassword()).equals(
+                        String.valueOf(b.getGerritAuthKeyFilePassword()));
+    }
+
     /**
      * Registers XStream alias and converters to handle backwards compatibility with old data.
      */
@@ -178,38 +345,31 @@ public class PluginImpl extends Plugin {
     @Override
     public void stop() throws Exception {
         logger.info("Shutting down...");
-        projectListUpdater.shutdown();
-        projectListUpdater.join();
-        if (gerritEventManager != null) {
-            gerritEventManager.shutdown(false);
-            //TODO save to register listeners?
-            gerritEventManager = null;
+        if (startupThread != null) {
+            startupThread.join();
+            startupThread = null;
+        }
+        for (GerritServer server : getServers()) {
+            server.stop();
         }
         GerritSendCommandQueue.shutdown();
     }
 
     /**
-     * Starts the GerritEventManager
+     * Registers the triggers that have been started while the items were loaded, connects the servers
+     * and hands the events that were received but not handled before the last restart to the triggers.
+     * Called when all items have been loaded, so that the triggers are listening.
      */
-    private void startManager() {
-        logger.debug("starting Gerrit manager");
-        createManager();
-        gerritEventManager.start();
-    }
-
-    /**
-     * Creates the GerritEventManager
-     */
-    private void createManager() {
-        gerritEventManager = new GerritHandler(config);
-        //Add any event/connectionlisteners that were created while the connection was down.
-        if (savedConnectionListeners != null) {
-            gerritEventManager.addConnectionListeners(savedConnectionListeners);
-            savedConnectionListeners = null;
+    public void replayEventJournal() {
+        if (startupTimer != null) {
+            startupTimer.end(StartupTimer.JOBS);
+            startupTimer.begin(StartupTimer.TRIGGERS);
         }
-        if (savedEventListeners != null) {
-            gerritEventManager.addEventListeners(savedEventListeners);
-            savedEventListeners = null;
+        for (GerritServer server : getServers()) {
+            server.replayEventJournal();
+        }
+        if (startupTimer != null) {
+            startupTimer.end(StartupTimer.TRIGGERS);
         }
     }
 
@@ -217,18 +377,69 @@ public class PluginImpl extends Plugin {
      * Adds a listener to the EventManager.  The listener will receive all events from Gerrit.
      *
      * @param listener the listener.
-     * @see GerritHandler#addListener(com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritEventListener)
+     * @see GerritServer#addListener(com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritEventListener)
      */
     public void addListener(GerritEventListener listener) {
-        if (gerritEventManager != null) {
-            gerritEventManager.addListener(listener);
+        getDefaultServer().addListener(listener);
+    }
+
+    /**
+     * Adds a listener to the EventManager of a server. The listener will receive all events from that server.
+     * If there is no server with the name yet, the listener is added when one is.
+     *
+     * @param serverName the name of the server, null or empty for the default server.
+     * @param listener   the listener.
+     */
+    public synchronized void addListener(String serverName, GerritEventListener listener) {
+        GerritServer server = getServer(serverName);
+        if (server != null) {
+            server.addListener(listener);
         } else {
-            //If the eventmanager isn't created yet, save the eventlistener so it can be added once
-            //the eventmanager is created.
-            if (savedEventListeners == null) {
-                savedEventListeners = Collections.synchronizedSet(new HashSet<GerritEventListener>());
+            logger.warn("There is no Gerrit server called {}, {} will not get any events until there is.",
+                    serverName, listener);
+            if (pendingListeners == null) {
+                pendingListeners = new HashMap<String, Collection<GerritEventListener>>();
+            }
+            Collection<GerritEventListener> listeners = pendingListeners.get(serverName);
+            if (listeners == null) {
+                listeners = new HashSet<GerritEventListener>();
+                pendingListeners.put(serverName, listeners);
+            }
+            listeners.add(listener);
+        }
+    }
+
+    /**
+     * Removes a listener from the EventManager of a server.
+     *
+     * @param serverName the name of the server, null or empty for the default server.
+     * @param listener   the listener.
+     */
+    public synchronized void removeListener(String serverName, GerritEventListener listener) {
+        GerritServer server = getServer(serverName);
+        if (server != null) {
+            server.removeListener(listener);
+        } else if (pendingListeners != null) {
+            Collection<GerritEventListener> listeners = pendingListeners.get(serverName);
+            if (listeners != null) {
+                listeners.remove(listener);
+            }
+        }
+    }
+
+    /**
+     * Adds the listeners that were waiting for a server with its name to the server.
+     *
+     * @param server the new server.
+     */
+    private void addPendingListeners(GerritServer server) {
+        if (pendingListeners != null) {
+            Collection<GerritEventListener> listeners = pendingListeners.remove(server.getName());
+            if (listeners != null) {
+                for (GerritEventListener listener : listeners) {
+                    server.addListener(listener);
+                }
             }
-            savedEventListeners.add(listener);
         }
     }
 
@@ -236,16 +447,10 @@ public class PluginImpl extends Plugin {
      * Removes a listener from the manager.
      *
      * @param listener the listener to remove.
-     * @see GerritHandler#removeListener(com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritEventListener)
+     * @see GerritServer#removeListener(com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritEventListener)
      */
     public void removeListener(GerritEventListener listener) {
-        if (gerritEventManager != null) {
-            gerritEventManager.removeListener(listener);
-        } else {
-            if (savedEventListeners != null) {
-                savedEventListeners.remove(listener);
-            }
-        }
+        getDefaultServer().removeListener(listener);
     }
 
     /**
@@ -254,13 +459,7 @@ public class PluginImpl extends Plugin {
      * @param listener the listener to remove.
      */
     public void removeListener(ConnectionListener listener) {
-        if (gerritEventManager != null) {
-            gerritEventManager.removeListener(listener);
-        } else {
-            if (savedConnectionListeners != null) {
-                savedConnectionListeners.remove(listener);
-            }
-        }
+        getDefaultServer().removeListener(listener);
     }
 
     /**
@@ -268,21 +467,8 @@ public class PluginImpl extends Plugin {
      *
      * @throws Exception if it is so unfortunate.
      */
-    public synchronized void startConnection() throws Exception {
-        if (gerritEventManager == null) {
-            createManager();
-            if (savedEventListeners != null) {
-                gerritEventManager.addEventListeners(savedEventListeners);
-                savedEventListeners = null;
-            }
-            if (savedConnectionListeners != null) {
-                gerritEventManager.addConnectionListeners(savedConnectionListeners);
-                savedConnectionListeners = null;
-            }
-            gerritEventManager.start();
-        } else {
-            logger.warn("Already started!");
-        }
+    public void startConnection() throws Exception {
+        getDefaultServer().startConnection();
     }
 
     /**
@@ -290,18 +476,8 @@ public class PluginImpl extends Plugin {
      *
      * @throws Exception if it is so unfortunate.
      */
-    public synchronized void stopConnection() throws Exception {
-        if (gerritEventManager != null) {
-            savedEventListeners = null;
-            savedConnectionListeners = null;
-            gerritEventManager.shutdown(true);
-
-            savedEventListeners = gerritEventManager.removeAllEventListeners();
-            savedConnectionListeners = gerritEventManager.removeAllConnectionListeners();
-            gerritEventManager = null;
-        } else {
-            logger.warn("Was told to shutdown again!?");
-        }
+    public void stopConnection() throws Exception {
+        getDefaultServer().stopConnection();
     }
 
     /**
@@ -310,8 +486,7 @@ public class PluginImpl extends Plugin {
      * @throws Exception if it is so unfortunate.
      */
     public void restartConnection() throws Exception {
-        stopConnection();
-        startConnection();
+        getDefaultServer().restartConnection();
     }
 
     /**
@@ -324,18 +499,7 @@ public class PluginImpl extends Plugin {
      * @return the connection status.
      */
     public boolean addListener(ConnectionListener listener) {
-        boolean connected = false;
-        if (gerritEventManager != null) {
-            connected = gerritEventManager.addListener(listener);
-        } else {
-            //If the eventmanager isn't created yet, save the connectionlistener so it can be added once
-            //the eventmanager is created.
-            if (savedConnectionListeners == null) {
-                savedConnectionListeners = Collections.synchronizedSet(new HashSet<ConnectionListener>());
-            }
-            savedConnectionListeners.add(listener);
-        }
-        return connected;
+        return getDefaultServer().addListener(listener);
     }
 
     /**
@@ -344,11 +508,7 @@ public class PluginImpl extends Plugin {
      * @return list of gerrit projects
      */
     public List<String> getGerritProjects() {
-        if (projectListUpdater != null) {
-            return projectListUpdater.getGerritProjects();
-        } else {
-            return new ArrayList<String>();
-        }
+        return getDefaultServer().getGerritProjects();
     }
 
     /**
@@ -356,14 +516,10 @@ public class PluginImpl extends Plugin {
      * It gets added to the same event queue as any event coming from the stream-events command in Gerrit.
      *
      * @param event the event.
-     * @see GerritHandler#triggerEvent(com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.GerritEvent)
+     * @see GerritServer#triggerEvent(com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.GerritEvent)
      */
     public void triggerEvent(GerritEvent event) {
-        if (gerritEventManager != null) {
-            gerritEventManager.triggerEvent(event);
-        } else {
-            throw new IllegalStateException("Manager not started!");
-        }
+        getDefaultServer().triggerEvent(event);
     }
 
     /**
@@ -373,10 +529,6 @@ public class PluginImpl extends Plugin {
      * @return the current gerrit version as a String.
      */
     public String getGerritVersion() {
-        if (gerritEventManager != null) {
-            return gerritEventManager.getGerritVersion();
-        } else {
-            return null;
-        }
+        return getDefaultServer().getGerritVersion();
     }
 }
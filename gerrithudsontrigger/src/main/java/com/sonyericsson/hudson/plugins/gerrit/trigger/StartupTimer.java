@@ -0,0 +1,156 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures how long each phase of the plugin startup takes, so that it can be shown on the management page.
+ * The phases don't run one after the other in the same thread; the servers are started in the background
+ * while Hudson loads the jobs, and the triggers are registered when all jobs have been loaded.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class StartupTimer {
+
+    /**
+     * Loading the configuration of the plugin, before Hudson continues with anything else.
+     */
+    public static final String CONFIGURATION = "Configuration";
+    /**
+     * Starting the servers in the background, i.e. the project list updaters, send queues and event journals.
+     */
+    public static final String SERVERS = "Servers";
+    /**
+     * Hudson loading the jobs, while the triggers are started and wait to be registered.
+     */
+    public static final String JOBS = "Loading jobs";
+    /**
+     * Registering all waiting triggers at once, connecting and replaying the event journals.
+     */
+    public static final String TRIGGERS = "Trigger registration";
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupTimer.class);
+
+    private final Map<String, Long> started = new LinkedHashMap<String, Long>();
+    private final Map<String, Long> durations = new LinkedHashMap<String, Long>();
+
+    /**
+     * Marks the start of a phase.
+     *
+     * @param phase the name of the phase.
+     */
+    public synchronized void begin(String phase) {
+        started.put(phase, System.currentTimeMillis());
+    }
+
+    /**
+     * Marks the end of a phase and logs how long it took.
+     * Nothing is done if the phase hasn't begun or has already ended.
+     *
+     * @param phase the name of the phase.
+     */
+    public synchronized void end(String phase) {
+        Long start = started.get(phase);
+        if (start != null && !durations.containsKey(phase)) {
+            long duration = System.currentTimeMillis() - start;
+            durations.put(phase, duration);
+            logger.info("Startup phase {} took {} ms.", phase, duration);
+        }
+    }
+
+    /**
+     * The phases that have begun, in the order they began.
+     *
+     * @return the phases.
+     */
+    public synchronized List<Phase> getPhases() {
+        long now = System.currentTimeMillis();
+        List<Phase> phases = new ArrayList<Phase>();
+        for (Map.Entry<String, Long> entry : started.entrySet()) {
+            Long duration = durations.get(entry.getKey());
+            if (duration == null) {
+                phases.add(new Phase(entry.getKey(), now - entry.getValue(), false));
+            } else {
+                phases.add(new Phase(entry.getKey(), duration, true));
+            }
+        }
+        return phases;
+    }
+
+    /**
+     * The time a startup phase took, or has taken so far.
+     */
+    public static final class Phase {
+        private final String name;
+        private final long duration;
+        private final boolean done;
+
+        /**
+         * Standard Constructor.
+         *
+         * @param name     the name of the phase.
+         * @param duration the duration in milliseconds.
+         * @param done     if the phase has ended.
+         */
+        private Phase(String name, long duration, boolean done) {
+            this.name = name;
+            this.duration = duration;
+            this.done = done;
+        }
+
+        /**
+         * The name of the phase.
+         *
+         * @return the name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * The time the phase took, or has taken so far if it is still running.
+         *
+         * @return the duration in milliseconds.
+         */
+        public long getDuration() {
+            return duration;
+        }
+
+        /**
+         * If the phase has ended.
+         *
+         * @return true if so.
+         */
+        public boolean isDone() {
+            return done;
+        }
+    }
+}
@@ -101,9 +101,30 @@ public class Config implements IGerritHudsonTriggerConfig {
      * Default value for {@link #isGerritBuildCurrentPatchesOnly()}.
      */
     public static final boolean DEFAULT_BUILD_CURRENT_PATCHES_ONLY = false;
+    /**
+     * Default value for {@link #getUnsuccessfulMessageMaxSize()}.
+     */
+    public static final int DEFAULT_UNSUCCESSFUL_MESSAGE_MAX_SIZE = 16384;
+    /**
+     * Default value for {@link #getUnsuccessfulMessageTimeout()}.
+     */
+    public static final int DEFAULT_UNSUCCESSFUL_MESSAGE_TIMEOUT = 30;
+    /**
+     * Default value for {@link #getEventJournalRetention()}.
+     */
+    public static final int DEFAULT_EVENT_JOURNAL_RETENTION = 24;
+    /**
+     * Default value for {@link #getStreamStaleTimeout()}.
+     */
+    public static final int DEFAULT_STREAM_STALE_TIMEOUT = 0;
+    /**
+     * Default value for {@link #getTriggerTimeBudget()}.
+     */
+    public static final int DEFAULT_TRIGGER_TIME_BUDGET = 0;
 
     private String gerritHostName;
     private int gerritSshPort;
+    private String gerritFailoverHosts;
     private String gerritUserName;
     private File gerritAuthKeyFile;
     private String gerritAuthKeyFilePassword;
@@ -129,6 +150,11 @@ public class Config implements IGerritHudsonTriggerConfig {
     private int numberOfSendingWorkerThreads;
     private int buildScheduleDelay;
     private int dynamicConfigRefreshInterval;
+    private int unsuccessfulMessageMaxSize;
+    private int unsuccessfulMessageTimeout;
+    private int eventJournalRetention;
+    private int streamStaleTimeout;
+    private int triggerTimeBudget;
     private List<VerdictCategory> categories;
 
 
@@ -146,6 +172,10 @@ public class Config implements IGerritHudsonTriggerConfig {
     public void setValues(JSONObject formData) {
         gerritHostName = formData.optString("gerritHostName", DEFAULT_GERRIT_HOSTNAME);
         gerritSshPort = formData.optInt("gerritSshPort", DEFAULT_GERRIT_SSH_PORT);
+        gerritFailoverHosts = formData.optString("gerritFailoverHosts", null);
+        if (gerritFailoverHosts != null && gerritFailoverHosts.trim().length() <= 0) {
+            gerritFailoverHosts = null;
+        }
         gerritUserName = formData.optString("gerritUserName", DEFAULT_GERRIT_USERNAME);
         String file = formData.optString("gerritAuthKeyFile", null);
         if (file != null) {
@@ -243,6 +273,36 @@ public class Config implements IGerritHudsonTriggerConfig {
         dynamicConfigRefreshInterval = formData.optInt(
                 "dynamicConfigRefreshInterval",
                 DEFAULT_DYNAMIC_CONFIG_REFRESH_INTERVAL);
+        unsuccessfulMessageMaxSize = formData.optInt(
+                "unsuccessfulMessageMaxSize",
+                DEFAULT_UNSUCCESSFUL_MESSAGE_MAX_SIZE);
+        if (unsuccessfulMessageMaxSize <= 0) {
+            unsuccessfulMessageMaxSize = DEFAULT_UNSUCCESSFUL_MESSAGE_MAX_SIZE;
+        }
+        unsuccessfulMessageTimeout = formData.optInt(
+                "unsuccessfulMessageTimeout",
+                DEFAULT_UNSUCCESSFUL_MESSAGE_TIMEOUT);
+        if (unsuccessfulMessageTimeout <= 0) {
+            unsuccessfulMessageTimeout = DEFAULT_UNSUCCESSFUL_MESSAGE_TIMEOUT;
+        }
+        eventJournalRetention = formData.optInt(
+                "eventJournalRetention",
+                DEFAULT_EVENT_JOURNAL_RETENTION);
+        if (eventJournalRetention <= 0) {
+            eventJournalRetention = DEFAULT_EVENT_JOURNAL_RETENTION;
+        }
+        streamStaleTimeout = formData.optInt(
+                "streamStaleTimeout",
+                DEFAULT_STREAM_STALE_TIMEOUT);
+        if (streamStaleTimeout < 0) {
+            streamStaleTimeout = DEFAULT_STREAM_STALE_TIMEOUT;
+        }
+        triggerTimeBudget = formData.optInt(
+                "triggerTimeBudget",
+                DEFAULT_TRIGGER_TIME_BUDGET);
+        if (triggerTimeBudget < 0) {
+            triggerTimeBudget = DEFAULT_TRIGGER_TIME_BUDGET;
+        }
         categories = new LinkedList<VerdictCategory>();
         if (formData.has("verdictCategories")) {
             Object cat = formData.get("verdictCategories");
@@ -364,6 +424,21 @@ public class Config implements IGerritHudsonTriggerConfig {
         this.gerritSshPort = gerritSshPort;
     }
 
+    @Override
+    public String getGerritFailoverHosts() {
+        return gerritFailoverHosts;
+    }
+
+    /**
+     * GerritFailoverHosts.
+     *
+     * @param gerritFailoverHosts the fail over endpoints as "host[:port]" separated by spaces or commas.
+     * @see #getGerritFailoverHosts()
+     */
+    public void setGerritFailoverHosts(String gerritFailoverHosts) {
+        this.gerritFailoverHosts = gerritFailoverHosts;
+    }
+
     @Override
     public int getBuildScheduleDelay() {
         return buildScheduleDelay;
@@ -399,6 +474,96 @@ public class Config implements IGerritHudsonTriggerConfig {
         this.dynamicConfigRefreshInterval = dynamicConfigRefreshInterval;
     }
 
+    @Override
+    public int getUnsuccessfulMessageMaxSize() {
+        if (unsuccessfulMessageMaxSize <= 0) {
+            unsuccessfulMessageMaxSize = DEFAULT_UNSUCCESSFUL_MESSAGE_MAX_SIZE;
+        }
+        return unsuccessfulMessageMaxSize;
+    }
+
+    /**
+     * Setting unsuccessfulMessageMaxSize.
+     *
+     * @param unsuccessfulMessageMaxSize the max number of bytes to read.
+     * @see #getUnsuccessfulMessageMaxSize()
+     */
+    public void setUnsuccessfulMessageMaxSize(int unsuccessfulMessageMaxSize) {
+        this.unsuccessfulMessageMaxSize = unsuccessfulMessageMaxSize;
+    }
+
+    @Override
+    public int getUnsuccessfulMessageTimeout() {
+        if (unsuccessfulMessageTimeout <= 0) {
+            unsuccessfulMessageTimeout = DEFAULT_UNSUCCESSFUL_MESSAGE_TIMEOUT;
+        }
+        return unsuccessfulMessageTimeout;
+    }
+
+    /**
+     * Setting unsuccessfulMessageTimeout.
+     *
+     * @param unsuccessfulMessageTimeout the timeout in seconds.
+     * @see #getUnsuccessfulMessageTimeout()
+     */
+    public void setUnsuccessfulMessageTimeout(int unsuccessfulMessageTimeout) {
+        this.unsuccessfulMessageTimeout = unsuccessfulMessageTimeout;
+    }
+
+    @Override
+    public int getEventJournalRetention() {
+        if (eventJournalRetention <= 0) {
+            eventJournalRetention = DEFAULT_EVENT_JOURNAL_RETENTION;
+        }
+        return eventJournalRetention;
+    }
+
+    /**
+     * Setting eventJournalRetention.
+     *
+     * @param eventJournalRetention the retention time in hours.
+     * @see #getEventJournalRetention()
+     */
+    public void setEventJournalRetention(int eventJournalRetention) {
+        this.eventJournalRetention = eventJournalRetention;
+    }
+
+    @Override
+    public int getStreamStaleTimeout() {
+        if (streamStaleTimeout < 0) {
+            streamStaleTimeout = DEFAULT_STREAM_STALE_TIMEOUT;
+        }
+        return streamStaleTimeout;
+    }
+
+    /**
+     * Setting streamStaleTimeout.
+     *
+     * @param streamStaleTimeout the timeout in minutes, 0 to disable.
+     * @see #getStreamStaleTimeout()
+     */
+    public void setStreamStaleTimeout(int streamStaleTimeout) {
+        this.streamStaleTimeout = streamStaleTimeout;
+    }
+
+    @Override
+    public int getTriggerTimeBudget() {
+        if (triggerTimeBudget < 0) {
+            triggerTimeBudget = DEFAULT_TRIGGER_TIME_BUDGET;
+        }
+        return triggerTimeBudget;
+    }
+
+    /**
+     * Setting triggerTimeBudget.
+     *
+     * @param triggerTimeBudget the budget in milliseconds, 0 for none.
+     * @see #getTriggerTimeBudget()
+     */
+    public void setTriggerTimeBudget(int triggerTimeBudget) {
+        this.triggerTimeBudget = triggerTimeBudget;
+    }
+
     @Override
     public String getGerritUserName() {
         return gerritUserName;
@@ -183,6 +183,37 @@ public interface IGerritHudsonTriggerConfig extends GerritConnectionConfig {
      */
     int getDynamicConfigRefreshInterval();
 
+    /**
+     * The maximum number of bytes to read from a build's unsuccessful message file.
+     * @return the value.
+     */
+    int getUnsuccessfulMessageMaxSize();
+
+    /**
+     * How many seconds to wait for a build's unsuccessful message file to be read
+     * before the build completed notification is sent without it.
+     * @return the value.
+     */
+    int getUnsuccessfulMessageTimeout();
+
+    /**
+     * How many hours the handled events are kept in the event journal.
+     * @return the value.
+     */
+    int getEventJournalRetention();
+
+    /**
+     * How many minutes without any events before the stream of events is reconnected, 0 if never.
+     * @return the value.
+     */
+    int getStreamStaleTimeout();
+
+    /**
+     * How many milliseconds a trigger may take per event before it is skipped for a while, 0 if there is no limit.
+     * @return the value.
+     */
+    int getTriggerTimeBudget();
+
     /**
      * If the plugin still has default values for hostname and frontendurl.
      * @return true if so.
@@ -0,0 +1,110 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier;
+
+import hudson.EnvVars;
+import hudson.model.AbstractBuild;
+import hudson.model.TaskListener;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the environment of completed builds so that it is only calculated once.
+ * {@link AbstractBuild#getEnvironment(TaskListener)} goes through all
+ * {@link hudson.model.EnvironmentContributor}s and node properties and might even call the slave,
+ * but the notifications to Gerrit need it for every command and custom URL of every build in the memory.
+ *
+ * Only completed builds are cached since the environment can still change while the build is running.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public final class BuildEnvironmentCache {
+
+    /**
+     * The maximum number of build environments kept in the cache.
+     */
+    public static final int MAX_CACHED_ENVIRONMENTS = 256;
+
+    private static final Map<String, EnvVars> CACHE = Collections.synchronizedMap(
+            new LinkedHashMap<String, EnvVars>(MAX_CACHED_ENVIRONMENTS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, EnvVars> eldest) {
+                    return size() > MAX_CACHED_ENVIRONMENTS;
+                }
+            });
+
+    /**
+     * Private Constructor for Utility Class.
+     */
+    private BuildEnvironmentCache() {
+    }
+
+    /**
+     * Gets the environment of the build, from the cache if it has been calculated before.
+     *
+     * @param build    the build.
+     * @param listener the listener, if null {@link AbstractBuild#getEnvironment()} is used.
+     * @return the environment.
+     * @throws IOException          if {@link AbstractBuild#getEnvironment(TaskListener)} does.
+     * @throws InterruptedException if {@link AbstractBuild#getEnvironment(TaskListener)} does.
+     */
+    public static EnvVars getEnvironment(AbstractBuild build, TaskListener listener)
+            throws IOException, InterruptedException {
+        String key = null;
+        if (!build.isBuilding()) {
+            key = build.getExternalizableId();
+        }
+        if (key != null) {
+            EnvVars env = CACHE.get(key);
+            if (env != null) {
+                return env;
+            }
+        }
+        EnvVars env;
+        if (listener == null) {
+            env = build.getEnvironment();
+        } else {
+            env = build.getEnvironment(listener);
+        }
+        if (key != null && env != null) {
+            CACHE.put(key, env);
+        }
+        return env;
+    }
+
+    /**
+     * Removes the build from the cache, for example when it is deleted.
+     *
+     * @param build the build.
+     */
+    public static void forget(AbstractBuild build) {
+        String key = build.getExternalizableId();
+        if (key != null) {
+            CACHE.remove(key);
+        }
+    }
+}
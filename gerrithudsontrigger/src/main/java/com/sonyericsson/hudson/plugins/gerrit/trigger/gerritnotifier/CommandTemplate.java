@@ -0,0 +1,358 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A pre-parsed command "template", like the configured gerritCmdBuild* commands or a trigger's custom URL.
+ * The template is split once into a sequence of literal text, $ENV_VARS and &lt;PLUGIN_VARS&gt;
+ * so that expanding it is a single pass appending into a re-used buffer,
+ * instead of one {@link String#replace(CharSequence, CharSequence)} per parameter.
+ *
+ * The $ENV_VARS syntax is the same as {@link hudson.Util#replaceMacro(String, java.util.Map)};
+ * <code>$NAME</code>, <code>${NAME}</code> and <code>$$</code> as an escaped <code>$</code>.
+ * Variables and parameters that have no value are left untouched in the result.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public final class CommandTemplate {
+
+    /**
+     * The maximum number of compiled templates kept in the cache.
+     */
+    public static final int MAX_CACHED_TEMPLATES = 256;
+
+    /**
+     * The initial size of the per thread expansion buffer.
+     */
+    private static final int BUFFER_INITIAL_CAPACITY = 1024;
+
+    /**
+     * Buffers that have grown larger than this are not kept for the next expansion.
+     */
+    private static final int BUFFER_MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private static final Map<String, CommandTemplate> CACHE = Collections.synchronizedMap(
+            new LinkedHashMap<String, CommandTemplate>(MAX_CACHED_TEMPLATES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CommandTemplate> eldest) {
+                    return size() > MAX_CACHED_TEMPLATES;
+                }
+            });
+
+    private static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(BUFFER_INITIAL_CAPACITY);
+        }
+    };
+
+    private final String template;
+    private final Segment[] segments;
+    private final boolean environmentVariables;
+
+    /**
+     * Parses the template.
+     * Use {@link #compile(String)} to get a cached instance.
+     *
+     * @param template the template.
+     */
+    private CommandTemplate(String template) {
+        this.template = template;
+        List<Segment> list = new ArrayList<Segment>();
+        boolean hasVariables = false;
+        int literalStart = 0;
+        int i = 0;
+        while (i < template.length()) {
+            char c = template.charAt(i);
+            int end = -1;
+            Segment segment = null;
+            if (c == '$') {
+                end = findVariableEnd(template, i);
+                if (end > 0) {
+                    segment = new Variable(template.substring(i, end));
+                    hasVariables = true;
+                }
+            } else if (c == '<') {
+                end = findParameterEnd(template, i);
+                if (end > 0) {
+                    segment = new Parameter(template.substring(i, end));
+                }
+            }
+            if (segment != null) {
+                if (literalStart < i) {
+                    list.add(new Literal(template.substring(literalStart, i)));
+                }
+                list.add(segment);
+                i = end;
+                literalStart = end;
+            } else {
+                i++;
+            }
+        }
+        if (literalStart < template.length()) {
+            list.add(new Literal(template.substring(literalStart)));
+        }
+        this.segments = list.toArray(new Segment[list.size()]);
+        this.environmentVariables = hasVariables;
+    }
+
+    /**
+     * Gets the compiled version of the template, parsing it if it hasn't been seen before.
+     *
+     * @param template the template.
+     * @return the compiled template, or null if the template is null.
+     */
+    public static CommandTemplate compile(String template) {
+        if (template == null) {
+            return null;
+        }
+        CommandTemplate compiled = CACHE.get(template);
+        if (compiled == null) {
+            compiled = new CommandTemplate(template);
+            CACHE.put(template, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * The original template string.
+     *
+     * @return the template.
+     */
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * If the template references any $ENV_VARS.
+     *
+     * @return true if so.
+     */
+    public boolean hasEnvironmentVariables() {
+        return environmentVariables;
+    }
+
+    /**
+     * Expands the template into a string.
+     *
+     * @param env        the environment variables, or null if $ENV_VARS should be left as they are.
+     * @param parameters the &lt;parameters&gt;.
+     * @return the expanded string.
+     */
+    public String expand(Map<String, String> env, Map<String, String> parameters) {
+        StringBuilder str = BUFFER.get();
+        str.setLength(0);
+        for (Segment segment : segments) {
+            segment.appendTo(str, env, parameters);
+        }
+        String result = str.toString();
+        if (str.capacity() > BUFFER_MAX_RETAINED_CAPACITY) {
+            BUFFER.remove();
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return template;
+    }
+
+    /**
+     * Finds the end of the $ENV_VAR starting at <code>start</code>.
+     *
+     * @param str   the template.
+     * @param start the position of the '$'.
+     * @return the position after the variable, or -1 if it isn't a variable.
+     */
+    private static int findVariableEnd(String str, int start) {
+        int i = start + 1;
+        if (i >= str.length()) {
+            return -1;
+        }
+        char c = str.charAt(i);
+        if (c == '$') {
+            return i + 1;
+        } else if (c == '{') {
+            i++;
+            int nameStart = i;
+            while (i < str.length() && isVariableChar(str.charAt(i), true)) {
+                i++;
+            }
+            if (i > nameStart && i < str.length() && str.charAt(i) == '}') {
+                return i + 1;
+            }
+            return -1;
+        } else {
+            while (i < str.length() && isVariableChar(str.charAt(i), false)) {
+                i++;
+            }
+            if (i > start + 1) {
+                return i;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Finds the end of the &lt;PARAMETER&gt; starting at <code>start</code>.
+     *
+     * @param str   the template.
+     * @param start the position of the '&lt;'.
+     * @return the position after the parameter, or -1 if it isn't a parameter.
+     */
+    private static int findParameterEnd(String str, int start) {
+        int i = start + 1;
+        while (i < str.length() && isVariableChar(str.charAt(i), false)) {
+            i++;
+        }
+        if (i > start + 1 && i < str.length() && str.charAt(i) == '>') {
+            return i + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * If the character is allowed in a variable name.
+     *
+     * @param c      the character.
+     * @param braced if the variable is on the form ${NAME}, which also allows '.' and '+'.
+     * @return true if so.
+     */
+    private static boolean isVariableChar(char c, boolean braced) {
+        if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '_') {
+            return true;
+        }
+        return braced && (c == '.' || c == '+');
+    }
+
+    /**
+     * A part of the template.
+     */
+    private abstract static class Segment {
+        /**
+         * Appends the expanded value of this segment.
+         *
+         * @param str        the buffer.
+         * @param env        the environment variables, might be null.
+         * @param parameters the parameters.
+         */
+        abstract void appendTo(StringBuilder str, Map<String, String> env, Map<String, String> parameters);
+    }
+
+    /**
+     * Text that is copied as is.
+     */
+    private static final class Literal extends Segment {
+        private final String text;
+
+        /**
+         * Constructor.
+         *
+         * @param text the text.
+         */
+        Literal(String text) {
+            this.text = text;
+        }
+
+        @Override
+        void appendTo(StringBuilder str, Map<String, String> env, Map<String, String> parameters) {
+            str.append(text);
+        }
+    }
+
+    /**
+     * An $ENV_VAR, ${ENV_VAR} or $$.
+     */
+    private static final class Variable extends Segment {
+        private final String raw;
+        private final String name;
+
+        /**
+         * Constructor.
+         *
+         * @param raw the variable as written in the template.
+         */
+        Variable(String raw) {
+            this.raw = raw;
+            if (raw.charAt(1) == '{') {
+                this.name = raw.substring(2, raw.length() - 1);
+            } else {
+                this.name = raw.substring(1);
+            }
+        }
+
+        @Override
+        void appendTo(StringBuilder str, Map<String, String> env, Map<String, String> parameters) {
+            if (env == null) {
+                str.append(raw);
+            } else if ("$".equals(name)) {
+                str.append('$');
+            } else {
+                String value = env.get(name);
+                if (value == null) {
+                    str.append(raw);
+                } else {
+                    str.append(value);
+                }
+            }
+        }
+    }
+
+    /**
+     * A &lt;PARAMETER&gt;.
+     */
+    private static final class Parameter extends Segment {
+        private final String raw;
+        private final String name;
+
+        /**
+         * Constructor.
+         *
+         * @param raw the parameter as written in the template.
+         */
+        Parameter(String raw) {
+            this.raw = raw;
+            this.name = raw.substring(1, raw.length() - 1);
+        }
+
+        @Override
+        void appendTo(StringBuilder str, Map<String, String> env, Map<String, String> parameters) {
+            String value = null;
+            if (parameters != null) {
+                value = parameters.get(name);
+            }
+            if (value == null) {
+                str.append(raw);
+            } else {
+                str.append(value);
+            }
+        }
+    }
+}
@@ -34,7 +34,9 @@ import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.job.BuildCo
 import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.job.BuildStartedCommandJob;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.model.BuildMemory;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.model.BuildsStartedStats;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.GerritTrigger;
 import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
 import hudson.model.TaskListener;
 
 /**
@@ -72,6 +74,26 @@ public class NotificationFactory {
         return PluginImpl.getInstance().getConfig();
     }
 
+    /**
+     * Gets the config of the Gerrit server that the trigger of the project listens to.
+     *
+     * @param project the project.
+     * @return the config of the server, or the plugin-config if the project has no trigger.
+     */
+    public IGerritHudsonTriggerConfig getConfig(AbstractProject project) {
+        GerritTrigger trigger = null;
+        if (project != null) {
+            trigger = GerritTrigger.getTrigger(project);
+        }
+        if (trigger != null) {
+            IGerritHudsonTriggerConfig config = trigger.getServerConfig();
+            if (config != null) {
+                return config;
+            }
+        }
+        return getConfig();
+    }
+
     /**
      * Factory method for creating a GerritNotifier.
      *
@@ -105,7 +127,12 @@ public class NotificationFactory {
      * @see BuildCompletedCommandJob
      */
     public void queueBuildCompleted(BuildMemory.MemoryImprint memoryImprint, TaskListener listener) {
-        BuildCompletedCommandJob job = new BuildCompletedCommandJob(getConfig(),
+        AbstractProject project = null;
+        BuildMemory.MemoryImprint.Entry[] entries = memoryImprint.getEntries();
+        if (entries != null && entries.length > 0) {
+            project = entries[0].getProject();
+        }
+        BuildCompletedCommandJob job = new BuildCompletedCommandJob(getConfig(project),
                 memoryImprint, listener);
         GerritSendCommandQueue.queue(job);
     }
@@ -124,7 +151,7 @@ public class NotificationFactory {
      */
     public void queueBuildStarted(AbstractBuild build, TaskListener listener,
                                   GerritTriggeredEvent event, BuildsStartedStats stats) {
-        BuildStartedCommandJob job = new BuildStartedCommandJob(getConfig(),
+        BuildStartedCommandJob job = new BuildStartedCommandJob(getConfig(build.getProject()),
                 build, listener, event, stats);
         GerritSendCommandQueue.queue(job);
     }
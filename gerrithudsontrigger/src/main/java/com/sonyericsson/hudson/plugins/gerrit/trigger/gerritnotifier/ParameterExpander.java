@@ -32,6 +32,7 @@ import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.model.Build
 import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.GerritTrigger;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.utils.StringUtil;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.GerritTriggeredEvent;
+import hudson.EnvVars;
 import hudson.model.AbstractBuild;
 import hudson.model.Hudson;
 import hudson.model.Result;
@@ -230,29 +231,34 @@ public class ParameterExpander {
     /**
      * Expands all types of parameters in the string and returns the "replaced" string.
      * Both types means both $ENV_VARS and &lt;PLUGIN_VARS&gt;
+     * The build's environment is only looked up if the template contains any $ENV_VARS.
      * @param gerritCommand the command "template"
      * @param r the build containing the environment vars.
      * @param taskListener the taskListener
      * @param parameters the &lt;parameters&gt; from the trigger.
      * @return the expanded string.
+     * @see CommandTemplate
      */
     private String expandParameters(String gerritCommand, AbstractBuild r, TaskListener taskListener,
             Map<String, String> parameters) {
 
-        if (r != null && taskListener != null) {
+        CommandTemplate template = CommandTemplate.compile(gerritCommand);
+        if (template == null) {
+            logger.error("No gerrit cmd template to expand. Gerrit won't be notified!!");
+            return null;
+        }
+
+        EnvVars env = null;
+        if (r != null && taskListener != null && template.hasEnvironmentVariables()) {
             try {
-                gerritCommand = r.getEnvironment(taskListener).expand(gerritCommand);
+                env = BuildEnvironmentCache.getEnvironment(r, taskListener);
             } catch (Exception ex) {
                 logger.error("Failed to expand env vars into gerrit cmd. Gerrit won't be notified!!", ex);
                 return null;
             }
         }
 
-        for (Map.Entry<String, String> param : parameters.entrySet()) {
-            gerritCommand = gerritCommand.replace("<" + param.getKey() + ">", param.getValue());
-        }
-
-        return gerritCommand;
+        return template.expand(env, parameters);
     }
 
     /**
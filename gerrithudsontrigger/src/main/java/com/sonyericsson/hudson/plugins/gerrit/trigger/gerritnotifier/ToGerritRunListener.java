@@ -25,6 +25,9 @@
 package com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier;
 
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.GerritTriggeredEvent;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.PluginImpl;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.config.Config;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.config.IGerritHudsonTriggerConfig;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.model.BuildMemory;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.model.BuildsStartedStats;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.GerritCause;
@@ -40,11 +43,29 @@ import hudson.model.CauseAction;
 import hudson.model.Result;
 import hudson.model.TaskListener;
 import hudson.model.listeners.RunListener;
+import hudson.remoting.VirtualChannel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The Big RunListener in charge of coordinating build results and reporting back to Gerrit.
@@ -54,16 +75,47 @@ import java.util.List;
 @Extension
 public class ToGerritRunListener extends RunListener<AbstractBuild> {
 
+    /**
+     * The number of threads reading unsuccessful messages from workspaces.
+     */
+    public static final int FAILURE_MESSAGE_THREADS = 2;
+    private static final int THREAD_KEEP_ALIVE_TIME = 20;
+    private static final int MILLIS_PER_SECOND = 1000;
+
     private static final Logger logger = LoggerFactory.getLogger(ToGerritRunListener.class);
     private static ToGerritRunListener instance;
-    private transient BuildMemory memory;
+    private transient ConcurrentMap<String, BuildMemory> memories;
+    private transient ThreadPoolExecutor failureMessageExecutor;
 
     /**
      * Default Constructor.
      */
     public ToGerritRunListener() {
         super(AbstractBuild.class);
-        memory = new BuildMemory();
+        memories = new ConcurrentHashMap<String, BuildMemory>();
+    }
+
+    /**
+     * The memory of the builds for the events of a Gerrit server.
+     * The same change and patch set can come from different servers, so each server has its own memory.
+     *
+     * @param serverName the name of the server, null for the default server.
+     * @return the memory, created the first time it is needed.
+     */
+    BuildMemory getMemory(String serverName) {
+        String key = serverName;
+        if (key == null) {
+            key = "";
+        }
+        BuildMemory memory = memories.get(key);
+        if (memory == null) {
+            memory = new BuildMemory();
+            BuildMemory existing = memories.putIfAbsent(key, memory);
+            if (existing != null) {
+                memory = existing;
+            }
+        }
+        return memory;
     }
 
     /**
@@ -96,14 +148,21 @@ public class ToGerritRunListener extends RunListener<AbstractBuild> {
             }
             event.fireBuildCompleted(r);
             if (!cause.isSilentMode()) {
+                BuildMemory memory = getMemory(cause.getServerName());
                 memory.completed(event, r);
 
                 if (r.getResult().isWorseThan(Result.SUCCESS)) {
                     try {
-                        // Attempt to record the failure message, if applicable
-                        String failureMessage = this.obtainFailureMessage(event, r, listener);
-                        logger.info("Obtained failure message: {}", failureMessage);
-                        memory.setEntryFailureMessage(event, r, failureMessage);
+                        // Attempt to record the failure message, if applicable.
+                        // The file is found right away, but the workspace might be on a slow slave so the file
+                        // is read in the background, the notification waits for it when the message is needed.
+                        FailureMessageReader reader = this.findFailureMessage(r, listener);
+                        if (reader != null) {
+                            FutureTask<String> failureMessage = new FutureTask<String>(reader);
+                            memory.setEntryFailureMessage(event, r, failureMessage,
+                                    (long)getUnsuccessfulMessageTimeout(cause) * MILLIS_PER_SECOND);
+                            getFailureMessageExecutor().execute(failureMessage);
+                        }
                     } catch (IOException e) {
                         listener.error("[gerrit-trigger] Unable to read failure message from the workspace.");
                         logger.warn("IOException while obtaining failure message for build: "
@@ -132,6 +191,11 @@ public class ToGerritRunListener extends RunListener<AbstractBuild> {
         }
     }
 
+    @Override
+    public void onDeleted(AbstractBuild r) {
+        BuildEnvironmentCache.forget(r);
+    }
+
     @Override
     public synchronized void onStarted(AbstractBuild r, TaskListener listener) {
         GerritCause cause = getCause(r);
@@ -140,8 +204,14 @@ public class ToGerritRunListener extends RunListener<AbstractBuild> {
             cleanUpGerritCauses(cause, r);
             setThisBuild(r);
             if (cause.getEvent() != null) {
+                GerritTrigger trigger = GerritTrigger.getTrigger(r.getProject());
+                if (trigger != null) {
+                    // There won't be a trigger if this job was run through a unit test
+                    trigger.notifyBuildStarted(cause.getEvent(), r);
+                }
                 cause.getEvent().fireBuildStarted(r);
             }
+            BuildMemory memory = getMemory(cause.getServerName());
             if (!cause.isSilentMode()) {
                 memory.started(cause.getEvent(), r);
                 updateTriggerContexts(r);
@@ -153,6 +223,73 @@ public class ToGerritRunListener extends RunListener<AbstractBuild> {
         }
     }
 
+    /**
+     * The executor that reads the unsuccessful messages of completed builds.
+     * The pool is started the first time it is needed.
+     *
+     * @return the executor.
+     */
+    protected synchronized Executor getFailureMessageExecutor() {
+        if (failureMessageExecutor == null) {
+            failureMessageExecutor = new ThreadPoolExecutor(
+                    FAILURE_MESSAGE_THREADS,
+                    FAILURE_MESSAGE_THREADS,
+                    THREAD_KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "Gerrit unsuccessful message reader");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            failureMessageExecutor.allowCoreThreadTimeOut(true);
+        }
+        return failureMessageExecutor;
+    }
+
+    /**
+     * The config of the Gerrit server that sent the event of the cause, if the plugin is loaded yet.
+     *
+     * @param cause the cause of the build.
+     * @return the config or null.
+     */
+    private static IGerritHudsonTriggerConfig getConfig(GerritCause cause) {
+        if (PluginImpl.getInstance() != null && cause != null) {
+            return cause.getServerConfig();
+        }
+        return null;
+    }
+
+    /**
+     * The max number of bytes to read from an unsuccessful message file.
+     *
+     * @param cause the cause of the build.
+     * @return the configured value of the server of the cause, or the default if there is no config.
+     */
+    private static int getUnsuccessfulMessageMaxSize(GerritCause cause) {
+        IGerritHudsonTriggerConfig config = getConfig(cause);
+        if (config != null) {
+            return config.getUnsuccessfulMessageMaxSize();
+        }
+        return Config.DEFAULT_UNSUCCESSFUL_MESSAGE_MAX_SIZE;
+    }
+
+    /**
+     * The number of seconds to wait for an unsuccessful message.
+     *
+     * @param cause the cause of the build.
+     * @return the configured value of the server of the cause, or the default if there is no config.
+     */
+    private static int getUnsuccessfulMessageTimeout(GerritCause cause) {
+        IGerritHudsonTriggerConfig config = getConfig(cause);
+        if (config != null) {
+            return config.getUnsuccessfulMessageTimeout();
+        }
+        return Config.DEFAULT_UNSUCCESSFUL_MESSAGE_TIMEOUT;
+    }
+
     /**
      * Updates the {@link com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.data.TriggerContext}s for all the
      * {@link GerritCause}s in the build.
@@ -166,7 +303,8 @@ public class ToGerritRunListener extends RunListener<AbstractBuild> {
         List<Cause> causes = r.getCauses();
         for (Cause cause : causes) {
             if (cause instanceof GerritCause) {
-                memory.updateTriggerContext((GerritCause)cause, r);
+                GerritCause gerritCause = (GerritCause)cause;
+                getMemory(gerritCause.getServerName()).updateTriggerContext(gerritCause, r);
             }
         }
     }
@@ -209,12 +347,13 @@ public class ToGerritRunListener extends RunListener<AbstractBuild> {
     /**
      * Called just before a build is scheduled by the trigger.
      *
-     * @param project the project that will be built.
-     * @param event   the event that caused the build to be scheduled.
+     * @param serverName the name of the Gerrit server that sent the event, null for the default server.
+     * @param project    the project that will be built.
+     * @param event      the event that caused the build to be scheduled.
      */
-    public synchronized void onTriggered(AbstractProject project, GerritTriggeredEvent event) {
+    public synchronized void onTriggered(String serverName, AbstractProject project, GerritTriggeredEvent event) {
         //TODO stop builds for earlier patch-sets on same change.
-        memory.triggered(event, project);
+        getMemory(serverName).triggered(event, project);
         event.fireProjectTriggered(project);
         //Logging
         String name = null;
@@ -224,17 +363,31 @@ public class ToGerritRunListener extends RunListener<AbstractBuild> {
         logger.info("Project [{}] triggered by Gerrit: [{}]", name, event);
     }
 
+    /**
+     * Called just before a build is scheduled by the trigger of the default Gerrit server.
+     *
+     * @param project the project that will be built.
+     * @param event   the event that caused the build to be scheduled.
+     * @deprecated use {@link #onTriggered(String, AbstractProject, GerritTriggeredEvent)} with the server name.
+     */
+    @Deprecated
+    public void onTriggered(AbstractProject project, GerritTriggeredEvent event) {
+        onTriggered(null, project, event);
+    }
+
     /**
      * Called just before a build is scheduled by the user to retrigger.
      *
+     * @param serverName  the name of the Gerrit server that sent the event, null for the default server.
      * @param project     the project.
      * @param event       the event.
      * @param otherBuilds the list of other builds in the previous context.
      */
-    public synchronized void onRetriggered(AbstractProject project,
+    public synchronized void onRetriggered(String serverName,
+                                           AbstractProject project,
                                            GerritTriggeredEvent event,
                                            List<AbstractBuild> otherBuilds) {
-        memory.retriggered(event, project, otherBuilds);
+        getMemory(serverName).retriggered(event, project, otherBuilds);
         event.fireProjectTriggered(project);
         //Logging
         String name = null;
@@ -244,39 +397,80 @@ public class ToGerritRunListener extends RunListener<AbstractBuild> {
         logger.info("Project [{}] re-triggered by Gerrit-User: [{}]", name, event);
     }
 
+    /**
+     * Called just before a build for the default Gerrit server is scheduled by the user to retrigger.
+     *
+     * @param project     the project.
+     * @param event       the event.
+     * @param otherBuilds the list of other builds in the previous context.
+     * @deprecated use {@link #onRetriggered(String, AbstractProject, GerritTriggeredEvent, List)} with the server
+     *             name.
+     */
+    @Deprecated
+    public void onRetriggered(AbstractProject project, GerritTriggeredEvent event, List<AbstractBuild> otherBuilds) {
+        onRetriggered(null, project, event, otherBuilds);
+    }
+
     /**
      * Checks the memory if the project is currently building the event.
      *
-     * @param project the project.
-     * @param event   the event.
+     * @param serverName the name of the Gerrit server that sent the event, null for the default server.
+     * @param project    the project.
+     * @param event      the event.
      * @return true if so.
      *
      * @see BuildMemory#isBuilding(GerritTriggeredEvent, hudson.model.AbstractProject)
      */
-    public boolean isBuilding(AbstractProject project, GerritTriggeredEvent event) {
+    public boolean isBuilding(String serverName, AbstractProject project, GerritTriggeredEvent event) {
         if (project == null || event == null) {
             return false;
         } else {
-            return memory.isBuilding(event, project);
+            return getMemory(serverName).isBuilding(event, project);
         }
     }
 
+    /**
+     * Checks the memory of the default Gerrit server if the project is currently building the event.
+     *
+     * @param project the project.
+     * @param event   the event.
+     * @return true if so.
+     * @deprecated use {@link #isBuilding(String, AbstractProject, GerritTriggeredEvent)} with the server name.
+     */
+    @Deprecated
+    public boolean isBuilding(AbstractProject project, GerritTriggeredEvent event) {
+        return isBuilding(null, project, event);
+    }
+
     /**
      * Checks the memory if the event is building.
      *
-     * @param event the event.
+     * @param serverName the name of the Gerrit server that sent the event, null for the default server.
+     * @param event      the event.
      * @return true if so.
      *
      * @see BuildMemory#isBuilding(com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.GerritTriggeredEvent)
      */
-    public boolean isBuilding(GerritTriggeredEvent event) {
+    public boolean isBuilding(String serverName, GerritTriggeredEvent event) {
         if (event == null) {
             return false;
         } else {
-            return memory.isBuilding(event);
+            return getMemory(serverName).isBuilding(event);
         }
     }
 
+    /**
+     * Checks the memory of the default Gerrit server if the event is building.
+     *
+     * @param event the event.
+     * @return true if so.
+     * @deprecated use {@link #isBuilding(String, GerritTriggeredEvent)} with the server name.
+     */
+    @Deprecated
+    public boolean isBuilding(GerritTriggeredEvent event) {
+        return isBuilding((String)null, event);
+    }
+
     /**
      * Finds the GerritCause for a build if there is one.
      *
@@ -304,35 +498,38 @@ public class ToGerritRunListener extends RunListener<AbstractBuild> {
     /**
      * Returns the expanded file contents using the provided environment variables.
      * <code>null</code> will be returned if the path does not exist.
+     * Only the first <code>maxSize</code> bytes of the file are read.
      *
      * @param path The file path being read.
      * @param envVars The environment variables to use during expansion.
+     * @param maxSize The max number of bytes to read,
+     *                see {@link IGerritHudsonTriggerConfig#getUnsuccessfulMessageMaxSize()}.
      * @return The string file contents, or <code>null</code> if it does not exist.
      * @throws IOException if an error occurs while reading the file
      * @throws InterruptedException if an error occurs while checking the status of the file
      */
-    protected String getExpandedContent(FilePath path, EnvVars envVars) throws IOException, InterruptedException {
-        if (path.exists()) {
-            return envVars.expand(path.readToString());
+    protected String getExpandedContent(FilePath path, EnvVars envVars, int maxSize)
+            throws IOException, InterruptedException {
+        String content = path.act(new HeadReader(maxSize));
+        if (content != null) {
+            return envVars.expand(content);
         }
 
         return null;
     }
 
     /**
-     * Attempt to obtain the failure message for a build.
+     * Attempt to find the failure message file of a build.
      *
-     * @param event The event that triggered this build
      * @param build The build being executed
      * @param listener The build listener
-     * @return Message content from the configured unsuccessful message file
+     * @return A reader of the first file matching the configured unsuccessful message file glob, or null if none
      * @throws IOException In case of an error communicating with the {@link FilePath} or {@link EnvVars Environment}
      * @throws InterruptedException If interrupted while working with the {@link FilePath} or {@link EnvVars Environment}
      */
-    private String obtainFailureMessage(GerritTriggeredEvent event, AbstractBuild build, TaskListener listener)
+    private FailureMessageReader findFailureMessage(AbstractBuild build, TaskListener listener)
             throws IOException, InterruptedException {
         AbstractProject project = build.getProject();
-        String content = null;
 
         GerritTrigger trigger = GerritTrigger.getTrigger(project);
 
@@ -343,13 +540,7 @@ public class ToGerritRunListener extends RunListener<AbstractBuild> {
 
 
             if (filepath != null && !filepath.isEmpty()) {
-                EnvVars envVars;
-
-                if (listener == null) {
-                    envVars = build.getEnvironment();
-                } else {
-                    envVars = build.getEnvironment(listener);
-                }
+                EnvVars envVars = BuildEnvironmentCache.getEnvironment(build, listener);
 
                 // The filename may contain environment variables
                 filepath = envVars.expand(filepath);
@@ -360,13 +551,100 @@ public class ToGerritRunListener extends RunListener<AbstractBuild> {
 
                 if (matches.length > 0) {
                     // Use the first match
-                    FilePath path = matches[0];
-                    content = this.getExpandedContent(path, envVars);
-                    logger.info("Obtained failure message from file: {}", content);
+                    return new FailureMessageReader(matches[0], envVars,
+                            getUnsuccessfulMessageMaxSize(getCause(build)), build.getDisplayName());
                 }
             }
         }
 
-        return content;
+        return null;
+    }
+
+    /**
+     * Reads the failure message file found by {@link #findFailureMessage}.
+     * The build has completed by the time it runs, so any errors are only logged and the resulting message is null.
+     */
+    private class FailureMessageReader implements Callable<String> {
+        private final FilePath path;
+        private final EnvVars envVars;
+        private final int maxSize;
+        private final String buildName;
+
+        /**
+         * Standard Constructor.
+         *
+         * @param path      the failure message file.
+         * @param envVars   the environment variables of the build, to expand the message with.
+         * @param maxSize   the max number of bytes to read.
+         * @param buildName the display name of the build, for logging.
+         */
+        FailureMessageReader(FilePath path, EnvVars envVars, int maxSize, String buildName) {
+            this.path = path;
+            this.envVars = envVars;
+            this.maxSize = maxSize;
+            this.buildName = buildName;
+        }
+
+        @Override
+        public String call() {
+            try {
+                String failureMessage = getExpandedContent(path, envVars, maxSize);
+                logger.info("Obtained failure message from file: {}", failureMessage);
+                return failureMessage;
+            } catch (IOException e) {
+                logger.warn("IOException while reading the failure message of build: " + buildName, e);
+            } catch (InterruptedException e) {
+                logger.warn("InterruptedException while reading the failure message of build: " + buildName, e);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Reads the beginning of a file where it is, on the master or a slave,
+     * so that a huge message file isn't transferred or kept in memory.
+     * The file is decoded as UTF-8, and a character that is cut in half by the max size is left out.
+     */
+    static class HeadReader implements FilePath.FileCallable<String> {
+        private static final long serialVersionUID = 1L;
+        private final int maxSize;
+
+        /**
+         * Standard Constructor.
+         *
+         * @param maxSize the max number of bytes to read.
+         */
+        HeadReader(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public String invoke(File f, VirtualChannel channel) throws IOException, InterruptedException {
+            if (!f.exists()) {
+                return null;
+            }
+            byte[] buffer = new byte[(int)Math.min(maxSize, f.length())];
+            int length = 0;
+            InputStream in = new FileInputStream(f);
+            try {
+                int read = 0;
+                while (length < buffer.length && read >= 0) {
+                    read = in.read(buffer, length, buffer.length - length);
+                    if (read > 0) {
+                        length += read;
+                    }
+                }
+            } finally {
+                in.close();
+            }
+            CharsetDecoder decoder = Charset.forName("UTF-8").newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            CharBuffer out = CharBuffer.allocate(length);
+            //Unless the whole file was read, an incomplete sequence at the end is left undecoded.
+            decoder.decode(ByteBuffer.wrap(buffer, 0, length), out, length >= f.length());
+            out.flip();
+            return out.toString();
+        }
     }
 }
@@ -24,6 +24,8 @@
 
 package com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.job;
 
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.GerritTriggeredEvent;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.latency.EventLatency;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.workers.cmd.AbstractSendCommandJob;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.config.IGerritHudsonTriggerConfig;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.GerritNotifier;
@@ -62,4 +64,14 @@ public class BuildCompletedCommandJob extends AbstractSendCommandJob {
                 .createGerritNotifier((IGerritHudsonTriggerConfig)getConfig(), this);
         notifier.buildCompleted(memoryImprint, listener);
     }
+
+    @Override
+    public GerritTriggeredEvent getEvent() {
+        return memoryImprint.getEvent();
+    }
+
+    @Override
+    public EventLatency.Stage getCompletedStage() {
+        return EventLatency.Stage.VOTE_POSTED;
+    }
 }
@@ -25,6 +25,7 @@
 package com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.job;
 
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.GerritTriggeredEvent;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.latency.EventLatency;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.workers.cmd.AbstractSendCommandJob;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.config.IGerritHudsonTriggerConfig;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.GerritNotifier;
@@ -71,4 +72,14 @@ public class BuildStartedCommandJob extends AbstractSendCommandJob {
                 .createGerritNotifier((IGerritHudsonTriggerConfig)getConfig(), this);
         notifier.buildStarted(build, taskListener, event, stats);
     }
+
+    @Override
+    public GerritTriggeredEvent getEvent() {
+        return event;
+    }
+
+    @Override
+    public EventLatency.Stage getCompletedStage() {
+        return EventLatency.Stage.STARTED_REPORTED;
+    }
 }
@@ -42,6 +42,10 @@ import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Keeps track of what builds have been triggered and if all builds are done for specific events.
@@ -360,6 +364,31 @@ public class BuildMemory {
         }
     }
 
+    /**
+     * Records the failure message for the given build, that is still being read.
+     * The message is waited for when it is first asked for by the notification,
+     * but no longer than until <code>timeout</code> milliseconds from now.
+     *
+     * @param event the event.
+     * @param r the build that caused the failure.
+     * @param failureMessage the future failure message.
+     * @param timeout the max number of milliseconds to wait for the message.
+     * @see Entry#getUnsuccessfulMessage()
+     */
+    public void setEntryFailureMessage(GerritTriggeredEvent event, AbstractBuild r, Future<String> failureMessage,
+                                       long timeout) {
+        MemoryImprint pb = getMemoryImprint(event);
+
+        if (pb != null) {
+            Entry entry = pb.getEntry(r.getProject());
+
+            if (entry != null) {
+                logger.debug("Recording future unsuccessful message for {}", event);
+                entry.setUnsuccessfulMessage(failureMessage, System.currentTimeMillis() + timeout);
+            }
+        }
+    }
+
     /**
      * A holder for all builds triggered by one event.
      */
@@ -641,6 +670,8 @@ public class BuildMemory {
             private AbstractBuild build;
             private boolean buildCompleted;
             private String unsuccessfulMessage;
+            private Future<String> futureUnsuccessfulMessage;
+            private long unsuccessfulMessageDeadline;
 
             /**
              * Constructor.
@@ -696,16 +727,48 @@ public class BuildMemory {
              *
              * @param unsuccessfulMessage the message.
              */
-            private void setUnsuccessfulMessage(String unsuccessfulMessage) {
+            private synchronized void setUnsuccessfulMessage(String unsuccessfulMessage) {
                 this.unsuccessfulMessage = unsuccessfulMessage;
+                this.futureUnsuccessfulMessage = null;
+            }
+
+            /**
+             * Sets the unsuccessful message for an entry, that is still being read.
+             *
+             * @param futureMessage the future message.
+             * @param deadline the time in milliseconds after which the message is given up on.
+             */
+            private synchronized void setUnsuccessfulMessage(Future<String> futureMessage, long deadline) {
+                this.unsuccessfulMessage = null;
+                this.futureUnsuccessfulMessage = futureMessage;
+                this.unsuccessfulMessageDeadline = deadline;
             }
 
             /**
              * Gets the unsuccessful message for an entry.
+             * If the message is still being read this waits for it until the deadline,
+             * after that the reading is cancelled and null is returned.
              *
              * @return the message.
              */
-            public String getUnsuccessfulMessage() {
+            public synchronized String getUnsuccessfulMessage() {
+                if (futureUnsuccessfulMessage != null) {
+                    Future<String> future = futureUnsuccessfulMessage;
+                    futureUnsuccessfulMessage = null;
+                    long timeout = Math.max(0, unsuccessfulMessageDeadline - System.currentTimeMillis());
+                    try {
+                        unsuccessfulMessage = future.get(timeout, TimeUnit.MILLISECONDS);
+                    } catch (TimeoutException e) {
+                        logger.warn("Timed out reading the unsuccessful message for build {}", build);
+                        future.cancel(true);
+                    } catch (ExecutionException e) {
+                        logger.warn("Failed to read the unsuccessful message for build " + build, e.getCause());
+                    } catch (InterruptedException e) {
+                        logger.warn("Interrupted while waiting for the unsuccessful message for build {}", build);
+                        future.cancel(true);
+                        Thread.currentThread().interrupt();
+                    }
+                }
                 return this.unsuccessfulMessage;
             }
 
@@ -43,6 +43,7 @@ public class BadgeAction implements BuildBadgeAction {
     @Deprecated //Kept for backwards compatibility
     private transient PatchsetCreated event;
     private GerritTriggeredEvent tEvent;
+    private String serverName;
 
     /**
      * Constructor.
@@ -53,6 +54,17 @@ public class BadgeAction implements BuildBadgeAction {
         this.tEvent = event;
     }
 
+    /**
+     * Constructor.
+     *
+     * @param event      the event to show.
+     * @param serverName the name of the Gerrit server that sent the event, null for the default server.
+     */
+    public BadgeAction(GerritTriggeredEvent event, String serverName) {
+        this.tEvent = event;
+        this.serverName = serverName;
+    }
+
     /**
      * Default Constructor.
      */
@@ -92,6 +104,15 @@ public class BadgeAction implements BuildBadgeAction {
         this.tEvent = event;
     }
 
+    /**
+     * The name of the Gerrit server that sent the event.
+     *
+     * @return the name, null for the default server.
+     */
+    public String getServerName() {
+        return serverName;
+    }
+
     /**
      * Gets the URL for the change.
      *
@@ -103,12 +124,12 @@ public class BadgeAction implements BuildBadgeAction {
             if (change.getUrl() != null && change.getUrl().length() > 0) {
                 return change.getUrl();
             } else {
-                return PluginImpl.getInstance().getConfig().getGerritFrontEndUrlFor(
+                return PluginImpl.getInstance().getConfig(serverName).getGerritFrontEndUrlFor(
                         change.getNumber(),
                         change.getNumber());
             }
         } else {
-            return PluginImpl.getInstance().getConfig().getGerritFrontEndUrl();
+            return PluginImpl.getInstance().getConfig(serverName).getGerritFrontEndUrl();
         }
     }
 
@@ -50,6 +50,7 @@ public class GerritAdministrativeMonitor extends AdministrativeMonitor implement
 
     private static final Logger logger = LoggerFactory.getLogger(GerritAdministrativeMonitor.class);
     private boolean connected = false;
+    private boolean registered = false;
     private boolean gerritSnapshotVersion;
     private List<GerritVersionChecker.Feature> disabledFeatures;
 
@@ -64,42 +65,23 @@ public class GerritAdministrativeMonitor extends AdministrativeMonitor implement
     }
 
     /**
-     * Adds this monitor as a connection listener to PluginImpl. If PluginImpl hasn't started yet, a separate Thread
-     * will be started that tries again in a little while.
+     * Adds this monitor as a connection listener to PluginImpl, unless it has been done already.
+     * If PluginImpl hasn't started yet, it is tried again the next time the monitor is asked if it is activated,
+     * instead of having a thread waiting for it.
      *
      * @see PluginImpl#addListener(com.sonyericsson.hudson.plugins.gerrit.gerritevents.ConnectionListener)
      */
-    protected void addThisAsConnectionListener() {
-        if (PluginImpl.getInstance() != null) {
-            connected = PluginImpl.getInstance().addListener(this);
+    protected synchronized void addThisAsConnectionListener() {
+        if (registered) {
+            return;
+        }
+        PluginImpl plugin = PluginImpl.getInstance();
+        if (plugin != null) {
+            registered = true;
+            connected = plugin.addListener(this);
             checkGerritVersionFeatures();
         } else {
-            //We were created first... let's wait without disrupting the flow.
-            Runnable runner = new Runnable() {
-
-                private static final int SLEEP_INTERVAL = 500;
-
-                @Override
-                public void run() {
-                    while (PluginImpl.getInstance() == null) {
-                        try {
-                            Thread.sleep(SLEEP_INTERVAL);
-                        } catch (InterruptedException ex) {
-                            logger.debug("Got interrupted while sleeping...", ex);
-                        }
-                    }
-                    PluginImpl plugin = PluginImpl.getInstance();
-                    if (plugin != null) {
-                        connected = plugin.addListener(GerritAdministrativeMonitor.this);
-                        checkGerritVersionFeatures();
-                    } else {
-                        logger.error("Unable to register GerritAdministrativeMonitor");
-                    }
-                }
-            };
-            Thread thread = new Thread(runner);
-            thread.setDaemon(true);
-            thread.start();
+            logger.debug("The plugin hasn't started yet, will register later.");
         }
     }
 
@@ -151,6 +133,7 @@ public class GerritAdministrativeMonitor extends AdministrativeMonitor implement
 
     @Override
     public boolean isActivated() {
+        addThisAsConnectionListener();
         return isConnectionWarning() || isConnectionError() || isSendQueueWarning()
                 || isGerritSnapshotVersion() || hasDisabledFeatures();
     }
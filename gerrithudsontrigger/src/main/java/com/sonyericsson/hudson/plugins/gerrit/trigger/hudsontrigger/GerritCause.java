@@ -28,6 +28,7 @@ import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.ChangeBase
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.PatchsetCreated;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.Messages;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.PluginImpl;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.config.IGerritHudsonTriggerConfig;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.GerritTriggeredEvent;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.data.TriggerContext;
 import hudson.model.Cause;
@@ -128,6 +129,37 @@ public class GerritCause extends Cause {
         this.context = context;
     }
 
+    /**
+     * The name of the Gerrit server that sent the event, kept in the context.
+     * @return the name, null for the default server.
+     */
+    public String getServerName() {
+        if (context == null) {
+            return null;
+        }
+        return context.getServerName();
+    }
+
+    /**
+     * The name of the Gerrit server that sent the event, kept in the context.
+     * @param serverName the name, null for the default server.
+     */
+    public void setServerName(String serverName) {
+        if (context == null) {
+            context = new TriggerContext(tEvent);
+        }
+        context.setServerName(serverName);
+    }
+
+    /**
+     * The config of the Gerrit server that sent the event.
+     * @return the config, or the global config if the server doesn't exist anymore.
+     * @see PluginImpl#getConfig(String)
+     */
+    public IGerritHudsonTriggerConfig getServerConfig() {
+        return PluginImpl.getInstance().getConfig(getServerName());
+    }
+
     /**
      * Gives the short description of the GerritCause.
      * Intended to be overridden by subclasses.
@@ -166,11 +198,11 @@ public class GerritCause extends Cause {
     public String getUrl() {
         if (tEvent instanceof ChangeBasedEvent) {
             ChangeBasedEvent changeBasedEvent = (ChangeBasedEvent)tEvent;
-            return PluginImpl.getInstance().getConfig().getGerritFrontEndUrlFor(
+            return getServerConfig().getGerritFrontEndUrlFor(
                     changeBasedEvent.getChange().getNumber(),
                     changeBasedEvent.getPatchSet().getNumber());
         }
-        return PluginImpl.getInstance().getConfig().getGerritFrontEndUrl();
+        return getServerConfig().getGerritFrontEndUrl();
     }
 
     @Override
@@ -32,12 +32,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.List;
@@ -58,22 +63,57 @@ public final class GerritDynamicUrlProcessor {
     private static final String SHORTNAME_BRANCH = "b";
     private static final String SHORTNAME_FILE = "f";
 
+    /**
+     * The max time to wait for the connection to the URL.
+     */
+    public static final int CONNECT_TIMEOUT_MILLISECONDS = 30000;
+    /**
+     * The max time to wait for data from the URL.
+     */
+    public static final int READ_TIMEOUT_MILLISECONDS = 60000;
+
+    private static final int BUFFER_SIZE = 4096;
+    private static final int HALF_BYTE = 4;
+    private static final int LOW_BITS = 0xF;
+    private static final int HEX = 16;
+
     /**
      * Private constructor.
      */
     private GerritDynamicUrlProcessor() {
     }
+    /**
+     * This is where the actual fetching is done. If everything goes well,
+     * it returns a list of GerritProjects.
+     *
+     * @param gerritTriggerConfigUrl the URL to fetch
+     * @return a list of GerritProjects if successful
+     * @throws ParseException when the fetched content couldn't be parsed
+     * @throws IOException for all other kinds of fetch errors
+     * @see #fetch(String, FetchState)
+     */
+    public static List<GerritProject> fetch(String gerritTriggerConfigUrl)
+            throws IOException, ParseException {
+        return fetch(gerritTriggerConfigUrl, null);
+    }
+
     /**
      * This is where the actual fetching is done. If everything goes well,
      * it returns a list of GerritProjects. If the fetched content hasn't changed
-     * since the last fetch, it returns null.
+     * since the last fetch with the same state, it returns null.
+     *
+     * HTTP URLs are fetched with a conditional request using the ETag and Last-Modified
+     * of the previous response, and if the server still sends the content it is only parsed
+     * if it differs from the previous content.
      *
      * @param gerritTriggerConfigUrl the URL to fetch
+     * @param state what is known about the previous fetch of the URL, updated after a successful fetch.
+     *              If null, the content is always fetched and parsed.
      * @return a list of GerritProjects if successful, or null if no change
      * @throws ParseException when the fetched content couldn't be parsed
      * @throws IOException for all other kinds of fetch errors
      */
-    public static List<GerritProject> fetch(String gerritTriggerConfigUrl)
+    public static List<GerritProject> fetch(String gerritTriggerConfigUrl, FetchState state)
             throws IOException, ParseException {
 
         if (gerritTriggerConfigUrl == null) {
@@ -82,14 +122,115 @@ public final class GerritDynamicUrlProcessor {
         if (gerritTriggerConfigUrl.isEmpty()) {
             throw new MalformedURLException("The gerritTriggerConfigUrl is empty");
         }
+        if (state != null && !gerritTriggerConfigUrl.equals(state.getUrl())) {
+            state.reset(gerritTriggerConfigUrl);
+        }
 
         // Prepare for fetching the URL
         URL url = new URL(gerritTriggerConfigUrl);
         URLConnection connection = url.openConnection();
         connection.setDoInput(true);
-        InputStream instream = connection.getInputStream();
-        BufferedReader reader = new BufferedReader(new InputStreamReader(instream));
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLISECONDS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLISECONDS);
+        if (state != null && connection instanceof HttpURLConnection) {
+            if (state.getEtag() != null) {
+                connection.setRequestProperty("If-None-Match", state.getEtag());
+            }
+            if (state.getLastModified() > 0) {
+                connection.setIfModifiedSince(state.getLastModified());
+            }
+        }
+        byte[] content;
+        String etag;
+        long lastModified;
+        try {
+            if (connection instanceof HttpURLConnection
+                    && ((HttpURLConnection)connection).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                logger.debug("{} is not modified.", gerritTriggerConfigUrl);
+                if (state != null) {
+                    state.setFetchedBytes(0);
+                }
+                return null;
+            }
+            content = readFully(connection.getInputStream());
+            etag = connection.getHeaderField("ETag");
+            lastModified = connection.getLastModified();
+        } finally {
+            if (connection instanceof HttpURLConnection) {
+                ((HttpURLConnection)connection).disconnect();
+            }
+        }
+
+        if (state != null) {
+            state.setFetchedBytes(content.length);
+        }
+        String contentHash = hash(content);
+        if (state != null && contentHash.equals(state.getContentHash())) {
+            logger.debug("The content of {} is unchanged.", gerritTriggerConfigUrl);
+            return null;
+        }
+
+        List<GerritProject> dynamicGerritProjects = parse(
+                new BufferedReader(new InputStreamReader(new ByteArrayInputStream(content))));
+
+        if (state != null) {
+            state.update(etag, lastModified, contentHash);
+        }
+        return dynamicGerritProjects;
+    }
+
+    /**
+     * Reads everything from the stream and closes it.
+     *
+     * @param instream the stream.
+     * @return the content.
+     * @throws IOException if the reading fails.
+     */
+    private static byte[] readFully(InputStream instream) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read = instream.read(buffer);
+            while (read >= 0) {
+                out.write(buffer, 0, read);
+                read = instream.read(buffer);
+            }
+            return out.toByteArray();
+        } finally {
+            instream.close();
+        }
+    }
+
+    /**
+     * Calculates a hash of the content, to find out if it has changed.
+     *
+     * @param content the content.
+     * @return the hash as a hex string.
+     */
+    private static String hash(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(content);
+            StringBuilder str = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                str.append(Character.forDigit((b >> HALF_BYTE) & LOW_BITS, HEX));
+                str.append(Character.forDigit(b & LOW_BITS, HEX));
+            }
+            return str.toString();
+        } catch (NoSuchAlgorithmException e) {
+            //Every Java platform is required to support SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
 
+    /**
+     * Parses the trigger configuration.
+     *
+     * @param reader the content.
+     * @return a list of GerritProjects.
+     * @throws ParseException when the content couldn't be parsed
+     * @throws IOException if reading fails
+     */
+    private static List<GerritProject> parse(BufferedReader reader) throws IOException, ParseException {
         // This is what a line in the file should look like, after all comments and
         // leading and trailing whitespace have been removed:
         // item: one of the characters p (for Project), b (for Branch) or f (for FilePath)
@@ -194,4 +335,95 @@ public final class GerritDynamicUrlProcessor {
 
         return dynamicGerritProjects;
     }
+
+    /**
+     * What is known about the previous successful fetch of a URL,
+     * used to find out if the content has changed since then.
+     */
+    public static class FetchState {
+        private String url;
+        private String etag;
+        private long lastModified;
+        private String contentHash;
+        private int fetchedBytes;
+
+        /**
+         * The URL that this state is for.
+         *
+         * @return the URL.
+         */
+        public synchronized String getUrl() {
+            return url;
+        }
+
+        /**
+         * The ETag header of the previous response.
+         *
+         * @return the ETag or null.
+         */
+        public synchronized String getEtag() {
+            return etag;
+        }
+
+        /**
+         * The Last-Modified header of the previous response.
+         *
+         * @return the time in milliseconds or 0 if unknown.
+         */
+        public synchronized long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * The hash of the previous content.
+         *
+         * @return the hash or null.
+         */
+        public synchronized String getContentHash() {
+            return contentHash;
+        }
+
+        /**
+         * The number of bytes of content that the latest fetch got, 0 if it wasn't modified.
+         *
+         * @return the number of bytes.
+         */
+        public synchronized int getFetchedBytes() {
+            return fetchedBytes;
+        }
+
+        /**
+         * The number of bytes of content that the latest fetch got.
+         *
+         * @param bytes the number of bytes.
+         */
+        synchronized void setFetchedBytes(int bytes) {
+            this.fetchedBytes = bytes;
+        }
+
+        /**
+         * Forgets the previous fetch, for example when the URL has changed.
+         *
+         * @param newUrl the URL that the state is for from now on.
+         */
+        public synchronized void reset(String newUrl) {
+            this.url = newUrl;
+            this.etag = null;
+            this.lastModified = 0;
+            this.contentHash = null;
+        }
+
+        /**
+         * Remembers a successful fetch.
+         *
+         * @param newEtag         the ETag header, or null.
+         * @param newLastModified the Last-Modified header, or 0.
+         * @param newContentHash  the hash of the content.
+         */
+        synchronized void update(String newEtag, long newLastModified, String newContentHash) {
+            this.etag = newEtag;
+            this.lastModified = newLastModified;
+            this.contentHash = newContentHash;
+        }
+    }
 }
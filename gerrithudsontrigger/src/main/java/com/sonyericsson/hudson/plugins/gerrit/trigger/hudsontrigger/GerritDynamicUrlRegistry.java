@@ -0,0 +1,535 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger;
+
+import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.data.GerritProject;
+import hudson.model.Hudson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Keeps track of which triggers use which dynamic trigger configuration URL,
+ * so that each distinct URL is fetched once per refresh interval no matter how many jobs use it.
+ * The parsed configuration is handed to all triggers subscribing to the URL.
+ *
+ * The fetches are scheduled on the {@link GerritTriggerTimer}, with a random offset for each URL
+ * so that they don't all happen at the same time. A URL that fails to be fetched is retried with
+ * an exponentially increasing delay, up to {@link #MAX_BACKOFF_MILLISECONDS}.
+ * The last parsed configuration of every URL is kept in a {@link GerritDynamicUrlSnapshot},
+ * which the triggers start with after a restart.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public final class GerritDynamicUrlRegistry {
+
+    /**
+     * The max delay between two attempts to fetch a failing URL,
+     * unless the refresh interval is even longer.
+     */
+    public static final long MAX_BACKOFF_MILLISECONDS = 30 * 60 * 1000;
+    private static final int MAX_BACKOFF_SHIFT = 10;
+    private static final Logger logger = LoggerFactory.getLogger(GerritDynamicUrlRegistry.class);
+
+    /**
+     * The instance used by the singleton mechanism.
+     */
+    private static GerritDynamicUrlRegistry instance = null;
+
+    private final Map<String, UrlSubscription> subscriptions = new HashMap<String, UrlSubscription>();
+    private final Map<GerritTrigger, UrlSubscription> triggers =
+            new IdentityHashMap<GerritTrigger, UrlSubscription>();
+    private GerritDynamicUrlSnapshot snapshot;
+    private boolean snapshotLoaded = false;
+
+    /**
+     * The private constructor (this is a singleton class).
+     */
+    private GerritDynamicUrlRegistry() {
+    }
+
+    /**
+     * Returns the instance, and creates it first if needed.
+     *
+     * @return the instance of this class
+     */
+    public static synchronized GerritDynamicUrlRegistry getInstance() {
+        if (instance == null) {
+            instance = new GerritDynamicUrlRegistry();
+        }
+        return instance;
+    }
+
+    /**
+     * The snapshot of the last parsed configurations, loaded from the Hudson root directory the first time.
+     *
+     * @return the snapshot, or null if there is no Hudson to store it in.
+     */
+    synchronized GerritDynamicUrlSnapshot getSnapshot() {
+        if (!snapshotLoaded) {
+            snapshotLoaded = true;
+            Hudson hudson = Hudson.getInstance();
+            if (hudson != null) {
+                snapshot = new GerritDynamicUrlSnapshot(new File(hudson.getRootDir(),
+                        GerritDynamicUrlSnapshot.FILE_NAME));
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Sets the snapshot. Only intended for tests.
+     *
+     * @param snapshot the snapshot, or null for none.
+     */
+    synchronized void setSnapshot(GerritDynamicUrlSnapshot snapshot) {
+        this.snapshot = snapshot;
+        this.snapshotLoaded = true;
+    }
+
+    /**
+     * Subscribes the trigger to the configuration of the URL.
+     * If the URL is already fetched for another trigger the trigger gets the last fetched configuration right away,
+     * otherwise the URL is scheduled to be fetched periodically.
+     *
+     * @param trigger the trigger.
+     * @param url     the dynamic trigger configuration URL.
+     */
+    public void subscribe(GerritTrigger trigger, String url) {
+        UrlSubscription subscription;
+        synchronized (this) {
+            unsubscribe(trigger);
+            subscription = subscriptions.get(url);
+            if (subscription == null) {
+                subscription = new UrlSubscription(url, getSnapshot());
+                subscriptions.put(url, subscription);
+                subscription.schedule(GerritTriggerTimer.getInstance().getInitialDelay());
+            }
+            subscription.getTriggers().add(trigger);
+            triggers.put(trigger, subscription);
+            logger.debug("{} now has {} subscribers.", url, subscription.getTriggers().size());
+        }
+        subscription.notifySubscriber(trigger);
+    }
+
+    /**
+     * Unsubscribes the trigger. When the last trigger of a URL is gone the URL is no longer fetched.
+     *
+     * @param trigger the trigger.
+     */
+    public synchronized void unsubscribe(GerritTrigger trigger) {
+        UrlSubscription subscription = triggers.remove(trigger);
+        if (subscription != null) {
+            subscription.getTriggers().remove(trigger);
+            if (subscription.getTriggers().isEmpty()) {
+                logger.debug("No more subscribers for {}", subscription.getUrl());
+                subscription.cancel();
+                subscriptions.remove(subscription.getUrl());
+            }
+        }
+    }
+
+    /**
+     * The number of distinct URLs that are fetched.
+     *
+     * @return the number of URLs.
+     */
+    public synchronized int getUrlCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * The number of triggers that use the URL.
+     *
+     * @param url the URL.
+     * @return the number of triggers.
+     */
+    public synchronized int getSubscriberCount(String url) {
+        UrlSubscription subscription = subscriptions.get(url);
+        if (subscription != null) {
+            return subscription.getTriggers().size();
+        }
+        return 0;
+    }
+
+    /**
+     * The statistics of every URL, sorted by URL.
+     *
+     * @return the statistics.
+     */
+    public synchronized List<UrlStatus> getStatuses() {
+        Map<String, UrlStatus> sorted = new TreeMap<String, UrlStatus>();
+        for (UrlSubscription subscription : subscriptions.values()) {
+            sorted.put(subscription.getUrl(), subscription.getStatus());
+        }
+        return new ArrayList<UrlStatus>(sorted.values());
+    }
+
+    /**
+     * Fetches the URL as soon as possible, unless it is already being fetched.
+     *
+     * @param url the URL.
+     */
+    public synchronized void refresh(String url) {
+        UrlSubscription subscription = subscriptions.get(url);
+        if (subscription != null) {
+            subscription.reschedule(0);
+        }
+    }
+
+    /**
+     * The delay before the next fetch.
+     *
+     * @param period   the refresh interval in milliseconds.
+     * @param failures the number of failed fetches in a row.
+     * @return the delay in milliseconds.
+     */
+    static long nextDelay(long period, int failures) {
+        if (failures <= 0) {
+            return period;
+        }
+        long backoff = period * (1L << Math.min(failures, MAX_BACKOFF_SHIFT));
+        return Math.min(backoff, Math.max(period, MAX_BACKOFF_MILLISECONDS));
+    }
+
+    /**
+     * A URL and the triggers that use it.
+     */
+    private final class UrlSubscription implements Runnable {
+        private final String url;
+        private final List<GerritTrigger> subscribers = new ArrayList<GerritTrigger>();
+        private final GerritDynamicUrlProcessor.FetchState state = new GerritDynamicUrlProcessor.FetchState();
+        private ScheduledFuture<?> future;
+        private boolean cancelled = false;
+        private List<GerritProject> projects;
+        private Exception error;
+        private int failures = 0;
+        private long lastFetch = 0;
+        private long lastDuration = 0;
+        private int lastBytes = 0;
+        private int lastProjectCount = -1;
+        private long nextFetch = 0;
+
+        /**
+         * Standard Constructor.
+         *
+         * @param url      the URL.
+         * @param snapshot where to find the last known configuration of the URL, or null.
+         */
+        private UrlSubscription(String url, GerritDynamicUrlSnapshot snapshot) {
+            this.url = url;
+            if (snapshot != null) {
+                projects = snapshot.get(url);
+                if (projects != null) {
+                    lastProjectCount = projects.size();
+                }
+            }
+        }
+
+        /**
+         * The URL.
+         *
+         * @return the URL.
+         */
+        String getUrl() {
+            return url;
+        }
+
+        /**
+         * The subscribing triggers, guarded by the registry.
+         *
+         * @return the triggers.
+         */
+        List<GerritTrigger> getTriggers() {
+            return subscribers;
+        }
+
+        /**
+         * Schedules the next fetch, guarded by the registry.
+         *
+         * @param delay the delay in milliseconds.
+         */
+        void schedule(long delay) {
+            nextFetch = System.currentTimeMillis() + delay;
+            future = GerritTriggerTimer.getInstance().schedule(this, delay);
+        }
+
+        /**
+         * Moves the next fetch, unless a fetch is running right now. Guarded by the registry.
+         *
+         * @param delay the delay in milliseconds.
+         */
+        void reschedule(long delay) {
+            if (future != null && future.cancel(false)) {
+                schedule(delay);
+            }
+        }
+
+        /**
+         * Stops fetching, guarded by the registry.
+         */
+        void cancel() {
+            cancelled = true;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+
+        /**
+         * A snapshot of the statistics, guarded by the registry.
+         *
+         * @return the statistics.
+         */
+        UrlStatus getStatus() {
+            String errorMessage = null;
+            if (error != null) {
+                errorMessage = error.getClass().getSimpleName() + ": " + error.getMessage();
+            }
+            return new UrlStatus(url, subscribers.size(), lastFetch, lastDuration, lastBytes,
+                    lastProjectCount, errorMessage, failures, nextFetch);
+        }
+
+        @Override
+        public void run() {
+            synchronized (GerritDynamicUrlRegistry.this) {
+                if (cancelled) {
+                    return;
+                }
+                future = null;
+            }
+            try {
+                fetch();
+            } finally {
+                synchronized (GerritDynamicUrlRegistry.this) {
+                    if (!cancelled) {
+                        schedule(nextDelay(GerritTriggerTimer.getInstance().getPeriod(), failures));
+                    }
+                }
+            }
+        }
+
+        /**
+         * Fetches the URL and hands the result to all subscribers.
+         */
+        void fetch() {
+            List<GerritProject> fetched = null;
+            Exception fetchError = null;
+            long start = System.currentTimeMillis();
+            try {
+                fetched = GerritDynamicUrlProcessor.fetch(url, state);
+            } catch (ParseException e) {
+                fetchError = e;
+            } catch (IOException e) {
+                fetchError = e;
+            }
+            List<GerritTrigger> current;
+            GerritDynamicUrlSnapshot currentSnapshot;
+            HashSet<String> usedUrls;
+            synchronized (GerritDynamicUrlRegistry.this) {
+                lastFetch = start;
+                lastDuration = System.currentTimeMillis() - start;
+                if (fetchError != null) {
+                    failures++;
+                    lastBytes = 0;
+                } else {
+                    failures = 0;
+                    lastBytes = state.getFetchedBytes();
+                }
+                if (fetched != null) {
+                    projects = fetched;
+                    lastProjectCount = fetched.size();
+                }
+                error = fetchError;
+                current = new ArrayList<GerritTrigger>(subscribers);
+                currentSnapshot = snapshot;
+                usedUrls = new HashSet<String>(subscriptions.keySet());
+            }
+            if (fetchError != null) {
+                logger.error("Failed to fetch the dynamic trigger configuration " + url + " used by "
+                        + current.size() + " jobs, failure " + failures + " in a row.", fetchError);
+            }
+            for (GerritTrigger trigger : current) {
+                trigger.updateDynamicGerritProjects(fetched, fetchError);
+            }
+            if (fetched != null && currentSnapshot != null) {
+                currentSnapshot.put(url, fetched, usedUrls);
+            }
+        }
+
+        /**
+         * Hands the last fetched configuration to a new subscriber.
+         *
+         * @param trigger the trigger.
+         */
+        void notifySubscriber(GerritTrigger trigger) {
+            List<GerritProject> lastProjects;
+            Exception lastError;
+            synchronized (GerritDynamicUrlRegistry.this) {
+                lastProjects = projects;
+                lastError = error;
+            }
+            if (lastProjects != null || lastError != null) {
+                trigger.updateDynamicGerritProjects(lastProjects, lastError);
+            }
+        }
+    }
+
+    /**
+     * The statistics of a URL, for the management page.
+     */
+    public static final class UrlStatus {
+        private final String url;
+        private final int subscribers;
+        private final long lastFetch;
+        private final long lastDuration;
+        private final int lastBytes;
+        private final int projectCount;
+        private final String error;
+        private final int failures;
+        private final long nextFetch;
+
+        /**
+         * Standard Constructor.
+         *
+         * @param url          the URL.
+         * @param subscribers  the number of triggers using it.
+         * @param lastFetch    when it was last fetched, 0 if never.
+         * @param lastDuration how many milliseconds the last fetch took.
+         * @param lastBytes    how many bytes the last fetch got.
+         * @param projectCount the number of projects in the last parsed content, -1 if never parsed.
+         * @param error        the error of the last fetch, or null.
+         * @param failures     the number of failed fetches in a row.
+         * @param nextFetch    when the next fetch is scheduled.
+         */
+        //CS IGNORE ParameterNumber FOR NEXT 2 LINES. REASON: Value object.
+        UrlStatus(String url, int subscribers, long lastFetch, long lastDuration, int lastBytes, int projectCount,
+                  String error, int failures, long nextFetch) {
+            this.url = url;
+            this.subscribers = subscribers;
+            this.lastFetch = lastFetch;
+            this.lastDuration = lastDuration;
+            this.lastBytes = lastBytes;
+            this.projectCount = projectCount;
+            this.error = error;
+            this.failures = failures;
+            this.nextFetch = nextFetch;
+        }
+
+        /**
+         * The URL.
+         *
+         * @return the URL.
+         */
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * The number of triggers using the URL.
+         *
+         * @return the number of triggers.
+         */
+        public int getSubscribers() {
+            return subscribers;
+        }
+
+        /**
+         * When the URL was last fetched.
+         *
+         * @return the time, or null if never.
+         */
+        public Date getLastFetch() {
+            if (lastFetch > 0) {
+                return new Date(lastFetch);
+            }
+            return null;
+        }
+
+        /**
+         * How long the last fetch took.
+         *
+         * @return the duration in milliseconds.
+         */
+        public long getLastDuration() {
+            return lastDuration;
+        }
+
+        /**
+         * How many bytes the last fetch got, 0 if the content wasn't modified.
+         *
+         * @return the number of bytes.
+         */
+        public int getLastBytes() {
+            return lastBytes;
+        }
+
+        /**
+         * The number of projects in the last parsed content.
+         *
+         * @return the number of projects, or -1 if it has never been parsed.
+         */
+        public int getProjectCount() {
+            return projectCount;
+        }
+
+        /**
+         * The error of the last fetch.
+         *
+         * @return the error message, or null if the last fetch went well.
+         */
+        public String getError() {
+            return error;
+        }
+
+        /**
+         * The number of failed fetches in a row.
+         *
+         * @return the number of failures.
+         */
+        public int getFailures() {
+            return failures;
+        }
+
+        /**
+         * When the next fetch is scheduled.
+         *
+         * @return the time.
+         */
+        public Date getNextFetch() {
+            return new Date(nextFetch);
+        }
+    }
+}
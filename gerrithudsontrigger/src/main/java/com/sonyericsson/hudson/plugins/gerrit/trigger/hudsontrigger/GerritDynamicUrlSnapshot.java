@@ -0,0 +1,333 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger;
+
+import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.data.Branch;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.data.CompareType;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.data.FilePath;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.data.GerritProject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A compact binary copy of the last parsed configuration of every dynamic trigger configuration URL,
+ * so that the triggers have their last known patterns right after a restart instead of nothing
+ * until the first fetch has completed.
+ *
+ * The file is read into memory in one go and written to a temporary file that replaces the old one.
+ * Format, all integers big endian and strings as an int length followed by UTF-8 bytes:
+ * <pre>
+ * int magic, int version, int number of URLs,
+ *   per URL: string url, long time of fetch, int number of projects,
+ *     per project: byte operator, string pattern, int number of branches,
+ *       per branch: byte operator, string pattern,
+ *     int number of file paths,
+ *       per file path: byte operator, string pattern.
+ * </pre>
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class GerritDynamicUrlSnapshot {
+
+    /**
+     * The name of the snapshot file.
+     */
+    public static final String FILE_NAME = "gerrit-trigger-dynamic-config.bin";
+
+    /**
+     * How long a URL that no trigger uses any more is kept in the snapshot.
+     */
+    public static final long MAX_UNUSED_AGE_MILLISECONDS = 7L * 24 * 60 * 60 * 1000;
+
+    private static final int MAGIC = 0x47544443;
+    private static final int VERSION = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Logger logger = LoggerFactory.getLogger(GerritDynamicUrlSnapshot.class);
+
+    private final File file;
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+    /**
+     * Standard Constructor. Loads the file if it exists.
+     *
+     * @param file the snapshot file.
+     */
+    public GerritDynamicUrlSnapshot(File file) {
+        this.file = file;
+        load();
+    }
+
+    /**
+     * The last parsed configuration of the URL.
+     *
+     * @param url the URL.
+     * @return the configuration, or null if there is none.
+     */
+    public synchronized List<GerritProject> get(String url) {
+        Entry entry = entries.get(url);
+        if (entry != null) {
+            return entry.getProjects();
+        }
+        return null;
+    }
+
+    /**
+     * The number of URLs in the snapshot.
+     *
+     * @return the number of URLs.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Stores the newly parsed configuration of the URL and writes the snapshot.
+     * URLs that are not in use and haven't been updated for {@link #MAX_UNUSED_AGE_MILLISECONDS} are dropped.
+     *
+     * @param url      the URL.
+     * @param projects the configuration.
+     * @param usedUrls the URLs that are currently in use.
+     */
+    public synchronized void put(String url, List<GerritProject> projects, Set<String> usedUrls) {
+        long now = System.currentTimeMillis();
+        entries.put(url, new Entry(now, Collections.unmodifiableList(new ArrayList<GerritProject>(projects))));
+        List<String> unused = new ArrayList<String>();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            if (!usedUrls.contains(e.getKey()) && now - e.getValue().getTime() > MAX_UNUSED_AGE_MILLISECONDS) {
+                unused.add(e.getKey());
+            }
+        }
+        for (String u : unused) {
+            entries.remove(u);
+        }
+        try {
+            save();
+        } catch (IOException e) {
+            logger.warn("Could not save the dynamic trigger configuration snapshot " + file, e);
+        }
+    }
+
+    /**
+     * Reads the file, if there is one. A corrupt or unknown file is ignored.
+     */
+    private void load() {
+        if (!file.isFile()) {
+            return;
+        }
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            FileChannel channel = in.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate((int)channel.size());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                logger.warn("Ignoring the dynamic trigger configuration snapshot {} of an unknown format.", file);
+                return;
+            }
+            int urls = buffer.getInt();
+            Map<String, Entry> loaded = new HashMap<String, Entry>();
+            for (int i = 0; i < urls; i++) {
+                String url = readString(buffer);
+                long time = buffer.getLong();
+                int count = buffer.getInt();
+                List<GerritProject> projects = new ArrayList<GerritProject>(count);
+                for (int p = 0; p < count; p++) {
+                    CompareType type = CompareType.findByOperator((char)buffer.get());
+                    String pattern = readString(buffer);
+                    List<Branch> branches = new ArrayList<Branch>();
+                    int branchCount = buffer.getInt();
+                    for (int b = 0; b < branchCount; b++) {
+                        branches.add(new Branch(CompareType.findByOperator((char)buffer.get()), readString(buffer)));
+                    }
+                    List<FilePath> filePaths = new ArrayList<FilePath>();
+                    int fileCount = buffer.getInt();
+                    for (int f = 0; f < fileCount; f++) {
+                        filePaths.add(new FilePath(CompareType.findByOperator((char)buffer.get()), readString(buffer)));
+                    }
+                    projects.add(new GerritProject(type, pattern, branches, filePaths));
+                }
+                loaded.put(url, new Entry(time, Collections.unmodifiableList(projects)));
+            }
+            entries.putAll(loaded);
+            logger.info("Loaded the last known dynamic trigger configuration of {} URLs.", urls);
+        } catch (IOException e) {
+            logger.warn("Could not read the dynamic trigger configuration snapshot " + file, e);
+        } catch (BufferUnderflowException e) {
+            logger.warn("Ignoring the truncated dynamic trigger configuration snapshot {}", file);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Ignoring the corrupt dynamic trigger configuration snapshot {}", file);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    logger.debug("Could not close the snapshot file.", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes all entries to a temporary file and replaces the snapshot file with it.
+     *
+     * @throws IOException if so.
+     */
+    private void save() throws IOException {
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                writeString(out, e.getKey());
+                out.writeLong(e.getValue().getTime());
+                List<GerritProject> projects = e.getValue().getProjects();
+                out.writeInt(projects.size());
+                for (GerritProject project : projects) {
+                    out.writeByte(project.getCompareType().getOperator());
+                    writeString(out, project.getPattern());
+                    List<Branch> branches = project.getBranches();
+                    if (branches == null) {
+                        branches = Collections.emptyList();
+                    }
+                    out.writeInt(branches.size());
+                    for (Branch branch : branches) {
+                        out.writeByte(branch.getCompareType().getOperator());
+                        writeString(out, branch.getPattern());
+                    }
+                    List<FilePath> filePaths = project.getFilePaths();
+                    if (filePaths == null) {
+                        filePaths = Collections.emptyList();
+                    }
+                    out.writeInt(filePaths.size());
+                    for (FilePath filePath : filePaths) {
+                        out.writeByte(filePath.getCompareType().getOperator());
+                        writeString(out, filePath.getPattern());
+                    }
+                }
+            }
+        } finally {
+            out.close();
+        }
+        //On Windows a file can't be replaced by renaming.
+        if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file))) {
+            throw new IOException("Could not replace " + file + " with " + tmp);
+        }
+    }
+
+    /**
+     * Reads a string written by {@link #writeString(DataOutputStream, String)}.
+     *
+     * @param buffer the buffer.
+     * @return the string.
+     */
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Bad string length " + length);
+        }
+        ByteBuffer bytes = buffer.slice();
+        bytes.limit(length);
+        buffer.position(buffer.position() + length);
+        return UTF_8.decode(bytes).toString();
+    }
+
+    /**
+     * Writes the string as its UTF-8 length followed by the UTF-8 bytes.
+     *
+     * @param out the stream.
+     * @param str the string, null is written as an empty string.
+     * @throws IOException if so.
+     */
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        byte[] bytes;
+        if (str == null) {
+            bytes = new byte[0];
+        } else {
+            bytes = str.getBytes(UTF_8.name());
+        }
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * The configuration of a URL and when it was fetched.
+     */
+    private static final class Entry {
+        private final long time;
+        private final List<GerritProject> projects;
+
+        /**
+         * Standard Constructor.
+         *
+         * @param time     when the configuration was fetched.
+         * @param projects the configuration.
+         */
+        Entry(long time, List<GerritProject> projects) {
+            this.time = time;
+            this.projects = projects;
+        }
+
+        /**
+         * When the configuration was fetched.
+         *
+         * @return the time.
+         */
+        long getTime() {
+            return time;
+        }
+
+        /**
+         * The configuration.
+         *
+         * @return the projects.
+         */
+        List<GerritProject> getProjects() {
+            return projects;
+        }
+    }
+}
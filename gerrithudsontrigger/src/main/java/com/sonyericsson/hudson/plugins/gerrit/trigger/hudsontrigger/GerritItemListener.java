@@ -23,6 +23,7 @@
  */
 package com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger;
 
+import com.sonyericsson.hudson.plugins.gerrit.trigger.PluginImpl;
 import hudson.Extension;
 import hudson.model.AbstractProject;
 import hudson.model.Item;
@@ -30,7 +31,8 @@ import hudson.model.listeners.ItemListener;
 
 /**
  * Listens for onDeleted events, and if the deleted project has a Gerrit trigger,
- * cancels its timers. Since this class has no member variables, and doesn't need any
+ * cancels its timers. Also replays the event journal once all items are loaded.
+ * Since this class has no member variables, and doesn't need any
  * initialization, there is no constructor.
  *
  * @author Fredrik Abrahamson &lt;fredrik.abrahamson@sonymobile.com&gt;
@@ -60,4 +62,17 @@ public class GerritItemListener extends ItemListener {
             }
         }
     }
+
+    /**
+     * Called by Hudson when all items have been loaded at startup.
+     * The triggers of all projects are listening by now, so the events that were received
+     * but not handled before the restart can be replayed.
+     */
+    @Override
+    public void onLoaded() {
+        PluginImpl plugin = PluginImpl.getInstance();
+        if (plugin != null) {
+            plugin.replayEventJournal();
+        }
+    }
 }
@@ -25,8 +25,9 @@
 package com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger;
 
 import static com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritDefaultValues.DEFAULT_BUILD_SCHEDULE_DELAY;
-import com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritEventListener;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritQueryHandler;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ListenerProfile;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.ProjectAwareListener;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.GerritEvent;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.attr.Approval;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.ChangeAbandoned;
@@ -38,9 +39,12 @@ import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.GerritTrig
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.ManualPatchsetCreated;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.PatchsetCreated;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.RefUpdated;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.latency.EventLatency;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.GerritServer;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.Messages;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.PluginImpl;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.VerdictCategory;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.config.IGerritHudsonTriggerConfig;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.ToGerritRunListener;
 import static com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.GerritTriggerParameters.setOrCreateParameters;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.actions.GerritTriggerInformationAction;
@@ -59,9 +63,7 @@ import hudson.ExtensionList;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 import hudson.model.Action;
-import hudson.model.Actionable;
-import hudson.model.Computer;
-import hudson.model.Executor;
+import hudson.model.CauseAction;
 import hudson.model.Hudson;
 import hudson.model.Item;
 import hudson.model.ParameterDefinition;
@@ -75,16 +77,13 @@ import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
 import java.io.IOException;
 import java.io.ObjectStreamException;
-import java.net.MalformedURLException;
 import java.net.URL;
 import java.text.MessageFormat;
 import java.text.ParseException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map.Entry;
 import java.util.concurrent.Future;
 import java.util.regex.PatternSyntaxException;
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -97,11 +96,9 @@ import org.slf4j.LoggerFactory;
  *
  * @author Robert Sandell &lt;robert.sandell@sonyericsson.com&gt;
  */
-public class GerritTrigger extends Trigger<AbstractProject> implements GerritEventListener {
+public class GerritTrigger extends Trigger<AbstractProject> implements ProjectAwareListener {
 
     private static final Logger logger = LoggerFactory.getLogger(GerritTrigger.class);
-    //! Association between patches and the jobs that we're running for them
-    private transient RunningJobs runningJobs = new RunningJobs();
     private transient AbstractProject myProject;
     private List<GerritProject> gerritProjects;
     private List<GerritProject> dynamicGerritProjects;
@@ -127,8 +124,10 @@ public class GerritTrigger extends Trigger<AbstractProject> implements GerritEve
     private List<PluginGerritEvent> triggerOnEvents;
     private boolean dynamicTriggerConfiguration;
     private String triggerConfigURL;
+    private String serverName;
 
-    private GerritTriggerTimerTask gerritTriggerTimerTask;
+    private transient GerritTriggerTimerTask gerritTriggerTimerTask;
+    private transient GerritDynamicUrlProcessor.FetchState dynamicConfigFetchState;
 
     private GerritTriggerInformationAction triggerInformationAction;
 
@@ -178,6 +177,8 @@ public class GerritTrigger extends Trigger<AbstractProject> implements GerritEve
      * @param triggerOnEvents                The list of event types to trigger on.
      * @param dynamicTriggerConfiguration    Dynamic trigger configuration on or off
      * @param triggerConfigURL               Where to fetch the configuration file from
+     * @param serverName                     The name of the Gerrit server to listen to, null or empty for the
+     *                                       default server.
      */
     @DataBoundConstructor
     public GerritTrigger(
@@ -203,7 +204,8 @@ public class GerritTrigger extends Trigger<AbstractProject> implements GerritEve
             String customUrl,
             List<PluginGerritEvent> triggerOnEvents,
             boolean dynamicTriggerConfiguration,
-            String triggerConfigURL) {
+            String triggerConfigURL,
+            String serverName) {
         this.gerritProjects = gerritProjects;
         this.gerritBuildStartedVerifiedValue = gerritBuildStartedVerifiedValue;
         this.gerritBuildStartedCodeReviewValue = gerritBuildStartedCodeReviewValue;
@@ -227,10 +229,110 @@ public class GerritTrigger extends Trigger<AbstractProject> implements GerritEve
         this.triggerOnEvents = triggerOnEvents;
         this.dynamicTriggerConfiguration = dynamicTriggerConfiguration;
         this.triggerConfigURL = triggerConfigURL;
+        if (serverName != null && serverName.length() > 0) {
+            this.serverName = serverName;
+        }
         this.gerritTriggerTimerTask = null;
         triggerInformationAction = new GerritTriggerInformationAction();
     }
 
+    /**
+     * Constructor for the default Gerrit server.
+     *
+     * @param gerritProjects                 the set of triggering rules.
+     * @param gerritBuildStartedVerifiedValue
+     *                                       Job specific Gerrit verified vote when a build is started, null means that
+     *                                       the global value should be used.
+     * @param gerritBuildStartedCodeReviewValue
+     *                                       Job specific Gerrit code review vote when a build is started, null means
+     *                                       that the global value should be used.
+     * @param gerritBuildSuccessfulVerifiedValue
+     *                                       Job specific Gerrit verified vote when a build is successful, null means
+     *                                       that the global value should be used.
+     * @param gerritBuildSuccessfulCodeReviewValue
+     *                                       Job specific Gerrit code review vote when a build is successful, null means
+     *                                       that the global value should be used.
+     * @param gerritBuildFailedVerifiedValue Job specific Gerrit verified vote when a build is failed, null means that
+     *                                       the global value should be used.
+     * @param gerritBuildFailedCodeReviewValue
+     *                                       Job specific Gerrit code review vote when a build is failed, null means
+     *                                       that the global value should be used.
+     * @param gerritBuildUnstableVerifiedValue
+     *                                       Job specific Gerrit verified vote when a build is unstable, null means that
+     *                                       the global value should be used.
+     * @param gerritBuildUnstableCodeReviewValue
+     *                                       Job specific Gerrit code review vote when a build is unstable, null means
+     *                                       that the global value should be used.
+     * @param gerritBuildNotBuiltVerifiedValue
+     *                                       Job specific Gerrit verified vote when a build is not built, null means that
+     *                                       the global value should be used.
+     * @param gerritBuildNotBuiltCodeReviewValue
+     *                                       Job specific Gerrit code review vote when a build is not built, null means
+     *                                       that the global value should be used.
+     * @param silentMode                     Silent Mode on or off.
+     * @param escapeQuotes                   EscapeQuotes on or off.
+     * @param buildStartMessage              Message to write to Gerrit when a build begins
+     * @param buildSuccessfulMessage         Message to write to Gerrit when a build succeeds
+     * @param buildUnstableMessage           Message to write to Gerrit when a build is unstable
+     * @param buildFailureMessage            Message to write to Gerrit when a build fails
+     * @param buildNotBuiltMessage           Message to write to Gerrit when all builds are not built
+     * @param buildUnsuccessfulFilepath      Filename to retrieve Gerrit comment message from, in the case of an
+     *                                       unsuccessful build.
+     * @param customUrl                      Custom URL to sen to gerrit instead of build URL
+     * @param triggerOnEvents                The list of event types to trigger on.
+     * @param dynamicTriggerConfiguration    Dynamic trigger configuration on or off
+     * @param triggerConfigURL               Where to fetch the configuration file from
+     */
+    public GerritTrigger(
+            List<GerritProject> gerritProjects,
+            Integer gerritBuildStartedVerifiedValue,
+            Integer gerritBuildStartedCodeReviewValue,
+            Integer gerritBuildSuccessfulVerifiedValue,
+            Integer gerritBuildSuccessfulCodeReviewValue,
+            Integer gerritBuildFailedVerifiedValue,
+            Integer gerritBuildFailedCodeReviewValue,
+            Integer gerritBuildUnstableVerifiedValue,
+            Integer gerritBuildUnstableCodeReviewValue,
+            Integer gerritBuildNotBuiltVerifiedValue,
+            Integer gerritBuildNotBuiltCodeReviewValue,
+            boolean silentMode,
+            boolean escapeQuotes,
+            String buildStartMessage,
+            String buildSuccessfulMessage,
+            String buildUnstableMessage,
+            String buildFailureMessage,
+            String buildNotBuiltMessage,
+            String buildUnsuccessfulFilepath,
+            String customUrl,
+            List<PluginGerritEvent> triggerOnEvents,
+            boolean dynamicTriggerConfiguration,
+            String triggerConfigURL) {
+        this(gerritProjects,
+                gerritBuildStartedVerifiedValue,
+                gerritBuildStartedCodeReviewValue,
+                gerritBuildSuccessfulVerifiedValue,
+                gerritBuildSuccessfulCodeReviewValue,
+                gerritBuildFailedVerifiedValue,
+                gerritBuildFailedCodeReviewValue,
+                gerritBuildUnstableVerifiedValue,
+                gerritBuildUnstableCodeReviewValue,
+                gerritBuildNotBuiltVerifiedValue,
+                gerritBuildNotBuiltCodeReviewValue,
+                silentMode,
+                escapeQuotes,
+                buildStartMessage,
+                buildSuccessfulMessage,
+                buildUnstableMessage,
+                buildFailureMessage,
+                buildNotBuiltMessage,
+                buildUnsuccessfulFilepath,
+                customUrl,
+                triggerOnEvents,
+                dynamicTriggerConfiguration,
+                triggerConfigURL,
+                null);
+    }
+
     /**
      * Converts old trigger configs when only patchset created was available as event.
      * If no event selection is set to true, triggering on patchset created will be.
@@ -272,7 +374,7 @@ public class GerritTrigger extends Trigger<AbstractProject> implements GerritEve
         this.myProject = project;
         try {
             if (PluginImpl.getInstance() != null) {
-                PluginImpl.getInstance().addListener(this);
+                PluginImpl.getInstance().addListener(serverName, this);
             } else {
                 logger.warn("The plugin instance could not be found! Project {} will not be triggered!",
                         project.getFullDisplayName());
@@ -293,7 +395,7 @@ public class GerritTrigger extends Trigger<AbstractProject> implements GerritEve
         super.stop();
         try {
             if (PluginImpl.getInstance() != null) {
-                PluginImpl.getInstance().removeListener(this);
+                PluginImpl.getInstance().removeListener(serverName, this);
             }
         } catch (IllegalStateException e) {
             logger.error("I am too late!", e);
@@ -323,7 +425,7 @@ public class GerritTrigger extends Trigger<AbstractProject> implements GerritEve
         if (isInteresting(event)) {
             logger.trace("The event is interesting.");
             if (!silentMode) {
-                ToGerritRunListener.getInstance().onTriggered(myProject, event);
+                ToGerritRunListener.getInstance().onTriggered(serverName, myProject, event);
             } else {
                 event.fireProjectTriggered(myProject);
             }
@@ -354,7 +456,7 @@ public class GerritTrigger extends Trigger<AbstractProject> implements GerritEve
         if (isInteresting(event)) {
             logger.trace("The event is interesting.");
             if (!silentMode) {
-                ToGerritRunListener.getInstance().onTriggered(myProject, event);
+                ToGerritRunListener.getInstance().onTriggered(serverName, myProject, event);
             } else {
                 event.fireProjectTriggered(myProject);
             }
@@ -398,7 +500,8 @@ public class GerritTrigger extends Trigger<AbstractProject> implements GerritEve
      * @param project the project to build.
      */
     protected void schedule(GerritCause cause, GerritTriggeredEvent event, AbstractProject project) {
-        BadgeAction badgeAction = new BadgeAction(event);
+        cause.setServerName(serverName);
+        BadgeAction badgeAction = new BadgeAction(event, serverName);
             //during low traffic we still don't want to spam Gerrit, 3 is a nice number, isn't it?
         int projectbuildDelay = getBuildScheduleDelay();
         if (cause instanceof GerritUserCause) {
@@ -408,19 +511,45 @@ public class GerritTrigger extends Trigger<AbstractProject> implements GerritEve
                 && project.getQuietPeriod() > projectbuildDelay) {
             projectbuildDelay = project.getQuietPeriod();
         }
+        //Experimental feature! Manually triggered and retriggered builds are always built.
+        boolean currentPatchesOnly = event instanceof ChangeBasedEvent
+                && !(cause instanceof GerritUserCause)
+                && getServerConfig().isGerritBuildCurrentPatchesOnly();
+        if (currentPatchesOnly && RunningJobs.getInstance().isOutdated(serverName, (ChangeBasedEvent)event)) {
+            logger.info("Project {} Build not scheduled for the outdated event: {}", project.getName(), event);
+            return;
+        }
         ParametersAction parameters = createParameters(event, project);
-        Future build = project.scheduleBuild2(
-                projectbuildDelay,
-                cause,
-                badgeAction,
-                new RetriggerAction(cause.getContext()),
-                new RetriggerAllAction(cause.getContext()),
-                parameters);
-        //Experimental feature!
+        Queue.WaitingItem item = null;
+        Future build;
+        if (currentPatchesOnly) {
+            item = scheduleInQueue(project, projectbuildDelay, cause,
+                    badgeAction,
+                    new RetriggerAction(cause.getContext()),
+                    new RetriggerAllAction(cause.getContext()),
+                    parameters);
+            if (item != null) {
+                build = item.getFuture();
+            } else {
+                build = null;
+            }
+        } else {
+            build = project.scheduleBuild2(
+                    projectbuildDelay,
+                    cause,
+                    badgeAction,
+                    new RetriggerAction(cause.getContext()),
+                    new RetriggerAllAction(cause.getContext()),
+                    parameters);
+        }
+        if (build != null) {
+            EventLatency.getInstance(getServerConfig()).recordSinceReceived(EventLatency.Stage.SCHEDULED, event);
+            ListenerProfile.markMatched();
+        }
         if (event instanceof ChangeBasedEvent) {
             ChangeBasedEvent changeBasedEvent = (ChangeBasedEvent)event;
-            if (PluginImpl.getInstance().getConfig().isGerritBuildCurrentPatchesOnly()) {
-                getRunningJobs().scheduled(changeBasedEvent, parameters, project.getName());
+            if (currentPatchesOnly) {
+                RunningJobs.getInstance().scheduled(serverName, changeBasedEvent, project, item);
             }
             logger.info("Project {} Build Scheduled: {} By event: {}",
                     new Object[]{project.getName(), (build != null),
@@ -435,15 +564,39 @@ public class GerritTrigger extends Trigger<AbstractProject> implements GerritEve
     }
 
     /**
-     * Gives you {@link #runningJobs}. It makes sure that the reference is not null.
+     * Schedules a build in the queue the same way as
+     * {@link AbstractProject#scheduleBuild2(int, hudson.model.Cause, hudson.model.Action...)} does,
+     * but returns the queue item so that {@link RunningJobs} can cancel exactly that item later.
      *
-     * @return the store of running jobs.
+     * @param project     the project to build.
+     * @param quietPeriod the quiet period in seconds.
+     * @param cause       the cause of the build.
+     * @param actions     the actions of the build, including its parameters.
+     * @return the queue item, or null if the project isn't buildable or the build was merged into a queued one.
+     */
+    private Queue.WaitingItem scheduleInQueue(AbstractProject project, int quietPeriod, GerritCause cause,
+                                              Action... actions) {
+        if (!project.isBuildable()) {
+            return null;
+        }
+        List<Action> queueActions = new ArrayList<Action>(Arrays.asList(actions));
+        queueActions.add(new CauseAction(cause));
+        return Queue.getInstance().schedule(project, quietPeriod, queueActions);
+    }
+
+    /**
+     * Used to inform the plugin that a build for the job has started. This allows us to find the build directly
+     * when it needs to be cancelled for a newer patch set.
+     *
+     * @param event the event.
+     * @param build the build.
      */
-    private synchronized RunningJobs getRunningJobs() {
-        if (runningJobs == null) {
-            runningJobs = new RunningJobs();
+    public void notifyBuildStarted(GerritTriggeredEvent event, AbstractBuild build) {
+        //Experimental feature!
+        if (event instanceof ChangeBasedEvent
+                && getServerConfig().isGerritBuildCurrentPatchesOnly()) {
+            RunningJobs.getInstance().started(serverName, (ChangeBasedEvent)event, build);
         }
-        return runningJobs;
     }
 
     /**
@@ -455,8 +608,8 @@ public class GerritTrigger extends Trigger<AbstractProject> implements GerritEve
     public void notifyBuildEnded(GerritTriggeredEvent event) {
         //Experimental feature!
         if (event instanceof ChangeBasedEvent
-                && PluginImpl.getInstance().getConfig().isGerritBuildCurrentPatchesOnly()) {
-            getRunningJobs().remove((ChangeBasedEvent)event);
+                && getServerConfig().isGerritBuildCurrentPatchesOnly()) {
+            RunningJobs.getInstance().ended(serverName, (ChangeBasedEvent)event, myProject);
         }
     }
 
@@ -468,10 +621,11 @@ public class GerritTrigger extends Trigger<AbstractProject> implements GerritEve
      * @return buildScheduleDelay.
      */
     public int getBuildScheduleDelay() {
-        if (PluginImpl.getInstance() == null || PluginImpl.getInstance().getConfig() == null) {
+        IGerritHudsonTriggerConfig config = getServerConfig();
+        if (config == null) {
             return DEFAULT_BUILD_SCHEDULE_DELAY;
         } else {
-            int buildScheduleDelay = PluginImpl.getInstance().getConfig().getBuildScheduleDelay();
+            int buildScheduleDelay = config.getBuildScheduleDelay();
             if (buildScheduleDelay < DEFAULT_BUILD_SCHEDULE_DELAY) {
                 return DEFAULT_BUILD_SCHEDULE_DELAY;
             } else {
@@ -490,7 +644,7 @@ public class GerritTrigger extends Trigger<AbstractProject> implements GerritEve
      */
     protected ParametersAction createParameters(GerritTriggeredEvent event, AbstractProject project) {
         List<ParameterValue> parameters = getDefaultParametersValues(project);
-        setOrCreateParameters(event, parameters, isEscapeQuotes());
+        setOrCreateParameters(event, parameters, isEscapeQuotes(), getServerConfig());
         return new ParametersAction(parameters);
     }
 
@@ -537,11 +691,12 @@ public class GerritTrigger extends Trigger<AbstractProject> implements GerritEve
      */
     public void retriggerThisBuild(TriggerContext context) {
         if (context.getThisBuild().getProject().isBuildable()
-                && !ToGerritRunListener.getInstance().isBuilding(context.getThisBuild().getProject(),
-                        context.getEvent())) {
+                && !ToGerritRunListener.getInstance().isBuilding(context.getServerName(),
+                        context.getThisBuild().getProject(), context.getEvent())) {
 
             if (!silentMode) {
                 ToGerritRunListener.getInstance().onRetriggered(
+                        serverName,
                         context.getThisBuild().getProject(),
                         context.getEvent(),
                         context.getOtherBuilds());
@@ -558,10 +713,10 @@ public class GerritTrigger extends Trigger<AbstractProject> implements GerritEve
      * building.
      *
      * @param context the context to rebuild.
-     * @see ToGerritRunListener#isBuilding(GerritTriggeredEvent)
+     * @see ToGerritRunListener#isBuilding(String, GerritTriggeredEvent)
      */
     public void retriggerAllBuilds(TriggerContext context) {
-        if (!ToGerritRunListener.getInstance().isBuilding(context.getEvent())) {
+        if (!ToGerritRunListener.getInstance().isBuilding(context.getServerName(), context.getEvent())) {
             retrigger(context.getThisBuild().getProject(), context.getEvent());
             for (AbstractBuild build : context.getOtherBuilds()) {
                 GerritTrigger trigger = (GerritTrigger)build.getProject().getTrigger(GerritTrigger.class);
@@ -582,7 +737,7 @@ public class GerritTrigger extends Trigger<AbstractProject> implements GerritEve
     private void retrigger(AbstractProject project, GerritTriggeredEvent event) {
         if (project.isBuildable()) {
             if (!silentMode) {
-                ToGerritRunListener.getInstance().onRetriggered(project, event, null);
+                ToGerritRunListener.getInstance().onRetriggered(serverName, project, event, null);
             }
             GerritUserCause cause = new GerritUserCause(event, silentMode);
             schedule(cause, event, project);
@@ -607,6 +762,43 @@ public class GerritTrigger extends Trigger<AbstractProject> implements GerritEve
         return false;
     }
 
+    @Override
+    public String toString() {
+        if (myProject == null) {
+            return super.toString();
+        }
+        return "GerritTrigger for " + myProject.getFullName();
+    }
+
+    /**
+     * If any of the static or dynamic Gerrit projects of this trigger matches the Gerrit project,
+     * regardless of branch and files.
+     *
+     * @param project the name of the Gerrit project.
+     * @return true if so, or if one of the patterns is invalid.
+     */
+    @Override
+    public boolean isWatching(String project) {
+        List<GerritProject> allGerritProjects = new LinkedList<GerritProject>();
+        if (gerritProjects != null) {
+            allGerritProjects.addAll(gerritProjects);
+        }
+        if (dynamicGerritProjects != null) {
+            allGerritProjects.addAll(dynamicGerritProjects);
+        }
+        for (GerritProject p : allGerritProjects) {
+            try {
+                if (p.isInteresting(project)) {
+                    return true;
+                }
+            } catch (PatternSyntaxException pse) {
+                //isInteresting logs it for every event.
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Should we trigger on this event?
      *
@@ -635,8 +827,7 @@ public class GerritTrigger extends Trigger<AbstractProject> implements GerritEve
                                 && p.getFilePaths().size() > 0) {
                             if (p.isInteresting(changeBasedEvent.getChange().getProject(),
                                     changeBasedEvent.getChange().getBranch(),
-                                    changeBasedEvent.getFiles(
-                                            new GerritQueryHandler(PluginImpl.getInstance().getConfig())))) {
+                                    changeBasedEvent.getFiles(createQueryHandler()))) {
                                 logger.trace("According to {} the event is interesting.", p);
                                 return true;
                             }
@@ -687,7 +878,7 @@ public class GerritTrigger extends Trigger<AbstractProject> implements GerritEve
         if (isInteresting(event)) {
             logger.trace("The event is interesting.");
             if (!silentMode) {
-                ToGerritRunListener.getInstance().onTriggered(myProject, event);
+                ToGerritRunListener.getInstance().onTriggered(serverName, myProject, event);
             }
             GerritCause cause = new GerritCause(event, silentMode);
             schedule(cause, event);
@@ -734,14 +925,14 @@ public class GerritTrigger extends Trigger<AbstractProject> implements GerritEve
             logger.trace("Disabled.");
             return;
         }
-        if (ToGerritRunListener.getInstance().isBuilding(myProject, event)) {
+        if (ToGerritRunListener.getInstance().isBuilding(serverName, myProject, event)) {
             logger.trace("Already building.");
             return;
         }
         if (isInteresting(event) && matchesApproval(event)) {
             logger.trace("The event is interesting.");
             if (!silentMode) {
-                ToGerritRunListener.getInstance().onTriggered(myProject, event);
+                ToGerritRunListener.getInstance().onTriggered(serverName, myProject, event);
             }
             GerritCause cause = new GerritCause(event, silentMode);
             schedule(cause, event);
@@ -763,7 +954,7 @@ public class GerritTrigger extends Trigger<AbstractProject> implements GerritEve
         if (isInteresting(event)) {
             logger.trace("The event is interesting.");
             if (!silentMode) {
-                ToGerritRunListener.getInstance().onTriggered(myProject, event);
+                ToGerritRunListener.getInstance().onTriggered(serverName, myProject, event);
             }
             GerritCause cause = new GerritCause(event, silentMode);
             schedule(cause, event);
@@ -1050,6 +1241,52 @@ public class GerritTrigger extends Trigger<AbstractProject> implements GerritEve
         this.dynamicTriggerConfiguration = dynamicTriggerConfiguration;
     }
 
+    /**
+     * The name of the Gerrit server that the trigger listens to.
+     *
+     * @return the name, null for the default server.
+     */
+    public String getServerName() {
+        return serverName;
+    }
+
+    /**
+     * The config of the Gerrit server that the trigger listens to.
+     * The global config if it is the default server or if there is no server with the name.
+     *
+     * @return the config, or null if the plugin isn't loaded.
+     */
+    public IGerritHudsonTriggerConfig getServerConfig() {
+        PluginImpl plugin = PluginImpl.getInstance();
+        if (plugin == null) {
+            return null;
+        }
+        if (serverName != null) {
+            GerritServer server = plugin.getServer(serverName);
+            if (server != null) {
+                return server.getConfig();
+            }
+        }
+        return plugin.getConfig();
+    }
+
+    /**
+     * Creates a query handler for the Gerrit server that the trigger listens to,
+     * that uses the query cache of the server when it is connected.
+     *
+     * @return the query handler.
+     */
+    private GerritQueryHandler createQueryHandler() {
+        PluginImpl plugin = PluginImpl.getInstance();
+        if (plugin != null) {
+            GerritServer server = plugin.getServer(serverName);
+            if (server != null) {
+                return server.getQueryHandler();
+            }
+        }
+        return new GerritQueryHandler(getServerConfig());
+    }
+
     /**
      * The URL where the trigger configuration should be fetched from.
      *
@@ -1191,41 +1428,68 @@ public class GerritTrigger extends Trigger<AbstractProject> implements GerritEve
     }
 
     /**
-     * This method is called by the timer thread at regular intervals. It fetches the URL,
-     * determines if the result is different than from the last fetch, and if so, replaces
+     * Fetches the URL, determines if the result is different than from the last fetch, and if so, replaces
      * the current URL trigger configuration with the fetched one.
+     * If the content is unchanged the current configuration is left as it is.
+     * The periodic refresh is done by the {@link GerritDynamicUrlRegistry} for all triggers using the same URL.
      */
     public void updateTriggerConfigURL() {
-        if (triggerInformationAction == null) {
-            triggerInformationAction = new GerritTriggerInformationAction();
+        if (dynamicConfigFetchState == null) {
+            dynamicConfigFetchState = new GerritDynamicUrlProcessor.FetchState();
         }
-        triggerInformationAction.setErrorMessage("");
         try {
-            dynamicGerritProjects = GerritDynamicUrlProcessor.fetch(triggerConfigURL);
+            updateDynamicGerritProjects(
+                    GerritDynamicUrlProcessor.fetch(triggerConfigURL, dynamicConfigFetchState), null);
         } catch (ParseException pe) {
-            String logErrorMessage = MessageFormat.format(
-                    "ParseException for project: {0} and URL: {1} Message: {2}",
-                    new Object[]{myProject.getName(), triggerConfigURL, pe.getMessage()});
-            logger.error(logErrorMessage, pe);
-            String triggerInformationMessage = MessageFormat.format(
-                    "ParseException when fetching dynamic trigger url: {0}", pe.getMessage());
-            triggerInformationAction.setErrorMessage(triggerInformationMessage);
-        } catch (MalformedURLException mue) {
-            String logErrorMessage = MessageFormat.format(
-                    "MalformedURLException for project: {0} and URL: {1} Message: {2}",
-                    new Object[]{myProject.getName(), triggerConfigURL, mue.getMessage()});
-            logger.error(logErrorMessage, mue);
-            String triggerInformationMessage = MessageFormat.format(
-                    "MalformedURLException when fetching dynamic trigger url: {0}", mue.getMessage());
-            triggerInformationAction.setErrorMessage(triggerInformationMessage);
+            logDynamicConfigError(pe);
+            updateDynamicGerritProjects(null, pe);
         } catch (IOException ioe) {
-            String logErrorMessage = MessageFormat.format(
-                    "IOException for project: {0} and URL: {1} Message: {2}",
-                    new Object[]{myProject.getName(), triggerConfigURL, ioe.getMessage()});
-            logger.error(logErrorMessage, ioe);
+            logDynamicConfigError(ioe);
+            updateDynamicGerritProjects(null, ioe);
+        }
+    }
+
+    /**
+     * Logs a failure to fetch the dynamic trigger configuration.
+     *
+     * @param error the failure.
+     */
+    private void logDynamicConfigError(Exception error) {
+        String logErrorMessage = MessageFormat.format(
+                "{0} for project: {1} and URL: {2} Message: {3}",
+                new Object[]{error.getClass().getSimpleName(), myProject.getName(), triggerConfigURL,
+                        error.getMessage(), });
+        logger.error(logErrorMessage, error);
+    }
+
+    /**
+     * Called with the result of fetching the dynamic trigger configuration.
+     *
+     * @param projects the fetched configuration, or null if it hasn't changed or couldn't be fetched.
+     * @param error    the reason the configuration couldn't be fetched, or null if it could.
+     */
+    void updateDynamicGerritProjects(List<GerritProject> projects, Exception error) {
+        if (triggerInformationAction == null) {
+            triggerInformationAction = new GerritTriggerInformationAction();
+        }
+        if (error != null) {
             String triggerInformationMessage = MessageFormat.format(
-                    "IOException when fetching dynamic trigger url: {0}", ioe.getMessage());
+                    "{0} when fetching dynamic trigger url: {1}",
+                    error.getClass().getSimpleName(), error.getMessage());
             triggerInformationAction.setErrorMessage(triggerInformationMessage);
+        } else {
+            triggerInformationAction.setErrorMessage("");
+            // null means that the content hasn't changed since the last fetch.
+            if (projects != null) {
+                dynamicGerritProjects = projects;
+                PluginImpl plugin = PluginImpl.getInstance();
+                if (plugin != null) {
+                    GerritServer server = plugin.getServer(serverName);
+                    if (server != null) {
+                        server.watchedProjectsChanged();
+                    }
+                }
+            }
         }
     }
 
@@ -1317,6 +1581,19 @@ public class GerritTrigger extends Trigger<AbstractProject> implements GerritEve
             return "/plugin/gerrit-trigger/help-whatIsGerritTrigger.html";
         }
 
+        /**
+         * Fills the Gerrit server drop-down list, the default server first.
+         * @return a ListBoxModel for the drop-down list.
+         */
+        public ListBoxModel doFillServerNameItems() {
+            ListBoxModel m = new ListBoxModel();
+            m.add(Messages.DefaultGerritServer(), "");
+            for (GerritServer server : PluginImpl.getInstance().getAdditionalServers()) {
+                m.add(server.getName(), server.getName());
+            }
+            return m;
+        }
+
         /**
          * Fills the verdict category drop-down list.
          * @return a ListBoxModel for the drop-down list.
@@ -1358,94 +1635,4 @@ public class GerritTrigger extends Trigger<AbstractProject> implements GerritEve
             return extensionList;
         }
     }
-
-    /**
-     * Class for maintaining and synchronizing the runningJobs info.
-     * Association between patches and the jobs that we're running for them.
-     */
-    public class RunningJobs {
-        private final HashMap<GerritTriggeredEvent, ParametersAction> runningJobs =
-                new HashMap<GerritTriggeredEvent, ParametersAction>();
-
-        /**
-         * Does the needful after a build has been scheduled.
-         * I.e. cancelling the old build if configured to do so and removing and storing any references.
-         *
-         * @param event the event triggering a new build.
-         * @param parameters the parameters for the new build, used to find it later.
-         * @param projectName the name of the current project for better logging.
-         */
-        public synchronized void scheduled(ChangeBasedEvent event, ParametersAction parameters, String projectName) {
-            if (!PluginImpl.getInstance().getConfig().isGerritBuildCurrentPatchesOnly()) {
-                return;
-            }
-            Iterator<Entry<GerritTriggeredEvent, ParametersAction>> it = runningJobs.entrySet().iterator();
-            while (it.hasNext()) {
-                Entry<GerritTriggeredEvent, ParametersAction> pairs = it.next();
-                // Find all entries in runningJobs with the same Change #.
-                if (pairs.getKey() instanceof ChangeBasedEvent) {
-                    if (((ChangeBasedEvent)pairs.getKey()).getChange().equals(event.getChange())) {
-                        logger.debug("Cancelling build for " + pairs.getKey());
-                        try {
-                            cancelJob(pairs.getValue());
-                        } catch (Exception e) {
-                            // Ignore any problems with canceling the job.
-                            logger.error("Error canceling job", e);
-                        }
-                        it.remove();
-                    }
-                }
-            }
-            // add our new job
-            runningJobs.put(event, parameters);
-        }
-
-        /**
-         * Tries to cancel any jobs with the specified parameters. We look in
-         * both the build queue and currently executing jobs. This extra work is
-         * required due to race conditions when calling Future.cancel() - see
-         * https://issues.jenkins-ci.org/browse/JENKINS-13829
-         *
-         * @param parameters
-         *            The parameters to match against.
-         */
-        private void cancelJob(ParametersAction parameters) {
-            // Remove any jobs in the build queue.
-            List<hudson.model.Queue.Item> itemsInQueue = Queue.getInstance().getItems(myProject);
-            for (hudson.model.Queue.Item item  : itemsInQueue) {
-                List<ParametersAction> params = item.getActions(ParametersAction.class);
-                for (ParametersAction param : params) {
-                    if (param.equals(parameters)) {
-                        Queue.getInstance().cancel(item);
-                    }
-                }
-            }
-
-            // Interrupt any currently running jobs.
-            for (Computer c : Hudson.getInstance().getComputers()) {
-                for (Executor e : c.getExecutors()) {
-                    if (e.getCurrentExecutable() instanceof Actionable) {
-                        Actionable a = (Actionable)e.getCurrentExecutable();
-                        List<ParametersAction> params = a.getActions(ParametersAction.class);
-                        for (ParametersAction param : params) {
-                            if (param.equals(parameters)) {
-                                e.interrupt();
-                            }
-                        }
-                    }
-                }
-            }
-        }
-
-        /**
-         * Removes any reference to the current build for this change.
-         *
-         * @param event the event which started the build we want to remove.
-         * @return the build that was removed.
-         */
-        public synchronized ParametersAction remove(ChangeBasedEvent event) {
-            logger.debug("Removing future job " + event.getPatchSet().getNumber());
-            return runningJobs.remove(event);
-        }
-    }
 }
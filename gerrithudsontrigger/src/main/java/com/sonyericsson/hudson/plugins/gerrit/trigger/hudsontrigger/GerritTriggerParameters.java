@@ -28,7 +28,7 @@ import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.attr.Account;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.ChangeBasedEvent;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.GerritTriggeredEvent;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.RefUpdated;
-import com.sonyericsson.hudson.plugins.gerrit.trigger.PluginImpl;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.config.IGerritHudsonTriggerConfig;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.utils.StringUtil;
 import hudson.model.ParameterValue;
 import hudson.model.StringParameterValue;
@@ -186,10 +186,11 @@ public enum GerritTriggerParameters {
      * @param gerritEvent the event.
      * @param parameters the default parameters
      * @param escapeQuotes if quotes should be escaped or not.
+     * @param config the config of the Gerrit server that sent the event.
      * @see #setOrCreateStringParameterValue(java.util.List, String, boolean)
      */
     public static void setOrCreateParameters(GerritTriggeredEvent gerritEvent, List<ParameterValue> parameters,
-            boolean escapeQuotes) {
+            boolean escapeQuotes, IGerritHudsonTriggerConfig config) {
         GERRIT_EVENT_HASH.setOrCreateStringParameterValue(
                 parameters, String.valueOf(((java.lang.Object)gerritEvent).hashCode()), escapeQuotes);
         if (gerritEvent instanceof ChangeBasedEvent) {
@@ -210,7 +211,7 @@ public enum GerritTriggerParameters {
                     parameters, event.getChange().getProject(), escapeQuotes);
             GERRIT_CHANGE_SUBJECT.setOrCreateStringParameterValue(
                     parameters, event.getChange().getSubject(), escapeQuotes);
-            String url = PluginImpl.getInstance().getConfig().getGerritFrontEndUrlFor(event.getChange().getNumber(),
+            String url = config.getGerritFrontEndUrlFor(event.getChange().getNumber(),
                     event.getPatchSet().getNumber());
             GERRIT_CHANGE_URL.setOrCreateStringParameterValue(
                     parameters, url, escapeQuotes);
@@ -23,27 +23,36 @@
  */
 package com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger;
 
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritDefaultValues;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.PluginImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Random;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Manages the timer that is used for each GerritTrigger TimerTask that
- * is active.
+ * Manages the scheduler that is used for refreshing the dynamic trigger configurations.
+ * The tasks run on a small pool of threads so that one slow URL doesn't hold up the others,
+ * and the pool size is the limit of how many URLs are fetched at the same time.
  *
  * @author Fredrik Abrahamson &lt;fredrik.abrahamson@sonymobile.com&gt;
  */
 public final class GerritTriggerTimer {
 
+    /**
+     * The max number of tasks that run at the same time.
+     */
+    public static final int MAX_PARALLEL_TASKS = 4;
     /**
      * Average number of milliseconds in a second.
      */
     private static final long MILLISECONDS_PER_SECOND = 1000;
     /**
-     * Wait this many milliseconds before the first call to a TimerTask
+     * Wait at least this many milliseconds before the first call to a task.
      */
     private static final long DELAY_MILLISECONDS  =  5000;
     private static final Logger logger = LoggerFactory.getLogger(GerritTriggerTimer.class);
@@ -54,15 +63,23 @@ public final class GerritTriggerTimer {
     private static GerritTriggerTimer instance = null;
 
     /**
-     * The timer that is doing the actual scheduling.
+     * The executor that is doing the actual scheduling.
      */
-    private Timer timer = null;
+    private final ScheduledThreadPoolExecutor executor;
+    private final Random random = new Random();
 
     /**
      * The private constructor (this is a singleton class).
      */
     private GerritTriggerTimer() {
-        timer = new Timer(true);
+        executor = new ScheduledThreadPoolExecutor(MAX_PARALLEL_TASKS, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Gerrit dynamic trigger configuration refresh");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
     }
 
     /**
@@ -70,7 +87,7 @@ public final class GerritTriggerTimer {
      *
      * @return the instance of this class
      */
-    public static GerritTriggerTimer getInstance() {
+    public static synchronized GerritTriggerTimer getInstance() {
         if (instance == null) {
             instance = new GerritTriggerTimer();
         }
@@ -78,20 +95,57 @@ public final class GerritTriggerTimer {
     }
 
     /**
-     * Schedule a TimerTask according to the two constants above.
+     * The configured time between two refreshes.
+     *
+     * @return the period in milliseconds.
+     */
+    public long getPeriod() {
+        int interval = GerritDefaultValues.DEFAULT_DYNAMIC_CONFIG_REFRESH_INTERVAL;
+        if (PluginImpl.getInstance() != null && PluginImpl.getInstance().getConfig() != null) {
+            interval = PluginImpl.getInstance().getConfig().getDynamicConfigRefreshInterval();
+        }
+        return MILLISECONDS_PER_SECOND * interval;
+    }
+
+    /**
+     * The delay before the first run of a new task.
+     * A random part of the period is added so that the tasks don't all run at the same time.
      *
-     * @param timerTask the subclass of TimerTask to be scheduled
+     * @return the delay in milliseconds.
      */
-    public void schedule(TimerTask timerTask) {
-        long timerPeriod = MILLISECONDS_PER_SECOND
-                * PluginImpl.getInstance().getConfig().getDynamicConfigRefreshInterval();
+    public long getInitialDelay() {
+        return DELAY_MILLISECONDS + jitter(getPeriod());
+    }
 
+    /**
+     * A random delay between 0 and max.
+     *
+     * @param max the max delay in milliseconds.
+     * @return the delay in milliseconds.
+     */
+    public long jitter(long max) {
+        if (max <= 0) {
+            return 0;
+        }
+        synchronized (random) {
+            return (long)(random.nextDouble() * max);
+        }
+    }
+
+    /**
+     * Schedule a task to run once after the delay.
+     * Periodic tasks are expected to schedule their next run themselves, so that the delay can vary.
+     *
+     * @param task  the task to be scheduled
+     * @param delay the delay in milliseconds
+     * @return the future of the task, or null if it couldn't be scheduled.
+     */
+    public ScheduledFuture<?> schedule(Runnable task, long delay) {
         try {
-            timer.schedule(timerTask, DELAY_MILLISECONDS, timerPeriod);
-        } catch (IllegalArgumentException iae) {
-            logger.error("Attempted use of negative delay", iae);
-        } catch (IllegalStateException ise) {
-            logger.error("Attempted re-use of TimerTask", ise);
+            return executor.schedule(task, Math.max(0, delay), TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            logger.error("Could not schedule the task", e);
+            return null;
         }
     }
 }
@@ -23,15 +23,14 @@
  */
 package com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger;
 
-import java.util.TimerTask;
-
 /**
- * TimerTasks that are created from a GerritTrigger and periodically calls
- * GerritTrigger.updateTriggerConfigURL().
+ * The subscription of a GerritTrigger to its dynamic trigger configuration URL.
+ * The URL is fetched periodically by the {@link GerritDynamicUrlRegistry}, once for all the triggers that use it,
+ * until the subscription is cancelled. The name is kept from when every trigger had a task on the timer.
  *
  * @author Fredrik Abrahamson &lt;fredrik.abrahamson@sonymobile.com&gt;
  */
-public class GerritTriggerTimerTask extends TimerTask {
+public class GerritTriggerTimerTask {
     private GerritTrigger gerritTrigger;
 
     /**
@@ -41,14 +40,20 @@ public class GerritTriggerTimerTask extends TimerTask {
      */
     GerritTriggerTimerTask(GerritTrigger gerritTrigger) {
         this.gerritTrigger = gerritTrigger;
-        GerritTriggerTimer.getInstance().schedule(this);
+        GerritDynamicUrlRegistry.getInstance().subscribe(gerritTrigger, gerritTrigger.getTriggerConfigURL());
+    }
+
+    /**
+     * Fetches the trigger's URL as soon as possible.
+     */
+    public void refresh() {
+        GerritDynamicUrlRegistry.getInstance().refresh(gerritTrigger.getTriggerConfigURL());
     }
 
     /**
-     * Called periodically by the GerritTriggerTimer according to its schedule.
+     * Unsubscribes the trigger from its URL.
      */
-    @Override
-    public void run() {
-        gerritTrigger.updateTriggerConfigURL();
+    public void cancel() {
+        GerritDynamicUrlRegistry.getInstance().unsubscribe(gerritTrigger);
     }
 }
@@ -0,0 +1,514 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger;
+
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.attr.Change;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.ChangeBasedEvent;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.DraftPublished;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.PatchsetCreated;
+import hudson.Extension;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Executor;
+import hudson.model.PeriodicWork;
+import hudson.model.Queue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+/**
+ * Keeps track of the builds scheduled for the latest patch set of every change, across all jobs,
+ * when "Build Current Patches Only" is enabled.
+ * When a new patch set of a change is created, the queued and running builds of all jobs for the
+ * previous patch set are cancelled in one go. Any other event for the change, e.g. a comment, only replaces
+ * the build of the same job. The builds are indexed by Gerrit server, change and project, and each
+ * one remembers its queue item and its build once it has started, so no queue or executor scanning is needed
+ * to find them. Only builds triggered by Gerrit events are tracked; manually triggered and retriggered builds are
+ * always let through.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public final class RunningJobs {
+
+    private static final Logger logger = LoggerFactory.getLogger(RunningJobs.class);
+    private static final RunningJobs INSTANCE = new RunningJobs();
+    private static final long MILLIS_PER_MINUTE = 60000;
+    private static final int CLEANUP_PERIOD_MINUTES = 5;
+
+    private final Map<ChangeKey, ChangeJobs> changes = new HashMap<ChangeKey, ChangeJobs>();
+    private int cancelledBuilds = 0;
+    private long savedMillis = 0;
+
+    /**
+     * Private Constructor for the singleton.
+     */
+    private RunningJobs() {
+    }
+
+    /**
+     * The plugin wide instance.
+     *
+     * @return the instance.
+     */
+    public static RunningJobs getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Does the needful after a build has been scheduled.
+     * I.e. cancelling the builds of all jobs for the previous patch set of the change if the event created a newer
+     * patch set, cancelling the previous build of the same job, and storing a reference to the new build.
+     * If a newer patch set has been scheduled since the caller checked {@link #isOutdated(String, ChangeBasedEvent)},
+     * the new build is cancelled right away.
+     *
+     * @param serverName the name of the Gerrit server that sent the event, null for the default server.
+     * @param event      the event triggering a new build.
+     * @param project    the project that the build was scheduled for.
+     * @param item       the queue item of the new build, used to cancel it while it is queued, or null.
+     */
+    public synchronized void scheduled(String serverName, ChangeBasedEvent event, AbstractProject project,
+                                       Queue.Item item) {
+        ChangeKey key = new ChangeKey(serverName, event.getChange());
+        ChangeJobs jobs = changes.get(key);
+        if (jobs == null) {
+            jobs = new ChangeJobs(event);
+            changes.put(key, jobs);
+        } else if (isOlder(event, jobs.getEvent())) {
+            logger.debug("Cancelling the build for {} since a newer patch set has been scheduled.", event);
+            cancel(new Job(project, event, item));
+            return;
+        } else if (isNewPatchSet(event) && isOlder(jobs.getEvent(), event)) {
+            cancel(jobs);
+            jobs = new ChangeJobs(event);
+            changes.put(key, jobs);
+        }
+        Job old = jobs.getJobs().put(project, new Job(project, event, item));
+        if (old != null) {
+            logger.debug("Cancelling the previous build of {} for {}", project.getName(), old.getEvent());
+            cancel(old);
+        }
+    }
+
+    /**
+     * Tells if a newer patch set of the change than the one of the event has already been scheduled,
+     * in which case there is no need to schedule a build for the event.
+     *
+     * @param serverName the name of the Gerrit server that sent the event, null for the default server.
+     * @param event      the event.
+     * @return true if the event is outdated.
+     */
+    public synchronized boolean isOutdated(String serverName, ChangeBasedEvent event) {
+        ChangeJobs jobs = changes.get(new ChangeKey(serverName, event.getChange()));
+        return jobs != null && isOlder(event, jobs.getEvent());
+    }
+
+    /**
+     * Records the build that was started for the event.
+     * If a newer patch set of the change has been scheduled since, the build is interrupted right away;
+     * it was still on its way from the queue to an executor when it was cancelled.
+     * Builds that were triggered manually or retriggered by a user are never interrupted.
+     *
+     * @param serverName the name of the Gerrit server that sent the event, null for the default server.
+     * @param event      the event that started the build.
+     * @param build      the build.
+     */
+    public synchronized void started(String serverName, ChangeBasedEvent event, AbstractBuild build) {
+        ChangeJobs jobs = changes.get(new ChangeKey(serverName, event.getChange()));
+        if (jobs == null || build.getCause(GerritUserCause.class) != null) {
+            return;
+        }
+        Job job = jobs.getJobs().get(build.getProject());
+        if (job != null && job.getEvent().equals(event)) {
+            job.setBuild(build);
+        } else if (isOlder(event, jobs.getEvent())) {
+            logger.debug("Interrupting started build {} for the outdated {}", build, event);
+            cancel(build, build.getProject());
+        }
+    }
+
+    /**
+     * Removes any reference to the build of the project for the event.
+     * Nothing is removed if another build of the project for the change has been scheduled since.
+     *
+     * @param serverName the name of the Gerrit server that sent the event, null for the default server.
+     * @param event      the event which started the build we want to remove.
+     * @param project    the project of the build.
+     */
+    public synchronized void ended(String serverName, ChangeBasedEvent event, AbstractProject project) {
+        ChangeKey key = new ChangeKey(serverName, event.getChange());
+        ChangeJobs jobs = changes.get(key);
+        if (jobs == null) {
+            return;
+        }
+        Job job = jobs.getJobs().get(project);
+        if (job != null && job.getEvent().equals(event)) {
+            logger.debug("Removing job {} for {}", project.getName(), event);
+            jobs.getJobs().remove(project);
+            if (jobs.getJobs().isEmpty()) {
+                changes.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Forgets the builds that were cancelled while they were still in the queue, e.g. by a user.
+     * They will never start nor end, so nothing else would remove them.
+     */
+    synchronized void removeCancelled() {
+        Iterator<ChangeJobs> changeIterator = changes.values().iterator();
+        while (changeIterator.hasNext()) {
+            ChangeJobs jobs = changeIterator.next();
+            Iterator<Job> jobIterator = jobs.getJobs().values().iterator();
+            while (jobIterator.hasNext()) {
+                Job job = jobIterator.next();
+                if (job.getBuild() == null && job.getFuture() != null && job.getFuture().isCancelled()) {
+                    logger.debug("Removing the cancelled build of {} for {}", job.getProject().getName(),
+                            job.getEvent());
+                    jobIterator.remove();
+                }
+            }
+            if (jobs.getJobs().isEmpty()) {
+                changeIterator.remove();
+            }
+        }
+    }
+
+    /**
+     * The number of outdated builds that have been cancelled since the plugin started.
+     *
+     * @return the number of builds.
+     */
+    public synchronized int getCancelledBuilds() {
+        return cancelledBuilds;
+    }
+
+    /**
+     * The estimated number of executor minutes that the cancelled builds would have used.
+     * Based on the estimated duration of each project, minus the time the build had already been running.
+     *
+     * @return the number of minutes.
+     */
+    public synchronized long getSavedExecutorMinutes() {
+        return savedMillis / MILLIS_PER_MINUTE;
+    }
+
+    /**
+     * The number of changes that currently have builds.
+     *
+     * @return the number of changes.
+     */
+    public synchronized int getChangeCount() {
+        return changes.size();
+    }
+
+    /**
+     * Cancels the builds of all projects for a patch set.
+     *
+     * @param jobs the builds.
+     */
+    private void cancel(ChangeJobs jobs) {
+        int cancelledBefore = cancelledBuilds;
+        long savedBefore = savedMillis;
+        for (Job job : jobs.getJobs().values()) {
+            cancel(job);
+        }
+        logger.info("Cancelled {} builds for the outdated {}, saving about {} executor minutes.",
+                new Object[]{cancelledBuilds - cancelledBefore, jobs.getEvent(),
+                        (savedMillis - savedBefore) / MILLIS_PER_MINUTE, });
+    }
+
+    /**
+     * Tries to cancel the job. If it has started the build's executor is interrupted,
+     * otherwise its item is cancelled in the build queue.
+     * The item is looked up by its id, since it is replaced by another object when it becomes buildable,
+     * and Future.cancel() would cancel any item of the project - see
+     * https://issues.jenkins-ci.org/browse/JENKINS-13829
+     *
+     * @param job the job to cancel.
+     */
+    private void cancel(Job job) {
+        try {
+            if (job.getBuild() != null) {
+                cancel(job.getBuild(), job.getProject());
+                return;
+            }
+            if (job.getQueueId() < 0) {
+                return;
+            }
+            Queue queue = Queue.getInstance();
+            Queue.Item item = queue.getItem(job.getQueueId());
+            if (item != null && queue.cancel(item)) {
+                cancelledBuilds++;
+                long estimated = job.getProject().getEstimatedDuration();
+                if (estimated > 0) {
+                    savedMillis += estimated;
+                }
+            }
+        } catch (Exception e) {
+            // Ignore any problems with canceling the job.
+            logger.error("Error canceling job", e);
+        }
+    }
+
+    /**
+     * Interrupts the executor of the build, if it is still building.
+     *
+     * @param build   the build.
+     * @param project the project of the build.
+     */
+    private void cancel(AbstractBuild build, AbstractProject project) {
+        Executor executor = build.getExecutor();
+        if (executor != null && build.isBuilding()) {
+            executor.interrupt();
+            cancelledBuilds++;
+            long remaining = project.getEstimatedDuration()
+                    - (System.currentTimeMillis() - build.getTimeInMillis());
+            if (remaining > 0) {
+                savedMillis += remaining;
+            }
+        }
+    }
+
+    /**
+     * If the event created a new patch set, as opposed to e.g. commenting on an existing one.
+     *
+     * @param event the event.
+     * @return true if so.
+     */
+    private static boolean isNewPatchSet(ChangeBasedEvent event) {
+        return event instanceof PatchsetCreated || event instanceof DraftPublished;
+    }
+
+    /**
+     * If the first event is for an older patch set than the second.
+     *
+     * @param event the event to check.
+     * @param than  the event to compare with.
+     * @return true if so.
+     */
+    private static boolean isOlder(ChangeBasedEvent event, ChangeBasedEvent than) {
+        try {
+            return Integer.parseInt(event.getPatchSet().getNumber())
+                    < Integer.parseInt(than.getPatchSet().getNumber());
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Forgets everything. Only intended for tests.
+     */
+    synchronized void clear() {
+        changes.clear();
+        cancelledBuilds = 0;
+        savedMillis = 0;
+    }
+
+    /**
+     * A change on a Gerrit server, the same change number can be used by different servers.
+     */
+    private static final class ChangeKey {
+        private final String serverName;
+        private final Change change;
+
+        /**
+         * Standard Constructor.
+         *
+         * @param serverName the name of the server, null for the default server.
+         * @param change     the change.
+         */
+        ChangeKey(String serverName, Change change) {
+            this.serverName = serverName;
+            this.change = change;
+        }
+
+        //CS IGNORE InlineConditionals FOR NEXT 30 LINES. REASON: Auto generated code
+        //CS IGNORE MagicNumber FOR NEXT 30 LINES. REASON: Auto generated code
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            ChangeKey that = (ChangeKey)o;
+            if (serverName != null ? !serverName.equals(that.serverName) : that.serverName != null) {
+                return false;
+            }
+            return change != null ? change.equals(that.change) : that.change == null;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = serverName != null ? serverName.hashCode() : 0;
+            result = 31 * result + (change != null ? change.hashCode() : 0);
+            return result;
+        }
+    }
+
+    /**
+     * The builds of all projects for the current patch set of a change.
+     */
+    private static class ChangeJobs {
+        /**
+         * The event that created the current patch set, or the first event seen for it.
+         */
+        private final ChangeBasedEvent event;
+        private final Map<AbstractProject, Job> jobs = new HashMap<AbstractProject, Job>();
+
+        /**
+         * Standard Constructor.
+         *
+         * @param event the event of the patch set.
+         */
+        ChangeJobs(ChangeBasedEvent event) {
+            this.event = event;
+        }
+
+        /**
+         * The event of the patch set.
+         *
+         * @return the event.
+         */
+        ChangeBasedEvent getEvent() {
+            return event;
+        }
+
+        /**
+         * The builds per project.
+         *
+         * @return the builds.
+         */
+        Map<AbstractProject, Job> getJobs() {
+            return jobs;
+        }
+    }
+
+    /**
+     * A scheduled build of a project.
+     */
+    private static class Job {
+        private final AbstractProject project;
+        private final ChangeBasedEvent event;
+        private final int queueId;
+        private final Future future;
+        private AbstractBuild build;
+
+        /**
+         * Standard Constructor.
+         *
+         * @param project the project.
+         * @param event   the event that the build was scheduled for.
+         * @param item    the queue item of the build, or null.
+         */
+        Job(AbstractProject project, ChangeBasedEvent event, Queue.Item item) {
+            this.project = project;
+            this.event = event;
+            if (item != null) {
+                this.queueId = item.id;
+                this.future = item.getFuture();
+            } else {
+                this.queueId = -1;
+                this.future = null;
+            }
+        }
+
+        /**
+         * The event that the build was scheduled for.
+         *
+         * @return the event.
+         */
+        ChangeBasedEvent getEvent() {
+            return event;
+        }
+
+        /**
+         * The project.
+         *
+         * @return the project.
+         */
+        AbstractProject getProject() {
+            return project;
+        }
+
+        /**
+         * The id of the queue item of the build, used to cancel it while it is queued.
+         *
+         * @return the id, or -1 if there is no queue item.
+         */
+        int getQueueId() {
+            return queueId;
+        }
+
+        /**
+         * The future of the queue item, used to tell if the item was cancelled before the build started.
+         *
+         * @return the future, or null if there is no queue item.
+         */
+        Future getFuture() {
+            return future;
+        }
+
+        /**
+         * The build, once it has started.
+         *
+         * @return the build or null.
+         */
+        AbstractBuild getBuild() {
+            return build;
+        }
+
+        /**
+         * The build, once it has started.
+         *
+         * @param build the build.
+         */
+        void setBuild(AbstractBuild build) {
+            this.build = build;
+        }
+    }
+
+    /**
+     * Periodically forgets the builds that were cancelled in the queue, since the queue doesn't tell anyone.
+     */
+    @Extension
+    public static class CancelledBuildsCleaner extends PeriodicWork {
+
+        @Override
+        public long getRecurrencePeriod() {
+            return CLEANUP_PERIOD_MINUTES * MIN;
+        }
+
+        @Override
+        protected void doRun() {
+            RunningJobs.getInstance().removeCancelled();
+        }
+    }
+}
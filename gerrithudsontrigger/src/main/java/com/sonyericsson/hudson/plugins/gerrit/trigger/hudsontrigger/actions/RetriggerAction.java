@@ -95,7 +95,8 @@ public class RetriggerAction implements Action {
             return false;
         } else {
             return context.getThisBuild().getBuild().isBuilding()
-                    || ToGerritRunListener.getInstance().isBuilding(context.getThisBuild().getProject(),
+                    || ToGerritRunListener.getInstance().isBuilding(context.getServerName(),
+                                                                context.getThisBuild().getProject(),
                                                                 context.getEvent());
         }
     }
@@ -107,7 +107,7 @@ public class RetriggerAllAction implements Action {
     private boolean isBuilding() {
         if (context != null) {
             return context.getThisBuild().getBuild().isBuilding()
-                    || ToGerritRunListener.getInstance().isBuilding(context.getEvent());
+                    || ToGerritRunListener.getInstance().isBuilding(context.getServerName(), context.getEvent());
         } else {
             //The correct answer here should be null, but hasPermission takes care of a more "correct" answer.
             return false;
@@ -29,10 +29,12 @@ import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.attr.Change;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.attr.PatchSet;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.ManualPatchsetCreated;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.PatchsetCreated;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.GerritServer;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.Messages;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.PluginImpl;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.config.IGerritHudsonTriggerConfig;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.GerritTriggerParameters;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.version.GerritVersionChecker;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.utils.StringUtil;
 import hudson.Extension;
 import hudson.model.Hudson;
@@ -42,11 +44,13 @@ import hudson.security.Permission;
 import net.sf.json.JSONArray;
 import net.sf.json.JSONObject;
 import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.Stapler;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.servlet.http.HttpSession;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -70,7 +74,14 @@ public class ManualTriggerAction implements RootAction {
      */
     public static final int EXPECTED_NR_OF_PARTS_IN_A_GENERATED_ID = 3;
 
-    private static final String SESSION_RESULT = "result";
+    /**
+     * The maximum number of changes on a page of the search result.
+     */
+    public static final int PAGE_SIZE = 25;
+
+    private static final String SESSION_QUERY = "queryString";
+    private static final String SESSION_SERVER = "serverName";
+    private static final String SESSION_START = "start";
     private static final String SESSION_SEARCH_ERROR = "error_search";
     private static final String SESSION_BUILD_ERROR = "error_build";
     private static final String SESSION_TRIGGER_MONITOR = "trigger_monitor";
@@ -190,29 +201,155 @@ public class ManualTriggerAction implements RootAction {
      * Does a search.
      *
      * @param queryString the query to send to Gerrit.
+     * @param serverName  the name of the Gerrit server to search on, null or empty for the default server.
      * @param request     the request.
      * @param response    the response.
      * @throws IOException if the unfortunate happens.
      */
     @SuppressWarnings("unused")
     //Called from jelly
-    public void doGerritSearch(@QueryParameter("queryString") final String queryString, StaplerRequest request,
+    public void doGerritSearch(@QueryParameter("queryString") final String queryString,
+                               @QueryParameter("serverName") final String serverName,
+                               StaplerRequest request,
                                StaplerResponse response) throws IOException {
         if (!isEnabled()) {
             response.sendRedirect2(".");
             return;
         }
         Hudson.getInstance().checkPermission(PluginImpl.MANUAL_TRIGGER);
-        IGerritHudsonTriggerConfig config = PluginImpl.getInstance().getConfig();
-        GerritQueryHandler handler = new GerritQueryHandler(config);
         clearSessionData(request);
-        request.getSession(true).setAttribute("queryString", queryString);
+        request.getSession(true).setAttribute(SESSION_QUERY, queryString);
+        if (serverName != null && serverName.length() > 0) {
+            request.getSession(true).setAttribute(SESSION_SERVER, serverName);
+        } else {
+            request.getSession(true).removeAttribute(SESSION_SERVER);
+        }
+        showPage(queryString, 0, request);
+        //TODO Implement some smart default selection.
+        //That can notice that a specific revision is searched or that there is only one result etc.
+        response.sendRedirect2(".");
+    }
+
+    /**
+     * Shows another page of the search result.
+     *
+     * @param start    the number of changes before the page.
+     * @param request  the request.
+     * @param response the response.
+     * @throws IOException if the unfortunate happens.
+     */
+    @SuppressWarnings("unused")
+    //Called from jelly
+    public void doPage(@QueryParameter("start") int start, StaplerRequest request,
+                       StaplerResponse response) throws IOException {
+        if (!isEnabled()) {
+            response.sendRedirect2(".");
+            return;
+        }
+        Hudson.getInstance().checkPermission(PluginImpl.MANUAL_TRIGGER);
+        String queryString = (String)request.getSession(true).getAttribute(SESSION_QUERY);
+        if (queryString != null) {
+            request.getSession(true).removeAttribute(SESSION_BUILD_ERROR);
+            showPage(queryString, Math.max(0, start), request);
+        }
+        response.sendRedirect2(".");
+    }
+
+    /**
+     * All Gerrit servers, to choose the one to search on.
+     *
+     * @return the servers, the default server first.
+     */
+    @SuppressWarnings("unused")
+    //Called from jelly
+    public List<GerritServer> getServers() {
+        return PluginImpl.getInstance().getServers();
+    }
 
+    /**
+     * The name of the Gerrit server that the current user searches on.
+     *
+     * @return the name, null for the default server.
+     */
+    public String getServerName() {
+        StaplerRequest request = Stapler.getCurrentRequest();
+        if (request == null) {
+            return null;
+        }
+        HttpSession session = request.getSession(false);
+        if (session == null) {
+            return null;
+        }
+        return (String)session.getAttribute(SESSION_SERVER);
+    }
+
+    /**
+     * The Gerrit server that the user of the session searches on.
+     * Fails with an IllegalStateException if there is no server with the selected name anymore.
+     *
+     * @param session the HTTP session.
+     * @return the server.
+     */
+    private GerritServer getServer(HttpSession session) {
+        String serverName = (String)session.getAttribute(SESSION_SERVER);
+        GerritServer server = PluginImpl.getInstance().getServer(serverName);
+        if (server == null) {
+            throw new IllegalStateException(Messages.ErrorNoSuchGerritServer(serverName));
+        }
+        return server;
+    }
+
+    /**
+     * The config of the Gerrit server that the current user searches on.
+     *
+     * @return the config.
+     * @see PluginImpl#getConfig(String)
+     */
+    private IGerritHudsonTriggerConfig getServerConfig() {
+        return PluginImpl.getInstance().getConfig(getServerName());
+    }
+
+    /**
+     * If there can be more than one page of search results,
+     * i.e. if the Gerrit server supports skipping changes in the query.
+     *
+     * @return true if so.
+     */
+    @SuppressWarnings("unused")
+    //Called from jelly
+    public boolean isPaginationSupported() {
+        return GerritVersionChecker.isCorrectVersion(GerritVersionChecker.Feature.queryStart);
+    }
+
+    /**
+     * The page of the search result that the current user is looking at.
+     *
+     * @return the page, or null if there is no search result.
+     */
+    @SuppressWarnings("unused")
+    //Called from jelly
+    public SearchPage getSearchPage() {
+        HttpSession session = Stapler.getCurrentRequest().getSession(false);
+        if (session == null) {
+            return null;
+        }
+        return getSearchPage(session);
+    }
+
+    /**
+     * Makes the page the one that the user is looking at, if it can be fetched.
+     * Otherwise the error is put in the session instead.
+     *
+     * @param queryString the query.
+     * @param start       the number of changes before the page.
+     * @param request     the request.
+     */
+    private void showPage(String queryString, int start, StaplerRequest request) {
+        request.getSession(true).removeAttribute(SESSION_START);
+        request.getSession(true).removeAttribute(SESSION_SEARCH_ERROR);
         try {
-            List<JSONObject> json = handler.queryJava(queryString, true, true, false);
-            request.getSession(true).setAttribute(SESSION_RESULT, json);
-            //TODO Implement some smart default selection.
-            //That can notice that a specific revision is searched or that there is only one result etc.
+            search(getServer(request.getSession(true)), queryString, start);
+            request.getSession(true).setAttribute(SESSION_START, start);
         } catch (GerritQueryException gqe) {
             logger.debug("Bad query. ", gqe);
             request.getSession(true).setAttribute(SESSION_SEARCH_ERROR, gqe);
@@ -220,7 +357,47 @@ public class ManualTriggerAction implements RootAction {
             logger.warn("Could not query Gerrit for [" + queryString + "]", ex);
             request.getSession(true).setAttribute(SESSION_SEARCH_ERROR, ex);
         }
-        response.sendRedirect2(".");
+    }
+
+    /**
+     * The page of the search result that the user of the session is looking at.
+     *
+     * @param session the HTTP session.
+     * @return the page, or null if there is no search result or it could not be fetched.
+     */
+    private SearchPage getSearchPage(HttpSession session) {
+        String queryString = (String)session.getAttribute(SESSION_QUERY);
+        Integer start = (Integer)session.getAttribute(SESSION_START);
+        if (queryString == null || start == null) {
+            return null;
+        }
+        try {
+            return search(getServer(session), queryString, start);
+        } catch (Exception ex) {
+            logger.warn("Could not query Gerrit for [" + queryString + "]", ex);
+            return null;
+        }
+    }
+
+    //CS IGNORE RedundantThrows FOR NEXT 12 LINES. REASON: Informative.
+
+    /**
+     * Gets a page of the search result.
+     * Repeated searches are answered from the query cache of the server, until any of the changes is changed.
+     *
+     * @param server      the server to search on.
+     * @param queryString the query.
+     * @param start       the number of changes before the page.
+     * @return the page.
+     * @throws GerritQueryException if Gerrit reports an error with the query.
+     * @throws IOException if there is a problem with the SSH connection.
+     */
+    private SearchPage search(GerritServer server, String queryString, int start)
+            throws GerritQueryException, IOException {
+        GerritQueryHandler handler = server.getQueryHandler();
+        SearchPage page = new SearchPage(queryString, start, PAGE_SIZE);
+        handler.queryJava(page.getLimitedQuery(), start, true, true, false, page);
+        return page;
     }
 
     /**
@@ -251,12 +428,19 @@ public class ManualTriggerAction implements RootAction {
             response.sendRedirect2(".");
         } else {
             logger.debug("Something to build.");
-            List<JSONObject> result = (List<JSONObject>)request.getSession(true).getAttribute(SESSION_RESULT);
+            SearchPage page = getSearchPage(request.getSession(true));
+            if (page == null) {
+                logger.debug("The search result is gone.");
+                request.getSession(true).setAttribute(SESSION_BUILD_ERROR, Messages.ErrorSearchResultGone());
+                response.sendRedirect2(".");
+                return;
+            }
+            GerritServer server = getServer(request.getSession(true));
             TriggerMonitor monitor = new TriggerMonitor();
             logger.trace("Putting monitor into session.");
             request.getSession(true).setAttribute(SESSION_TRIGGER_MONITOR, monitor);
             logger.trace("Calling to index the search result.");
-            HashMap<String, JSONObject> indexed = indexResult(result);
+            HashMap<String, JSONObject> indexed = indexResult(page.getChanges());
             logger.debug("Creating and triggering events.");
             for (String rowId : selectedRows) {
                 ManualPatchsetCreated event = findAndCreatePatchSetEvent(rowId, indexed);
@@ -264,7 +448,7 @@ public class ManualTriggerAction implements RootAction {
                 if (event != null) {
                     monitor.add(event);
                     logger.trace("Triggering event: {}", event);
-                    triggerEvent(event);
+                    triggerEvent(server, event);
                 }
             }
             logger.debug("Sending redirect.");
@@ -280,7 +464,7 @@ public class ManualTriggerAction implements RootAction {
     private void clearSessionData(StaplerRequest request) {
         request.getSession(true).removeAttribute(SESSION_SEARCH_ERROR);
         request.getSession(true).removeAttribute(SESSION_BUILD_ERROR);
-        request.getSession(true).removeAttribute(SESSION_RESULT);
+        request.getSession(true).removeAttribute(SESSION_START);
         request.getSession(true).removeAttribute(SESSION_TRIGGER_MONITOR);
     }
 
@@ -344,7 +528,7 @@ public class ManualTriggerAction implements RootAction {
         if (event.getChange().getUrl() != null && event.getChange().getUrl().length() > 0) {
             return event.getChange().getUrl();
         } else {
-            return PluginImpl.getInstance().getConfig().getGerritFrontEndUrlFor(
+            return getServerConfig().getGerritFrontEndUrlFor(
                     event.getChange().getNumber(),
                     event.getPatchSet().getNumber());
         }
@@ -366,7 +550,7 @@ public class ManualTriggerAction implements RootAction {
         PatchsetCreated event = new PatchsetCreated();
         event.setChange(change);
         event.setPatchset(patchSet);
-        GerritTriggerParameters.setOrCreateParameters(event, parameters, false);
+        GerritTriggerParameters.setOrCreateParameters(event, parameters, false, getServerConfig());
         return parameters;
     }
 
@@ -394,7 +578,7 @@ public class ManualTriggerAction implements RootAction {
         if (url != null && url.length() > 0) {
             return url;
         } else if (change.optString("number", "").length() > 0) {
-            return PluginImpl.getInstance().getConfig().getGerritFrontEndUrlFor(
+            return getServerConfig().getGerritFrontEndUrlFor(
                     change.getString("number"), "1");
         } else {
             return "";
@@ -438,14 +622,15 @@ public class ManualTriggerAction implements RootAction {
     }
 
     /**
-     * Triggers the event by putting it into the event queue.
+     * Triggers the event by putting it into the event queue of the server that it was found on.
      *
-     * @param event the event to trigger.
-     * @see PluginImpl#triggerEvent(com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.GerritEvent)
+     * @param server the server.
+     * @param event  the event to trigger.
+     * @see GerritServer#triggerEvent(com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.GerritEvent)
      */
-    private void triggerEvent(ManualPatchsetCreated event) {
-        logger.trace("Going to trigger event: {}", event);
-        PluginImpl.getInstance().triggerEvent(event);
+    private void triggerEvent(GerritServer server, ManualPatchsetCreated event) {
+        logger.trace("Going to trigger event: {} on {}", event, server);
+        server.triggerEvent(event);
     }
 
     /**
@@ -0,0 +1,158 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.actions.manual;
+
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritQueryException;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritQueryVisitor;
+import net.sf.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of changes from a manual trigger search.
+ *
+ * It is also the {@link GerritQueryVisitor} that collects the page while the query result is read,
+ * it stops reading as soon as it knows if there is a next page.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class SearchPage implements GerritQueryVisitor {
+
+    private final String queryString;
+    private final int start;
+    private final int size;
+    private final List<JSONObject> changes;
+    private boolean more = false;
+
+    /**
+     * Standard Constructor.
+     *
+     * @param queryString the query that the user typed in.
+     * @param start       the number of changes before this page.
+     * @param size        the maximum number of changes on the page.
+     */
+    public SearchPage(String queryString, int start, int size) {
+        this.queryString = queryString;
+        this.start = start;
+        this.size = size;
+        this.changes = new ArrayList<JSONObject>(size);
+    }
+
+    /**
+     * The query to send to Gerrit for this page,
+     * limited so that Gerrit returns at most one more change than fits on the page.
+     *
+     * @return the query.
+     */
+    public String getLimitedQuery() {
+        return "(" + queryString + ") limit:" + (size + 1);
+    }
+
+    @Override
+    public boolean visit(JSONObject json) throws GerritQueryException {
+        if (json.has("type")) {
+            return true;
+        }
+        if (changes.size() >= size) {
+            more = true;
+            return false;
+        }
+        changes.add(json);
+        return true;
+    }
+
+    /**
+     * The query that the user typed in.
+     *
+     * @return the query.
+     */
+    public String getQueryString() {
+        return queryString;
+    }
+
+    /**
+     * The number of changes before this page.
+     *
+     * @return the number of changes.
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * The maximum number of changes on the page.
+     *
+     * @return the size.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * The changes on the page, in the order Gerrit returned them.
+     *
+     * @return the changes.
+     */
+    public List<JSONObject> getChanges() {
+        return Collections.unmodifiableList(changes);
+    }
+
+    /**
+     * If there are more changes after this page.
+     *
+     * @return true if so.
+     */
+    public boolean isMore() {
+        return more;
+    }
+
+    /**
+     * If there are changes before this page.
+     *
+     * @return true if so.
+     */
+    public boolean isPrevious() {
+        return start > 0;
+    }
+
+    /**
+     * The start of the next page.
+     *
+     * @return the number of changes before the next page.
+     */
+    public int getNextStart() {
+        return start + size;
+    }
+
+    /**
+     * The start of the previous page.
+     *
+     * @return the number of changes before the previous page.
+     */
+    public int getPreviousStart() {
+        return Math.max(0, start - size);
+    }
+}
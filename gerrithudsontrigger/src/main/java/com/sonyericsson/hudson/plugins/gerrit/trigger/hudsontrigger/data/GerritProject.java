@@ -23,14 +23,17 @@
  */
 package com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.data;
 
+import com.sonyericsson.hudson.plugins.gerrit.trigger.GerritServer;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.PluginImpl;
 import hudson.Extension;
+import hudson.Util;
+import hudson.model.AutoCompletionCandidates;
 import hudson.model.Describable;
 import hudson.model.Descriptor;
 import hudson.model.Hudson;
-import hudson.util.ComboBoxModel;
 import java.util.List;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
 
 /**
  * Base settings for one matcher rule of a Gerrit project.
@@ -155,6 +158,15 @@ public class GerritProject implements Describable<GerritProject> {
         }
     }
 
+    /**
+     * Compares the project to see if the rules specified could be a match, regardless of branch and files.
+     * @param project the gerrit project
+     * @return true if the project matches.
+     */
+    public boolean isInteresting(String project) {
+        return compareType.matches(pattern, project);
+    }
+
     /**
      * Compares the project and branch to see if the rules specified is a match.
      * @param project the gerrit project
@@ -181,17 +193,47 @@ public class GerritProject implements Describable<GerritProject> {
 
     /**
      * Descriptor allowing for communication within the Repeatable.
-     * Necessary for editable combobox.
+     * Necessary for the auto completion of the project pattern.
      */
     @Extension
     public static final class DescriptorImpl extends Descriptor<GerritProject> {
         /**
-         * Used to fill the project pattern combobox with AJAX.
+         * The maximum number of projects suggested while typing a pattern.
+         */
+        public static final int MAX_SUGGESTIONS = 50;
+
+        /**
+         * The URL, relative to the root URL, that suggests the projects of the server while the pattern is typed.
+         * The server is part of the path since the auto completion only sends what has been typed.
+         *
+         * @param serverName the name of the server of the trigger, null or empty for the default server.
+         * @return the URL.
+         */
+        public String getAutoCompletePatternUrl(String serverName) {
+            if (serverName == null || serverName.length() <= 0) {
+                return getDescriptorUrl() + "/defaultServer/autoCompletePattern";
+            } else {
+                return getDescriptorUrl() + "/server/" + Util.rawEncode(serverName) + "/autoCompletePattern";
+            }
+        }
+
+        /**
+         * The project suggestions of the default server.
          *
-         * @return ComboBoxModels containing a list of all Gerrit Projects
+         * @return the suggestions.
          */
-        public ComboBoxModel doFillPatternItems() {
-    		return new ComboBoxModel(PluginImpl.getInstance().getGerritProjects());
+        public ProjectSuggestions getDefaultServer() {
+            return new ProjectSuggestions(null);
+        }
+
+        /**
+         * The project suggestions of a server.
+         *
+         * @param serverName the name of the server.
+         * @return the suggestions.
+         */
+        public ProjectSuggestions getServer(String serverName) {
+            return new ProjectSuggestions(serverName);
         }
 
         @Override
@@ -199,4 +241,38 @@ public class GerritProject implements Describable<GerritProject> {
             return null;
         }
     }
+
+    /**
+     * Suggests the Gerrit projects of one server with AJAX while the project pattern is typed.
+     */
+    public static final class ProjectSuggestions {
+        private final String serverName;
+
+        /**
+         * Standard Constructor.
+         *
+         * @param serverName the name of the server, null for the default server.
+         */
+        ProjectSuggestions(String serverName) {
+            this.serverName = serverName;
+        }
+
+        /**
+         * Only the projects starting with what has been typed so far are sent, never the whole list.
+         *
+         * @param value the pattern typed so far.
+         * @return the first {@link DescriptorImpl#MAX_SUGGESTIONS} projects of the server starting with it,
+         *         none if there is no such server.
+         */
+        public AutoCompletionCandidates doAutoCompletePattern(@QueryParameter String value) {
+            AutoCompletionCandidates candidates = new AutoCompletionCandidates();
+            GerritServer server = PluginImpl.getInstance().getServer(serverName);
+            if (server != null) {
+                for (String project : server.getGerritProjects(value, DescriptorImpl.MAX_SUGGESTIONS)) {
+                    candidates.add(project);
+                }
+            }
+            return candidates;
+        }
+    }
 }
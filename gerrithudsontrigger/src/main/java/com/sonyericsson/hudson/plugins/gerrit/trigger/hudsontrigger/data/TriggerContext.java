@@ -44,6 +44,7 @@ import java.util.List;
 public class TriggerContext {
 
     private GerritTriggeredEvent event;
+    private String serverName;
     private TriggeredItemEntity thisBuild;
     private List<TriggeredItemEntity> others;
 
@@ -146,6 +147,24 @@ public class TriggerContext {
         this.event = event;
     }
 
+    /**
+     * The name of the Gerrit server that sent the event.
+     *
+     * @return the name, null for the default server.
+     */
+    public String getServerName() {
+        return serverName;
+    }
+
+    /**
+     * The name of the Gerrit server that sent the event.
+     *
+     * @param serverName the name, null for the default server.
+     */
+    public void setServerName(String serverName) {
+        this.serverName = serverName;
+    }
+
     /**
      * Adds a build to the list of other builds if it doesn't exist in the list.
      * Also if the build's project exists in the list of other projects,
@@ -58,6 +58,11 @@ public class TriggerContextConverter implements Converter {
             context.convertAnother(tc.getEvent());
             writer.endNode();
         }
+        if (tc.getServerName() != null) {
+            writer.startNode("serverName");
+            writer.setValue(tc.getServerName());
+            writer.endNode();
+        }
         if (tc.getThisBuild() != null) {
             writer.startNode("thisBuild");
             marshalItemEntity(tc.getThisBuild(), writer);
@@ -134,6 +139,8 @@ public class TriggerContextConverter implements Converter {
                 Class<? extends GerritTriggeredEvent> theClass = calculateEventClass(clazz);
                 GerritTriggeredEvent event = (GerritTriggeredEvent)context.convertAnother(tc, theClass);
                 tc.setEvent(event);
+            } else if ("serverName".equalsIgnoreCase(reader.getNodeName())) {
+                tc.setServerName(reader.getValue());
             } else if ("thisBuild".equalsIgnoreCase(reader.getNodeName())) {
                 TriggeredItemEntity entity = unmarshalItemEntity(reader, context);
                 tc.setThisBuild(entity);
@@ -50,7 +50,12 @@ public final class GerritVersionChecker {
         /**
          * Triggering on draft change published, added in Gerrit 2.5.
          */
-        triggerOnDraftPublished("Trigger on draft published", "2.5");
+        triggerOnDraftPublished("Trigger on draft published", "2.5"),
+
+        /**
+         * Paging through the manual trigger search result with gerrit query --start, added in Gerrit 2.9.
+         */
+        queryStart("Paginated manual trigger search", "2.9");
 
         private final String displayName;
         private final String version;
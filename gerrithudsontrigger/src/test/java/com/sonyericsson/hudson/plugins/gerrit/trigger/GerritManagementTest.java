@@ -0,0 +1,162 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger;
+
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.latency.EventLatency;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests {@link GerritManagement}.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class GerritManagementTest {
+
+    /**
+     * Tests that the additional servers get their own connection settings
+     * and the rest of the settings from the main configuration.
+     */
+    @Test
+    public void testCreateAdditionalServers() {
+        JSONObject form = new JSONObject();
+        form.put("gerritHostName", "gerrit.example.com");
+        form.put("gerritSshPort", "29418");
+        form.put("gerritUserName", "hudson");
+        form.put("numberOfReceivingWorkerThreads", "7");
+        JSONObject other = new JSONObject();
+        other.put("name", "other");
+        other.put("gerritHostName", "other.example.com");
+        other.put("gerritSshPort", "29419");
+        form.put("additionalServers", other);
+
+        List<GerritServer> servers = GerritManagement.createAdditionalServers(form);
+
+        assertEquals(1, servers.size());
+        GerritServer server = servers.get(0);
+        assertEquals("other", server.getName());
+        assertFalse(server.isDefault());
+        assertEquals("other.example.com", server.getConfig().getGerritHostName());
+        assertEquals(29419, server.getConfig().getGerritSshPort());
+        assertEquals("hudson", server.getConfig().getGerritUserName());
+        assertEquals(7, server.getConfig().getNumberOfReceivingWorkerThreads());
+        assertTrue(form.has("additionalServers"));
+    }
+
+    /**
+     * Tests that servers without a name or with the name of a previous server are ignored.
+     */
+    @Test
+    public void testCreateAdditionalServersIgnoresMissingAndDuplicateNames() {
+        JSONArray array = new JSONArray();
+        array.add(server("one", "one.example.com"));
+        array.add(server("", "nameless.example.com"));
+        array.add(server("one", "duplicate.example.com"));
+        array.add(server("two", "two.example.com"));
+        JSONObject form = new JSONObject();
+        form.put("additionalServers", array);
+
+        List<GerritServer> servers = GerritManagement.createAdditionalServers(form);
+
+        assertEquals(2, servers.size());
+        assertEquals("one.example.com", servers.get(0).getConfig().getGerritHostName());
+        assertEquals("two", servers.get(1).getName());
+    }
+
+    /**
+     * Tests that a form without additional servers gives none.
+     */
+    @Test
+    public void testCreateAdditionalServersNone() {
+        assertTrue(GerritManagement.createAdditionalServers(new JSONObject()).isEmpty());
+    }
+
+    /**
+     * Tests that the age of the last event and the stale reconnects are written per server,
+     * and that a server that has never been connected has no age.
+     */
+    @Test
+    public void testWriteStreamMetrics() {
+        GerritServer connected = mockServer("gerrit.example.com", 12, 3);
+        GerritServer neverConnected = mockServer("other.example.com", -1, 0);
+        StringWriter metrics = new StringWriter();
+        PrintWriter writer = new PrintWriter(metrics);
+
+        GerritManagement.writeStreamMetrics(writer, Arrays.asList(connected, neverConnected));
+        writer.flush();
+
+        String text = metrics.toString();
+        assertTrue(text, text.contains("# TYPE gerrit_trigger_last_event_age_seconds gauge"));
+        assertTrue(text, text.contains(
+                "gerrit_trigger_last_event_age_seconds{server=\"gerrit.example.com:29418\"} 12\n"));
+        assertFalse(text, text.contains("gerrit_trigger_last_event_age_seconds{server=\"other.example.com:29418\"}"));
+        assertTrue(text, text.contains(
+                "gerrit_trigger_stale_reconnects_total{server=\"gerrit.example.com:29418\"} 3\n"));
+        assertTrue(text, text.contains(
+                "gerrit_trigger_stale_reconnects_total{server=\"other.example.com:29418\"} 0\n"));
+    }
+
+    /**
+     * Mocks a server with the state of its stream of events.
+     *
+     * @param hostName   the host name of the server.
+     * @param age        the age of the last event in seconds.
+     * @param reconnects the number of stale reconnects.
+     * @return the server.
+     */
+    private static GerritServer mockServer(String hostName, long age, int reconnects) {
+        GerritServer server = mock(GerritServer.class);
+        EventLatency latency = EventLatency.getInstance(hostName, 29418);
+        when(server.getEventLatency()).thenReturn(latency);
+        when(server.getLastEventAge()).thenReturn(age);
+        when(server.getStaleReconnects()).thenReturn(reconnects);
+        return server;
+    }
+
+    /**
+     * Creates the form of an additional server.
+     *
+     * @param name     the name.
+     * @param hostName the host name.
+     * @return the form.
+     */
+    private static JSONObject server(String name, String hostName) {
+        JSONObject server = new JSONObject();
+        server.put("name", name);
+        server.put("gerritHostName", hostName);
+        return server;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link GerritProjectIndex}.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class GerritProjectIndexTest {
+
+    private GerritProjectIndex index;
+
+    /**
+     * Creates an index with some projects.
+     */
+    @Before
+    public void setUp() {
+        index = new GerritProjectIndex();
+        index.reconcile(Arrays.asList("tools/gerrit", "platform/build", "tools/hello/jenkins", "platform/art"));
+    }
+
+    /**
+     * Tests that only the projects starting with the prefix are suggested, sorted and limited.
+     */
+    @Test
+    public void testSuggest() {
+        assertEquals(Arrays.asList("tools/gerrit", "tools/hello/jenkins"), index.suggest("tools/", 10));
+        assertEquals(Arrays.asList("platform/art"), index.suggest("platform", 1));
+        assertEquals(Arrays.asList("platform/art", "platform/build"), index.suggest(null, 2));
+        assertEquals(0, index.suggest("x", 10).size());
+    }
+
+    /**
+     * Tests that a reconciliation only adds and removes the differences.
+     */
+    @Test
+    public void testReconcile() {
+        assertTrue(index.add("tools/new"));
+        assertFalse(index.add("tools/new"));
+        assertFalse(index.reconcile(index.getProjects()));
+        assertTrue(index.reconcile(Arrays.asList("tools/gerrit", "tools/new")));
+        assertEquals(Arrays.asList("tools/gerrit", "tools/new"), index.getProjects());
+        assertTrue(index.contains("tools/new"));
+        assertFalse(index.contains("platform/art"));
+    }
+}
@@ -23,13 +23,22 @@
  */
 package com.sonyericsson.hudson.plugins.gerrit.trigger;
 
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.PatchsetCreated;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.mock.Setup;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 /**
  * Test class for the GerritProjectListUpdater.
@@ -63,4 +72,24 @@ public class GerritProjectListUpdaterTest {
             "tools/gerrit",
         });
     }
+
+    /**
+     * Tests that the project of an event is added to the list, and that only unknown projects are watched.
+     */
+    @Test
+    public void testLearnFromEvents() {
+        GerritServer server = mock(GerritServer.class);
+        GerritProjectListUpdater updater = new GerritProjectListUpdater(server);
+        updater.setGerritProjects(Arrays.asList("tools/gerrit"));
+        assertFalse(updater.isWatching("tools/gerrit"));
+        assertTrue(updater.isWatching("project"));
+
+        PatchsetCreated event = Setup.createPatchsetCreated();
+        updater.gerritEvent(event);
+        updater.gerritEvent(event);
+
+        assertEquals(Arrays.asList("project", "tools/gerrit"), updater.getGerritProjects());
+        assertFalse(updater.isWatching("project"));
+        verify(server, times(2)).watchedProjectsChanged();
+    }
 }
@@ -0,0 +1,76 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link StartupTimer}.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class StartupTimerTest {
+
+    /**
+     * Tests that the phases are listed in the order they began, and that only ended phases are done.
+     */
+    @Test
+    public void testPhases() {
+        StartupTimer timer = new StartupTimer();
+        timer.begin(StartupTimer.CONFIGURATION);
+        timer.begin(StartupTimer.JOBS);
+        timer.end(StartupTimer.CONFIGURATION);
+        timer.end(StartupTimer.TRIGGERS);
+
+        List<StartupTimer.Phase> phases = timer.getPhases();
+        assertEquals(2, phases.size());
+        assertEquals(StartupTimer.CONFIGURATION, phases.get(0).getName());
+        assertTrue(phases.get(0).isDone());
+        assertEquals(StartupTimer.JOBS, phases.get(1).getName());
+        assertFalse(phases.get(1).isDone());
+        assertTrue(phases.get(1).getDuration() >= 0);
+    }
+
+    /**
+     * Tests that a phase keeps the duration from when it first ended.
+     *
+     * @throws InterruptedException if so.
+     */
+    @Test
+    public void testEndTwice() throws InterruptedException {
+        StartupTimer timer = new StartupTimer();
+        timer.begin(StartupTimer.SERVERS);
+        timer.end(StartupTimer.SERVERS);
+        long duration = timer.getPhases().get(0).getDuration();
+        Thread.sleep(10);
+        timer.end(StartupTimer.SERVERS);
+        assertEquals(duration, timer.getPhases().get(0).getDuration());
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier;
+
+import hudson.EnvVars;
+import hudson.model.AbstractBuild;
+import hudson.model.TaskListener;
+import org.junit.Test;
+
+import static junit.framework.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests {@link BuildEnvironmentCache}.
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class BuildEnvironmentCacheTest {
+
+    /**
+     * Tests that the environment of a completed build is only calculated once.
+     * @throws Exception if so.
+     */
+    @Test
+    public void testCompletedBuildIsCached() throws Exception {
+        TaskListener listener = mock(TaskListener.class);
+        AbstractBuild build = mock(AbstractBuild.class);
+        EnvVars env = new EnvVars();
+        when(build.isBuilding()).thenReturn(false);
+        when(build.getExternalizableId()).thenReturn("testCompletedBuildIsCached#1");
+        when(build.getEnvironment(listener)).thenReturn(env);
+
+        assertSame(env, BuildEnvironmentCache.getEnvironment(build, listener));
+        assertSame(env, BuildEnvironmentCache.getEnvironment(build, listener));
+        verify(build, times(1)).getEnvironment(listener);
+
+        BuildEnvironmentCache.forget(build);
+        assertSame(env, BuildEnvironmentCache.getEnvironment(build, listener));
+        verify(build, times(2)).getEnvironment(listener);
+    }
+
+    /**
+     * Tests that the environment of a running build is calculated every time.
+     * @throws Exception if so.
+     */
+    @Test
+    public void testRunningBuildIsNotCached() throws Exception {
+        TaskListener listener = mock(TaskListener.class);
+        AbstractBuild build = mock(AbstractBuild.class);
+        EnvVars env = new EnvVars();
+        when(build.isBuilding()).thenReturn(true);
+        when(build.getExternalizableId()).thenReturn("testRunningBuildIsNotCached#1");
+        when(build.getEnvironment(listener)).thenReturn(env);
+
+        BuildEnvironmentCache.getEnvironment(build, listener);
+        BuildEnvironmentCache.getEnvironment(build, listener);
+        verify(build, times(2)).getEnvironment(listener);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier;
+
+import hudson.EnvVars;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests {@link CommandTemplate}.
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class CommandTemplateTest {
+
+    /**
+     * Tests that both $ENV_VARS and &lt;PARAMETERS&gt; are expanded.
+     */
+    @Test
+    public void testExpand() {
+        CommandTemplate template = CommandTemplate.compile(
+                "gerrit review <CHANGE>,<PATCHSET> --message 'Build $STATUS on ${NODE_NAME}: <BUILDURL>' "
+                        + "--verified <VERIFIED>");
+        EnvVars env = new EnvVars();
+        env.put("STATUS", "Started");
+        env.put("NODE_NAME", "master");
+        Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put("CHANGE", "1000");
+        parameters.put("PATCHSET", "2");
+        parameters.put("BUILDURL", "http://localhost/job/x/1/");
+        parameters.put("VERIFIED", "1");
+
+        assertTrue(template.hasEnvironmentVariables());
+        assertEquals("gerrit review 1000,2 --message 'Build Started on master: http://localhost/job/x/1/' "
+                + "--verified 1", template.expand(env, parameters));
+    }
+
+    /**
+     * Tests that unknown variables and parameters are left as they are.
+     */
+    @Test
+    public void testExpandUnknown() {
+        CommandTemplate template = CommandTemplate.compile("<CHANGE> <UNKNOWN> $UNKNOWN ${UNKNOWN} <> < A> $ $$");
+        Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put("CHANGE", "1000");
+
+        assertEquals("1000 <UNKNOWN> $UNKNOWN ${UNKNOWN} <> < A> $ $", template.expand(new EnvVars(), parameters));
+        assertEquals("1000 <UNKNOWN> $UNKNOWN ${UNKNOWN} <> < A> $ $$", template.expand(null, parameters));
+    }
+
+    /**
+     * Tests that the values that are put into the result aren't expanded again.
+     */
+    @Test
+    public void testExpandValuesAreNotExpanded() {
+        CommandTemplate template = CommandTemplate.compile("<MESSAGE>");
+        Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put("MESSAGE", "<CHANGE> $HOME");
+        parameters.put("CHANGE", "1000");
+        EnvVars env = new EnvVars();
+        env.put("HOME", "/home");
+
+        assertEquals("<CHANGE> $HOME", template.expand(env, parameters));
+    }
+
+    /**
+     * Tests that a template without any $ is detected as such.
+     */
+    @Test
+    public void testNoEnvironmentVariables() {
+        CommandTemplate template = CommandTemplate.compile("gerrit review <CHANGE>,<PATCHSET>");
+        assertFalse(template.hasEnvironmentVariables());
+    }
+
+    /**
+     * Tests that compiled templates are re-used.
+     */
+    @Test
+    public void testCompileIsCached() {
+        String str = "gerrit review <CHANGE>,<PATCHSET> --message 'cached'";
+        assertSame(CommandTemplate.compile(str), CommandTemplate.compile(new String(str)));
+        assertNull(CommandTemplate.compile(null));
+    }
+}
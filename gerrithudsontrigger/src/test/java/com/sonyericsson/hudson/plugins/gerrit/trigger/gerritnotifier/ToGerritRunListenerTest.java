@@ -27,6 +27,7 @@ package com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier;
 
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritCmdRunner;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.PatchsetCreated;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.config.Config;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.model.BuildMemory;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.model.BuildsStartedStats;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.GerritCause;
@@ -47,16 +48,19 @@ import org.junit.runner.RunWith;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
-import org.powermock.reflect.Whitebox;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.same;
 import static org.mockito.Mockito.doReturn;
@@ -151,7 +155,7 @@ public class ToGerritRunListenerTest {
         when(build.getResult()).thenReturn(Result.SUCCESS);
 
         ToGerritRunListener toGerritRunListener = new ToGerritRunListener();
-        BuildMemory memory = Whitebox.getInternalState(toGerritRunListener, BuildMemory.class);
+        BuildMemory memory = toGerritRunListener.getMemory(null);
         memory.started(event, build);
 
         toGerritRunListener.onCompleted(build, mock(TaskListener.class));
@@ -190,7 +194,7 @@ public class ToGerritRunListenerTest {
     }
 
     /**
-     * Tests {@link ToGerritRunListener#obtainFailureMessage}.
+     * Tests {@link ToGerritRunListener#onCompleted}.
      * File path is not configured.
      *
      * @throws Exception if so.
@@ -202,16 +206,17 @@ public class ToGerritRunListenerTest {
 
         ToGerritRunListener toGerritRunListener = Setup.createFailureMessageRunListener(build, event, null);
 
-        BuildMemory memory = Whitebox.getInternalState(toGerritRunListener, BuildMemory.class);
+        doReturn(new CurrentThreadExecutor()).when(toGerritRunListener).getFailureMessageExecutor();
+        BuildMemory memory = toGerritRunListener.getMemory(null);
         memory.started(event, build);
         toGerritRunListener.onCompleted(build, mock(TaskListener.class));
 
         verify(toGerritRunListener, never()).getMatchingWorkspaceFiles(any(FilePath.class), any(String.class));
-        verify(toGerritRunListener, never()).getExpandedContent(any(FilePath.class), any(EnvVars.class));
+        verify(toGerritRunListener, never()).getExpandedContent(any(FilePath.class), any(EnvVars.class), anyInt());
     }
 
     /**
-     * Tests {@link ToGerritRunListener#obtainFailureMessage}.
+     * Tests {@link ToGerritRunListener#onCompleted}.
      * File path is configured, but not files match the glob.
      *
      * @throws Exception if so.
@@ -227,16 +232,17 @@ public class ToGerritRunListenerTest {
 
         doReturn(fileList).when(toGerritRunListener).getMatchingWorkspaceFiles(any(FilePath.class), eq(filepath));
 
-        BuildMemory memory = Whitebox.getInternalState(toGerritRunListener, BuildMemory.class);
+        doReturn(new CurrentThreadExecutor()).when(toGerritRunListener).getFailureMessageExecutor();
+        BuildMemory memory = toGerritRunListener.getMemory(null);
         memory.started(event, build);
         toGerritRunListener.onCompleted(build, mock(TaskListener.class));
 
         verify(toGerritRunListener, times(1)).getMatchingWorkspaceFiles(any(FilePath.class), eq(filepath));
-        verify(toGerritRunListener, never()).getExpandedContent(any(FilePath.class), any(EnvVars.class));
+        verify(toGerritRunListener, never()).getExpandedContent(any(FilePath.class), any(EnvVars.class), anyInt());
     }
 
     /**
-     * Tests {@link ToGerritRunListener#obtainFailureMessage}. Results in a failure message being retrieved.
+     * Tests {@link ToGerritRunListener#onCompleted}. Results in a failure message being retrieved.
      *
      * @throws Exception if so.
      */
@@ -253,14 +259,69 @@ public class ToGerritRunListenerTest {
         ToGerritRunListener toGerritRunListener = Setup.createFailureMessageRunListener(build, event, filepath);
 
         doReturn(fileList).when(toGerritRunListener).getMatchingWorkspaceFiles(any(FilePath.class), eq(filepath));
-        doReturn(message).when(toGerritRunListener).getExpandedContent(eq(fileList[0]), any(EnvVars.class));
+        doReturn(message).when(toGerritRunListener).getExpandedContent(eq(fileList[0]), any(EnvVars.class), anyInt());
 
-        BuildMemory memory = Whitebox.getInternalState(toGerritRunListener, BuildMemory.class);
+        doReturn(new CurrentThreadExecutor()).when(toGerritRunListener).getFailureMessageExecutor();
+        BuildMemory memory = toGerritRunListener.getMemory(null);
         memory.started(event, build);
         toGerritRunListener.onCompleted(build, mock(TaskListener.class));
 
         verify(toGerritRunListener, times(1)).getMatchingWorkspaceFiles(any(FilePath.class), eq(filepath));
-        verify(toGerritRunListener, times(1)).getExpandedContent(any(FilePath.class), any(EnvVars.class));
+        verify(toGerritRunListener, times(1)).getExpandedContent(any(FilePath.class), any(EnvVars.class), anyInt());
+    }
+
+    /**
+     * Tests {@link ToGerritRunListener#onCompleted}.
+     * The failure message file is found while the build completes, only reading it is left to the executor.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testFailureMessageFileIsFoundBeforeReadIsQueued() throws Exception {
+        AbstractBuild build = mockBuild("projectX", 2);
+        String filepath = "error-file*.txt";
+        FilePath[] fileList = {new FilePath(File.createTempFile("error-file", ".txt"))};
+        PatchsetCreated event = spy(Setup.createPatchsetCreated());
+
+        ToGerritRunListener toGerritRunListener = Setup.createFailureMessageRunListener(build, event, filepath);
+
+        doReturn(fileList).when(toGerritRunListener).getMatchingWorkspaceFiles(any(FilePath.class), eq(filepath));
+        Executor executor = mock(Executor.class);
+        doReturn(executor).when(toGerritRunListener).getFailureMessageExecutor();
+        BuildMemory memory = toGerritRunListener.getMemory(null);
+        memory.started(event, build);
+        toGerritRunListener.onCompleted(build, mock(TaskListener.class));
+
+        verify(toGerritRunListener, times(1)).getMatchingWorkspaceFiles(any(FilePath.class), eq(filepath));
+        verify(executor).execute(any(Runnable.class));
+        verify(toGerritRunListener, never()).getExpandedContent(any(FilePath.class), any(EnvVars.class), anyInt());
+    }
+
+    /**
+     * Tests {@link ToGerritRunListener#getExpandedContent(hudson.FilePath, hudson.EnvVars, int)}.
+     * Only the beginning of a big file is read.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testGetExpandedContentTruncates() throws Exception {
+        File file = File.createTempFile("error-file", ".txt");
+        file.deleteOnExit();
+        FilePath path = new FilePath(file);
+        StringBuilder str = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            str.append('x');
+        }
+        path.write(str.toString(), null);
+
+        ToGerritRunListener toGerritRunListener = new ToGerritRunListener();
+        String content = toGerritRunListener.getExpandedContent(path, new EnvVars(),
+                Config.DEFAULT_UNSUCCESSFUL_MESSAGE_MAX_SIZE);
+        assertEquals(16384, content.length());
+
+        file.delete();
+        assertNull(toGerritRunListener.getExpandedContent(path, new EnvVars(),
+                Config.DEFAULT_UNSUCCESSFUL_MESSAGE_MAX_SIZE));
     }
 
     /**
@@ -462,4 +523,39 @@ public class ToGerritRunListenerTest {
 
         assertEquals(2, causes.size());
     }
+
+    /**
+     * Tests that {@link ToGerritRunListener.HeadReader} decodes the file as UTF-8,
+     * and leaves out a character that the max size cuts in half.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testHeadReaderUtf8() throws Exception {
+        File file = File.createTempFile("failure", ".txt");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                //"Fel på ö", where å and ö are two bytes each.
+                out.write("Fel p\u00e5 \u00f6".getBytes("UTF-8"));
+            } finally {
+                out.close();
+            }
+            assertEquals("Fel p\u00e5 \u00f6", new ToGerritRunListener.HeadReader(100).invoke(file, null));
+            assertEquals("Fel p\u00e5 ", new ToGerritRunListener.HeadReader(9).invoke(file, null));
+            assertEquals("Fel p", new ToGerritRunListener.HeadReader(6).invoke(file, null));
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Runs the failure message reading directly so the tests can verify it.
+     */
+    private static class CurrentThreadExecutor implements Executor {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    }
 }
@@ -33,6 +33,8 @@ import hudson.model.Result;
 import org.junit.Test;
 
 import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -590,4 +592,54 @@ public class BuildMemoryTest {
         assertNotNull(entry);
         assertFalse(entry.isBuildCompleted());
     }
+
+    /**
+     * Tests that a failure message that is still being read is waited for by
+     * {@link MemoryImprint.Entry#getUnsuccessfulMessage()}.
+     */
+    @Test
+    public void testSetEntryFailureMessageFuture() {
+        PatchsetCreated event = Setup.createPatchsetCreated();
+        BuildMemory instance = new BuildMemory();
+        AbstractProject project = mock(AbstractProject.class);
+        AbstractBuild build = mock(AbstractBuild.class);
+        when(build.getProject()).thenReturn(project);
+        instance.completed(event, build);
+
+        FutureTask<String> future = new FutureTask<String>(new Callable<String>() {
+            @Override
+            public String call() {
+                return "The failure";
+            }
+        });
+        instance.setEntryFailureMessage(event, build, future, 10000);
+        new Thread(future).start();
+
+        assertEquals("The failure", instance.getMemoryImprint(event).getEntries()[0].getUnsuccessfulMessage());
+    }
+
+    /**
+     * Tests that {@link MemoryImprint.Entry#getUnsuccessfulMessage()} gives up on a failure message
+     * that isn't read in time.
+     */
+    @Test
+    public void testSetEntryFailureMessageFutureTimeout() {
+        PatchsetCreated event = Setup.createPatchsetCreated();
+        BuildMemory instance = new BuildMemory();
+        AbstractProject project = mock(AbstractProject.class);
+        AbstractBuild build = mock(AbstractBuild.class);
+        when(build.getProject()).thenReturn(project);
+        instance.completed(event, build);
+
+        FutureTask<String> future = new FutureTask<String>(new Callable<String>() {
+            @Override
+            public String call() {
+                return "Never run";
+            }
+        });
+        instance.setEntryFailureMessage(event, build, future, 0);
+
+        assertNull(instance.getMemoryImprint(event).getEntries()[0].getUnsuccessfulMessage());
+        assertTrue(future.isCancelled());
+    }
 }
@@ -0,0 +1,118 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger;
+
+import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.data.CompareType;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.data.GerritProject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for {@link GerritDynamicUrlProcessor}.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class GerritDynamicUrlProcessorTest {
+
+    private File file;
+    private String url;
+
+    /**
+     * Creates the file to fetch.
+     *
+     * @throws IOException if so.
+     */
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("dynamic-trigger", ".txt");
+        url = file.toURI().toURL().toString();
+    }
+
+    /**
+     * Removes the file.
+     */
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    /**
+     * Tests that the content is parsed.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testFetch() throws Exception {
+        write("p=project\nb~.*\n");
+        List<GerritProject> projects = GerritDynamicUrlProcessor.fetch(url);
+        assertEquals(1, projects.size());
+        assertEquals("project", projects.get(0).getPattern());
+        assertEquals(CompareType.PLAIN, projects.get(0).getCompareType());
+        assertEquals(1, projects.get(0).getBranches().size());
+    }
+
+    /**
+     * Tests that unchanged content isn't parsed again, and that changed content is.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testFetchUnchanged() throws Exception {
+        GerritDynamicUrlProcessor.FetchState state = new GerritDynamicUrlProcessor.FetchState();
+        write("p=project\nb~.*\n");
+        assertNotNull(GerritDynamicUrlProcessor.fetch(url, state));
+        assertNull(GerritDynamicUrlProcessor.fetch(url, state));
+
+        write("p=project\nb~.*\np=other\nb~.*\n");
+        List<GerritProject> projects = GerritDynamicUrlProcessor.fetch(url, state);
+        assertNotNull(projects);
+        assertEquals(2, projects.size());
+        assertNull(GerritDynamicUrlProcessor.fetch(url, state));
+    }
+
+    /**
+     * Writes the content of the file.
+     *
+     * @param content the content.
+     * @throws IOException if so.
+     */
+    private void write(String content) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+}
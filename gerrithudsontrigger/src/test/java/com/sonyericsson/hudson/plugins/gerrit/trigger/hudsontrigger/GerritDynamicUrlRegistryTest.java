@@ -0,0 +1,226 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger;
+
+import com.sonyericsson.hudson.plugins.gerrit.trigger.PluginImpl;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.data.CompareType;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.data.GerritProject;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.mock.Setup;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link GerritDynamicUrlRegistry}.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(PluginImpl.class)
+public class GerritDynamicUrlRegistryTest {
+
+    private File file;
+    private String url;
+
+    /**
+     * Creates the file to fetch and mocks the plugin config.
+     *
+     * @throws Exception if so.
+     */
+    @Before
+    public void setUp() throws Exception {
+        PowerMockito.mockStatic(PluginImpl.class);
+        PluginImpl plugin = PowerMockito.mock(PluginImpl.class);
+        when(plugin.getConfig()).thenReturn(Setup.createConfig());
+        PowerMockito.when(PluginImpl.getInstance()).thenReturn(plugin);
+
+        file = File.createTempFile("dynamic-trigger", ".txt");
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write("p=project\nb~.*\n");
+        } finally {
+            writer.close();
+        }
+        url = file.toURI().toURL().toString();
+    }
+
+    /**
+     * Removes the file.
+     */
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    /**
+     * Tests that triggers using the same URL share one fetch and all get the result.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testSubscribersShareFetch() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(2);
+        final List[] received = new List[2];
+        GerritTrigger first = mockTrigger(latch, received, 0);
+        GerritTrigger second = mockTrigger(latch, received, 1);
+        GerritDynamicUrlRegistry registry = GerritDynamicUrlRegistry.getInstance();
+        int urlsBefore = registry.getUrlCount();
+
+        registry.subscribe(first, url);
+        registry.subscribe(second, url);
+        assertEquals(urlsBefore + 1, registry.getUrlCount());
+        assertEquals(2, registry.getSubscriberCount(url));
+
+        registry.refresh(url);
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(1, received[0].size());
+        assertSame(received[0], received[1]);
+
+        registry.unsubscribe(first);
+        assertEquals(1, registry.getSubscriberCount(url));
+        registry.unsubscribe(second);
+        assertEquals(0, registry.getSubscriberCount(url));
+        assertEquals(urlsBefore, registry.getUrlCount());
+    }
+
+    /**
+     * Tests that the statistics of a fetch are recorded.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testStatuses() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        GerritTrigger trigger = mockTrigger(latch, new List[1], 0);
+        GerritDynamicUrlRegistry registry = GerritDynamicUrlRegistry.getInstance();
+        registry.subscribe(trigger, url);
+        registry.refresh(url);
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+        GerritDynamicUrlRegistry.UrlStatus status = null;
+        for (GerritDynamicUrlRegistry.UrlStatus s : registry.getStatuses()) {
+            if (url.equals(s.getUrl())) {
+                status = s;
+            }
+        }
+        registry.unsubscribe(trigger);
+        assertNotNull(status);
+        assertEquals(1, status.getSubscribers());
+        assertEquals(1, status.getProjectCount());
+        assertEquals(file.length(), status.getLastBytes());
+        assertEquals(0, status.getFailures());
+        assertNull(status.getError());
+        assertNotNull(status.getLastFetch());
+    }
+
+    /**
+     * Tests the delay before the next fetch after failures.
+     */
+    @Test
+    public void testNextDelay() {
+        assertEquals(1000, GerritDynamicUrlRegistry.nextDelay(1000, 0));
+        assertEquals(2000, GerritDynamicUrlRegistry.nextDelay(1000, 1));
+        assertEquals(8000, GerritDynamicUrlRegistry.nextDelay(1000, 3));
+        assertEquals(GerritDynamicUrlRegistry.MAX_BACKOFF_MILLISECONDS, GerritDynamicUrlRegistry.nextDelay(60000, 100));
+        long longPeriod = GerritDynamicUrlRegistry.MAX_BACKOFF_MILLISECONDS * 2;
+        assertEquals(longPeriod, GerritDynamicUrlRegistry.nextDelay(longPeriod, 2));
+    }
+
+    /**
+     * Tests that a new subscriber gets the configuration from the snapshot right away.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testSubscribeGetsSnapshot() throws Exception {
+        File snapshotFile = File.createTempFile("dynamic-snapshot", ".bin");
+        GerritDynamicUrlRegistry registry = GerritDynamicUrlRegistry.getInstance();
+        try {
+            GerritDynamicUrlSnapshot snapshot = new GerritDynamicUrlSnapshot(snapshotFile);
+            List<GerritProject> projects = new ArrayList<GerritProject>();
+            projects.add(new GerritProject(CompareType.PLAIN, "snapshot", null, null));
+            snapshot.put(url, projects, Collections.singleton(url));
+            registry.setSnapshot(new GerritDynamicUrlSnapshot(snapshotFile));
+
+            CountDownLatch latch = new CountDownLatch(1);
+            List[] received = new List[1];
+            GerritTrigger trigger = mockTrigger(latch, received, 0);
+            registry.subscribe(trigger, url);
+            registry.unsubscribe(trigger);
+
+            assertEquals(0, latch.getCount());
+            assertEquals(1, received[0].size());
+            assertEquals("snapshot", ((GerritProject)received[0].get(0)).getPattern());
+        } finally {
+            registry.setSnapshot(null);
+            snapshotFile.delete();
+        }
+    }
+
+    /**
+     * Mocks a trigger that records the configuration it is given.
+     *
+     * @param latch    counted down when the trigger gets a configuration.
+     * @param received where to put the configuration.
+     * @param index    the index in received.
+     * @return the trigger.
+     */
+    private GerritTrigger mockTrigger(final CountDownLatch latch, final List[] received, final int index) {
+        GerritTrigger trigger = mock(GerritTrigger.class);
+        doAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                received[index] = (List)invocation.getArguments()[0];
+                latch.countDown();
+                return null;
+            }
+        }).when(trigger).updateDynamicGerritProjects(anyListOf(GerritProject.class), any(Exception.class));
+        return trigger;
+    }
+}
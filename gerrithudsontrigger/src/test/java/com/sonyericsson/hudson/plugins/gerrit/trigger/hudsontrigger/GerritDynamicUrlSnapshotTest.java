@@ -0,0 +1,140 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger;
+
+import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.data.Branch;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.data.CompareType;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.data.FilePath;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.data.GerritProject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link GerritDynamicUrlSnapshot}.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class GerritDynamicUrlSnapshotTest {
+
+    private File file;
+
+    /**
+     * Creates a place for the snapshot.
+     *
+     * @throws Exception if so.
+     */
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("dynamic-snapshot", ".bin");
+        file.delete();
+    }
+
+    /**
+     * Removes the snapshot.
+     */
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    /**
+     * Tests that the configuration is the same after being saved and loaded.
+     */
+    @Test
+    public void testSaveAndLoad() {
+        List<Branch> branches = new ArrayList<Branch>();
+        branches.add(new Branch(CompareType.REG_EXP, "release/.*"));
+        branches.add(new Branch(CompareType.PLAIN, "m\u00e4ster"));
+        List<FilePath> filePaths = new ArrayList<FilePath>();
+        filePaths.add(new FilePath(CompareType.ANT, "src/**"));
+        List<GerritProject> projects = new ArrayList<GerritProject>();
+        projects.add(new GerritProject(CompareType.PLAIN, "project", branches, filePaths));
+        projects.add(new GerritProject(CompareType.ANT, "tools/**", Collections.<Branch>emptyList(), null));
+
+        GerritDynamicUrlSnapshot snapshot = new GerritDynamicUrlSnapshot(file);
+        snapshot.put("http://localhost/config", projects, Collections.singleton("http://localhost/config"));
+        assertTrue(file.isFile());
+
+        List<GerritProject> loaded = new GerritDynamicUrlSnapshot(file).get("http://localhost/config");
+        assertEquals(2, loaded.size());
+        GerritProject first = loaded.get(0);
+        assertEquals(CompareType.PLAIN, first.getCompareType());
+        assertEquals("project", first.getPattern());
+        assertEquals(2, first.getBranches().size());
+        assertEquals(CompareType.REG_EXP, first.getBranches().get(0).getCompareType());
+        assertEquals("release/.*", first.getBranches().get(0).getPattern());
+        assertEquals("m\u00e4ster", first.getBranches().get(1).getPattern());
+        assertEquals(1, first.getFilePaths().size());
+        assertEquals(CompareType.ANT, first.getFilePaths().get(0).getCompareType());
+        assertEquals("src/**", first.getFilePaths().get(0).getPattern());
+        GerritProject second = loaded.get(1);
+        assertEquals(CompareType.ANT, second.getCompareType());
+        assertTrue(second.getBranches().isEmpty());
+        assertTrue(second.getFilePaths().isEmpty());
+    }
+
+    /**
+     * Tests that a corrupt file is ignored and replaced on the next save.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testCorruptFile() throws Exception {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[]{0x47, 0x54, 0x44, 0x43, 0, 0, 0, 1, 0, 0, 0, 2, 0, 0});
+        } finally {
+            out.close();
+        }
+        GerritDynamicUrlSnapshot snapshot = new GerritDynamicUrlSnapshot(file);
+        assertEquals(0, snapshot.size());
+        assertNull(snapshot.get("http://localhost/config"));
+
+        snapshot.put("http://localhost/config", new ArrayList<GerritProject>(),
+                Collections.singleton("http://localhost/config"));
+        assertEquals(0, new GerritDynamicUrlSnapshot(file).get("http://localhost/config").size());
+    }
+
+    /**
+     * Tests that URLs that are no longer used are kept, since they haven't become too old.
+     */
+    @Test
+    public void testUnusedUrlsAreKept() {
+        GerritDynamicUrlSnapshot snapshot = new GerritDynamicUrlSnapshot(file);
+        snapshot.put("http://localhost/a", new ArrayList<GerritProject>(), Collections.singleton("http://localhost/a"));
+        snapshot.put("http://localhost/b", new ArrayList<GerritProject>(), Collections.singleton("http://localhost/b"));
+        assertEquals(2, new GerritDynamicUrlSnapshot(file).size());
+    }
+}
@@ -35,6 +35,7 @@ import com.sonyericsson.hudson.plugins.gerrit.trigger.config.IGerritHudsonTrigge
 import com.sonyericsson.hudson.plugins.gerrit.trigger.gerritnotifier.ToGerritRunListener;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.actions.RetriggerAction;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.actions.RetriggerAllAction;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.data.CompareType;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.data.GerritProject;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.data.TriggerContext;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.events.PluginGerritEvent;
@@ -43,10 +44,13 @@ import com.sonyericsson.hudson.plugins.gerrit.trigger.utils.StringUtil;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 import hudson.model.Action;
+import hudson.model.Executor;
 import hudson.model.ParameterDefinition;
 import hudson.model.ParameterValue;
 import hudson.model.ParametersAction;
 import hudson.model.ParametersDefinitionProperty;
+import hudson.model.Queue;
+import hudson.model.Run;
 import hudson.model.StringParameterDefinition;
 import hudson.model.StringParameterValue;
 import net.sf.json.JSONObject;
@@ -80,8 +84,10 @@ import static com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.Gerri
 import static com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.GerritTriggerParameters.GERRIT_PATCHSET_UPLOADER_EMAIL;
 import static com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.GerritTriggerParameters.GERRIT_PATCHSET_UPLOADER_NAME;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyInt;
 import static org.mockito.Mockito.anyListOf;
@@ -109,7 +115,8 @@ import static org.mockito.Mockito.when;
  * @author Robert Sandell &lt;robert.sandell@sonyericsson.com&gt;
  */
 @RunWith(PowerMockRunner.class)
-@PrepareForTest({AbstractProject.class, ToGerritRunListener.class, PluginImpl.class })
+@PrepareForTest({AbstractProject.class, ToGerritRunListener.class, PluginImpl.class, AbstractBuild.class, Run.class,
+        Queue.class })
 public class GerritTriggerTest {
     /**
      * test.
@@ -214,6 +221,129 @@ public class GerritTriggerTest {
                 isA(Action.class));
     }
 
+    /**
+     * Tests that the started build for an older patch set is interrupted when a new patch set is scheduled,
+     * with {@link IGerritHudsonTriggerConfig#isGerritBuildCurrentPatchesOnly()} enabled.
+     */
+    @Test
+    public void testScheduleCancelsStartedBuildOfOlderPatchset() {
+        AbstractProject project = mockProjectBuildingCurrentPatchesOnly();
+        GerritTrigger trigger = Setup.createDefaultTrigger(project);
+
+        PatchsetCreated first = Setup.createPatchsetCreated();
+        AbstractBuild build = mockBuildWithExecutor(project);
+        trigger.schedule(new GerritCause(first, true), first);
+        trigger.notifyBuildStarted(first, build);
+
+        PatchsetCreated second = Setup.createPatchsetCreated();
+        second.getPatchSet().setNumber("2");
+        trigger.schedule(new GerritCause(second, true), second);
+
+        verify(build.getExecutor()).interrupt();
+    }
+
+    /**
+     * Tests that a build for an older patch set that starts after a newer patch set has been scheduled
+     * is interrupted when it starts, and that it ending doesn't forget about the newer build.
+     */
+    @Test
+    public void testOutdatedBuildIsInterruptedWhenStarted() {
+        AbstractProject project = mockProjectBuildingCurrentPatchesOnly();
+        GerritTrigger trigger = Setup.createDefaultTrigger(project);
+
+        PatchsetCreated first = Setup.createPatchsetCreated();
+        trigger.schedule(new GerritCause(first, true), first);
+        PatchsetCreated second = Setup.createPatchsetCreated();
+        second.getPatchSet().setNumber("2");
+        trigger.schedule(new GerritCause(second, true), second);
+
+        AbstractBuild firstBuild = mockBuildWithExecutor(project);
+        trigger.notifyBuildStarted(first, firstBuild);
+        verify(firstBuild.getExecutor()).interrupt();
+        trigger.notifyBuildEnded(first);
+
+        AbstractBuild secondBuild = mockBuildWithExecutor(project);
+        trigger.notifyBuildStarted(second, secondBuild);
+        PatchsetCreated third = Setup.createPatchsetCreated();
+        third.getPatchSet().setNumber("3");
+        trigger.schedule(new GerritCause(third, true), third);
+
+        verify(secondBuild.getExecutor()).interrupt();
+    }
+
+    /**
+     * Tests that an event for an older patch set than the one already scheduled isn't scheduled at all,
+     * but that a retrigger of it is scheduled and isn't interrupted when it starts.
+     */
+    @Test
+    public void testOutdatedEventIsNotScheduledButRetriggerIs() {
+        AbstractProject project = mockProjectBuildingCurrentPatchesOnly();
+        GerritTrigger trigger = Setup.createDefaultTrigger(project);
+
+        PatchsetCreated second = Setup.createPatchsetCreated();
+        second.getPatchSet().setNumber("2");
+        trigger.schedule(new GerritCause(second, true), second);
+        PatchsetCreated first = Setup.createPatchsetCreated();
+        trigger.schedule(new GerritCause(first, true), first);
+        verify(Queue.getInstance(), times(1)).schedule(same(project), anyInt(), anyListOf(Action.class));
+
+        GerritUserCause retrigger = new GerritUserCause(first, true, "user");
+        trigger.schedule(retrigger, first);
+        verify(project).scheduleBuild2(
+                eq(0),
+                same(retrigger),
+                isA(Action.class),
+                isA(Action.class),
+                isA(Action.class),
+                isA(Action.class));
+
+        AbstractBuild retriggered = mockBuildWithExecutor(project);
+        when(retriggered.getCause(GerritUserCause.class)).thenReturn(retrigger);
+        trigger.notifyBuildStarted(first, retriggered);
+        verify(retriggered.getExecutor(), never()).interrupt();
+    }
+
+    /**
+     * Mocks a project, the build queue and a config with "build current patches only" enabled.
+     *
+     * @return the project.
+     */
+    private AbstractProject mockProjectBuildingCurrentPatchesOnly() {
+        AbstractProject project = PowerMockito.mock(AbstractProject.class);
+        when(project.getFullDisplayName()).thenReturn("MockedProject");
+        when(project.getName()).thenReturn("MockedProject");
+        when(project.isBuildable()).thenReturn(true);
+        Queue queue = PowerMockito.mock(Queue.class);
+        Queue.WaitingItem item = mock(Queue.WaitingItem.class);
+        when(queue.schedule(same(project), anyInt(), anyListOf(Action.class))).thenReturn(item);
+        PowerMockito.mockStatic(Queue.class);
+        when(Queue.getInstance()).thenReturn(queue);
+        PowerMockito.mockStatic(PluginImpl.class);
+        PluginImpl plugin = PowerMockito.mock(PluginImpl.class);
+        IGerritHudsonTriggerConfig config = spy(Setup.createConfig());
+        doReturn("http://mock.url").when(config).getGerritFrontEndUrlFor(any(String.class), any(String.class));
+        doReturn(true).when(config).isGerritBuildCurrentPatchesOnly();
+        when(plugin.getConfig()).thenReturn(config);
+        PowerMockito.when(PluginImpl.getInstance()).thenReturn(plugin);
+        RunningJobs.getInstance().clear();
+        return project;
+    }
+
+    /**
+     * Mocks a build that is building on a mocked executor.
+     *
+     * @param project the project of the build.
+     * @return the build.
+     */
+    private AbstractBuild mockBuildWithExecutor(AbstractProject project) {
+        AbstractBuild build = PowerMockito.mock(AbstractBuild.class);
+        when(build.getProject()).thenReturn(project);
+        Executor executor = mock(Executor.class);
+        when(build.getExecutor()).thenReturn(executor);
+        when(build.isBuilding()).thenReturn(true);
+        return build;
+    }
+
     /**
      * Tests a project rename.
      * TODO complete.
@@ -686,7 +816,7 @@ public class GerritTriggerTest {
 
         PatchsetCreated event = Setup.createPatchsetCreated();
 
-        when(listener.isBuilding(project, event)).thenReturn(false);
+        when(listener.isBuilding(null, project, event)).thenReturn(false);
         GerritTrigger trigger = Setup.createDefaultTrigger(null);
         trigger.setGerritProjects(Collections.EMPTY_LIST);
         trigger.setEscapeQuotes(false);
@@ -696,7 +826,8 @@ public class GerritTriggerTest {
 
         trigger.retriggerThisBuild(context);
 
-        verify(listener).onRetriggered(same(project), same(event), anyListOf(AbstractBuild.class));
+        verify(listener).onRetriggered(any(String.class), same(project), same(event),
+                anyListOf(AbstractBuild.class));
 
         verify(project).scheduleBuild2(
                 eq(0),
@@ -727,7 +858,7 @@ public class GerritTriggerTest {
 
         PatchsetCreated event = Setup.createPatchsetCreated();
 
-        when(listener.isBuilding(project, event)).thenReturn(false);
+        when(listener.isBuilding(null, project, event)).thenReturn(false);
 
         GerritTrigger trigger = Setup.createDefaultTrigger(null);
         trigger.setGerritProjects(Collections.EMPTY_LIST);
@@ -736,7 +867,7 @@ public class GerritTriggerTest {
 
         trigger.retriggerThisBuild(context);
 
-        verify(listener, never()).onRetriggered(isA(AbstractProject.class),
+        verify(listener, never()).onRetriggered(any(String.class), isA(AbstractProject.class),
                 isA(PatchsetCreated.class),
                 anyListOf(AbstractBuild.class));
 
@@ -774,7 +905,7 @@ public class GerritTriggerTest {
 
         PatchsetCreated event = Setup.createPatchsetCreated();
 
-        when(listener.isBuilding(event)).thenReturn(false);
+        when(listener.isBuilding((String)null, event)).thenReturn(false);
 
         GerritTrigger thisTrigger = Setup.createDefaultTrigger(null);
         thisTrigger.setGerritProjects(Collections.EMPTY_LIST);
@@ -798,7 +929,7 @@ public class GerritTriggerTest {
 
         thisTrigger.retriggerAllBuilds(context);
 
-        verify(listener).onRetriggered(thisProject, event, null);
+        verify(listener).onRetriggered(null, thisProject, event, null);
 
         verify(thisProject).scheduleBuild2(
                 anyInt(),
@@ -808,7 +939,7 @@ public class GerritTriggerTest {
                 isA(RetriggerAllAction.class),
                 isA(Action.class));
 
-        verify(listener).onRetriggered(otherProject, event, null);
+        verify(listener).onRetriggered(null, otherProject, event, null);
 
         verify(otherProject).scheduleBuild2(
                 anyInt(),
@@ -846,7 +977,7 @@ public class GerritTriggerTest {
 
         trigger.gerritEvent(event);
 
-        verify(listener).onTriggered(same(project), same(event));
+        verify(listener).onTriggered(any(String.class), same(project), same(event));
 
         verify(project).scheduleBuild2(
                 anyInt(),
@@ -857,6 +988,22 @@ public class GerritTriggerTest {
                 isA(Action.class));
     }
 
+    /**
+     * Tests that {@link GerritTrigger#isWatching(String)} matches both the static and the dynamic projects.
+     */
+    @Test
+    public void testIsWatching() {
+        GerritTrigger trigger = Setup.createDefaultTrigger(null);
+        trigger.setGerritProjects(Collections.nCopies(1,
+                new GerritProject(CompareType.ANT, "platform/**", null, null)));
+        assertTrue(trigger.isWatching("platform/build"));
+        assertFalse(trigger.isWatching("docs/manual"));
+
+        Whitebox.setInternalState(trigger, "dynamicGerritProjects", Collections.nCopies(1,
+                new GerritProject(CompareType.PLAIN, "docs/manual", null, null)));
+        assertTrue(trigger.isWatching("docs/manual"));
+    }
+
     /**
      * Tests {@link GerritTrigger#gerritEvent(PatchsetCreated)} with a non buildable project.
      */
@@ -945,7 +1092,7 @@ public class GerritTriggerTest {
 
         trigger.gerritEvent(event);
 
-        verify(listener).onTriggered(same(project), same(event));
+        verify(listener).onTriggered(any(String.class), same(project), same(event));
 
         verify(project).scheduleBuild2(
                 eq(0),
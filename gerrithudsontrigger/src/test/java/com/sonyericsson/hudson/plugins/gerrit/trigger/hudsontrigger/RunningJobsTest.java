@@ -0,0 +1,331 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger;
+
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.CommentAdded;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.PatchsetCreated;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.mock.Setup;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Executor;
+import hudson.model.Queue;
+import hudson.model.Run;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+//CS IGNORE MagicNumber FOR NEXT 320 LINES. REASON: testdata.
+
+/**
+ * Tests for {@link RunningJobs}.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({AbstractProject.class, AbstractBuild.class, Run.class, Queue.class })
+public class RunningJobsTest {
+
+    private static final long MINUTE = 60000;
+    private static final String SERVER = "gerrit";
+
+    private Queue queue;
+    private int nextItemId;
+
+    /**
+     * Forgets what the previous test did and mocks the build queue.
+     */
+    @Before
+    public void setUp() {
+        RunningJobs.getInstance().clear();
+        queue = PowerMockito.mock(Queue.class);
+        PowerMockito.mockStatic(Queue.class);
+        when(Queue.getInstance()).thenReturn(queue);
+    }
+
+    /**
+     * Tests that the builds of all jobs for the old patch set are cancelled
+     * when the new patch set is scheduled for the first job, and that the saved time is counted.
+     */
+    @Test
+    public void testNewPatchsetCancelsAllJobs() {
+        RunningJobs runningJobs = RunningJobs.getInstance();
+        AbstractProject projectA = mockProject();
+        AbstractProject projectB = mockProject();
+        PatchsetCreated first = Setup.createPatchsetCreated();
+        runningJobs.scheduled(SERVER, first, projectA, mockItem());
+        runningJobs.scheduled(SERVER, first, projectB, mockItem());
+        AbstractBuild buildA = mockBuild(projectA);
+        AbstractBuild buildB = mockBuild(projectB);
+        runningJobs.started(SERVER, first, buildA);
+        runningJobs.started(SERVER, first, buildB);
+
+        PatchsetCreated second = Setup.createPatchsetCreated();
+        second.getPatchSet().setNumber("2");
+        runningJobs.scheduled(SERVER, second, projectA, mockItem());
+
+        verify(buildA.getExecutor()).interrupt();
+        verify(buildB.getExecutor()).interrupt();
+        assertEquals(2, runningJobs.getCancelledBuilds());
+        long saved = runningJobs.getSavedExecutorMinutes();
+        assertTrue("Saved " + saved, saved >= 11 && saved <= 12);
+        assertEquals(1, runningJobs.getChangeCount());
+    }
+
+    /**
+     * Tests that the builds of other changes aren't touched, and that ended builds are forgotten.
+     */
+    @Test
+    public void testOtherChangesAreLeftAlone() {
+        RunningJobs runningJobs = RunningJobs.getInstance();
+        AbstractProject project = mockProject();
+        PatchsetCreated first = Setup.createPatchsetCreated();
+        runningJobs.scheduled(SERVER, first, project, mockItem());
+        AbstractBuild build = mockBuild(project);
+        runningJobs.started(SERVER, first, build);
+
+        PatchsetCreated other = Setup.createPatchsetCreated();
+        other.getChange().setNumber("2000");
+        runningJobs.scheduled(SERVER, other, project, mockItem());
+
+        verify(build.getExecutor(), never()).interrupt();
+        assertEquals(2, runningJobs.getChangeCount());
+
+        runningJobs.ended(SERVER, first, project);
+        assertEquals(1, runningJobs.getChangeCount());
+        assertEquals(0, runningJobs.getCancelledBuilds());
+    }
+
+    /**
+     * Tests that the same change number on another Gerrit server is a different change.
+     */
+    @Test
+    public void testSameChangeOnOtherServerIsLeftAlone() {
+        RunningJobs runningJobs = RunningJobs.getInstance();
+        AbstractProject project = mockProject();
+        PatchsetCreated first = Setup.createPatchsetCreated();
+        runningJobs.scheduled(SERVER, first, project, mockItem());
+        AbstractBuild build = mockBuild(project);
+        runningJobs.started(SERVER, first, build);
+
+        PatchsetCreated second = Setup.createPatchsetCreated();
+        second.getPatchSet().setNumber("2");
+        runningJobs.scheduled("other", second, project, mockItem());
+
+        verify(build.getExecutor(), never()).interrupt();
+        assertEquals(0, runningJobs.getCancelledBuilds());
+        assertEquals(2, runningJobs.getChangeCount());
+    }
+
+    /**
+     * Tests that a comment on the same patch set only replaces the build of the job it triggered,
+     * and leaves the builds of the other jobs alone.
+     */
+    @Test
+    public void testCommentOnSamePatchsetOnlyReplacesOwnJob() {
+        RunningJobs runningJobs = RunningJobs.getInstance();
+        AbstractProject projectA = mockProject();
+        AbstractProject projectB = mockProject();
+        PatchsetCreated created = Setup.createPatchsetCreated();
+        runningJobs.scheduled(SERVER, created, projectA, mockItem());
+        runningJobs.scheduled(SERVER, created, projectB, mockItem());
+        AbstractBuild buildA = mockBuild(projectA);
+        AbstractBuild buildB = mockBuild(projectB);
+        runningJobs.started(SERVER, created, buildA);
+        runningJobs.started(SERVER, created, buildB);
+
+        CommentAdded comment = Setup.createCommentAdded();
+        runningJobs.scheduled(SERVER, comment, projectB, mockItem());
+
+        verify(buildA.getExecutor(), never()).interrupt();
+        verify(buildB.getExecutor()).interrupt();
+        assertEquals(1, runningJobs.getCancelledBuilds());
+
+        AbstractBuild commentBuild = mockBuild(projectB);
+        runningJobs.started(SERVER, comment, commentBuild);
+        runningJobs.ended(SERVER, created, projectB);
+        runningJobs.ended(SERVER, created, projectA);
+        assertEquals(1, runningJobs.getChangeCount());
+        runningJobs.ended(SERVER, comment, projectB);
+        assertEquals(0, runningJobs.getChangeCount());
+    }
+
+    /**
+     * Tests that an event for an older patch set arriving late doesn't cancel the builds of the newer one,
+     * that its queued build is cancelled, and that its build is interrupted if it starts anyway.
+     */
+    @Test
+    public void testOlderPatchsetOutOfOrderIsIgnored() {
+        RunningJobs runningJobs = RunningJobs.getInstance();
+        AbstractProject projectA = mockProject();
+        AbstractProject projectB = mockProject();
+        PatchsetCreated second = Setup.createPatchsetCreated();
+        second.getPatchSet().setNumber("2");
+        runningJobs.scheduled(SERVER, second, projectA, mockItem());
+        AbstractBuild buildA = mockBuild(projectA);
+        runningJobs.started(SERVER, second, buildA);
+
+        PatchsetCreated first = Setup.createPatchsetCreated();
+        Queue.Item late = mockItem();
+        Queue.Item buildable = mock(Queue.BuildableItem.class);
+        when(queue.getItem(late.id)).thenReturn(buildable);
+        when(queue.cancel(buildable)).thenReturn(true);
+        runningJobs.scheduled(SERVER, first, projectA, late);
+        runningJobs.scheduled(SERVER, first, projectB, mockItem());
+
+        verify(buildA.getExecutor(), never()).interrupt();
+        verify(queue).cancel(buildable);
+        assertEquals(1, runningJobs.getCancelledBuilds());
+
+        AbstractBuild outdated = mockBuild(projectB);
+        runningJobs.started(SERVER, first, outdated);
+        verify(outdated.getExecutor()).interrupt();
+        assertEquals(1, runningJobs.getChangeCount());
+    }
+
+    /**
+     * Tests that an event is outdated once a newer patch set of the same change has been scheduled,
+     * and that a manually triggered build for it isn't interrupted when it starts.
+     */
+    @Test
+    public void testManualBuildOfOutdatedPatchsetIsNotInterrupted() {
+        RunningJobs runningJobs = RunningJobs.getInstance();
+        AbstractProject project = mockProject();
+        PatchsetCreated first = Setup.createPatchsetCreated();
+        assertFalse(runningJobs.isOutdated(SERVER, first));
+        PatchsetCreated second = Setup.createPatchsetCreated();
+        second.getPatchSet().setNumber("2");
+        runningJobs.scheduled(SERVER, second, project, mockItem());
+        assertTrue(runningJobs.isOutdated(SERVER, first));
+        assertFalse(runningJobs.isOutdated(SERVER, second));
+
+        AbstractBuild manual = mockBuild(project);
+        GerritUserCause cause = mock(GerritUserCause.class);
+        when(manual.getCause(GerritUserCause.class)).thenReturn(cause);
+        runningJobs.started(SERVER, first, manual);
+
+        verify(manual.getExecutor(), never()).interrupt();
+        assertEquals(0, runningJobs.getCancelledBuilds());
+    }
+
+    /**
+     * Tests that a build that was cancelled while queued, e.g. by a user, is forgotten by the periodic clean up.
+     */
+    @Test
+    public void testCancelledQueueItemIsRemoved() {
+        RunningJobs runningJobs = RunningJobs.getInstance();
+        AbstractProject project = mockProject();
+        PatchsetCreated created = Setup.createPatchsetCreated();
+        Queue.Item cancelled = mockItem();
+        Future future = mock(Future.class);
+        when(future.isCancelled()).thenReturn(true);
+        when(cancelled.getFuture()).thenReturn(future);
+        runningJobs.scheduled(SERVER, created, project, cancelled);
+        PatchsetCreated other = Setup.createPatchsetCreated();
+        other.getChange().setNumber("2000");
+        runningJobs.scheduled(SERVER, other, project, mockItem());
+        assertEquals(2, runningJobs.getChangeCount());
+
+        runningJobs.removeCancelled();
+
+        assertEquals(1, runningJobs.getChangeCount());
+        assertFalse(runningJobs.isOutdated(SERVER, created));
+    }
+
+    /**
+     * Tests that a build that is still queued is cancelled by looking up its queue item by id,
+     * since the item is replaced by another object when it becomes buildable.
+     */
+    @Test
+    public void testQueuedBuildIsCancelledByItsId() {
+        RunningJobs runningJobs = RunningJobs.getInstance();
+        AbstractProject project = mockProject();
+        PatchsetCreated first = Setup.createPatchsetCreated();
+        Queue.Item scheduled = mockItem();
+        runningJobs.scheduled(SERVER, first, project, scheduled);
+        Queue.Item buildable = mock(Queue.BuildableItem.class);
+        when(queue.getItem(scheduled.id)).thenReturn(buildable);
+        when(queue.cancel(buildable)).thenReturn(true);
+
+        PatchsetCreated second = Setup.createPatchsetCreated();
+        second.getPatchSet().setNumber("2");
+        runningJobs.scheduled(SERVER, second, project, mockItem());
+
+        verify(queue).cancel(buildable);
+        assertEquals(1, runningJobs.getCancelledBuilds());
+        assertEquals(10, runningJobs.getSavedExecutorMinutes());
+    }
+
+    /**
+     * Mocks a queue item with an id of its own.
+     *
+     * @return the item.
+     */
+    private Queue.Item mockItem() {
+        Queue.Item item = mock(Queue.WaitingItem.class);
+        Whitebox.setInternalState(item, "id", ++nextItemId);
+        return item;
+    }
+
+    /**
+     * Mocks a project that takes ten minutes to build.
+     *
+     * @return the project.
+     */
+    private AbstractProject mockProject() {
+        AbstractProject project = PowerMockito.mock(AbstractProject.class);
+        when(project.getName()).thenReturn("MockedProject");
+        when(project.getEstimatedDuration()).thenReturn(10 * MINUTE);
+        return project;
+    }
+
+    /**
+     * Mocks a build that has been building for four minutes on a mocked executor.
+     *
+     * @param project the project of the build.
+     * @return the build.
+     */
+    private AbstractBuild mockBuild(AbstractProject project) {
+        AbstractBuild build = PowerMockito.mock(AbstractBuild.class);
+        Executor executor = mock(Executor.class);
+        when(build.getProject()).thenReturn(project);
+        when(build.getExecutor()).thenReturn(executor);
+        when(build.isBuilding()).thenReturn(true);
+        when(build.getTimeInMillis()).thenReturn(System.currentTimeMillis() - 4 * MINUTE);
+        return build;
+    }
+}
@@ -263,7 +263,7 @@ public class ManualTriggerActionTest {
         change.put("number", "100");
         PowerMockito.mockStatic(PluginImpl.class);
         PluginImpl plugin = mock(PluginImpl.class);
-        when(plugin.getConfig()).thenReturn(Setup.createConfig());
+        when(plugin.getConfig((String)null)).thenReturn(Setup.createConfig());
         PowerMockito.when(PluginImpl.getInstance()).thenReturn(plugin);
 
         ManualTriggerAction action = new ManualTriggerAction();
@@ -295,7 +295,7 @@ public class ManualTriggerActionTest {
 
         PowerMockito.mockStatic(PluginImpl.class);
         PluginImpl plugin = mock(PluginImpl.class);
-        when(plugin.getConfig()).thenReturn(Setup.createConfig());
+        when(plugin.getConfig((String)null)).thenReturn(Setup.createConfig());
         PowerMockito.when(PluginImpl.getInstance()).thenReturn(plugin);
 
         ManualTriggerAction action = new ManualTriggerAction();
@@ -0,0 +1,91 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.actions.manual;
+
+import net.sf.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link SearchPage}.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+public class SearchPageTest {
+
+    /**
+     * Tests that the page stops reading the result when it is full and knows that there are more changes.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testVisitMore() throws Exception {
+        SearchPage page = new SearchPage("status:open", 2, 2);
+        assertEquals("(status:open) limit:3", page.getLimitedQuery());
+        assertTrue(page.visit(change("1")));
+        assertTrue(page.visit(change("2")));
+        assertFalse(page.visit(change("3")));
+
+        assertEquals(2, page.getChanges().size());
+        assertEquals("2", page.getChanges().get(1).getString("number"));
+        assertTrue(page.isMore());
+        assertTrue(page.isPrevious());
+        assertEquals(0, page.getPreviousStart());
+        assertEquals(4, page.getNextStart());
+    }
+
+    /**
+     * Tests that the statistics row isn't counted as a change.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testVisitLastPage() throws Exception {
+        SearchPage page = new SearchPage("status:open", 0, 2);
+        assertTrue(page.visit(change("1")));
+        JSONObject stats = new JSONObject();
+        stats.put("type", "stats");
+        assertTrue(page.visit(stats));
+
+        assertEquals(1, page.getChanges().size());
+        assertFalse(page.isMore());
+        assertFalse(page.isPrevious());
+    }
+
+    /**
+     * Creates a change row of a query result.
+     *
+     * @param number the change number.
+     * @return the row.
+     */
+    private static JSONObject change(String number) {
+        JSONObject change = new JSONObject();
+        change.put("id", "I" + number);
+        change.put("number", number);
+        return change;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2012 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+package com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.data;
+
+import com.sonyericsson.hudson.plugins.gerrit.trigger.GerritServer;
+import com.sonyericsson.hudson.plugins.gerrit.trigger.PluginImpl;
+import hudson.model.AutoCompletionCandidates;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the auto completion of the project pattern in {@link GerritProject.DescriptorImpl}.
+ *
+ * @author Robert Sandell &lt;robert.sandell@sonymobile.com&gt;
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ PluginImpl.class })
+public class GerritProjectDescriptorTest {
+
+    private PluginImpl plugin;
+
+    /**
+     * Mocks the plugin with a default server and a server named other.
+     */
+    @Before
+    public void setUp() {
+        PowerMockito.mockStatic(PluginImpl.class);
+        plugin = PowerMockito.mock(PluginImpl.class);
+        PowerMockito.when(PluginImpl.getInstance()).thenReturn(plugin);
+        GerritServer defaultServer = mock(GerritServer.class);
+        when(defaultServer.getGerritProjects("pro", GerritProject.DescriptorImpl.MAX_SUGGESTIONS))
+                .thenReturn(Arrays.asList("project"));
+        GerritServer other = mock(GerritServer.class);
+        when(other.getGerritProjects("pro", GerritProject.DescriptorImpl.MAX_SUGGESTIONS))
+                .thenReturn(Arrays.asList("profile", "programs"));
+        when(plugin.getServer(null)).thenReturn(defaultServer);
+        when(plugin.getServer("other")).thenReturn(other);
+    }
+
+    /**
+     * Tests that the URL of a trigger without a server goes to the default server,
+     * and that the name of any other server is encoded in the path.
+     */
+    @Test
+    public void testAutoCompletePatternUrl() {
+        GerritProject.DescriptorImpl descriptor = new GerritProject.DescriptorImpl();
+        String base = "descriptorByName/" + GerritProject.class.getName();
+        assertEquals(base + "/defaultServer/autoCompletePattern", descriptor.getAutoCompletePatternUrl(null));
+        assertEquals(base + "/defaultServer/autoCompletePattern", descriptor.getAutoCompletePatternUrl(""));
+        assertEquals(base + "/server/my%20server/autoCompletePattern",
+                descriptor.getAutoCompletePatternUrl("my server"));
+    }
+
+    /**
+     * Tests that the projects are suggested from the server of the trigger.
+     */
+    @Test
+    public void testSuggestsProjectsOfTheServer() {
+        GerritProject.DescriptorImpl descriptor = new GerritProject.DescriptorImpl();
+        assertEquals(Arrays.asList("project"),
+                suggestions(descriptor.getDefaultServer().doAutoCompletePattern("pro")));
+        assertEquals(Arrays.asList("profile", "programs"),
+                suggestions(descriptor.getServer("other").doAutoCompletePattern("pro")));
+        assertEquals(Collections.<String>emptyList(),
+                suggestions(descriptor.getServer("removed").doAutoCompletePattern("pro")));
+    }
+
+    /**
+     * The suggested projects.
+     *
+     * @param candidates the suggestions.
+     * @return the projects.
+     */
+    private static List<String> suggestions(AutoCompletionCandidates candidates) {
+        return Whitebox.getInternalState(candidates, "values");
+    }
+}
@@ -99,6 +99,27 @@ public class TriggerContextConverterTest {
         assertSame(readT.getEntity(), readT.getTestClass().getEntity());
     }
 
+    /**
+     * Tests {@link TriggerContextConverter#marshal(Object, com.thoughtworks.xstream.io.HierarchicalStreamWriter,
+     * com.thoughtworks.xstream.converters.MarshallingContext)}. With the name of the Gerrit server.
+     *
+     * @throws Exception if so.
+     */
+    @Test
+    public void testMarshalServerName() throws Exception {
+        TriggerContext context = new TriggerContext(Setup.createPatchsetCreated());
+        context.setThisBuild(new TriggeredItemEntity(100, "projectX"));
+        context.setServerName("gerrit2");
+
+        XStream xStream = new XStream2();
+        xStream.registerConverter(new TriggerContextConverter());
+        String xml = xStream.toXML(new TestMarshalClass(context, "Bobby"));
+
+        TestMarshalClass readT = (TestMarshalClass)xStream.fromXML(xml);
+
+        assertEquals("gerrit2", readT.getEntity().getServerName());
+    }
+
     /**
      * Tests {@link TriggerContextConverter#marshal(Object, com.thoughtworks.xstream.io.HierarchicalStreamWriter,
      * com.thoughtworks.xstream.converters.MarshallingContext)}. With {@link TriggerContext#thisBuild} set to null.
@@ -26,6 +26,7 @@ package com.sonyericsson.hudson.plugins.gerrit.trigger.mock;
 
 import com.gargoylesoftware.htmlunit.html.HtmlForm;
 import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritEventListener;
 import com.sonyericsson.hudson.plugins.gerrit.gerritevents.dto.events.PatchsetCreated;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.GerritTrigger;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.hudsontrigger.data.Branch;
@@ -40,6 +41,7 @@ import hudson.util.RunList;
 import java.io.File;
 import java.io.FileWriter;
 import java.net.URI;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
@@ -180,6 +182,23 @@ public abstract class DuplicatesUtil {
         return null;
     }
 
+    /**
+     * Counts the triggers among the event listeners of a server.
+     * The other listeners, like the project list updater, are always there and not of interest to the tests.
+     *
+     * @param listeners the event listeners.
+     * @return the number of {@link GerritTrigger}s.
+     */
+    public static int countTriggers(Collection<GerritEventListener> listeners) {
+        int count = 0;
+        for (GerritEventListener listener : listeners) {
+            if (listener instanceof GerritTrigger) {
+                count++;
+            }
+        }
+        return count;
+    }
+
     //CS IGNORE MagicNumber FOR NEXT 50 LINES. REASON: Testdata.
     /**
      * Waits for a build to start for the specified event.
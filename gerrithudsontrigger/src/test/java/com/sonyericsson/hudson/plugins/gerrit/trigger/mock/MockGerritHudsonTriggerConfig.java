@@ -118,6 +118,11 @@ public class MockGerritHudsonTriggerConfig implements
         throw new UnsupportedOperationException("Not supported yet.");
     }
 
+    @Override
+    public String getGerritFailoverHosts() {
+        return null;
+    }
+
     @Override
     public String getGerritUserName() {
         throw new UnsupportedOperationException("Not supported yet.");
@@ -224,6 +229,31 @@ public class MockGerritHudsonTriggerConfig implements
         return 30;
     }
 
+    @Override
+    public int getUnsuccessfulMessageMaxSize() {
+        return 16384;
+    }
+
+    @Override
+    public int getUnsuccessfulMessageTimeout() {
+        return 30;
+    }
+
+    @Override
+    public int getEventJournalRetention() {
+        return 24;
+    }
+
+    @Override
+    public int getStreamStaleTimeout() {
+        return 0;
+    }
+
+    @Override
+    public int getTriggerTimeBudget() {
+        return 0;
+    }
+
     @Override
     public boolean hasDefaultValues() {
         return false;
@@ -231,6 +261,6 @@ public class MockGerritHudsonTriggerConfig implements
 
     @Override
     public boolean isGerritBuildCurrentPatchesOnly() {
-        return true;
+        return false;
     }
 }
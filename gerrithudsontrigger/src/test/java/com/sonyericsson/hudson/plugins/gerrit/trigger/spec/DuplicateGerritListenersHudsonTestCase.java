@@ -32,6 +32,7 @@ import com.sonyericsson.hudson.plugins.gerrit.gerritevents.GerritHandler;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.GerritHudsonTestCase;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.PluginImpl;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.config.Config;
+import static com.sonyericsson.hudson.plugins.gerrit.trigger.mock.DuplicatesUtil.countTriggers;
 import static com.sonyericsson.hudson.plugins.gerrit.trigger.mock.DuplicatesUtil.createGerritTriggeredJob;
 import static com.sonyericsson.hudson.plugins.gerrit.trigger.mock.DuplicatesUtil.getFormWithAction;
 import com.sonyericsson.hudson.plugins.gerrit.trigger.mock.SshdServerMock;
@@ -71,11 +72,11 @@ public class DuplicateGerritListenersHudsonTestCase extends GerritHudsonTestCase
         createGerritTriggeredJob(this, "testJob1");
         System.out.println(ItemListener.all());
         System.out.println();
-        GerritHandler handler = Whitebox.getInternalState(PluginImpl.getInstance(), GerritHandler.class);
+        GerritHandler handler = Whitebox.getInternalState(PluginImpl.getInstance().getServer(null), GerritHandler.class);
         
         Collection<GerritEventListener> gerritEventListeners =
                 Whitebox.getInternalState(handler, "gerritEventListeners");
-        assertEquals(1, gerritEventListeners.size());
+        assertEquals(1, countTriggers(gerritEventListeners));
     }
 
     /**
@@ -110,10 +111,10 @@ public class DuplicateGerritListenersHudsonTestCase extends GerritHudsonTestCase
         submit(getFormWithAction("doRename", confirmPage.getForms()));
         configRoundtrip(p);
         assertEquals("testJob33", p.getName());
-        GerritHandler handler = Whitebox.getInternalState(PluginImpl.getInstance(), GerritHandler.class);
+        GerritHandler handler = Whitebox.getInternalState(PluginImpl.getInstance().getServer(null), GerritHandler.class);
         Collection<GerritEventListener> gerritEventListeners =
                 Whitebox.getInternalState(handler, "gerritEventListeners");
-        assertEquals(1, gerritEventListeners.size());
+        assertEquals(1, countTriggers(gerritEventListeners));
     }
 
     /**
@@ -124,21 +125,21 @@ public class DuplicateGerritListenersHudsonTestCase extends GerritHudsonTestCase
      */
     public void testNewProjectCreationFirstNoConnection() throws Exception {
         FreeStyleProject p = createGerritTriggeredJob(this, "testJob4");
-        GerritHandler handler = Whitebox.getInternalState(PluginImpl.getInstance(), GerritHandler.class);
+        GerritHandler handler = Whitebox.getInternalState(PluginImpl.getInstance().getServer(null), GerritHandler.class);
         assertNull(handler);
         Collection<GerritEventListener> savedEventListeners =
-                Whitebox.getInternalState(PluginImpl.getInstance(), "savedEventListeners");
-        assertEquals(1, savedEventListeners.size());
+                Whitebox.getInternalState(PluginImpl.getInstance().getServer(null), "savedEventListeners");
+        assertEquals(1, countTriggers(savedEventListeners));
         ((Config)PluginImpl.getInstance().getConfig()).setGerritAuthKeyFile(keyFile);
         ((Config)PluginImpl.getInstance().getConfig()).setGerritHostName("localhost");
         ((Config)PluginImpl.getInstance().getConfig()).setGerritFrontEndURL("http://localhost");
         ((Config)PluginImpl.getInstance().getConfig()).setGerritSshPort(29418);
         PluginImpl.getInstance().restartConnection();
 
-        handler = Whitebox.getInternalState(PluginImpl.getInstance(), GerritHandler.class);
+        handler = Whitebox.getInternalState(PluginImpl.getInstance().getServer(null), GerritHandler.class);
         Collection<GerritEventListener> gerritEventListeners =
                 Whitebox.getInternalState(handler, "gerritEventListeners");
-        assertEquals(1, gerritEventListeners.size());
+        assertEquals(1, countTriggers(gerritEventListeners));
     }
 
 
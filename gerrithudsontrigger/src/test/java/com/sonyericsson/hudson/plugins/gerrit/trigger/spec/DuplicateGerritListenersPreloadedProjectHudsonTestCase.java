@@ -37,6 +37,7 @@ import org.powermock.reflect.Whitebox;
 
 import java.util.Collection;
 
+import static com.sonyericsson.hudson.plugins.gerrit.trigger.mock.DuplicatesUtil.countTriggers;
 import static com.sonyericsson.hudson.plugins.gerrit.trigger.mock.DuplicatesUtil.createGerritTriggeredJob;
 
 /**
@@ -59,10 +60,10 @@ public void setUp() throws Exception {
     @LocalData
     public void testProject() throws Exception {
     	System.out.println();
-        GerritHandler handler = Whitebox.getInternalState(PluginImpl.getInstance(), GerritHandler.class);
+        GerritHandler handler = Whitebox.getInternalState(PluginImpl.getInstance().getServer(null), GerritHandler.class);
         Collection<GerritEventListener> gerritEventListeners =
                 Whitebox.getInternalState(handler, "gerritEventListeners");
-        assertEquals(1, gerritEventListeners.size());
+        assertEquals(1, countTriggers(gerritEventListeners));
     }
 
     /**
@@ -73,10 +74,10 @@ public void setUp() throws Exception {
     @LocalData
     public void testCreateNewProject() throws Exception {
         FreeStyleProject p = createGerritTriggeredJob(this, "testing1");
-        GerritHandler handler = Whitebox.getInternalState(PluginImpl.getInstance(), GerritHandler.class);
+        GerritHandler handler = Whitebox.getInternalState(PluginImpl.getInstance().getServer(null), GerritHandler.class);
         Collection<GerritEventListener> gerritEventListeners =
                 Whitebox.getInternalState(handler, "gerritEventListeners");
-        assertEquals(2, gerritEventListeners.size());
+        assertEquals(2, countTriggers(gerritEventListeners));
     }
 
     /**